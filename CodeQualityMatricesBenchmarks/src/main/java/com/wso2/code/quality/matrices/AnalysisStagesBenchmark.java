@@ -0,0 +1,115 @@
+/*
+ * Copyright (c) 2017, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ *
+ * WSO2 Inc. licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+
+package com.wso2.code.quality.matrices;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures the CPU bound stages of the analysis on decoded responses: parsing the hunks of a patch, resolving the
+ * changed line ranges on a blame, reading the commits of a patch from its PMT properties and reading the pull requests
+ * from the search results.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class AnalysisStagesBenchmark {
+
+    @Param({"SMALL", "TYPICAL", "PATHOLOGICAL"})
+    private BenchmarkFixtures.Size size;
+
+    private String patch;
+    private FileChange fileChange;
+    private FileBlame blame;
+    private List<PmtProperty> pmtProperties;
+    private List<SearchItem> searchItems;
+    private ChangesFinder changesFinder;
+    private Pmt pmt;
+
+    @Setup
+    public void setUp() throws IOException {
+        BenchmarkFixtures fixtures = new BenchmarkFixtures(size);
+        patch = fixtures.patch();
+        fileChange = FileChange.fromPatch("File.java", patch);
+        blame = ResponseDecoders.blameBatchDecoder(true).decode(new ByteArrayInputStream(fixtures.blameResponse())).getBlame("b0");
+        pmtProperties = ResponseDecoders.decodePmtProperties(new ByteArrayInputStream(fixtures.pmtResponse()));
+        searchItems = ResponseDecoders.decodeSearchItems(new ByteArrayInputStream(fixtures.searchResponse()));
+        // the ChangesFinder is only used for reading the blames, so no cache store or API calls are needed
+        changesFinder = new ChangesFinder(new GraphQlApiCaller(), new BlameCache(0, null), 1);
+        pmt = new Pmt();
+    }
+
+    @TearDown
+    public void tearDown() {
+        changesFinder.close();
+    }
+
+    @Benchmark
+    public FileChange patchHunks() {
+        return FileChange.fromPatch("File.java", patch);
+    }
+
+    @Benchmark
+    public Map<Integer, Set<String>> blameParentCommits() {
+        return changesFinder.readBlameForParentCommits(blame, fileChange);
+    }
+
+    @Benchmark
+    public AuthorsAndCommits blameAuthors() {
+        List<AuthorsAndCommits> authorsAndCommits = new ArrayList<>(fileChange.getHunkCount());
+        for (int i = 0; i < fileChange.getHunkCount(); i++) {
+            authorsAndCommits.add(changesFinder.readBlameForAuthors(blame, fileChange.getOldStartingLine(i), fileChange.getOldEndingLine(i)));
+        }
+        return AuthorsAndCommits.mergeAll(authorsAndCommits);
+    }
+
+    @Benchmark
+    public List<String> pmtCommitHashes() {
+        return pmt.getCommitHashesToList(pmtProperties);
+    }
+
+    @Benchmark
+    public Map<String, Set<Integer>> searchPullRequests() {
+        Reviewer reviewer = new Reviewer();
+        reviewer.savePrNumberAndRepoName(searchItems);
+        return reviewer.mapContainingPRNoAgainstRepoName;
+    }
+}
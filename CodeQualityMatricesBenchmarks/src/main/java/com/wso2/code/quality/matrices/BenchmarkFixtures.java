@@ -0,0 +1,210 @@
+/*
+ * Copyright (c) 2017, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ *
+ * WSO2 Inc. licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+
+package com.wso2.code.quality.matrices;
+
+import org.apache.commons.lang3.StringUtils;
+import org.json.JSONArray;
+import org.json.JSONObject;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Random;
+
+/**
+ * Fixtures of the benchmarks in the shape of the responses received from github and WSO2 PMT and of the patches of
+ * the changed files. They are generated from a fixed seed, so that every run measures the same input, in three sizes:
+ * a small change, a typical change, and a pathological change such as a generated file or a large refactoring.
+ *
+ * @since 1.0.0
+ */
+
+public final class BenchmarkFixtures {
+
+    /**
+     * Sizes of the fixtures
+     */
+    public enum Size {
+        SMALL(3, 200, 5, 3, 2),
+        TYPICAL(20, 2000, 30, 30, 10),
+        PATHOLOGICAL(2000, 100000, 1000, 1000, 500);
+
+        private final int hunks;
+        private final int fileLines;
+        private final int searchItems;
+        private final int reviews;
+        private final int commits;
+
+        Size(int hunks, int fileLines, int searchItems, int reviews, int commits) {
+            this.hunks = hunks;
+            this.fileLines = fileLines;
+            this.searchItems = searchItems;
+            this.reviews = reviews;
+            this.commits = commits;
+        }
+    }
+
+    private static final long SEED = 42;
+    private static final String REPOSITORY = "wso2/carbon-kernel";
+    private static final String[] REPOSITORIES = {REPOSITORY, "wso2/product-is", "wso2/carbon-identity", "someone/carbon-kernel"};
+    private static final String[] ISSUE_STATES = {"closed", "closed", "open"};
+    private static final String[] REVIEW_STATES = {"APPROVED", "COMMENTED", "COMMENTED", "CHANGES_REQUESTED"};
+
+    private final Size size;
+
+    public BenchmarkFixtures(Size size) {
+        this.size = size;
+    }
+
+    /**
+     * @return the patch of a changed file as given by the github commit API
+     */
+    public String patch() {
+        Random random = new Random(SEED);
+        StringBuilder patch = new StringBuilder();
+        int linesPerHunk = Math.max(1, size.fileLines / size.hunks);
+        for (int hunk = 0; hunk < size.hunks; hunk++) {
+            int oldStart = 1 + hunk * linesPerHunk;
+            int removed = random.nextInt(4);
+            int added = random.nextInt(4);
+            patch.append("@@ -").append(oldStart).append(',').append(3 + removed).append(" +").append(oldStart)
+                    .append(',').append(3 + added).append(" @@ public void method").append(hunk).append("() {\n");
+            patch.append(" context line\n");
+            for (int i = 0; i < removed; i++) {
+                patch.append("-        removed(").append(i).append(");\n");
+            }
+            for (int i = 0; i < added; i++) {
+                patch.append("+        added(").append(i).append(");\n");
+            }
+            patch.append(" context line\n context line\n");
+        }
+        return patch.toString();
+    }
+
+    /**
+     * @return a github GraphQL response holding the blame of a file under the alias b0, with the parent commits
+     */
+    public byte[] blameResponse() {
+        Random random = new Random(SEED);
+        JSONArray ranges = new JSONArray();
+        for (int startingLine = 1; startingLine <= size.fileLines; ) {
+            int endingLine = Math.min(size.fileLines, startingLine + random.nextInt(8));
+            String commitHash = commitHash(random.nextInt(200));
+            JSONObject commit = new JSONObject().put("oid", commitHash)
+                    .put("parents", new JSONObject().put("nodes", new JSONArray()
+                            .put(new JSONObject().put("oid", commitHash(random.nextInt(200))))))
+                    .put("author", new JSONObject().put("name", "author" + random.nextInt(30)));
+            ranges.put(new JSONObject().put("startingLine", startingLine).put("endingLine", endingLine)
+                    .put("age", 1 + random.nextInt(10)).put("commit", commit));
+            startingLine = endingLine + 1;
+        }
+        JSONObject data = new JSONObject()
+                .put("rateLimit", new JSONObject().put("cost", 1).put("remaining", 4999).put("resetAt", "2017-07-01T00:00:00Z"))
+                .put("b0", new JSONObject().put("object", new JSONObject().put("blame", new JSONObject().put("ranges", ranges))));
+        return bytes(new JSONObject().put("data", data));
+    }
+
+    /**
+     * @return a github issue search response
+     */
+    public byte[] searchResponse() {
+        Random random = new Random(SEED);
+        JSONArray items = new JSONArray();
+        for (int i = 0; i < size.searchItems; i++) {
+            String repository = REPOSITORIES[random.nextInt(REPOSITORIES.length)];
+            items.put(new JSONObject()
+                    .put("url", "https://api.github.com/repos/" + repository + "/issues/" + (1000 + i))
+                    .put("repository_url", "https://api.github.com/repos/" + repository)
+                    .put("html_url", "https://github.com/" + repository + "/pull/" + (1000 + i))
+                    .put("number", 1000 + i)
+                    .put("title", "Fix the issue " + i)
+                    .put("user", new JSONObject().put("login", "user" + random.nextInt(50)).put("id", random.nextInt(100000)))
+                    .put("labels", new JSONArray())
+                    .put("state", ISSUE_STATES[random.nextInt(ISSUE_STATES.length)])
+                    .put("comments", random.nextInt(20))
+                    .put("pull_request", new JSONObject().put("url", "https://api.github.com/repos/" + repository + "/pulls/" + (1000 + i)))
+                    .put("body", StringUtils.repeat("Description of the change. ", 1 + random.nextInt(20))));
+        }
+        return bytes(new JSONObject().put("total_count", size.searchItems).put("incomplete_results", false).put("items", items));
+    }
+
+    /**
+     * @return a github pull request review response
+     */
+    public byte[] reviewResponse() {
+        Random random = new Random(SEED);
+        JSONArray reviews = new JSONArray();
+        for (int i = 0; i < size.reviews; i++) {
+            reviews.put(new JSONObject()
+                    .put("id", 100000 + i)
+                    .put("user", new JSONObject().put("login", "reviewer" + random.nextInt(40)).put("id", random.nextInt(100000)))
+                    .put("body", StringUtils.repeat("Looks good. ", random.nextInt(10)))
+                    .put("state", REVIEW_STATES[random.nextInt(REVIEW_STATES.length)])
+                    .put("commit_id", commitHash(random.nextInt(200)))
+                    .put("submitted_at", "2017-06-01T00:00:00Z"));
+        }
+        return bytes(reviews);
+    }
+
+    /**
+     * @return a WSO2 PMT response holding the properties of a patch
+     */
+    public byte[] pmtResponse() {
+        Random random = new Random(SEED);
+        JSONArray commits = new JSONArray();
+        for (int i = 0; i < size.commits; i++) {
+            commits.put(commitHash(random.nextInt()));
+        }
+        JSONArray properties = new JSONArray()
+                .put(new JSONObject().put("name", "patchInformation_jiraLink").put("value", new JSONArray().put("https://wso2.org/jira/browse/CARBON-1")))
+                .put(new JSONObject().put("name", "patchInformation_developedBy").put("value", new JSONArray().put("developer")))
+                .put(new JSONObject().put("name", "patchInformation_svnRevisionpublic").put("value", commits))
+                .put(new JSONObject().put("name", "patchInformation_svnRevisionprivate").put("value", new JSONArray()));
+        return bytes(properties);
+    }
+
+    /**
+     * @return a batched github GraphQL response holding the pull requests of a commit under the alias p0
+     */
+    public byte[] pullRequestResponse() {
+        Random random = new Random(SEED);
+        JSONArray nodes = new JSONArray();
+        for (int i = 0; i < Math.max(1, size.searchItems / 10); i++) {
+            JSONArray reviews = new JSONArray();
+            for (int j = 0; j < Math.min(100, size.reviews); j++) {
+                reviews.put(new JSONObject().put("state", REVIEW_STATES[random.nextInt(REVIEW_STATES.length)])
+                        .put("author", new JSONObject().put("login", "reviewer" + random.nextInt(40))));
+            }
+            nodes.put(new JSONObject().put("number", 1000 + i).put("state", "MERGED")
+                    .put("repository", new JSONObject().put("nameWithOwner", REPOSITORIES[random.nextInt(REPOSITORIES.length)]))
+                    .put("reviews", new JSONObject().put("nodes", reviews)));
+        }
+        JSONObject data = new JSONObject()
+                .put("rateLimit", new JSONObject().put("cost", 1).put("remaining", 4999).put("resetAt", "2017-07-01T00:00:00Z"))
+                .put("p0", new JSONObject().put("nodes", nodes));
+        return bytes(new JSONObject().put("data", data));
+    }
+
+    private static String commitHash(int seed) {
+        return StringUtils.leftPad(Integer.toHexString(seed), 40, '0');
+    }
+
+    private static byte[] bytes(Object json) {
+        return json.toString().getBytes(StandardCharsets.UTF_8);
+    }
+}
@@ -0,0 +1,137 @@
+/*
+ * Copyright (c) 2017, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ *
+ * WSO2 Inc. licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.wso2.code.quality.matrices;
+
+import org.apache.commons.lang3.StringUtils;
+import org.json.JSONArray;
+import org.json.JSONObject;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares finding the authors of the changed line ranges of a file by checking each line against every blame range
+ * of the JSON response, as ChangesFinder used to do, against resolving each line range on a FileBlame with a binary
+ * search.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class BlameLookupBenchmark {
+
+    private static final int CHANGED_LINE_RANGES = 40;
+
+    @Param({"1000", "10000"})
+    private int fileLines;
+
+    private JSONObject blameJsonObject;
+    private FileBlame fileBlame;
+    private List<int[]> oldRanges;
+    private ChangesFinder changesFinder;
+
+    @Setup
+    public void setUp() {
+        Random random = new Random(42);
+        JSONArray rangeJsonArray = new JSONArray();
+        FileBlame.Builder builder = new FileBlame.Builder(false);
+        for (int startingLine = 1; startingLine <= fileLines; ) {
+            int endingLine = Math.min(fileLines, startingLine + random.nextInt(8));
+            int age = 1 + random.nextInt(10);
+            String commitHash = StringUtils.leftPad(Integer.toHexString(random.nextInt(200)), 40, '0');
+            String authorName = "author" + random.nextInt(30);
+            JSONObject commitJsonObject = new JSONObject()
+                    .put("url", "https://github.com/wso2/carbon-kernel/commit/" + commitHash)
+                    .put("author", new JSONObject().put("name", authorName));
+            rangeJsonArray.put(new JSONObject().put("startingLine", startingLine).put("endingLine", endingLine)
+                    .put("age", age).put("commit", commitJsonObject));
+            builder.addRange(startingLine, endingLine, age, commitHash, null, authorName);
+            startingLine = endingLine + 1;
+        }
+        blameJsonObject = new JSONObject().put("ranges", rangeJsonArray);
+        fileBlame = builder.build();
+
+        oldRanges = new ArrayList<>();
+        for (int i = 0; i < CHANGED_LINE_RANGES; i++) {
+            int startingLine = 1 + random.nextInt(fileLines - 20);
+            oldRanges.add(new int[]{startingLine, startingLine + random.nextInt(20)});
+        }
+        // the ChangesFinder is only used for reading the blames, so no cache store or API calls are needed
+        changesFinder = new ChangesFinder(new GraphQlApiCaller(), new BlameCache(0, null), 1);
+    }
+
+    @TearDown
+    public void tearDown() {
+        changesFinder.close();
+    }
+
+    @Benchmark
+    public AuthorsAndCommits perLineJsonScan() {
+        Set<String> authorNames = new HashSet<>();
+        Set<String> commitHashes = new HashSet<>();
+        JSONArray rangeJsonArray = blameJsonObject.getJSONArray("ranges");
+        for (int[] oldRange : oldRanges) {
+            int startingLineNo = oldRange[0];
+            int endLineNo = oldRange[1];
+            while (endLineNo >= startingLineNo) {
+                for (int i = 0; i < rangeJsonArray.length(); i++) {
+                    JSONObject rangeJsonObject = (JSONObject) rangeJsonArray.get(i);
+                    int tempStartingLineNo = (int) rangeJsonObject.get("startingLine");
+                    int tempEndingLineNo = (int) rangeJsonObject.get("endingLine");
+                    if ((tempStartingLineNo <= startingLineNo) && (tempEndingLineNo >= startingLineNo)) {
+                        JSONObject commitJsonObject = (JSONObject) rangeJsonObject.get("commit");
+                        authorNames.add((String) ((JSONObject) commitJsonObject.get("author")).get("name"));
+                        commitHashes.add(StringUtils.substringAfter((String) commitJsonObject.get("url"), "commit/"));
+                        // the ranges do not overlap, so the scan stops at the first range holding the line
+                        break;
+                    }
+                }
+                startingLineNo++;
+            }
+        }
+        return new AuthorsAndCommits(authorNames, commitHashes);
+    }
+
+    @Benchmark
+    public AuthorsAndCommits intervalIndex() {
+        List<AuthorsAndCommits> authorsAndCommits = new ArrayList<>();
+        for (int[] oldRange : oldRanges) {
+            authorsAndCommits.add(changesFinder.readBlameForAuthors(fileBlame, oldRange[0], oldRange[1]));
+        }
+        return AuthorsAndCommits.mergeAll(authorsAndCommits);
+    }
+}
@@ -0,0 +1,91 @@
+/*
+ * Copyright (c) 2017, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ *
+ * WSO2 Inc. licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.wso2.code.quality.matrices;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * Compares the throughput of the execution modes of the HttpTransport on the per-file fan-out of the analysis, reading
+ * the changed files of many commits from a StandInServer which delays each response. All the modes use the same
+ * connection pool and the same cap of the calls in flight, so the platform and virtual modes differ only in the
+ * threads blocking on the calls. The virtual mode is measured only when the benchmarks are built and run on JDK 21 or
+ * later, which activates the jdk21 profile of CodeQualityMatricesProject.
+ * <p>
+ * Run with: java -Dcqm.standin.latencyMillis=20 -cp target/benchmarks.jar com.wso2.code.quality.matrices.ExecutionModeBenchmark
+ */
+public class ExecutionModeBenchmark {
+
+    private static final String CALLS_PROPERTY = "cqm.benchmark.calls";
+    private static final String MAX_CONCURRENT_CALLS_PER_UPSTREAM_PROPERTY = "cqm.http.maxConcurrentCallsPerUpstream";
+    private static final String PLATFORM_THREADS_PROPERTY = "cqm.http.platformThreads";
+    private static final int DEFAULT_CALLS = 2000;
+    private static final int DEFAULT_MAX_CONCURRENT_CALLS_PER_UPSTREAM = 20;
+    private static final int DEFAULT_PLATFORM_THREADS = 50;
+    private static final int MAX_CONNECTIONS = 50;
+    private static final int WARM_UP_CALLS = 200;
+
+    public static void main(String[] args) throws Exception {
+        int calls = Integer.getInteger(CALLS_PROPERTY, DEFAULT_CALLS);
+        int maxConcurrentCallsPerUpstream = Integer.getInteger(MAX_CONCURRENT_CALLS_PER_UPSTREAM_PROPERTY,
+                DEFAULT_MAX_CONCURRENT_CALLS_PER_UPSTREAM);
+        int platformThreads = Integer.getInteger(PLATFORM_THREADS_PROPERTY, DEFAULT_PLATFORM_THREADS);
+        List<ExecutionMode> executionModes = new ArrayList<>();
+        Collections.addAll(executionModes, ExecutionMode.ASYNC, ExecutionMode.PLATFORM);
+        if (ExecutionMode.isVirtualThreadsAvailable()) {
+            executionModes.add(ExecutionMode.VIRTUAL);
+        }
+
+        try (StandInServer standInServer = StandInServer.fromSystemProperties(new SyntheticResponseSource())) {
+            String commitsUrl = standInServer.getGitHubApiUrl() + "/repos/wso2/carbon-kernel/commits/";
+            System.out.printf("%d calls, at most %d in flight, %d platform threads%n", calls,
+                    maxConcurrentCallsPerUpstream, platformThreads);
+            for (ExecutionMode executionMode : executionModes) {
+                try (HttpTransport httpTransport = new HttpTransport(MAX_CONNECTIONS, MAX_CONNECTIONS, 10000, 60000,
+                        executionMode, maxConcurrentCallsPerUpstream, platformThreads)) {
+                    RestApiCaller restApiCaller = new RestApiCaller(httpTransport);
+                    readChangedFiles(restApiCaller, commitsUrl, WARM_UP_CALLS);
+                    long start = System.nanoTime();
+                    readChangedFiles(restApiCaller, commitsUrl, calls);
+                    double seconds = (System.nanoTime() - start) / 1e9;
+                    System.out.printf("%-9s: %10.1f calls/s %10.1f ms%n", executionMode.name().toLowerCase(),
+                            calls / seconds, seconds * 1000);
+                }
+            }
+        }
+    }
+
+    /**
+     * Reads the changed files of the given number of commits at once, as the analysis does for the commits of a patch
+     */
+    private static void readChangedFiles(RestApiCaller restApiCaller, String commitsUrl, int calls) {
+        List<CompletableFuture<List<FileChange>>> futureFileChanges = new ArrayList<>();
+        for (int i = 0; i < calls; i++) {
+            futureFileChanges.add(restApiCaller.callApiAsync(commitsUrl + String.format("%040x", i), "token", false,
+                    false, ResponseDecoders::decodeFileChanges));
+        }
+        for (CompletableFuture<List<FileChange>> futureFileChange : futureFileChanges) {
+            if (futureFileChange.join() == null) {
+                throw new IllegalStateException("Changed files of a commit were not read");
+            }
+        }
+    }
+}
@@ -0,0 +1,97 @@
+/*
+ * Copyright (c) 2017, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ *
+ * WSO2 Inc. licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.wso2.code.quality.matrices;
+
+import com.sun.net.httpserver.HttpServer;
+import org.apache.http.client.methods.CloseableHttpResponse;
+import org.apache.http.client.methods.HttpGet;
+import org.apache.http.impl.client.CloseableHttpClient;
+import org.apache.http.impl.client.HttpClients;
+import org.apache.http.util.EntityUtils;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Compares the per call latency of creating a new HTTP client for every call, as the API callers used to do,
+ * against calling through the shared pooled HttpTransport. A local stub server returning a small JSON
+ * response is used so that only the transport cost is measured.
+ * <p>
+ * Run with: java -cp target/benchmarks.jar com.wso2.code.quality.matrices.HttpTransportBenchmark
+ */
+public class HttpTransportBenchmark {
+
+    private static final int WARM_UP_CALLS = 200;
+    private static final int MEASURED_CALLS = 2000;
+    private static final byte[] STUB_RESPONSE = "{\"items\":[{\"repository\":{\"full_name\":\"wso2/carbon-kernel\"}}]}"
+            .getBytes(StandardCharsets.UTF_8);
+
+    public static void main(String[] args) throws Exception {
+        // without this the stub server waits for delayed ACKs between the header and body writes on kept alive connections
+        System.setProperty("sun.net.httpserver.nodelay", "true");
+        HttpServer server = HttpServer.create(new InetSocketAddress("localhost", 0), 0);
+        server.createContext("/", exchange -> {
+            exchange.getResponseHeaders().add("Content-Type", "application/json");
+            exchange.sendResponseHeaders(200, STUB_RESPONSE.length);
+            try (OutputStream outputStream = exchange.getResponseBody()) {
+                outputStream.write(STUB_RESPONSE);
+            }
+        });
+        server.start();
+        String url = "http://localhost:" + server.getAddress().getPort() + "/search/commits";
+
+        try (HttpTransport httpTransport = new HttpTransport(20, 50, 10000, 60000)) {
+            RestApiCaller restApiCaller = new RestApiCaller(httpTransport);
+
+            runWithNewClientPerCall(url, WARM_UP_CALLS);
+            double newClientMicros = runWithNewClientPerCall(url, MEASURED_CALLS);
+
+            runWithSharedTransport(restApiCaller, url, WARM_UP_CALLS);
+            double sharedTransportMicros = runWithSharedTransport(restApiCaller, url, MEASURED_CALLS);
+
+            System.out.printf("new client per call : %10.1f us/call%n", newClientMicros);
+            System.out.printf("shared transport    : %10.1f us/call%n", sharedTransportMicros);
+            System.out.printf("speed up            : %10.2fx%n", newClientMicros / sharedTransportMicros);
+        } finally {
+            server.stop(0);
+        }
+    }
+
+    private static double runWithNewClientPerCall(String url, int calls) throws IOException {
+        long start = System.nanoTime();
+        for (int i = 0; i < calls; i++) {
+            try (CloseableHttpClient httpClient = HttpClients.createDefault();
+                 CloseableHttpResponse response = httpClient.execute(new HttpGet(url))) {
+                EntityUtils.consume(response.getEntity());
+            }
+        }
+        return (System.nanoTime() - start) / 1000.0 / calls;
+    }
+
+    private static double runWithSharedTransport(RestApiCaller restApiCaller, String url, int calls)
+            throws CodeQualityMatricesException {
+        long start = System.nanoTime();
+        for (int i = 0; i < calls; i++) {
+            restApiCaller.callApi(url, null, false, false);
+        }
+        return (System.nanoTime() - start) / 1000.0 / calls;
+    }
+}
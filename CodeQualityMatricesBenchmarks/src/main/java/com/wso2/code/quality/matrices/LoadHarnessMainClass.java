@@ -0,0 +1,157 @@
+/*
+ * Copyright (c) 2017, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ *
+ * WSO2 Inc. licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.wso2.code.quality.matrices;
+
+import org.apache.log4j.Logger;
+
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryPoolMXBean;
+import java.lang.management.MemoryType;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+import java.util.stream.Stream;
+
+/**
+ * This is the class having the main method for load testing the whole analysis of a patch against a StandInServer
+ * It runs the flow of MainClass in this JVM with the APIs pointed at the stand-in server, and reports the wall time,
+ * the calls and bytes of each stage and the peak heap usage. The first command line argument selects the responses:
+ * synthetic, for a synthetic patch of the size given in the cqm.loadtest system properties, replay followed by the
+ * directory of the recordings and the patch id, or record followed by the directory of the recordings, the PMT access
+ * token, the patch id and the github access tokens, for recording the responses of the real APIs. The latency, rate
+ * limit and failures of the server are given in the cqm.standin system properties.
+ */
+public class LoadHarnessMainClass {
+    private final static Logger logger = Logger.getLogger(LoadHarnessMainClass.class);
+
+    private static final String TOKENS_PROPERTY = "cqm.loadtest.tokens";
+    private static final String BLAME_CACHE_DIRECTORY_PROPERTY = "cqm.blameCache.directory";
+    private static final String RESPONSE_CACHE_DIRECTORY_PROPERTY = "cqm.cache.directory";
+    private static final String JOURNAL_DIRECTORY_PROPERTY = "cqm.journal.directory";
+    private static final int DEFAULT_TOKENS = 1;
+    private static final String SYNTHETIC_PATCH_ID = "WSO2-CARBON-PATCH-4.4.0-0001";
+    private static final String SYNTHETIC_TOKEN = "synthetic";
+
+    public static void main(String[] args) throws Exception {
+        logger.info(" Load harness main method got executed");
+        ResponseSource responseSource;
+        String pmtToken = SYNTHETIC_TOKEN;
+        String patchId = SYNTHETIC_PATCH_ID;
+        String gitHubTokens = IntStream.rangeClosed(1, Integer.getInteger(TOKENS_PROPERTY, DEFAULT_TOKENS))
+                .mapToObj(i -> SYNTHETIC_TOKEN + i)
+                .collect(Collectors.joining(","));
+        if (args.length == 1 && args[0].equals("synthetic")) {
+            responseSource = new SyntheticResponseSource();
+        } else if (args.length == 3 && args[0].equals("replay")) {
+            responseSource = new RecordedResponseSource(Paths.get(args[1]));
+            patchId = args[2];
+        } else if (args.length == 5 && args[0].equals("record")) {
+            // the urls of the real APIs are read before they are pointed at the stand-in server
+            responseSource = new RecordedResponseSource(Paths.get(args[1]), ApiUrls.getGitHubApiUrl(),
+                    ApiUrls.getGitHubGraphQlApiUrl(), ApiUrls.getPmtUrl());
+            pmtToken = args[2];
+            patchId = args[3];
+            gitHubTokens = args[4];
+        } else {
+            logger.error("Usage: synthetic | replay <recordings directory> <patch id>"
+                    + " | record <recordings directory> <PMT access token> <patch id> <github access tokens>");
+            System.exit(4);
+            return;
+        }
+
+        StandInServer standInServer = StandInServer.fromSystemProperties(responseSource);
+        System.setProperty(ApiUrls.GITHUB_API_URL_PROPERTY, standInServer.getGitHubApiUrl());
+        System.setProperty(ApiUrls.GITHUB_GRAPHQL_API_URL_PROPERTY, standInServer.getGitHubGraphQlApiUrl());
+        System.setProperty(ApiUrls.PMT_URL_PROPERTY, standInServer.getPmtUrl());
+        // the run starts with empty caches and journal unless their directories are given, so that the runs are comparable
+        Path cacheDirectory = Files.createTempDirectory("load-harness");
+        setPropertyIfAbsent(BLAME_CACHE_DIRECTORY_PROPERTY, cacheDirectory.resolve("blame-cache").toString());
+        setPropertyIfAbsent(RESPONSE_CACHE_DIRECTORY_PROPERTY, cacheDirectory.resolve("http-cache").toString());
+        setPropertyIfAbsent(JOURNAL_DIRECTORY_PROPERTY, cacheDirectory.resolve("journal").toString());
+
+        List<MemoryPoolMXBean> heapPools = ManagementFactory.getMemoryPoolMXBeans().stream()
+                .filter(memoryPool -> memoryPool.getType() == MemoryType.HEAP)
+                .collect(Collectors.toList());
+        System.gc();
+        heapPools.forEach(MemoryPoolMXBean::resetPeakUsage);
+        long startTime = System.nanoTime();
+
+        // MainClass exits the JVM when the analysis fails, so the report is also printed while shutting down
+        AtomicBoolean reported = new AtomicBoolean();
+        Runnable report = () -> {
+            if (reported.compareAndSet(false, true)) {
+                printReport(standInServer, TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startTime), heapPools);
+                deleteDirectory(cacheDirectory);
+            }
+        };
+        Runtime.getRuntime().addShutdownHook(new Thread(report));
+
+        MainClass.main(new String[]{pmtToken, patchId, gitHubTokens});
+
+        report.run();
+        standInServer.close();
+        HttpTransport.getDefault().close();
+    }
+
+    private static void setPropertyIfAbsent(String name, String value) {
+        if (System.getProperty(name) == null) {
+            System.setProperty(name, value);
+        }
+    }
+
+    private static void deleteDirectory(Path directory) {
+        try (Stream<Path> paths = Files.walk(directory)) {
+            paths.sorted(Comparator.reverseOrder()).forEach(path -> path.toFile().delete());
+        } catch (IOException e) {
+            logger.warn("Caches of the load test could not be deleted from " + directory, e);
+        }
+    }
+
+    private static void printReport(StandInServer standInServer, long wallTimeMillis, List<MemoryPoolMXBean> heapPools) {
+        // the peaks of the pools are not reached at the same time, so their sum is an upper bound of the peak heap usage
+        long peakHeapBytes = heapPools.stream().mapToLong(memoryPool -> memoryPool.getPeakUsage().getUsed()).sum();
+        System.out.println();
+        System.out.println("Wall time: " + wallTimeMillis + " ms");
+        System.out.println("Peak heap: " + peakHeapBytes / (1024 * 1024) + " MB");
+        // the call counts of the blame modes are compared by running the harness with each of them
+        System.out.println("Blame mode: " + BlameMode.fromSystemProperties().name().toLowerCase());
+        System.out.println(String.format("%-16s%10s%14s%10s%14s%16s", "Stage", "Calls", "Rate limited", "Failed",
+                "Bytes sent", "Bytes received"));
+        long calls = 0;
+        long requestBytes = 0;
+        long responseBytes = 0;
+        for (StandInServer.Stage stage : StandInServer.Stage.values()) {
+            StandInServer.StageCounters counters = standInServer.getCounters(stage);
+            System.out.println(String.format("%-16s%10d%14d%10d%14d%16d", stage, counters.getCalls(),
+                    counters.getRateLimitedCalls(), counters.getFailedCalls(), counters.getRequestBytes(),
+                    counters.getResponseBytes()));
+            calls += counters.getCalls();
+            requestBytes += counters.getRequestBytes();
+            responseBytes += counters.getResponseBytes();
+        }
+        System.out.println(String.format("%-16s%10d%14s%10s%14d%16d", "TOTAL", calls, "", "", requestBytes, responseBytes));
+    }
+}
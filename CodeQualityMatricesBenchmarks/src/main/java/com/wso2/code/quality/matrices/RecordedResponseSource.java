@@ -0,0 +1,168 @@
+/*
+ * Copyright (c) 2017, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ *
+ * WSO2 Inc. licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.wso2.code.quality.matrices;
+
+import org.apache.commons.lang3.StringUtils;
+import org.apache.log4j.Logger;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Locale;
+
+/**
+ * A ResponseSource replaying the responses recorded in a directory. When the urls of the real APIs are given, the
+ * requests which were not recorded yet are sent to the real APIs and their successful responses are recorded, so that
+ * a single analysis run with real tokens records the responses replayed by the later load tests.
+ * <p>
+ * A response is recorded under the stage of the analysis and a hash of the method, path, query and body of its
+ * request, leaving out the token. GraphQL requests are matched by the exact text of their batched queries, so the
+ * replaying runs should use the same batch size properties as the recording run. Only the first page of a paginated
+ * response is recorded, as the Link headers of the real APIs are not passed on.
+ *
+ * @since 1.0.0
+ */
+
+public class RecordedResponseSource implements ResponseSource {
+
+    private static final Logger logger = Logger.getLogger(RecordedResponseSource.class);
+
+    private static final String RESPONSE_FILE_EXTENSION = ".response";
+    private static final String[] FORWARDED_HEADERS = {"Authorization", "Accept", "Content-Type"};
+    private static final int CONNECT_TIMEOUT_MILLIS = 30000;
+    private static final int READ_TIMEOUT_MILLIS = 120000;
+
+    private final Path directory;
+    private final String gitHubApiUrl;
+    private final String gitHubGraphQlApiUrl;
+    private final String pmtUrl;
+
+    /**
+     * Creates a RecordedResponseSource which only replays the recorded responses
+     *
+     * @param directory directory of the recorded responses
+     */
+    public RecordedResponseSource(Path directory) {
+        this(directory, null, null, null);
+    }
+
+    /**
+     * Creates a RecordedResponseSource which records the responses of the real APIs which are not recorded yet
+     *
+     * @param directory           directory of the recorded responses
+     * @param gitHubApiUrl        base url of the real github REST API
+     * @param gitHubGraphQlApiUrl url of the real github GraphQL API
+     * @param pmtUrl              url of the real WSO2 PMT, to which the id of a patch is appended
+     */
+    public RecordedResponseSource(Path directory, String gitHubApiUrl, String gitHubGraphQlApiUrl, String pmtUrl) {
+        this.directory = directory;
+        this.gitHubApiUrl = gitHubApiUrl;
+        this.gitHubGraphQlApiUrl = gitHubGraphQlApiUrl;
+        this.pmtUrl = pmtUrl;
+    }
+
+    @Override
+    public Response respond(StandInServer.Request request) throws IOException {
+        Path responseFile = directory.resolve(request.getStage().name().toLowerCase(Locale.ENGLISH))
+                .resolve(keyOf(request) + RESPONSE_FILE_EXTENSION);
+        if (Files.exists(responseFile)) {
+            return new Response(200, Files.readAllBytes(responseFile));
+        }
+        if (gitHubApiUrl == null) {
+            return null;
+        }
+        Response response = forward(request);
+        if (response.getStatusCode() == 200) {
+            // written to a temporary file first, so that a response is never replayed half written
+            Files.createDirectories(responseFile.getParent());
+            Path temporaryFile = Files.createTempFile(responseFile.getParent(), "recording", ".tmp");
+            Files.write(temporaryFile, response.getBody());
+            Files.move(temporaryFile, responseFile, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } else {
+            logger.warn("Response code " + response.getStatusCode() + " is not recorded for " + request.getStage() + " "
+                    + request.getPathAndQuery());
+        }
+        return response;
+    }
+
+    /**
+     * Sends the request to the real API and returns its response
+     */
+    private Response forward(StandInServer.Request request) throws IOException {
+        HttpURLConnection connection = (HttpURLConnection) new URL(upstreamUrlOf(request)).openConnection();
+        connection.setConnectTimeout(CONNECT_TIMEOUT_MILLIS);
+        connection.setReadTimeout(READ_TIMEOUT_MILLIS);
+        connection.setRequestMethod(request.getMethod());
+        for (String header : FORWARDED_HEADERS) {
+            if (request.getHeader(header) != null) {
+                connection.setRequestProperty(header, request.getHeader(header));
+            }
+        }
+        try {
+            if (request.getBody().length > 0) {
+                connection.setDoOutput(true);
+                try (OutputStream outputStream = connection.getOutputStream()) {
+                    outputStream.write(request.getBody());
+                }
+            }
+            int statusCode = connection.getResponseCode();
+            InputStream inputStream = statusCode < 400 ? connection.getInputStream() : connection.getErrorStream();
+            return new Response(statusCode, inputStream == null ? new byte[0] : StandInServer.readFully(inputStream));
+        } finally {
+            connection.disconnect();
+        }
+    }
+
+    private String upstreamUrlOf(StandInServer.Request request) {
+        String pathAndQuery = request.getPathAndQuery();
+        switch (request.getStage()) {
+            case PMT:
+                return pmtUrl + StringUtils.substringAfterLast(StringUtils.substringBefore(pathAndQuery, "?"), "/");
+            case BLAME:
+            case PULL_REQUESTS:
+                return gitHubGraphQlApiUrl;
+            default:
+                // the REST API is served under the /api/v3 prefix of a github enterprise server
+                return gitHubApiUrl + StringUtils.substringAfter(pathAndQuery, "/api/v3");
+        }
+    }
+
+    private static String keyOf(StandInServer.Request request) {
+        try {
+            MessageDigest messageDigest = MessageDigest.getInstance("SHA-256");
+            messageDigest.update((request.getMethod() + " " + request.getPathAndQuery() + "\n").getBytes(StandardCharsets.UTF_8));
+            messageDigest.update(request.getBody());
+            StringBuilder key = new StringBuilder();
+            for (byte b : messageDigest.digest()) {
+                key.append(String.format("%02x", b));
+            }
+            return key.toString();
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 is not supported by the JVM", e);
+        }
+    }
+}
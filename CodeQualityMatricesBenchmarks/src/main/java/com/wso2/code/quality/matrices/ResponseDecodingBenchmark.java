@@ -0,0 +1,95 @@
+/*
+ * Copyright (c) 2017, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ *
+ * WSO2 Inc. licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+
+package com.wso2.code.quality.matrices;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures decoding each kind of API response into the typed records used by the analysis.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ResponseDecodingBenchmark {
+
+    @Param({"SMALL", "TYPICAL", "PATHOLOGICAL"})
+    private BenchmarkFixtures.Size size;
+
+    private byte[] searchResponse;
+    private byte[] reviewResponse;
+    private byte[] pmtResponse;
+    private byte[] blameResponse;
+    private byte[] pullRequestResponse;
+    private ResponseDecoder<BlameBatchResponse> blameBatchDecoder;
+
+    @Setup
+    public void setUp() {
+        BenchmarkFixtures fixtures = new BenchmarkFixtures(size);
+        searchResponse = fixtures.searchResponse();
+        reviewResponse = fixtures.reviewResponse();
+        pmtResponse = fixtures.pmtResponse();
+        blameResponse = fixtures.blameResponse();
+        pullRequestResponse = fixtures.pullRequestResponse();
+        blameBatchDecoder = ResponseDecoders.blameBatchDecoder(true);
+    }
+
+    @Benchmark
+    public List<SearchItem> searchItems() throws IOException {
+        return ResponseDecoders.decodeSearchItems(new ByteArrayInputStream(searchResponse));
+    }
+
+    @Benchmark
+    public List<Review> reviews() throws IOException {
+        return ResponseDecoders.decodeReviews(new ByteArrayInputStream(reviewResponse));
+    }
+
+    @Benchmark
+    public List<PmtProperty> pmtProperties() throws IOException {
+        return ResponseDecoders.decodePmtProperties(new ByteArrayInputStream(pmtResponse));
+    }
+
+    @Benchmark
+    public BlameBatchResponse blameBatch() throws IOException {
+        return blameBatchDecoder.decode(new ByteArrayInputStream(blameResponse));
+    }
+
+    @Benchmark
+    public PullRequestBatchResponse pullRequestBatch() throws IOException {
+        return ResponseDecoders.decodePullRequestBatch(new ByteArrayInputStream(pullRequestResponse));
+    }
+}
@@ -0,0 +1,60 @@
+/*
+ * Copyright (c) 2017, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ *
+ * WSO2 Inc. licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.wso2.code.quality.matrices;
+
+import java.io.IOException;
+
+/**
+ * Source of the responses served by the StandInServer in place of github and WSO2 PMT
+ *
+ * @since 1.0.0
+ */
+
+public interface ResponseSource {
+
+    /**
+     * Returns the response to a request received by the stand-in server
+     *
+     * @param request request received by the server
+     * @return the response to be sent or null if the source has no response for the request
+     * @throws IOException if the response could not be read or taken
+     */
+    Response respond(StandInServer.Request request) throws IOException;
+
+    /**
+     * Response of a ResponseSource
+     */
+    final class Response {
+        private final int statusCode;
+        private final byte[] body;
+
+        public Response(int statusCode, byte[] body) {
+            this.statusCode = statusCode;
+            this.body = body;
+        }
+
+        public int getStatusCode() {
+            return statusCode;
+        }
+
+        public byte[] getBody() {
+            return body;
+        }
+    }
+}
@@ -0,0 +1,411 @@
+/*
+ * Copyright (c) 2017, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ *
+ * WSO2 Inc. licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.wso2.code.quality.matrices;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import org.apache.commons.lang3.StringUtils;
+import org.apache.log4j.Logger;
+
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.EnumSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.regex.Pattern;
+import java.util.stream.Collectors;
+
+/**
+ * A local stand-in for github and WSO2 PMT, used for load testing the analysis without spending the rate limits of
+ * real tokens. It serves the github REST and GraphQL APIs in the layout of a github enterprise server, under /api/v3
+ * and /api/graphql, and the patch properties of WSO2 PMT under /pmt/, taking the responses from a ResponseSource.
+ * <p>
+ * Each request can be delayed by an artificial latency, is counted against a rate limit per token and per rate limit
+ * pool which is reported with the same headers as github, and can be failed with a 502 response at a given rate. The
+ * calls and the bytes transferred are counted for each stage of the analysis.
+ *
+ * @since 1.0.0
+ */
+
+public class StandInServer implements Closeable {
+
+    private static final Logger logger = Logger.getLogger(StandInServer.class);
+
+    private static final String LATENCY_MILLIS_PROPERTY = "cqm.standin.latencyMillis";
+    private static final String RATE_LIMIT_PROPERTY = "cqm.standin.rateLimit";
+    private static final String RATE_LIMIT_WINDOW_SECONDS_PROPERTY = "cqm.standin.rateLimitWindowSeconds";
+    private static final String FAILURE_RATE_PROPERTY = "cqm.standin.failureRate";
+    private static final String FAILING_STAGES_PROPERTY = "cqm.standin.failingStages";
+    private static final int DEFAULT_LATENCY_MILLIS = 0;
+    private static final int DEFAULT_RATE_LIMIT = 0;
+    private static final int DEFAULT_RATE_LIMIT_WINDOW_SECONDS = 60;
+    // the commit API is called through the github SDK, which fails the analysis on any error, so it is not failed by default
+    private static final Set<Stage> DEFAULT_FAILING_STAGES = Collections.unmodifiableSet(
+            EnumSet.of(Stage.SEARCH_COMMITS, Stage.BLAME, Stage.PULL_REQUESTS, Stage.SEARCH_ISSUES, Stage.REVIEWS));
+    // budget reported when no rate limit is set, as the scheduler only runs a single call at a time without a budget
+    private static final long UNLIMITED_BUDGET = 1000000;
+
+    private static final String REST_API_PATH = "/api/v3";
+    private static final String GRAPHQL_API_PATH = "/api/graphql";
+    private static final String PMT_PATH = "/pmt/";
+    private static final Pattern COMMIT_PATH_PATTERN = Pattern.compile("/repos/[^/]+/[^/]+/commits/[^/?]+");
+    private static final Pattern REVIEWS_PATH_PATTERN = Pattern.compile("/repos/[^/]+/[^/]+/pulls/\\d+/reviews.*");
+
+    /**
+     * Stages of the analysis, each of which calls a single endpoint
+     */
+    public enum Stage {
+        PMT(null),
+        SEARCH_COMMITS(RateLimitScheduler.Pool.SEARCH),
+        COMMIT(RateLimitScheduler.Pool.CORE),
+        BLAME(RateLimitScheduler.Pool.GRAPHQL),
+        PULL_REQUESTS(RateLimitScheduler.Pool.GRAPHQL),
+        SEARCH_ISSUES(RateLimitScheduler.Pool.SEARCH),
+        REVIEWS(RateLimitScheduler.Pool.CORE);
+
+        // rate limit pool of the stage or null if the stage is not rate limited
+        private final RateLimitScheduler.Pool pool;
+
+        Stage(RateLimitScheduler.Pool pool) {
+            this.pool = pool;
+        }
+    }
+
+    private final ResponseSource responseSource;
+    private final int latencyMillis;
+    private final int rateLimit;
+    private final long rateLimitWindowMillis;
+    private final double failureRate;
+    private final Set<Stage> failingStages;
+    private final Map<Stage, StageCounters> countersOfStages = new EnumMap<>(Stage.class);
+    private final Map<String, Budget> budgets = new ConcurrentHashMap<>();
+    private final ExecutorService executorService = Executors.newCachedThreadPool();
+    private final HttpServer httpServer;
+
+    /**
+     * Starts a StandInServer on a free port with the latency, rate limit and failures given in the
+     * cqm.standin.latencyMillis, cqm.standin.rateLimit, cqm.standin.rateLimitWindowSeconds, cqm.standin.failureRate
+     * and cqm.standin.failingStages system properties
+     *
+     * @param responseSource source of the responses
+     * @return the started server
+     * @throws IOException if the server could not be started
+     */
+    public static StandInServer fromSystemProperties(ResponseSource responseSource) throws IOException {
+        String failingStages = System.getProperty(FAILING_STAGES_PROPERTY);
+        return new StandInServer(responseSource, Integer.getInteger(LATENCY_MILLIS_PROPERTY, DEFAULT_LATENCY_MILLIS),
+                Integer.getInteger(RATE_LIMIT_PROPERTY, DEFAULT_RATE_LIMIT),
+                Integer.getInteger(RATE_LIMIT_WINDOW_SECONDS_PROPERTY, DEFAULT_RATE_LIMIT_WINDOW_SECONDS),
+                Double.parseDouble(System.getProperty(FAILURE_RATE_PROPERTY, "0")),
+                failingStages == null ? DEFAULT_FAILING_STAGES : Arrays.stream(StringUtils.split(failingStages, ','))
+                        .map(stage -> Stage.valueOf(stage.trim()))
+                        .collect(Collectors.toCollection(() -> EnumSet.noneOf(Stage.class))));
+    }
+
+    /**
+     * Starts a StandInServer on a free port of the loopback interface
+     *
+     * @param responseSource         source of the responses
+     * @param latencyMillis          delay added to each of the responses
+     * @param rateLimit              number of calls allowed for a token in each rate limit pool within a window, or
+     *                               zero if the calls should not be limited
+     * @param rateLimitWindowSeconds length of the window after which the rate limits are reset
+     * @param failureRate            share of the calls of the failing stages which are failed with a 502 response
+     * @param failingStages          stages of which the calls may be failed
+     * @throws IOException if the server could not be started
+     */
+    public StandInServer(ResponseSource responseSource, int latencyMillis, int rateLimit, int rateLimitWindowSeconds,
+                         double failureRate, Set<Stage> failingStages) throws IOException {
+        this.responseSource = responseSource;
+        this.latencyMillis = latencyMillis;
+        this.rateLimit = rateLimit;
+        this.rateLimitWindowMillis = Math.max(1, rateLimitWindowSeconds) * 1000L;
+        this.failureRate = failureRate;
+        this.failingStages = failingStages.isEmpty() ? EnumSet.noneOf(Stage.class) : EnumSet.copyOf(failingStages);
+        for (Stage stage : Stage.values()) {
+            countersOfStages.put(stage, new StageCounters());
+        }
+        httpServer = HttpServer.create(new InetSocketAddress("localhost", 0), 0);
+        httpServer.createContext("/", this::handle);
+        httpServer.setExecutor(executorService);
+        httpServer.start();
+        logger.info("Stand-in server is started at " + getBaseUrl());
+    }
+
+    /**
+     * @return the base url of the github REST API served by this server
+     */
+    public String getGitHubApiUrl() {
+        return getBaseUrl() + REST_API_PATH;
+    }
+
+    /**
+     * @return the url of the github GraphQL API served by this server
+     */
+    public String getGitHubGraphQlApiUrl() {
+        return getBaseUrl() + GRAPHQL_API_PATH;
+    }
+
+    /**
+     * @return the url of WSO2 PMT served by this server, to which the id of a patch is appended
+     */
+    public String getPmtUrl() {
+        return getBaseUrl() + PMT_PATH;
+    }
+
+    /**
+     * @param stage stage of the analysis
+     * @return the counters of the calls received for the stage
+     */
+    public StageCounters getCounters(Stage stage) {
+        return countersOfStages.get(stage);
+    }
+
+    @Override
+    public void close() {
+        httpServer.stop(0);
+        executorService.shutdownNow();
+    }
+
+    private String getBaseUrl() {
+        return "http://localhost:" + httpServer.getAddress().getPort();
+    }
+
+    private void handle(HttpExchange exchange) throws IOException {
+        try {
+            byte[] requestBody = readFully(exchange.getRequestBody());
+            String pathAndQuery = exchange.getRequestURI().getRawPath()
+                    + (exchange.getRequestURI().getRawQuery() == null ? "" : "?" + exchange.getRequestURI().getRawQuery());
+            Stage stage = findStage(pathAndQuery, requestBody);
+            if (stage == null) {
+                send(exchange, 404, message("Not Found"), null);
+                return;
+            }
+            StageCounters counters = countersOfStages.get(stage);
+            counters.calls.incrementAndGet();
+            counters.requestBytes.addAndGet(requestBody.length);
+
+            if (latencyMillis > 0) {
+                Thread.sleep(latencyMillis);
+            }
+            Budget budget = stage.pool == null ? null
+                    : budgets.computeIfAbsent(exchange.getRequestHeaders().getFirst("Authorization") + " " + stage.pool,
+                    key -> new Budget());
+            if (budget != null && !budget.take(System.currentTimeMillis())) {
+                counters.rateLimitedCalls.incrementAndGet();
+                counters.responseBytes.addAndGet(send(exchange, 403, message("API rate limit exceeded"), budget));
+                return;
+            }
+            if (failingStages.contains(stage) && ThreadLocalRandom.current().nextDouble() < failureRate) {
+                counters.failedCalls.incrementAndGet();
+                counters.responseBytes.addAndGet(send(exchange, 502, message("Server Error"), budget));
+                return;
+            }
+
+            ResponseSource.Response response = responseSource.respond(new Request(stage, pathAndQuery, requestBody, exchange));
+            if (response == null) {
+                logger.warn("No response is found for " + stage + " " + pathAndQuery);
+                response = new ResponseSource.Response(404, message("Not Found"));
+            }
+            counters.responseBytes.addAndGet(send(exchange, response.getStatusCode(), response.getBody(), budget));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (IOException | RuntimeException e) {
+            logger.error("Stand-in server failed to respond to " + exchange.getRequestURI(), e);
+            send(exchange, 500, message("Stand-in server error"), null);
+        } finally {
+            exchange.close();
+        }
+    }
+
+    /**
+     * Finds the stage of the analysis a request is made from, or null if the request is not for a known endpoint
+     */
+    private static Stage findStage(String pathAndQuery, byte[] requestBody) {
+        if (pathAndQuery.startsWith(PMT_PATH)) {
+            return Stage.PMT;
+        }
+        if (pathAndQuery.startsWith(GRAPHQL_API_PATH)) {
+            return new String(requestBody, StandardCharsets.UTF_8).contains("blame(") ? Stage.BLAME : Stage.PULL_REQUESTS;
+        }
+        if (!pathAndQuery.startsWith(REST_API_PATH + "/")) {
+            return null;
+        }
+        String path = StringUtils.substringBefore(pathAndQuery.substring(REST_API_PATH.length()), "?");
+        if (path.equals("/search/commits")) {
+            return Stage.SEARCH_COMMITS;
+        }
+        if (path.equals("/search/issues")) {
+            return Stage.SEARCH_ISSUES;
+        }
+        if (COMMIT_PATH_PATTERN.matcher(path).matches()) {
+            return Stage.COMMIT;
+        }
+        if (REVIEWS_PATH_PATTERN.matcher(path).matches()) {
+            return Stage.REVIEWS;
+        }
+        return null;
+    }
+
+    /**
+     * Sends a response with the rate limit headers of the given budget, and returns the number of bytes of its body
+     */
+    private long send(HttpExchange exchange, int statusCode, byte[] body, Budget budget) throws IOException {
+        exchange.getResponseHeaders().set("Content-Type", "application/json; charset=utf-8");
+        if (budget != null) {
+            budget.addHeaders(exchange);
+        }
+        exchange.sendResponseHeaders(statusCode, body.length == 0 ? -1 : body.length);
+        try (OutputStream outputStream = exchange.getResponseBody()) {
+            outputStream.write(body);
+        }
+        return body.length;
+    }
+
+    static byte[] readFully(InputStream inputStream) throws IOException {
+        try (InputStream in = inputStream) {
+            ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+            byte[] buffer = new byte[8192];
+            for (int read = in.read(buffer); read >= 0; read = in.read(buffer)) {
+                outputStream.write(buffer, 0, read);
+            }
+            return outputStream.toByteArray();
+        }
+    }
+
+    private static byte[] message(String message) {
+        return ("{\"message\":\"" + message + "\"}").getBytes(StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Request received by the stand-in server
+     */
+    public static final class Request {
+        private final Stage stage;
+        private final String pathAndQuery;
+        private final byte[] body;
+        private final HttpExchange exchange;
+
+        private Request(Stage stage, String pathAndQuery, byte[] body, HttpExchange exchange) {
+            this.stage = stage;
+            this.pathAndQuery = pathAndQuery;
+            this.body = body;
+            this.exchange = exchange;
+        }
+
+        public Stage getStage() {
+            return stage;
+        }
+
+        /**
+         * @return the raw path and query of the request
+         */
+        public String getPathAndQuery() {
+            return pathAndQuery;
+        }
+
+        public byte[] getBody() {
+            return body;
+        }
+
+        public String getMethod() {
+            return exchange.getRequestMethod();
+        }
+
+        /**
+         * @param name name of the header
+         * @return the first value of the header or null if it was not sent
+         */
+        public String getHeader(String name) {
+            return exchange.getRequestHeaders().getFirst(name);
+        }
+    }
+
+    /**
+     * Counters of the calls received for a stage of the analysis
+     */
+    public static final class StageCounters {
+        private final AtomicLong calls = new AtomicLong();
+        private final AtomicLong rateLimitedCalls = new AtomicLong();
+        private final AtomicLong failedCalls = new AtomicLong();
+        private final AtomicLong requestBytes = new AtomicLong();
+        private final AtomicLong responseBytes = new AtomicLong();
+
+        public long getCalls() {
+            return calls.get();
+        }
+
+        public long getRateLimitedCalls() {
+            return rateLimitedCalls.get();
+        }
+
+        public long getFailedCalls() {
+            return failedCalls.get();
+        }
+
+        public long getRequestBytes() {
+            return requestBytes.get();
+        }
+
+        public long getResponseBytes() {
+            return responseBytes.get();
+        }
+    }
+
+    /**
+     * Budget of a token in a rate limit pool, which is reset at the end of each window
+     */
+    private final class Budget {
+        private long windowEndMillis;
+        private long used;
+
+        private synchronized boolean take(long now) {
+            if (now >= windowEndMillis) {
+                windowEndMillis = now + rateLimitWindowMillis;
+                used = 0;
+            }
+            if (rateLimit > 0 && used >= rateLimit) {
+                return false;
+            }
+            used++;
+            return true;
+        }
+
+        private synchronized void addHeaders(HttpExchange exchange) {
+            long limit = rateLimit > 0 ? rateLimit : UNLIMITED_BUDGET;
+            exchange.getResponseHeaders().set("X-RateLimit-Limit", String.valueOf(limit));
+            exchange.getResponseHeaders().set("X-RateLimit-Remaining", String.valueOf(Math.max(0, limit - used)));
+            // github reports the reset time in epoch seconds, rounded up so that the window has surely ended by then
+            exchange.getResponseHeaders().set("X-RateLimit-Reset", String.valueOf((windowEndMillis + 999) / 1000));
+        }
+    }
+}
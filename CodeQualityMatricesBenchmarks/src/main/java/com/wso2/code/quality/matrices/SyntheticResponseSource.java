@@ -0,0 +1,309 @@
+/*
+ * Copyright (c) 2017, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ *
+ * WSO2 Inc. licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.wso2.code.quality.matrices;
+
+import org.apache.commons.lang3.StringUtils;
+import org.json.JSONArray;
+import org.json.JSONObject;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Random;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * A ResponseSource generating the responses of a synthetic patch of a configurable size. The responses are derived
+ * only from the request, so that the same request always receives the same response and the responses of the
+ * different endpoints agree with each other: the commits of the patch are found in a wso2 repository and a fork of
+ * it, each commit changes a number of files with a number of hunks, the blame of each file at a commit points to a
+ * few parent commits, and each commit is merged with a number of reviewed pull requests.
+ * <p>
+ * The rateLimit field is not selected in the GraphQL responses, so that the rate limit headers of the StandInServer
+ * are used as the budget of the GraphQL API.
+ *
+ * @since 1.0.0
+ */
+
+public class SyntheticResponseSource implements ResponseSource {
+
+    private static final String COMMITS_PER_PATCH_PROPERTY = "cqm.loadtest.commitsPerPatch";
+    private static final String FILES_PER_COMMIT_PROPERTY = "cqm.loadtest.filesPerCommit";
+    private static final String HUNKS_PER_FILE_PROPERTY = "cqm.loadtest.hunksPerFile";
+    private static final String LINES_PER_FILE_PROPERTY = "cqm.loadtest.linesPerFile";
+    private static final String PULL_REQUESTS_PER_COMMIT_PROPERTY = "cqm.loadtest.pullRequestsPerCommit";
+    private static final String REVIEWS_PER_PULL_REQUEST_PROPERTY = "cqm.loadtest.reviewsPerPullRequest";
+    private static final int DEFAULT_COMMITS_PER_PATCH = 10;
+    private static final int DEFAULT_FILES_PER_COMMIT = 5;
+    private static final int DEFAULT_HUNKS_PER_FILE = 5;
+    private static final int DEFAULT_LINES_PER_FILE = 500;
+    private static final int DEFAULT_PULL_REQUESTS_PER_COMMIT = 2;
+    private static final int DEFAULT_REVIEWS_PER_PULL_REQUEST = 5;
+    // the lines of a file are last changed by a few commits, so that the files are blamed at a few parent commits
+    private static final int PARENT_COMMITS_PER_FILE = 3;
+
+    private static final String[] REPOSITORIES = {"wso2/carbon-kernel", "wso2/product-is", "wso2/carbon-identity"};
+    private static final String[] REVIEW_STATES = {"APPROVED", "COMMENTED", "COMMENTED", "CHANGES_REQUESTED"};
+    private static final Pattern COMMIT_PATH_PATTERN = Pattern.compile("/repos/([^/]+/[^/]+)/commits/([^/?]+)");
+    private static final Pattern REVIEWS_PATH_PATTERN = Pattern.compile("/repos/([^/]+/[^/]+)/pulls/(\\d+)/reviews.*");
+    // the values of the aliases of the GraphQL queries are sent as variables, which are referred from the query text
+    private static final Pattern BLAME_ALIAS_PATTERN = Pattern.compile("(b\\d+): repository\\(owner: \\$(\\w+), name: \\$(\\w+)\\)"
+            + "\\{ object\\(expression: \\$(\\w+)\\)\\{ \\.\\.\\. on Commit\\{ blame\\(path: \\$(\\w+)\\)");
+    private static final Pattern SEARCH_ALIAS_PATTERN = Pattern.compile("(p\\d+): search\\(query: \\$(\\w+),");
+
+    private final int commitsPerPatch;
+    private final int filesPerCommit;
+    private final int hunksPerFile;
+    private final int linesPerFile;
+    private final int pullRequestsPerCommit;
+    private final int reviewsPerPullRequest;
+
+    /**
+     * Creates a SyntheticResponseSource for a patch of the size given in the cqm.loadtest.commitsPerPatch,
+     * cqm.loadtest.filesPerCommit, cqm.loadtest.hunksPerFile, cqm.loadtest.linesPerFile,
+     * cqm.loadtest.pullRequestsPerCommit and cqm.loadtest.reviewsPerPullRequest system properties
+     */
+    public SyntheticResponseSource() {
+        this(Integer.getInteger(COMMITS_PER_PATCH_PROPERTY, DEFAULT_COMMITS_PER_PATCH),
+                Integer.getInteger(FILES_PER_COMMIT_PROPERTY, DEFAULT_FILES_PER_COMMIT),
+                Integer.getInteger(HUNKS_PER_FILE_PROPERTY, DEFAULT_HUNKS_PER_FILE),
+                Integer.getInteger(LINES_PER_FILE_PROPERTY, DEFAULT_LINES_PER_FILE),
+                Integer.getInteger(PULL_REQUESTS_PER_COMMIT_PROPERTY, DEFAULT_PULL_REQUESTS_PER_COMMIT),
+                Integer.getInteger(REVIEWS_PER_PULL_REQUEST_PROPERTY, DEFAULT_REVIEWS_PER_PULL_REQUEST));
+    }
+
+    /**
+     * Creates a SyntheticResponseSource
+     *
+     * @param commitsPerPatch       number of commits of each patch
+     * @param filesPerCommit        number of files changed by each commit
+     * @param hunksPerFile          number of hunks changed in each file
+     * @param linesPerFile          number of lines of each file
+     * @param pullRequestsPerCommit number of pull requests found for each commit
+     * @param reviewsPerPullRequest number of reviews of each pull request
+     */
+    public SyntheticResponseSource(int commitsPerPatch, int filesPerCommit, int hunksPerFile, int linesPerFile,
+                                   int pullRequestsPerCommit, int reviewsPerPullRequest) {
+        this.commitsPerPatch = commitsPerPatch;
+        this.filesPerCommit = filesPerCommit;
+        this.hunksPerFile = Math.max(1, hunksPerFile);
+        this.linesPerFile = Math.max(10, linesPerFile);
+        this.pullRequestsPerCommit = pullRequestsPerCommit;
+        this.reviewsPerPullRequest = reviewsPerPullRequest;
+    }
+
+    @Override
+    public Response respond(StandInServer.Request request) {
+        String pathAndQuery = request.getPathAndQuery();
+        String path = StringUtils.substringBefore(pathAndQuery, "?");
+        switch (request.getStage()) {
+            case PMT:
+                return ok(pmtProperties(StringUtils.substringAfterLast(path, "/")));
+            case SEARCH_COMMITS:
+                return ok(commitSearch(StringUtils.substringAfter(pathAndQuery, "hash%3A")));
+            case COMMIT:
+                Matcher commitMatcher = COMMIT_PATH_PATTERN.matcher(path);
+                return commitMatcher.find() ? ok(commit(commitMatcher.group(1), commitMatcher.group(2))) : null;
+            case BLAME:
+                return ok(blames(new JSONObject(new String(request.getBody(), StandardCharsets.UTF_8))));
+            case PULL_REQUESTS:
+                return ok(pullRequests(new JSONObject(new String(request.getBody(), StandardCharsets.UTF_8))));
+            case SEARCH_ISSUES:
+                return ok(issueSearch(StringUtils.substringBefore(StringUtils.substringAfter(pathAndQuery, "q="), "&")));
+            case REVIEWS:
+                Matcher reviewsMatcher = REVIEWS_PATH_PATTERN.matcher(path);
+                return reviewsMatcher.find() ? ok(reviews(reviewsMatcher.group(1) + "#" + reviewsMatcher.group(2))) : null;
+            default:
+                return null;
+        }
+    }
+
+    private JSONArray pmtProperties(String patchId) {
+        JSONArray commits = new JSONArray();
+        for (int i = 0; i < commitsPerPatch; i++) {
+            commits.put(hash("commit " + patchId + " " + i));
+        }
+        return new JSONArray()
+                .put(new JSONObject().put("name", "patchInformation_jiraLink").put("value", new JSONArray().put("https://wso2.org/jira/browse/CARBON-1")))
+                .put(new JSONObject().put("name", "patchInformation_svnRevisionpublic").put("value", commits))
+                .put(new JSONObject().put("name", "patchInformation_svnRevisionprivate").put("value", new JSONArray()));
+    }
+
+    private JSONObject commitSearch(String commitHash) {
+        String repository = repositoryOf(commitHash);
+        JSONArray items = new JSONArray()
+                .put(new JSONObject().put("sha", commitHash).put("repository", new JSONObject().put("full_name", repository)))
+                // the commit is also found in a fork, which is not analysed
+                .put(new JSONObject().put("sha", commitHash).put("repository", new JSONObject()
+                        .put("full_name", "someone/" + StringUtils.substringAfter(repository, "/"))));
+        return new JSONObject().put("total_count", items.length()).put("incomplete_results", false).put("items", items);
+    }
+
+    private JSONObject commit(String repository, String commitHash) {
+        Random random = random(repository + commitHash);
+        JSONArray files = new JSONArray();
+        for (int i = 0; i < filesPerCommit; i++) {
+            files.put(new JSONObject().put("filename", fileName(i)).put("status", "modified").put("patch", patch(random)));
+        }
+        return new JSONObject().put("sha", commitHash).put("files", files);
+    }
+
+    /**
+     * Builds a patch of the hunks spread evenly over the lines of a file
+     */
+    private String patch(Random random) {
+        StringBuilder patch = new StringBuilder();
+        int linesPerHunk = Math.max(6, linesPerFile / hunksPerFile);
+        for (int hunk = 0, oldStart = 1; hunk < hunksPerFile && oldStart + 6 <= linesPerFile; hunk++, oldStart += linesPerHunk) {
+            int removed = random.nextInt(3);
+            int added = random.nextInt(3);
+            patch.append("@@ -").append(oldStart).append(',').append(3 + removed).append(" +").append(oldStart)
+                    .append(',').append(3 + added).append(" @@ public void method").append(hunk).append("() {\n");
+            patch.append(" context line\n");
+            for (int i = 0; i < removed; i++) {
+                patch.append("-        removed(").append(i).append(");\n");
+            }
+            for (int i = 0; i < added; i++) {
+                patch.append("+        added(").append(i).append(");\n");
+            }
+            patch.append(" context line\n context line\n");
+        }
+        return patch.toString();
+    }
+
+    private JSONObject blames(JSONObject queryObject) {
+        String query = queryObject.getString("query");
+        JSONObject variables = queryObject.getJSONObject("variables");
+        boolean parentCommitsRequired = query.contains("parents(");
+        JSONObject data = new JSONObject();
+        Matcher matcher = BLAME_ALIAS_PATTERN.matcher(query);
+        while (matcher.find()) {
+            String repository = variables.getString(matcher.group(2)) + "/" + variables.getString(matcher.group(3));
+            data.put(matcher.group(1), new JSONObject().put("object", new JSONObject().put("blame", new JSONObject()
+                    .put("ranges", blameRanges(repository, variables.getString(matcher.group(4)),
+                            variables.getString(matcher.group(5)), parentCommitsRequired)))));
+        }
+        return new JSONObject().put("data", data);
+    }
+
+    private JSONArray blameRanges(String repository, String commitHash, String path, boolean parentCommitsRequired) {
+        Random random = random(repository + commitHash + path);
+        JSONArray ranges = new JSONArray();
+        for (int startingLine = 1; startingLine <= linesPerFile; ) {
+            int endingLine = Math.min(linesPerFile, startingLine + random.nextInt(8));
+            int lastChange = random.nextInt(PARENT_COMMITS_PER_FILE);
+            String rangeCommitHash = hash("change " + repository + path + lastChange);
+            JSONObject commit = new JSONObject().put("oid", rangeCommitHash)
+                    .put("author", new JSONObject().put("name", "author" + random.nextInt(30)));
+            if (parentCommitsRequired) {
+                commit.put("parents", new JSONObject().put("nodes", new JSONArray()
+                        .put(new JSONObject().put("oid", hash("parent " + repository + path + lastChange)))));
+            }
+            ranges.put(new JSONObject().put("startingLine", startingLine).put("endingLine", endingLine)
+                    .put("age", 1 + lastChange).put("commit", commit));
+            startingLine = endingLine + 1;
+        }
+        return ranges;
+    }
+
+    private JSONObject pullRequests(JSONObject queryObject) {
+        JSONObject variables = queryObject.getJSONObject("variables");
+        JSONObject data = new JSONObject();
+        Matcher matcher = SEARCH_ALIAS_PATTERN.matcher(queryObject.getString("query"));
+        while (matcher.find()) {
+            String commitHash = StringUtils.substringBefore(variables.getString(matcher.group(2)), " ");
+            JSONArray nodes = new JSONArray();
+            for (int i = 0; i < pullRequestsPerCommit; i++) {
+                int number = pullRequestNumber(commitHash, i);
+                String repository = repositoryOf(commitHash);
+                Random random = random(repository + "#" + number);
+                JSONArray reviews = new JSONArray();
+                for (int j = 0; j < Math.min(100, reviewsPerPullRequest); j++) {
+                    reviews.put(new JSONObject().put("state", REVIEW_STATES[random.nextInt(REVIEW_STATES.length)])
+                            .put("author", new JSONObject().put("login", "reviewer" + random.nextInt(40))));
+                }
+                nodes.put(new JSONObject().put("number", number).put("state", "MERGED")
+                        .put("repository", new JSONObject().put("nameWithOwner", repository))
+                        .put("reviews", new JSONObject().put("nodes", reviews)));
+            }
+            data.put(matcher.group(1), new JSONObject().put("nodes", nodes));
+        }
+        return new JSONObject().put("data", data);
+    }
+
+    private JSONObject issueSearch(String commitHash) {
+        JSONArray items = new JSONArray();
+        for (int i = 0; i < pullRequestsPerCommit; i++) {
+            items.put(new JSONObject()
+                    .put("repository_url", "https://api.github.com/repos/" + repositoryOf(commitHash))
+                    .put("number", pullRequestNumber(commitHash, i))
+                    .put("state", "closed")
+                    .put("pull_request", new JSONObject()));
+        }
+        return new JSONObject().put("total_count", items.length()).put("incomplete_results", false).put("items", items);
+    }
+
+    private JSONArray reviews(String pullRequest) {
+        Random random = random(pullRequest);
+        JSONArray reviews = new JSONArray();
+        for (int i = 0; i < reviewsPerPullRequest; i++) {
+            reviews.put(new JSONObject()
+                    .put("user", new JSONObject().put("login", "reviewer" + random.nextInt(40)))
+                    .put("state", REVIEW_STATES[random.nextInt(REVIEW_STATES.length)]));
+        }
+        return reviews;
+    }
+
+    private static String repositoryOf(String commitHash) {
+        return REPOSITORIES[Math.floorMod(commitHash.hashCode(), REPOSITORIES.length)];
+    }
+
+    private static int pullRequestNumber(String commitHash, int index) {
+        return 1 + Math.floorMod(commitHash.hashCode() + index, 100000);
+    }
+
+    private static String fileName(int index) {
+        return "modules/core/src/main/java/org/wso2/carbon/core/Class" + index + ".java";
+    }
+
+    private static Random random(String key) {
+        return new Random(key.hashCode());
+    }
+
+    /**
+     * Derives a commit hash of 40 hex characters from the given text
+     */
+    private static String hash(String text) {
+        try {
+            byte[] digest = MessageDigest.getInstance("SHA-1").digest(text.getBytes(StandardCharsets.UTF_8));
+            StringBuilder hash = new StringBuilder();
+            for (byte b : digest) {
+                hash.append(String.format("%02x", b));
+            }
+            return hash.toString();
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-1 is not supported by the JVM", e);
+        }
+    }
+
+    private static Response ok(Object json) {
+        return new Response(200, json.toString().getBytes(StandardCharsets.UTF_8));
+    }
+}
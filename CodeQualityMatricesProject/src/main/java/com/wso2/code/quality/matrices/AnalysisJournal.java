@@ -0,0 +1,444 @@
+/*
+ * Copyright (c) 2017, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ *
+ * WSO2 Inc. licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.wso2.code.quality.matrices;
+
+import org.apache.log4j.Logger;
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.channels.OverlappingFileLockException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Append only journal of the units of work finished by an analysis, kept on the local disk so that an analysis which
+ * was interrupted, by a failed API call or by the process being stopped, resumes where it stopped when it is run
+ * again instead of calling the APIs again for the work already done. The units are the repositories of a commit, the
+ * parent commits of the changed line ranges of a file, the authors and commits of a line range at a parent commit,
+ * the pull requests of a commit and the reviews of a pull request.
+ * <p>
+ * Each unit is appended as a line of JSON as soon as it is finished, and the journal is read back into memory when it
+ * is opened. A line left half written by a crash is the last line of the journal and is skipped. The journal is
+ * locked while it is open, as it supports a single writer only. The units replayed from the journal and the units
+ * recorded to it are counted in the cqm_journal_replayed_units_total and cqm_journal_recorded_units_total counters.
+ * Once the analysis succeeds the journal is completed, which deletes it, so that a later run of the same analysis
+ * reads the pull requests and reviews which may have changed since instead of replaying them.
+ *
+ * @since 1.0.0
+ */
+
+public class AnalysisJournal implements Closeable {
+
+    private static final Logger logger = Logger.getLogger(AnalysisJournal.class);
+
+    public static final String REPLAYED_UNITS = "cqm_journal_replayed_units_total";
+    public static final String RECORDED_UNITS = "cqm_journal_recorded_units_total";
+
+    private static final String DIRECTORY_PROPERTY = "cqm.journal.directory";
+    private static final String DEFAULT_DIRECTORY = System.getProperty("user.home") + "/.code-quality-matrices/journal";
+    private static final String JOURNAL_FILE_SUFFIX = ".journal";
+    private static final String BATCH_JOURNAL_PREFIX = "batch-";
+    private static final char[] HEX_DIGITS = "0123456789abcdef".toCharArray();
+    private static final String UNIT_KEY = "unit";
+    private static final String KEY_KEY = "key";
+    private static final String VALUE_KEY = "value";
+    private static final String AUTHORS_KEY = "authors";
+    private static final String COMMITS_KEY = "commits";
+    private static final String STATE_KEY = "state";
+    private static final String USER_KEY = "user";
+    private static final String REPOSITORY_KEY = "repository";
+    private static final String NUMBER_KEY = "number";
+    // names of the units in the journal and in the metrics
+    private static final String REPOSITORIES_UNIT = "repositories";
+    private static final String PARENT_COMMITS_UNIT = "parent_commits";
+    private static final String AUTHORS_AND_COMMITS_UNIT = "authors_and_commits";
+    private static final String PULL_REQUESTS_UNIT = "pull_requests";
+    private static final String REVIEWS_UNIT = "reviews";
+
+    private final Path journalFile;
+    private final FileChannel journalChannel;
+    private final FileLock fileLock;
+    private final Map<String, Object> units = new ConcurrentHashMap<>();
+
+    /**
+     * Opens the journal in the given file, creating it if it does not exist, and reads the units already recorded
+     *
+     * @param journalFile file of the journal
+     * @throws CodeQualityMatricesException if the journal could not be opened or is used by another process
+     */
+    public AnalysisJournal(Path journalFile) throws CodeQualityMatricesException {
+        this.journalFile = journalFile;
+        try {
+            if (journalFile.getParent() != null) {
+                Files.createDirectories(journalFile.getParent());
+            }
+            journalChannel = FileChannel.open(journalFile, StandardOpenOption.CREATE, StandardOpenOption.APPEND);
+            fileLock = tryLock(journalChannel);
+            if (fileLock == null) {
+                journalChannel.close();
+                throw new CodeQualityMatricesException("Journal " + journalFile + " is used by another process");
+            }
+            readUnits();
+        } catch (IOException e) {
+            throw new CodeQualityMatricesException("IOException occurred when opening the journal " + journalFile, e);
+        }
+        logger.info(units.size() + " finished units of work are found in the journal " + journalFile);
+    }
+
+    private AnalysisJournal() {
+        this.journalFile = null;
+        this.journalChannel = null;
+        this.fileLock = null;
+    }
+
+    /**
+     * Opens the journal of the given name in the directory given by the cqm.journal.directory system property. If the
+     * journal cannot be opened, for example as it is used by another process, a disabled journal is returned so that
+     * the analysis still runs without being able to resume
+     *
+     * @param name name of the journal, such as the patch or the batch being analysed
+     * @return the journal
+     */
+    public static AnalysisJournal fromSystemProperties(String name) {
+        Path journalFile = Paths.get(System.getProperty(DIRECTORY_PROPERTY, DEFAULT_DIRECTORY))
+                .resolve(name.replaceAll("[^A-Za-z0-9._-]", "_") + JOURNAL_FILE_SUFFIX);
+        try {
+            return new AnalysisJournal(journalFile);
+        } catch (CodeQualityMatricesException e) {
+            logger.warn("The analysis will not be resumable as the journal could not be opened", e);
+            return disabled();
+        }
+    }
+
+    /**
+     * Returns the name of the journal of a batch of patches, which is a hash of all the patch ids so that the same
+     * batch resumes from it wherever the ids are read from, and two different batches never share a journal
+     *
+     * @param patchIds ids of the patches of the batch
+     * @return the name of the journal
+     */
+    public static String nameOfBatch(List<String> patchIds) {
+        MessageDigest messageDigest;
+        try {
+            messageDigest = MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            // every Java platform is required to support SHA-256
+            throw new IllegalStateException("SHA-256 is not supported", e);
+        }
+        byte[] digest = messageDigest.digest(String.join("\n", patchIds).getBytes(StandardCharsets.UTF_8));
+        StringBuilder name = new StringBuilder(BATCH_JOURNAL_PREFIX);
+        for (byte b : digest) {
+            name.append(HEX_DIGITS[(b >> 4) & 0xf]).append(HEX_DIGITS[b & 0xf]);
+        }
+        return name.toString();
+    }
+
+    /**
+     * @return a journal which neither replays nor records any unit of work
+     */
+    public static AnalysisJournal disabled() {
+        return new AnalysisJournal();
+    }
+
+    /**
+     * @param commitHash commit of a patch
+     * @return the recorded wso2 repositories containing the commit, or null if they are not recorded
+     */
+    public List<String> getRepositories(String commitHash) {
+        JSONArray repoLocations = (JSONArray) replay(REPOSITORIES_UNIT, commitHash);
+        return repoLocations == null ? null : toStrings(repoLocations);
+    }
+
+    /**
+     * @param commitHash    commit of a patch
+     * @param repoLocations wso2 repositories containing the commit
+     */
+    public void recordRepositories(String commitHash, List<String> repoLocations) {
+        record(REPOSITORIES_UNIT, new JSONArray(repoLocations), commitHash);
+    }
+
+    /**
+     * @param repoLocation repository of the file
+     * @param commitHash   commit changing the file
+     * @param path         path of the file
+     * @return the recorded parent commits against the index of each of the changed hunks of the file, or null if they
+     * are not recorded
+     */
+    public Map<Integer, Set<String>> getParentCommits(String repoLocation, String commitHash, String path) {
+        JSONObject parentCommits = (JSONObject) replay(PARENT_COMMITS_UNIT, repoLocation, commitHash, path);
+        if (parentCommits == null) {
+            return null;
+        }
+        Map<Integer, Set<String>> parentCommitsOfHunks = new HashMap<>();
+        for (String hunkIndex : parentCommits.keySet()) {
+            parentCommitsOfHunks.put(Integer.valueOf(hunkIndex), new HashSet<>(toStrings(parentCommits.getJSONArray(hunkIndex))));
+        }
+        return parentCommitsOfHunks;
+    }
+
+    /**
+     * @param repoLocation         repository of the file
+     * @param commitHash           commit changing the file
+     * @param path                 path of the file
+     * @param parentCommitsOfHunks parent commits against the index of each of the changed hunks of the file
+     */
+    public void recordParentCommits(String repoLocation, String commitHash, String path,
+                                    Map<Integer, Set<String>> parentCommitsOfHunks) {
+        JSONObject parentCommits = new JSONObject();
+        parentCommitsOfHunks.forEach((hunkIndex, parentCommitHashes) ->
+                parentCommits.put(String.valueOf(hunkIndex), new JSONArray(parentCommitHashes)));
+        record(PARENT_COMMITS_UNIT, parentCommits, repoLocation, commitHash, path);
+    }
+
+    /**
+     * @param repoLocation     repository of the file
+     * @param parentCommitHash parent commit at which the file is blamed
+     * @param path             path of the file
+     * @param startingLineNo   first line of the line range in the file at the parent commit
+     * @param endLineNo        last line of the line range in the file at the parent commit
+     * @return the recorded authors and commits of the line range, or null if they are not recorded
+     */
+    public AuthorsAndCommits getAuthorsAndCommits(String repoLocation, String parentCommitHash, String path,
+                                                  int startingLineNo, int endLineNo) {
+        JSONObject authorsAndCommits = (JSONObject) replay(AUTHORS_AND_COMMITS_UNIT, repoLocation, parentCommitHash, path,
+                startingLineNo, endLineNo);
+        return authorsAndCommits == null ? null : new AuthorsAndCommits(
+                new HashSet<>(toStrings(authorsAndCommits.getJSONArray(AUTHORS_KEY))),
+                new HashSet<>(toStrings(authorsAndCommits.getJSONArray(COMMITS_KEY))));
+    }
+
+    /**
+     * @param repoLocation      repository of the file
+     * @param parentCommitHash  parent commit at which the file is blamed
+     * @param path              path of the file
+     * @param startingLineNo    first line of the line range in the file at the parent commit
+     * @param endLineNo         last line of the line range in the file at the parent commit
+     * @param authorsAndCommits authors and commits of the line range
+     */
+    public void recordAuthorsAndCommits(String repoLocation, String parentCommitHash, String path, int startingLineNo,
+                                        int endLineNo, AuthorsAndCommits authorsAndCommits) {
+        record(AUTHORS_AND_COMMITS_UNIT, new JSONObject()
+                        .put(AUTHORS_KEY, new JSONArray(authorsAndCommits.getAuthorNames()))
+                        .put(COMMITS_KEY, new JSONArray(authorsAndCommits.getCommitHashes())),
+                repoLocation, parentCommitHash, path, startingLineNo, endLineNo);
+    }
+
+    /**
+     * @param commitHash commit introducing buggy lines of code
+     * @return the recorded pull requests of the commit without their reviews, which are recorded on their own, or null
+     * if they are not recorded
+     */
+    public List<PullRequest> getPullRequests(String commitHash) {
+        JSONArray pullRequestsJsonArray = (JSONArray) replay(PULL_REQUESTS_UNIT, commitHash);
+        if (pullRequestsJsonArray == null) {
+            return null;
+        }
+        List<PullRequest> pullRequests = new ArrayList<>();
+        for (int i = 0; i < pullRequestsJsonArray.length(); i++) {
+            JSONObject pullRequestJsonObject = pullRequestsJsonArray.getJSONObject(i);
+            pullRequests.add(new PullRequest(pullRequestJsonObject.getString(REPOSITORY_KEY),
+                    pullRequestJsonObject.getInt(NUMBER_KEY), pullRequestJsonObject.optString(STATE_KEY, null),
+                    Collections.<Review>emptyList()));
+        }
+        return pullRequests;
+    }
+
+    /**
+     * @param commitHash   commit introducing buggy lines of code
+     * @param pullRequests pull requests of the commit, whose reviews are not recorded with them
+     */
+    public void recordPullRequests(String commitHash, Collection<PullRequest> pullRequests) {
+        JSONArray pullRequestsJsonArray = new JSONArray();
+        pullRequests.forEach(pullRequest -> pullRequestsJsonArray.put(new JSONObject()
+                .put(REPOSITORY_KEY, pullRequest.getRepositoryFullName())
+                .put(NUMBER_KEY, pullRequest.getNumber())
+                .put(STATE_KEY, pullRequest.getState())));
+        record(PULL_REQUESTS_UNIT, pullRequestsJsonArray, commitHash);
+    }
+
+    /**
+     * @param repositoryFullName repository of the pull request in the owner/name form
+     * @param number             number of the pull request
+     * @return the recorded reviews of the pull request, or null if they are not recorded
+     */
+    public List<Review> getReviews(String repositoryFullName, int number) {
+        JSONArray reviewsJsonArray = (JSONArray) replay(REVIEWS_UNIT, repositoryFullName, number);
+        if (reviewsJsonArray == null) {
+            return null;
+        }
+        List<Review> reviews = new ArrayList<>();
+        for (int i = 0; i < reviewsJsonArray.length(); i++) {
+            JSONObject reviewJsonObject = reviewsJsonArray.getJSONObject(i);
+            reviews.add(new Review(reviewJsonObject.optString(STATE_KEY, null), reviewJsonObject.optString(USER_KEY, null)));
+        }
+        return reviews;
+    }
+
+    /**
+     * @param repositoryFullName repository of the pull request in the owner/name form
+     * @param number             number of the pull request
+     * @param reviews            reviews of the pull request
+     */
+    public void recordReviews(String repositoryFullName, int number, List<Review> reviews) {
+        JSONArray reviewsJsonArray = new JSONArray();
+        reviews.forEach(review -> reviewsJsonArray.put(new JSONObject()
+                .put(STATE_KEY, review.getState())
+                .put(USER_KEY, review.getUserLogin())));
+        record(REVIEWS_UNIT, reviewsJsonArray, repositoryFullName, number);
+    }
+
+    /**
+     * @return true if the units of work are replayed from and recorded to a file
+     */
+    public boolean isEnabled() {
+        return journalChannel != null;
+    }
+
+    /**
+     * @return the number of the units of work in the journal
+     */
+    public int size() {
+        return units.size();
+    }
+
+    private Object replay(String unit, Object... key) {
+        if (!isEnabled()) {
+            return null;
+        }
+        Object value = units.get(unit + new JSONArray(Arrays.asList(key)));
+        if (value != null) {
+            Metrics.getDefault().counter(REPLAYED_UNITS, "Units of work replayed from the journal of an earlier run",
+                    UNIT_KEY, unit).increment();
+        }
+        return value;
+    }
+
+    /**
+     * Appends a finished unit of work to the journal. A unit which cannot be written is only logged, as it will just
+     * be done again when the analysis is resumed
+     */
+    private synchronized void record(String unit, Object value, Object... key) {
+        if (!isEnabled() || !journalChannel.isOpen()) {
+            return;
+        }
+        JSONArray keyJsonArray = new JSONArray(Arrays.asList(key));
+        if (units.putIfAbsent(unit + keyJsonArray, value) != null) {
+            return;
+        }
+        String line = new JSONObject().put(UNIT_KEY, unit).put(KEY_KEY, keyJsonArray).put(VALUE_KEY, value) + "\n";
+        try {
+            ByteBuffer buffer = ByteBuffer.wrap(line.getBytes(StandardCharsets.UTF_8));
+            while (buffer.hasRemaining()) {
+                journalChannel.write(buffer);
+            }
+            Metrics.getDefault().counter(RECORDED_UNITS, "Units of work recorded to the journal", UNIT_KEY, unit).increment();
+        } catch (IOException e) {
+            logger.warn("Unit of work " + unit + " " + keyJsonArray + " could not be written to the journal " + journalFile, e);
+        }
+    }
+
+    /**
+     * Reads the units of work recorded in the journal, skipping a last line left half written by a crash and ending
+     * it so that the units appended from now on start on a line of their own
+     */
+    private void readUnits() throws IOException {
+        byte[] content = Files.readAllBytes(journalFile);
+        String[] lines = new String(content, StandardCharsets.UTF_8).split("\n");
+        for (String line : lines) {
+            if (line.trim().isEmpty()) {
+                continue;
+            }
+            try {
+                JSONObject record = new JSONObject(line);
+                units.put(record.getString(UNIT_KEY) + record.getJSONArray(KEY_KEY), record.get(VALUE_KEY));
+            } catch (JSONException e) {
+                logger.warn("A half written unit of work is skipped in the journal " + journalFile);
+            }
+        }
+        if (content.length > 0 && content[content.length - 1] != '\n') {
+            journalChannel.write(ByteBuffer.wrap(new byte[]{'\n'}));
+        }
+    }
+
+    /**
+     * Locks the journal, also against another journal of this process which is open on the same file
+     *
+     * @return the lock or null if the journal is already locked
+     */
+    private static FileLock tryLock(FileChannel journalChannel) throws IOException {
+        try {
+            return journalChannel.tryLock();
+        } catch (OverlappingFileLockException e) {
+            return null;
+        }
+    }
+
+    private static List<String> toStrings(JSONArray jsonArray) {
+        List<String> strings = new ArrayList<>(jsonArray.length());
+        for (int i = 0; i < jsonArray.length(); i++) {
+            strings.add(jsonArray.getString(i));
+        }
+        return strings;
+    }
+
+    /**
+     * Closes and deletes the journal once the analysis it records has succeeded, so that it only exists for resuming
+     * an interrupted analysis. No unit of work is replayed or recorded afterwards
+     *
+     * @throws IOException if the journal could not be deleted
+     */
+    public synchronized void complete() throws IOException {
+        if (!isEnabled()) {
+            return;
+        }
+        close();
+        units.clear();
+        Files.deleteIfExists(journalFile);
+        logger.info("The analysis succeeded, so its journal " + journalFile + " is deleted");
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        if (isEnabled() && journalChannel.isOpen()) {
+            fileLock.release();
+            journalChannel.close();
+        }
+    }
+}
@@ -0,0 +1,232 @@
+/*
+ * Copyright (c) 2017, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ *
+ * WSO2 Inc. licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+
+package com.wso2.code.quality.matrices;
+
+import com.github.benmanes.caffeine.cache.AsyncCache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import org.apache.log4j.Logger;
+import org.json.JSONObject;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.StringWriter;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.Collections;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Small local HTTP service answering GET /patches/{id}/reviewers with the report of the patch as JSON, and GET /metrics
+ * with the metrics of the analyses in the Prometheus text format. The clients, connection pools and caches of the
+ * analysis are kept for the lifetime of the service, so later analyses only call the APIs for what they have not seen
+ * before.
+ * <p>
+ * Only a limited number of patches are analysed at once. Concurrent requests for the same patch share the single
+ * analysis in flight, and the report of a patch is kept for a while so that repeated requests are answered from
+ * memory. A failed analysis is not kept, so the next request for the patch analyses it again.
+ *
+ * @since 1.0.0
+ */
+
+public class AnalysisServer implements Closeable {
+
+    private static final Logger logger = Logger.getLogger(AnalysisServer.class);
+
+    private static final String PORT_PROPERTY = "cqm.server.port";
+    private static final String MAX_CONCURRENT_ANALYSES_PROPERTY = "cqm.server.maxConcurrentAnalyses";
+    private static final String REPORT_TTL_SECONDS_PROPERTY = "cqm.server.reportTtlSeconds";
+    private static final String MAX_REPORTS_PROPERTY = "cqm.server.maxReports";
+    private static final int DEFAULT_PORT = 8090;
+    private static final int DEFAULT_MAX_CONCURRENT_ANALYSES = 2;
+    private static final long DEFAULT_REPORT_TTL_SECONDS = 600;
+    private static final long DEFAULT_MAX_REPORTS = 1000;
+    // threads only parse the requests and write the responses, as the analyses are waited for asynchronously
+    private static final int REQUEST_THREADS = 4;
+
+    private static final String PROMETHEUS_TEXT_CONTENT_TYPE = "text/plain; version=0.0.4; charset=utf-8";
+    private static final Pattern REVIEWERS_PATH_PATTERN = Pattern.compile("/patches/([^/]+)/reviewers/?");
+
+    private final PatchBatchAnalyser patchBatchAnalyser;
+    private final ExecutorService analysisExecutor;
+    private final ExecutorService requestExecutor;
+    private final AsyncCache<String, PatchReport> reports;
+    private final HttpServer httpServer;
+
+    /**
+     * Creates a server using the settings given in the cqm.server.* system properties, listening on the loopback
+     * address
+     *
+     * @param patchBatchAnalyser analyser of the patches, shared by all the requests
+     * @return the server, which is not started yet
+     * @throws IOException if the server could not be bound to the port
+     */
+    public static AnalysisServer fromSystemProperties(PatchBatchAnalyser patchBatchAnalyser) throws IOException {
+        return new AnalysisServer(new InetSocketAddress("localhost", Integer.getInteger(PORT_PROPERTY, DEFAULT_PORT)), patchBatchAnalyser,
+                Integer.getInteger(MAX_CONCURRENT_ANALYSES_PROPERTY, DEFAULT_MAX_CONCURRENT_ANALYSES),
+                Long.getLong(REPORT_TTL_SECONDS_PROPERTY, DEFAULT_REPORT_TTL_SECONDS),
+                Long.getLong(MAX_REPORTS_PROPERTY, DEFAULT_MAX_REPORTS));
+    }
+
+    /**
+     * Creates a server
+     *
+     * @param address                address to listen on
+     * @param patchBatchAnalyser     analyser of the patches, shared by all the requests
+     * @param maxConcurrentAnalyses  maximum number of patches analysed at once
+     * @param reportTtlSeconds       number of seconds the report of a patch is served from memory
+     * @param maxReports             maximum number of reports kept in memory
+     * @throws IOException if the server could not be bound to the address
+     */
+    public AnalysisServer(InetSocketAddress address, PatchBatchAnalyser patchBatchAnalyser, int maxConcurrentAnalyses,
+                          long reportTtlSeconds, long maxReports) throws IOException {
+        this.patchBatchAnalyser = patchBatchAnalyser;
+        this.analysisExecutor = Executors.newFixedThreadPool(Math.max(1, maxConcurrentAnalyses));
+        this.requestExecutor = Executors.newFixedThreadPool(REQUEST_THREADS);
+        this.reports = Caffeine.newBuilder()
+                .expireAfterWrite(reportTtlSeconds, TimeUnit.SECONDS)
+                .maximumSize(maxReports)
+                .executor(analysisExecutor)
+                .buildAsync();
+        this.httpServer = HttpServer.create(address, 0);
+        this.httpServer.createContext("/patches/", this::handle);
+        this.httpServer.createContext("/metrics", this::handleMetrics);
+        this.httpServer.setExecutor(requestExecutor);
+    }
+
+    public void start() {
+        httpServer.start();
+        logger.info("Analysis server is listening on " + getAddress());
+    }
+
+    public InetSocketAddress getAddress() {
+        return httpServer.getAddress();
+    }
+
+    /**
+     * Returns the report of the given patch, sharing the analysis in flight or the kept report of the patch if any
+     *
+     * @param patchId id of the patch
+     * @return a future completed with the report of the patch
+     */
+    public CompletableFuture<PatchReport> getReport(String patchId) {
+        CompletableFuture<PatchReport> report = reports.get(patchId, (key, executor) -> CompletableFuture.supplyAsync(() -> analyse(key), executor));
+        // a failed analysis is not kept, so that the patch is analysed again by the next request, and the returned
+        // future completes only after it is dropped
+        return report.whenComplete((patchReport, throwable) -> {
+            if (throwable != null || patchReport.isFailed()) {
+                reports.asMap().remove(patchId, report);
+            }
+        });
+    }
+
+    private PatchReport analyse(String patchId) {
+        logger.info("Analysis of patch " + patchId + " is started");
+        try {
+            return patchBatchAnalyser.analysePatches(Collections.singletonList(patchId)).get(patchId);
+        } catch (CodeQualityMatricesException e) {
+            throw new CompletionException(e);
+        }
+    }
+
+    private void handle(HttpExchange exchange) throws IOException {
+        Matcher matcher = REVIEWERS_PATH_PATTERN.matcher(exchange.getRequestURI().getPath());
+        if (!matcher.matches()) {
+            send(exchange, 404, error("Only /patches/{id}/reviewers is served"));
+            return;
+        }
+        if (!"GET".equals(exchange.getRequestMethod())) {
+            exchange.getResponseHeaders().add("Allow", "GET");
+            send(exchange, 405, error("Only GET is allowed"));
+            return;
+        }
+        String patchId = matcher.group(1);
+        // the request thread is not held while the patch is analysed
+        getReport(patchId).whenComplete((patchReport, throwable) -> {
+            try {
+                if (throwable != null) {
+                    Throwable cause = throwable instanceof CompletionException && throwable.getCause() != null
+                            ? throwable.getCause() : throwable;
+                    logger.error("Analysis of patch " + patchId + " failed", cause);
+                    send(exchange, 502, error(String.valueOf(cause.getMessage())));
+                } else if (patchReport.isFailed()) {
+                    send(exchange, 502, error(patchReport.getError()));
+                } else {
+                    send(exchange, 200, toJson(patchReport));
+                }
+            } catch (IOException e) {
+                logger.warn("Response for patch " + patchId + " could not be sent", e);
+            }
+        });
+    }
+
+    private void handleMetrics(HttpExchange exchange) throws IOException {
+        StringWriter metricsText = new StringWriter();
+        Metrics.getDefault().writePrometheusText(metricsText);
+        byte[] bytes = metricsText.toString().getBytes(StandardCharsets.UTF_8);
+        exchange.getResponseHeaders().add("Content-Type", PROMETHEUS_TEXT_CONTENT_TYPE);
+        exchange.sendResponseHeaders(200, bytes.length);
+        try (OutputStream outputStream = exchange.getResponseBody()) {
+            outputStream.write(bytes);
+        }
+    }
+
+    private static JSONObject toJson(PatchReport patchReport) {
+        return new JSONObject()
+                .put("patchId", patchReport.getPatchId())
+                .put("commits", patchReport.getCommitHashes())
+                .put("authors", patchReport.getAuthorsAndCommits().getAuthorNames())
+                .put("bugIntroducingCommits", patchReport.getAuthorsAndCommits().getCommitHashes())
+                .put("approvedReviewers", patchReport.getApprovedReviewers())
+                .put("commentedReviewers", patchReport.getCommentedReviewers());
+    }
+
+    private static JSONObject error(String message) {
+        return new JSONObject().put("error", message);
+    }
+
+    private static void send(HttpExchange exchange, int statusCode, JSONObject body) throws IOException {
+        byte[] bytes = body.toString().getBytes(StandardCharsets.UTF_8);
+        exchange.getResponseHeaders().add("Content-Type", "application/json; charset=utf-8");
+        exchange.sendResponseHeaders(statusCode, bytes.length);
+        try (OutputStream outputStream = exchange.getResponseBody()) {
+            outputStream.write(bytes);
+        }
+    }
+
+    /**
+     * Stops accepting requests and stops the analyses in flight, closing the analyser of the patches
+     */
+    @Override
+    public void close() {
+        httpServer.stop(0);
+        requestExecutor.shutdownNow();
+        analysisExecutor.shutdownNow();
+        patchBatchAnalyser.close();
+    }
+}
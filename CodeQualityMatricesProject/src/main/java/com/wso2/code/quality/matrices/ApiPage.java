@@ -0,0 +1,57 @@
+/*
+ * Copyright (c) 2017, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ *
+ * WSO2 Inc. licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+
+package com.wso2.code.quality.matrices;
+
+/**
+ * A page of a paginated REST API response, holding the decoded content of the page and the url of the next page
+ * given in the Link header of the response
+ *
+ * @param <T> type of the decoded content
+ * @since 1.0.0
+ */
+
+public final class ApiPage<T> {
+
+    private final T content;
+    private final String nextPageUrl;
+
+    /**
+     * Creates a page
+     *
+     * @param content     decoded content of the page
+     * @param nextPageUrl url of the next page or null if this is the last page
+     */
+    public ApiPage(T content, String nextPageUrl) {
+        this.content = content;
+        this.nextPageUrl = nextPageUrl;
+    }
+
+    public T getContent() {
+        return content;
+    }
+
+    public String getNextPageUrl() {
+        return nextPageUrl;
+    }
+
+    public boolean isLastPage() {
+        return nextPageUrl == null;
+    }
+}
@@ -0,0 +1,61 @@
+/*
+ * Copyright (c) 2017, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ *
+ * WSO2 Inc. licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+
+package com.wso2.code.quality.matrices;
+
+/**
+ * Base urls of the APIs called by the analysis. They default to github.com and WSO2 PMT, and can be pointed at another
+ * server, such as a github enterprise server or a local stand-in server, with the cqm.github.apiUrl,
+ * cqm.github.graphQlApiUrl and cqm.pmt.url system properties.
+ *
+ * @since 1.0.0
+ */
+
+public final class ApiUrls {
+
+    public static final String GITHUB_API_URL_PROPERTY = "cqm.github.apiUrl";
+    public static final String GITHUB_GRAPHQL_API_URL_PROPERTY = "cqm.github.graphQlApiUrl";
+    public static final String PMT_URL_PROPERTY = "cqm.pmt.url";
+
+    private static final String PMT_PATCH_PROPERTIES_URL = "http://umt.private.wso2.com:9765/codequalitymatricesapi/1.0.0//properties?path=/_system/governance/patchs/";
+
+    private ApiUrls() {
+    }
+
+    /**
+     * @return the base url of the github REST API, without a trailing slash
+     */
+    public static String getGitHubApiUrl() {
+        return System.getProperty(GITHUB_API_URL_PROPERTY, RateLimitScheduler.GITHUB_API_URL);
+    }
+
+    /**
+     * @return the url of the github GraphQL API
+     */
+    public static String getGitHubGraphQlApiUrl() {
+        return System.getProperty(GITHUB_GRAPHQL_API_URL_PROPERTY, GraphQlApiCaller.GITHUB_GRAPHQL_API_URL);
+    }
+
+    /**
+     * @return the url of WSO2 PMT which the id of a patch is appended to for reading the properties of the patch
+     */
+    public static String getPmtUrl() {
+        return System.getProperty(PMT_URL_PROPERTY, PMT_PATCH_PROPERTIES_URL);
+    }
+}
@@ -0,0 +1,97 @@
+/*
+ * Copyright (c) 2017, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ *
+ * WSO2 Inc. licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.wso2.code.quality.matrices;
+
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Set;
+
+/**
+ * Immutable result of analysing a part of a patch. It holds the authors of the buggy lines of code and the commits
+ * that introduced them, which are later used for finding the reviewers.
+ * Results of independent tasks are combined with merge, so no task needs to share mutable state with another.
+ *
+ * @since 1.0.0
+ */
+
+public final class AuthorsAndCommits {
+
+    public static final AuthorsAndCommits EMPTY = new AuthorsAndCommits(Collections.emptySet(), Collections.emptySet());
+
+    private final Set<String> authorNames;
+    private final Set<String> commitHashes;
+
+    public AuthorsAndCommits(Set<String> authorNames, Set<String> commitHashes) {
+        this.authorNames = Collections.unmodifiableSet(new HashSet<>(authorNames));
+        this.commitHashes = Collections.unmodifiableSet(new HashSet<>(commitHashes));
+    }
+
+    public Set<String> getAuthorNames() {
+        return authorNames;
+    }
+
+    public Set<String> getCommitHashes() {
+        return commitHashes;
+    }
+
+    /**
+     * Combines this result with the given result
+     *
+     * @param other result to be combined with this result
+     * @return a new result containing the authors and commits of both results
+     */
+    public AuthorsAndCommits merge(AuthorsAndCommits other) {
+        if (other.isEmpty()) {
+            return this;
+        } else if (isEmpty()) {
+            return other;
+        }
+        Set<String> mergedAuthorNames = new HashSet<>(authorNames);
+        mergedAuthorNames.addAll(other.authorNames);
+        Set<String> mergedCommitHashes = new HashSet<>(commitHashes);
+        mergedCommitHashes.addAll(other.commitHashes);
+        return new AuthorsAndCommits(mergedAuthorNames, mergedCommitHashes);
+    }
+
+    /**
+     * Combines all the given results
+     *
+     * @param results results to be combined
+     * @return a new result containing the authors and commits of all the given results
+     */
+    public static AuthorsAndCommits mergeAll(Collection<AuthorsAndCommits> results) {
+        Set<String> mergedAuthorNames = new HashSet<>();
+        Set<String> mergedCommitHashes = new HashSet<>();
+        results.forEach(result -> {
+            mergedAuthorNames.addAll(result.authorNames);
+            mergedCommitHashes.addAll(result.commitHashes);
+        });
+        return new AuthorsAndCommits(mergedAuthorNames, mergedCommitHashes);
+    }
+
+    public boolean isEmpty() {
+        return authorNames.isEmpty() && commitHashes.isEmpty();
+    }
+
+    @Override
+    public String toString() {
+        return "authors=" + authorNames + ", commits=" + commitHashes;
+    }
+}
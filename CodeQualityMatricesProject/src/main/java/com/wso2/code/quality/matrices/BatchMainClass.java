@@ -0,0 +1,110 @@
+/*
+ * Copyright (c) 2017, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ *
+ * WSO2 Inc. licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+
+package com.wso2.code.quality.matrices;
+
+import org.apache.log4j.Logger;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * This is the class having the main method for analysing many patches in a single run
+ * PMT Access token, a file containing the patch ids one per line, or - for reading them from the standard input, and
+ * github access tokens separated by commas should be passed in order as command line arguments when running the
+ * application. A consolidated report of all the patches is printed once all of them are analysed. The metrics of the
+ * run are exported through JMX and to the file given in the cqm.metrics.file system property, and the spans of the run
+ * are written to the file given in the cqm.trace.file system property. The finished units of the analysis are recorded
+ * to a journal of the list of patch ids in the directory given in the cqm.journal.directory system property, so that
+ * running the application again for the same patches after a failure resumes the analysis where it stopped. The
+ * journal is deleted once all the patches are analysed successfully.
+ */
+public class BatchMainClass {
+    private final static Logger logger = Logger.getLogger(BatchMainClass.class);
+
+    private static final String STANDARD_INPUT_ARGUMENT = "-";
+
+    public static void main(String[] args) {
+        logger.info(" Batch main method got executed");
+        if (args.length != 3) {
+            logger.error("at least one of the command line arguments are null.");
+            System.exit(4);
+        }
+        String pmtToken = args[0];
+        String[] gitHubTokens = args[2].split(",");
+
+        List<String> patchIds = null;
+        try (BufferedReader reader = STANDARD_INPUT_ARGUMENT.equals(args[1])
+                ? new BufferedReader(new InputStreamReader(System.in, StandardCharsets.UTF_8))
+                : Files.newBufferedReader(Paths.get(args[1]), StandardCharsets.UTF_8)) {
+            patchIds = PatchBatchAnalyser.readPatchIds(reader);
+        } catch (IOException e) {
+            logger.error("The list of patch ids could not be read from " + args[1], e);
+            System.exit(1);
+        }
+        logger.info(patchIds.size() + " patch ids are read successfully");
+
+        // the metrics and trace files are written for the last time when the JVM exits, also after a failed analysis
+        MetricsExporter metricsExporter = MetricsExporter.fromSystemProperties();
+        Runtime.getRuntime().addShutdownHook(new Thread(metricsExporter::close));
+        Runtime.getRuntime().addShutdownHook(new Thread(Tracer.getDefault()::close));
+        // the journal is named after the patch ids, so that the same batch resumes from it wherever the ids are read from
+        AnalysisJournal analysisJournal = AnalysisJournal.fromSystemProperties(AnalysisJournal.nameOfBatch(patchIds));
+        Runtime.getRuntime().addShutdownHook(new Thread(() -> MainClass.closeJournal(analysisJournal)));
+        RateLimitScheduler rateLimitScheduler = new RateLimitScheduler(Arrays.asList(gitHubTokens));
+        ResponseCache responseCache = null;
+        try {
+            responseCache = ResponseCache.fromSystemProperties();
+        } catch (CodeQualityMatricesException e) {
+            logger.warn("Responses will not be cached as the response cache could not be created", e);
+        }
+        RestApiCaller restApiCaller = new RestApiCaller(HttpTransport.getDefault(), rateLimitScheduler, responseCache);
+        GraphQlApiCaller graphQlApiCaller = new GraphQlApiCaller(HttpTransport.getDefault(), rateLimitScheduler,
+                ApiUrls.getGitHubGraphQlApiUrl());
+        ChangesFinder changesFinder = new ChangesFinder(graphQlApiCaller);
+        PatchBatchAnalyser patchBatchAnalyser = new PatchBatchAnalyser(restApiCaller, changesFinder,
+                new PullRequestResolver(graphQlApiCaller), pmtToken, gitHubTokens[0]);
+        patchBatchAnalyser.setAnalysisJournal(analysisJournal);
+
+        Map<String, PatchReport> reports = null;
+        try {
+            reports = patchBatchAnalyser.analysePatches(patchIds);
+        } catch (CodeQualityMatricesException e) {
+            logger.error(e.getMessage(), e.getCause());
+            logger.error("The analysis of the patches stopped, run it again to resume from the " + analysisJournal.size()
+                    + " finished units in its journal");
+            System.exit(2);
+        } finally {
+            patchBatchAnalyser.close();
+        }
+        // the journal is kept while a patch failed, so that running the batch again resumes the failed patches
+        if (reports.values().stream().noneMatch(PatchReport::isFailed)) {
+            MainClass.completeJournal(analysisJournal);
+        }
+        reports.values().forEach(System.out::println);
+        logger.info("Consolidated report of " + reports.size() + " patches is printed successfully");
+    }
+}
@@ -0,0 +1,83 @@
+/*
+ * Copyright (c) 2017, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ *
+ * WSO2 Inc. licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.wso2.code.quality.matrices;
+
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Map;
+
+/**
+ * Response of a batched github GraphQL query, holding the blames and the errors against the aliases of the fields
+ * they were selected under
+ *
+ * @since 1.0.0
+ */
+
+public final class BlameBatchResponse implements GraphQlResponse {
+
+    private final boolean dataReceived;
+    private final Map<String, FileBlame> blamesByAlias;
+    private final Map<String, String> errorsByAlias;
+    private final GraphQlRateLimit rateLimit;
+
+    /**
+     * Creates a response
+     *
+     * @param dataReceived  should be false if the response had no data field, as the whole query failed
+     * @param blamesByAlias blames against their aliases
+     * @param errorsByAlias error messages against the aliases of the fields they were raised on
+     * @param rateLimit     the rateLimit field of the response or null if it was not received
+     */
+    public BlameBatchResponse(boolean dataReceived, Map<String, FileBlame> blamesByAlias, Map<String, String> errorsByAlias,
+                              GraphQlRateLimit rateLimit) {
+        this.dataReceived = dataReceived;
+        this.blamesByAlias = Collections.unmodifiableMap(blamesByAlias);
+        this.errorsByAlias = Collections.unmodifiableMap(errorsByAlias);
+        this.rateLimit = rateLimit;
+    }
+
+    public boolean isDataReceived() {
+        return dataReceived;
+    }
+
+    /**
+     * @param alias alias of the blame field
+     * @return the blame selected under the alias or null if it was not received
+     */
+    public FileBlame getBlame(String alias) {
+        return blamesByAlias.get(alias);
+    }
+
+    /**
+     * @param alias alias of the blame field
+     * @return the error raised on the alias or null if there is none
+     */
+    public String getError(String alias) {
+        return errorsByAlias.get(alias);
+    }
+
+    public Collection<String> getErrors() {
+        return errorsByAlias.values();
+    }
+
+    @Override
+    public GraphQlRateLimit getRateLimit() {
+        return rateLimit;
+    }
+}
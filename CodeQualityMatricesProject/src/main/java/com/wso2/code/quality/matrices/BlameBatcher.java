@@ -0,0 +1,390 @@
+/*
+ * Copyright (c) 2017, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ *
+ * WSO2 Inc. licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.wso2.code.quality.matrices;
+
+import org.apache.commons.lang3.StringUtils;
+import org.apache.log4j.Logger;
+import org.json.JSONObject;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * This class is used for taking the blames of many files with a few calls to the github GraphQL API. The blames which
+ * are not found in the blame cache are packed into batches, each of which is sent as a single query where the blame of
+ * every file is selected under its own field alias, and the combined response is split back into the blames of the
+ * files.
+ * <p>
+ * The size of a batch is limited by the maximum cost allowed for a single query, using the cost per blame observed
+ * from the rateLimit field of the earlier responses, and by the node limit of github. A batch for which no data is
+ * received, for example as the query timed out on github, is split into halves which are sent again, and the batch
+ * size is reduced for the later batches, while a batch of a single blame is retried as given by the retry policy of
+ * the GraphQlApiCaller and fails the call once the attempts run out. An error on the blame of a single file within
+ * the received data only drops the blame of that file.
+ * The batches can also be sent at once without blocking with getBlamesAsync, in which case a blame already being
+ * taken for another caller, as the files and commits of a patch often share parent commits, is not asked for again
+ * but shared once its batch is read.
+ *
+ * @since 1.0.0
+ */
+
+public class BlameBatcher implements BlameProvider {
+
+    private static final Logger logger = Logger.getLogger(BlameBatcher.class);
+
+    private static final String MAX_BATCH_SIZE_PROPERTY = "cqm.graphql.maxBatchSize";
+    private static final String MAX_COST_PER_QUERY_PROPERTY = "cqm.graphql.maxCostPerQuery";
+    private static final int DEFAULT_MAX_BATCH_SIZE = 50;
+    private static final int DEFAULT_MAX_COST_PER_QUERY = 50;
+    // node limit of a single github GraphQL query
+    private static final int MAX_NODES_PER_QUERY = 500000;
+    // github counts the parents connection of every blame range, so a generous number of ranges is assumed per blame
+    private static final int ESTIMATED_RANGES_PER_BLAME = 1000;
+    private static final String BLAME_ALIAS_PREFIX = "b";
+    private static final String SINGLE_FLIGHT_NAME = "blame";
+
+    // only the fields read by ResponseDecoders are selected from each of the blame ranges
+    private static final String BLAME_SELECTION = "repository(owner: $owner, name: $name){ object(expression: $expression){"
+            + " ... on Commit{ blame(path: $path){ ranges{ %s } } } } }";
+    private static final String RANGE_SELECTION_WITH_PARENT_COMMITS =
+            "startingLine endingLine age commit{ oid parents(first: 1){ nodes{ oid } } author{ name } }";
+    private static final String RANGE_SELECTION = "startingLine endingLine age commit{ oid author{ name } }";
+    private static final GraphQlQueryTemplate BLAME_QUERY_WITH_PARENT_COMMITS = new GraphQlQueryTemplate(
+            "BlamesWithParentCommits", BLAME_ALIAS_PREFIX, String.format(BLAME_SELECTION, RANGE_SELECTION_WITH_PARENT_COMMITS),
+            "owner", "name", "expression", "path");
+    private static final GraphQlQueryTemplate BLAME_QUERY = new GraphQlQueryTemplate("Blames", BLAME_ALIAS_PREFIX,
+            String.format(BLAME_SELECTION, RANGE_SELECTION), "owner", "name", "expression", "path");
+
+    private final GraphQlApiCaller graphQlApiCaller;
+    private final BlameCache blameCache;
+    private final BatchSizer batchSizerWithParentCommits;
+    private final BatchSizer batchSizer;
+    private final SingleFlight<BlameKey, FileBlame> blameFlightsWithParentCommits = new SingleFlight<>(SINGLE_FLIGHT_NAME);
+    private final SingleFlight<BlameKey, FileBlame> blameFlights = new SingleFlight<>(SINGLE_FLIGHT_NAME);
+
+    /**
+     * Creates a BlameBatcher using the limits given in the cqm.graphql.maxBatchSize and cqm.graphql.maxCostPerQuery
+     * system properties
+     *
+     * @param graphQlApiCaller instance of the GraphQlApiCaller class for accessing the github GraphQL API
+     * @param blameCache       cache of the blames taken from the github GraphQL API
+     */
+    public BlameBatcher(GraphQlApiCaller graphQlApiCaller, BlameCache blameCache) {
+        this(graphQlApiCaller, blameCache, Integer.getInteger(MAX_BATCH_SIZE_PROPERTY, DEFAULT_MAX_BATCH_SIZE),
+                Integer.getInteger(MAX_COST_PER_QUERY_PROPERTY, DEFAULT_MAX_COST_PER_QUERY));
+    }
+
+    /**
+     * Creates a BlameBatcher
+     *
+     * @param graphQlApiCaller instance of the GraphQlApiCaller class for accessing the github GraphQL API
+     * @param blameCache       cache of the blames taken from the github GraphQL API
+     * @param maxBatchSize     maximum number of blames selected in a single query
+     * @param maxCostPerQuery  maximum rate limit cost a single query should take
+     */
+    public BlameBatcher(GraphQlApiCaller graphQlApiCaller, BlameCache blameCache, int maxBatchSize, int maxCostPerQuery) {
+        this.graphQlApiCaller = graphQlApiCaller;
+        this.blameCache = blameCache;
+        // each range of a blame with the parent commits selects the first parent of its commit
+        this.batchSizerWithParentCommits = new BatchSizer(Math.min(maxBatchSize, MAX_NODES_PER_QUERY / ESTIMATED_RANGES_PER_BLAME),
+                maxCostPerQuery);
+        this.batchSizer = new BatchSizer(maxBatchSize, maxCostPerQuery);
+    }
+
+    /**
+     * Returns the blames of the given files, from the blame cache if they were taken before or else from the github
+     * GraphQL API
+     *
+     * @param blameKeys             keys of the blames
+     * @param parentCommitsRequired should be true if the parent commits of the blame ranges are needed
+     * @param gitHubToken           github token for accessing github GraphQL API
+     * @return a map containing the blames against their keys, without the blames which could not be taken
+     * @throws CodeQualityMatricesException if a github GraphQL API call failed
+     */
+    @Override
+    public Map<BlameKey, FileBlame> getBlames(Collection<BlameKey> blameKeys, boolean parentCommitsRequired, String gitHubToken)
+            throws CodeQualityMatricesException {
+
+        Map<BlameKey, FileBlame> blames = new HashMap<>();
+        List<BlameKey> missedKeys = takeCachedBlames(blameKeys, parentCommitsRequired, blames);
+        BatchSizer sizer = parentCommitsRequired ? batchSizerWithParentCommits : batchSizer;
+        int start = 0;
+        while (start < missedKeys.size()) {
+            int end = Math.min(missedKeys.size(), start + sizer.getBatchSize());
+            fetchBatch(missedKeys.subList(start, end), parentCommitsRequired, gitHubToken, sizer, blames);
+            start = end;
+        }
+        return blames;
+    }
+
+    /**
+     * Returns the blames of the given files without blocking the calling thread. The batches of the blames which are
+     * not found in the blame cache are sent at once, and the halves of a failed batch are sent again as soon as it fails.
+     * The blames which are already being taken for another caller are shared instead of being sent again
+     *
+     * @param blameKeys             keys of the blames
+     * @param parentCommitsRequired should be true if the parent commits of the blame ranges are needed
+     * @param gitHubToken           github token for accessing github GraphQL API
+     * @return a future of a map containing the blames against their keys, without the blames which could not be taken,
+     * which fails with a CodeQualityMatricesException if a github GraphQL API call failed
+     */
+    @Override
+    public CompletableFuture<Map<BlameKey, FileBlame>> getBlamesAsync(Collection<BlameKey> blameKeys, boolean parentCommitsRequired,
+                                                                      String gitHubToken) {
+        Map<BlameKey, FileBlame> blames = new HashMap<>();
+        List<BlameKey> missedKeys = takeCachedBlames(blameKeys, parentCommitsRequired, blames);
+        SingleFlight<BlameKey, FileBlame> flights = parentCommitsRequired ? blameFlightsWithParentCommits : blameFlights;
+        Tracer.Span parentSpan = Tracer.getDefault().currentSpan();
+        Map<BlameKey, CompletableFuture<FileBlame>> futureBlames = flights.executeAll(missedKeys,
+                keysNotInFlight -> fetchBlamesAsync(keysNotInFlight, parentCommitsRequired, gitHubToken, parentSpan));
+        List<BlameKey> keys = new ArrayList<>(futureBlames.keySet());
+        return Futures.allOf(new ArrayList<>(futureBlames.values())).thenApply(fetchedBlames -> {
+            for (int i = 0; i < keys.size(); i++) {
+                if (fetchedBlames.get(i) != null) {
+                    blames.put(keys.get(i), fetchedBlames.get(i));
+                }
+            }
+            return blames;
+        });
+    }
+
+    /**
+     * Sends the batches of the given blames at once without blocking
+     */
+    private CompletableFuture<Map<BlameKey, FileBlame>> fetchBlamesAsync(List<BlameKey> blameKeys, boolean parentCommitsRequired,
+                                                                         String gitHubToken, Tracer.Span parentSpan) {
+        // the batches add their blames as their responses are received on the callback threads
+        Map<BlameKey, FileBlame> blames = new ConcurrentHashMap<>();
+        BatchSizer sizer = parentCommitsRequired ? batchSizerWithParentCommits : batchSizer;
+        List<CompletableFuture<Void>> futureBatches = new ArrayList<>();
+        int start = 0;
+        while (start < blameKeys.size()) {
+            int end = Math.min(blameKeys.size(), start + sizer.getBatchSize());
+            futureBatches.add(fetchBatchAsync(blameKeys.subList(start, end), parentCommitsRequired, gitHubToken, sizer,
+                    blames, parentSpan));
+            start = end;
+        }
+        return Futures.allOf(futureBatches).thenApply(ignored -> blames);
+    }
+
+    /**
+     * @return the number of the blames which were shared with another caller instead of being asked for again
+     */
+    public long getSavedCalls() {
+        return blameFlightsWithParentCommits.getSavedCalls() + blameFlights.getSavedCalls();
+    }
+
+    /**
+     * Returns the blame of the given file
+     *
+     * @param blameKey              key of the blame
+     * @param parentCommitsRequired should be true if the parent commits of the blame ranges are needed
+     * @param gitHubToken           github token for accessing github GraphQL API
+     * @return the blame or null if it could not be taken
+     * @throws CodeQualityMatricesException if the github GraphQL API call failed
+     */
+    public FileBlame getBlame(BlameKey blameKey, boolean parentCommitsRequired, String gitHubToken) throws CodeQualityMatricesException {
+        List<BlameKey> blameKeys = new ArrayList<>();
+        blameKeys.add(blameKey);
+        return getBlames(blameKeys, parentCommitsRequired, gitHubToken).get(blameKey);
+    }
+
+    /**
+     * Adds the cached blames to the given map
+     *
+     * @return keys of the blames which are not found in the blame cache
+     */
+    private List<BlameKey> takeCachedBlames(Collection<BlameKey> blameKeys, boolean parentCommitsRequired,
+                                            Map<BlameKey, FileBlame> blames) {
+        List<BlameKey> missedKeys = new ArrayList<>();
+        for (BlameKey blameKey : new LinkedHashSet<>(blameKeys)) {
+            FileBlame blame = blameCache.get(blameKey, parentCommitsRequired);
+            if (blame != null) {
+                blames.put(blameKey, blame);
+            } else {
+                missedKeys.add(blameKey);
+            }
+        }
+        return missedKeys;
+    }
+
+    /**
+     * Takes the blames of a batch with a single query and adds them to the given map
+     */
+    private void fetchBatch(List<BlameKey> batch, boolean parentCommitsRequired, String gitHubToken, BatchSizer sizer,
+                            Map<BlameKey, FileBlame> blames) throws CodeQualityMatricesException {
+
+        RetryPolicy retryPolicy = graphQlApiCaller.getRetryPolicy();
+        int failedAttempts = 0;
+        while (!readBatch(batch, graphQlApiCaller.callGraphQlApi(buildQuery(batch, parentCommitsRequired), gitHubToken,
+                ResponseDecoders.blameBatchDecoder(parentCommitsRequired)), sizer, blames)) {
+            if (batch.size() > 1) {
+                int middle = batch.size() / 2;
+                fetchBatch(batch.subList(0, middle), parentCommitsRequired, gitHubToken, sizer, blames);
+                fetchBatch(batch.subList(middle, batch.size()), parentCommitsRequired, gitHubToken, sizer, blames);
+                return;
+            }
+            // a single blame can no longer be split, so it is sent again as the failure may be transient
+            if (!retryPolicy.shouldRetry(++failedAttempts)) {
+                throw blameNotTaken(batch.get(0), failedAttempts);
+            }
+            retryPolicy.awaitBackoff(failedAttempts);
+        }
+    }
+
+    /**
+     * Takes the blames of a batch with a single query without blocking and adds them to the given map
+     */
+    private CompletableFuture<Void> fetchBatchAsync(List<BlameKey> batch, boolean parentCommitsRequired, String gitHubToken,
+                                                    BatchSizer sizer, Map<BlameKey, FileBlame> blames, Tracer.Span parentSpan) {
+        return fetchBatchAsync(batch, parentCommitsRequired, gitHubToken, sizer, blames, parentSpan, 0);
+    }
+
+    private CompletableFuture<Void> fetchBatchAsync(List<BlameKey> batch, boolean parentCommitsRequired, String gitHubToken,
+                                                    BatchSizer sizer, Map<BlameKey, FileBlame> blames, Tracer.Span parentSpan,
+                                                    int failedAttempts) {
+        // the halves of a failed batch are sent from a callback thread, so the span of the caller is restored for them
+        return Tracer.getDefault().inSpan(parentSpan, () -> graphQlApiCaller.callGraphQlApiAsync(
+                buildQuery(batch, parentCommitsRequired), gitHubToken, ResponseDecoders.blameBatchDecoder(parentCommitsRequired)))
+                .thenCompose(response -> {
+                    if (readBatch(batch, response, sizer, blames)) {
+                        return CompletableFuture.completedFuture(null);
+                    }
+                    if (batch.size() == 1) {
+                        // a single blame can no longer be split, so it is sent again as the failure may be transient
+                        RetryPolicy retryPolicy = graphQlApiCaller.getRetryPolicy();
+                        int attempt = failedAttempts + 1;
+                        if (!retryPolicy.shouldRetry(attempt)) {
+                            return Futures.failed(blameNotTaken(batch.get(0), attempt));
+                        }
+                        return retryPolicy.retryAfterBackoff(attempt, () -> fetchBatchAsync(batch, parentCommitsRequired,
+                                gitHubToken, sizer, blames, parentSpan, attempt));
+                    }
+                    int middle = batch.size() / 2;
+                    return CompletableFuture.allOf(
+                            fetchBatchAsync(batch.subList(0, middle), parentCommitsRequired, gitHubToken, sizer, blames, parentSpan),
+                            fetchBatchAsync(batch.subList(middle, batch.size()), parentCommitsRequired, gitHubToken, sizer,
+                                    blames, parentSpan));
+                });
+    }
+
+    /**
+     * Fails the analysis when the blame of a file could not be taken even alone, instead of leaving the file out of it
+     */
+    private static CodeQualityMatricesException blameNotTaken(BlameKey blameKey, int attempts) {
+        return new CodeQualityMatricesException("Blame of " + blameKey + " could not be taken from the github GraphQL API after "
+                + attempts + " attempts");
+    }
+
+    /**
+     * Adds the blames received for a batch to the given map
+     *
+     * @return false if no data was received for the batch, which should then be split and sent again or, if it has a
+     * single blame, sent again as it is
+     */
+    private boolean readBatch(List<BlameKey> batch, BlameBatchResponse response, BatchSizer sizer, Map<BlameKey, FileBlame> blames) {
+        if (response == null || !response.isDataReceived()) {
+            List<String> errors = response == null ? Collections.<String>emptyList() : new ArrayList<>(response.getErrors());
+            if (batch.size() > 1) {
+                // the whole query failed, most likely as it took too long on github, so it is retried in smaller batches
+                sizer.reduce(batch.size());
+                logger.info("No data was received for a batch of " + batch.size() + " blames, the batch is split and sent again " + errors);
+                return false;
+            }
+            logger.warn("No data was received for the blame of " + batch.get(0) + " " + errors);
+            return false;
+        }
+
+        for (int i = 0; i < batch.size(); i++) {
+            String alias = BLAME_ALIAS_PREFIX + i;
+            FileBlame blame = response.getBlame(alias);
+            if (blame == null) {
+                // only the file of the failed alias is dropped, the other blames of the batch are still used
+                String error = response.getError(alias);
+                logger.warn("Blame of " + batch.get(i) + " could not be taken from the github GraphQL API: "
+                        + (error == null ? "no blame in the response" : error));
+                continue;
+            }
+            blameCache.put(batch.get(i), blame);
+            blames.put(batch.get(i), blame);
+        }
+
+        GraphQlRateLimit rateLimit = response.getRateLimit();
+        sizer.recordSuccess(batch.size(), rateLimit == null ? -1 : rateLimit.getCost());
+        logger.info("Blames of a batch of " + batch.size() + " files are taken from the github GraphQL API");
+        return true;
+    }
+
+    /**
+     * Builds a query selecting the blame of each file of the batch under the alias b followed by its index, from the
+     * template of the query which is built once for each batch size
+     */
+    private JSONObject buildQuery(List<BlameKey> batch, boolean parentCommitsRequired) {
+        List<List<String>> itemValues = new ArrayList<>(batch.size());
+        for (BlameKey blameKey : batch) {
+            itemValues.add(Arrays.asList(StringUtils.substringBefore(blameKey.getRepoLocation(), "/"),
+                    StringUtils.substringAfter(blameKey.getRepoLocation(), "/"), blameKey.getCommitHash(), blameKey.getPath()));
+        }
+        return (parentCommitsRequired ? BLAME_QUERY_WITH_PARENT_COMMITS : BLAME_QUERY).newQueryObject(itemValues);
+    }
+
+    /**
+     * Decides the size of the batches of one kind of blame query from the cost of the earlier queries
+     */
+    private static final class BatchSizer {
+        private final int maxBatchSize;
+        private final int maxCostPerQuery;
+        private int batchSizeLimit;
+        // each blame is assumed to cost a full point until the cost of a query is reported
+        private double costPerBlame = 1;
+
+        private BatchSizer(int maxBatchSize, int maxCostPerQuery) {
+            this.maxBatchSize = Math.max(1, maxBatchSize);
+            this.maxCostPerQuery = Math.max(1, maxCostPerQuery);
+            this.batchSizeLimit = this.maxBatchSize;
+        }
+
+        private synchronized int getBatchSize() {
+            int batchSizeWithinCost = (int) Math.min(Integer.MAX_VALUE, Math.floor(maxCostPerQuery / costPerBlame));
+            return Math.max(1, Math.min(batchSizeLimit, batchSizeWithinCost));
+        }
+
+        private synchronized void reduce(int failedBatchSize) {
+            batchSizeLimit = Math.max(1, Math.min(batchSizeLimit, failedBatchSize / 2));
+        }
+
+        private synchronized void recordSuccess(int batchSize, long cost) {
+            if (cost > 0) {
+                costPerBlame = (double) cost / batchSize;
+            }
+            // the batch size grows back slowly after a failed batch
+            if (batchSizeLimit < maxBatchSize) {
+                batchSizeLimit++;
+            }
+        }
+    }
+}
@@ -0,0 +1,163 @@
+/*
+ * Copyright (c) 2017, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ *
+ * WSO2 Inc. licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.wso2.code.quality.matrices;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import org.apache.log4j.Logger;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.file.Paths;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Two tier cache of the blames of files at commits. As the blame of a file at a commit never changes, a blame taken
+ * once is never taken again from github.
+ * <p>
+ * The first tier is held in memory and is bounded by the estimated size of the blames, evicting them by their
+ * frequency of use so that hot files such as large pom.xml files stay in memory. The second tier is an append only
+ * BlameSegmentStore on the local disk, from which blames evicted from memory are read back.
+ *
+ * @since 1.0.0
+ */
+
+public class BlameCache implements Closeable {
+
+    private static final Logger logger = Logger.getLogger(BlameCache.class);
+
+    private static final String MEMORY_MAX_BYTES_PROPERTY = "cqm.blameCache.memoryMaxBytes";
+    private static final String DIRECTORY_PROPERTY = "cqm.blameCache.directory";
+    private static final long DEFAULT_MEMORY_MAX_BYTES = 64L * 1024 * 1024;
+    private static final String METRICS_CACHE_NAME = "blame";
+    private static final String DEFAULT_DIRECTORY = System.getProperty("user.home") + "/.code-quality-matrices/blame-cache";
+
+    private final Cache<BlameKey, FileBlame> memoryCache;
+    private final BlameSegmentStore blameSegmentStore;
+    private final LongAdder memoryHits = new LongAdder();
+    private final LongAdder diskHits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+
+    /**
+     * Creates a cache
+     *
+     * @param memoryMaxBytes    maximum estimated size of the blames held in memory
+     * @param blameSegmentStore store on the local disk or null if the blames should only be held in memory
+     */
+    public BlameCache(long memoryMaxBytes, BlameSegmentStore blameSegmentStore) {
+        this.memoryCache = Caffeine.newBuilder()
+                .maximumWeight(memoryMaxBytes)
+                .weigher((BlameKey key, FileBlame blame) -> blame.getWeight())
+                .build();
+        this.blameSegmentStore = blameSegmentStore;
+    }
+
+    /**
+     * Creates a cache from the cqm.blameCache.memoryMaxBytes and cqm.blameCache.directory system properties.
+     * If the store on the local disk cannot be opened, for example as it is used by another process, only the
+     * memory tier is used
+     *
+     * @return the cache
+     */
+    public static BlameCache fromSystemProperties() {
+        BlameSegmentStore blameSegmentStore = null;
+        try {
+            blameSegmentStore = new BlameSegmentStore(Paths.get(System.getProperty(DIRECTORY_PROPERTY, DEFAULT_DIRECTORY)));
+        } catch (CodeQualityMatricesException e) {
+            logger.warn("Blames will only be cached in memory as the blame store could not be opened", e);
+        }
+        return new BlameCache(Long.getLong(MEMORY_MAX_BYTES_PROPERTY, DEFAULT_MEMORY_MAX_BYTES), blameSegmentStore);
+    }
+
+    /**
+     * Returns the cached blame of the given key
+     *
+     * @param key                   key of the blame
+     * @param parentCommitsRequired should be true if the parent commits of the ranges are needed from the blame
+     * @return the blame or null if it is not cached, or it is cached without the parent commits while they are required
+     */
+    public FileBlame get(BlameKey key, boolean parentCommitsRequired) {
+        FileBlame blame = memoryCache.getIfPresent(key);
+        if (isUsable(blame, parentCommitsRequired)) {
+            memoryHits.increment();
+            Metrics.getDefault().recordCacheRequest(METRICS_CACHE_NAME, true);
+            return blame;
+        }
+        if (blameSegmentStore != null) {
+            blame = blameSegmentStore.get(key);
+            if (isUsable(blame, parentCommitsRequired)) {
+                diskHits.increment();
+                Metrics.getDefault().recordCacheRequest(METRICS_CACHE_NAME, true);
+                memoryCache.put(key, blame);
+                return blame;
+            }
+        }
+        misses.increment();
+        Metrics.getDefault().recordCacheRequest(METRICS_CACHE_NAME, false);
+        return null;
+    }
+
+    /**
+     * Caches the blame of the given key, if the key refers to a blame which never changes
+     *
+     * @param key   key of the blame
+     * @param blame blame to be cached
+     */
+    public void put(BlameKey key, FileBlame blame) {
+        if (!key.isImmutable()) {
+            return;
+        }
+        memoryCache.put(key, blame);
+        if (blameSegmentStore != null) {
+            try {
+                blameSegmentStore.put(key, blame);
+            } catch (CodeQualityMatricesException e) {
+                logger.warn("Blame of " + key + " could not be written to the blame store", e);
+            }
+        }
+    }
+
+    private boolean isUsable(FileBlame blame, boolean parentCommitsRequired) {
+        return blame != null && (blame.hasParentCommits() || !parentCommitsRequired);
+    }
+
+    public long getMemoryHits() {
+        return memoryHits.sum();
+    }
+
+    public long getDiskHits() {
+        return diskHits.sum();
+    }
+
+    public long getMisses() {
+        return misses.sum();
+    }
+
+    @Override
+    public String toString() {
+        return "blame cache: " + getMemoryHits() + " memory hits, " + getDiskHits() + " disk hits, " + getMisses() + " misses";
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (blameSegmentStore != null) {
+            blameSegmentStore.close();
+        }
+    }
+}
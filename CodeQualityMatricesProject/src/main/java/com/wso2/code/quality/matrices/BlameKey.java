@@ -0,0 +1,99 @@
+/*
+ * Copyright (c) 2017, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ *
+ * WSO2 Inc. licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.wso2.code.quality.matrices;
+
+import java.util.regex.Pattern;
+
+/**
+ * Identifies the blame of a file at a commit of a repository
+ *
+ * @since 1.0.0
+ */
+
+public final class BlameKey {
+
+    // a full commit hash, optionally followed by the ^ referring to its first parent
+    private static final Pattern FULL_COMMIT_HASH_PATTERN = Pattern.compile("[0-9a-f]{40}\\^?");
+
+    private final String repoLocation;
+    private final String commitHash;
+    private final String path;
+
+    /**
+     * Creates a key
+     *
+     * @param repoLocation repository in the owner/name form
+     * @param commitHash   commit at which the blame is taken, or a revision expression such as the hash followed by ^
+     *                     for its first parent
+     * @param path         path of the file in the repository
+     */
+    public BlameKey(String repoLocation, String commitHash, String path) {
+        this.repoLocation = repoLocation;
+        this.commitHash = commitHash;
+        this.path = path;
+    }
+
+    public String getRepoLocation() {
+        return repoLocation;
+    }
+
+    public String getCommitHash() {
+        return commitHash;
+    }
+
+    public String getPath() {
+        return path;
+    }
+
+    /**
+     * The blame of a file at a full commit hash, or at the first parent of a full commit hash, never changes, while a
+     * branch name or an abbreviated hash may refer to another commit later, so only the blames of full commit hashes
+     * can be cached
+     *
+     * @return true if the blame identified by this key never changes
+     */
+    public boolean isImmutable() {
+        return FULL_COMMIT_HASH_PATTERN.matcher(commitHash).matches();
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) {
+            return true;
+        }
+        if (!(o instanceof BlameKey)) {
+            return false;
+        }
+        BlameKey blameKey = (BlameKey) o;
+        return repoLocation.equals(blameKey.repoLocation) && commitHash.equals(blameKey.commitHash) && path.equals(blameKey.path);
+    }
+
+    @Override
+    public int hashCode() {
+        int result = repoLocation.hashCode();
+        result = 31 * result + commitHash.hashCode();
+        result = 31 * result + path.hashCode();
+        return result;
+    }
+
+    @Override
+    public String toString() {
+        return repoLocation + "@" + commitHash + ":" + path;
+    }
+}
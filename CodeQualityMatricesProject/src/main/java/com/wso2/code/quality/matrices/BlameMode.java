@@ -0,0 +1,52 @@
+/*
+ * Copyright (c) 2017, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ *
+ * WSO2 Inc. licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.wso2.code.quality.matrices;
+
+import java.util.Locale;
+
+/**
+ * The ways in which the ChangesFinder finds the commits before a fix to blame the fixed lines at, selected with the
+ * cqm.analysis.blameMode system property.
+ * <p>
+ * In the parent commits mode a changed file is first blamed at the fix commit, and for each hunk the parent of the
+ * youngest commit of the new lines is taken from that blame, at which the file is blamed again for the old lines of
+ * the hunk. This takes a blame of the file at the fix commit and one at each of the parent commits found. In the first
+ * parent mode the file is blamed only once, at the first parent of the fix commit, which is the file the old lines of
+ * the hunks of the diff refer to, and the authors and commits of the old lines are read straight from that blame.
+ *
+ * @since 1.0.0
+ */
+
+public enum BlameMode {
+
+    PARENT_COMMITS,
+    FIRST_PARENT;
+
+    private static final String BLAME_MODE_PROPERTY = "cqm.analysis.blameMode";
+
+    /**
+     * Returns the mode given in the cqm.analysis.blameMode system property, or the parent commits mode if it is not
+     * given
+     *
+     * @return the selected blame mode
+     */
+    public static BlameMode fromSystemProperties() {
+        return valueOf(System.getProperty(BLAME_MODE_PROPERTY, PARENT_COMMITS.name()).trim().toUpperCase(Locale.ENGLISH));
+    }
+}
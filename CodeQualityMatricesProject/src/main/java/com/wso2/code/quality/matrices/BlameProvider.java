@@ -0,0 +1,93 @@
+/*
+ * Copyright (c) 2017, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ *
+ * WSO2 Inc. licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+
+package com.wso2.code.quality.matrices;
+
+import org.apache.log4j.Logger;
+
+import java.nio.file.Paths;
+import java.util.Collection;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * Source of the blames of files at commits. The blames are taken from the github GraphQL API by the BlameBatcher, or
+ * from local mirrors of the repositories by the JGitBlameProvider.
+ *
+ * @since 1.0.0
+ */
+
+public interface BlameProvider {
+
+    /**
+     * System property giving the directory of the local mirrors, in which the blames are taken with JGit when set
+     */
+    String MIRROR_DIRECTORY_PROPERTY = "cqm.blame.mirrorDirectory";
+
+    /**
+     * Returns the blames of the given files
+     *
+     * @param blameKeys             keys of the blames
+     * @param parentCommitsRequired should be true if the parent commits of the blame ranges are needed
+     * @param gitHubToken           github token for accessing github GraphQL API
+     * @return a map containing the blames against their keys, without the blames which could not be taken
+     * @throws CodeQualityMatricesException if the blames could not be taken
+     */
+    Map<BlameKey, FileBlame> getBlames(Collection<BlameKey> blameKeys, boolean parentCommitsRequired, String gitHubToken)
+            throws CodeQualityMatricesException;
+
+    /**
+     * Returns the blames of the given files without blocking the calling thread, if the provider can take them
+     * asynchronously. The blames are taken on the calling thread otherwise, which should then be a thread allowed to
+     * block
+     *
+     * @param blameKeys             keys of the blames
+     * @param parentCommitsRequired should be true if the parent commits of the blame ranges are needed
+     * @param gitHubToken           github token for accessing github GraphQL API
+     * @return a future of a map containing the blames against their keys, without the blames which could not be taken,
+     * which fails with a CodeQualityMatricesException if the blames could not be taken
+     */
+    default CompletableFuture<Map<BlameKey, FileBlame>> getBlamesAsync(Collection<BlameKey> blameKeys, boolean parentCommitsRequired,
+                                                                       String gitHubToken) {
+        try {
+            return CompletableFuture.completedFuture(getBlames(blameKeys, parentCommitsRequired, gitHubToken));
+        } catch (CodeQualityMatricesException e) {
+            return Futures.failed(e);
+        }
+    }
+
+    /**
+     * Creates the provider given by the cqm.blame.mirrorDirectory system property. The blames are taken from the local
+     * mirrors in that directory when it is set, falling back to the github GraphQL API for the repositories which are
+     * not mirrored, or only from the github GraphQL API otherwise.
+     *
+     * @param graphQlApiCaller instance of the GraphQlApiCaller class for accessing the github GraphQL API
+     * @param blameCache       cache of the blames
+     * @return the blame provider
+     */
+    static BlameProvider fromSystemProperties(GraphQlApiCaller graphQlApiCaller, BlameCache blameCache) {
+        BlameBatcher blameBatcher = new BlameBatcher(graphQlApiCaller, blameCache);
+        String mirrorDirectory = System.getProperty(MIRROR_DIRECTORY_PROPERTY);
+        if (mirrorDirectory == null) {
+            return blameBatcher;
+        }
+        Logger.getLogger(BlameProvider.class).info("Blames are taken from the local mirrors in " + mirrorDirectory);
+        return new JGitBlameProvider(Paths.get(mirrorDirectory), blameCache, blameBatcher);
+    }
+}
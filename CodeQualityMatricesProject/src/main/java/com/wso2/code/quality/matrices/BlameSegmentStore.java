@@ -0,0 +1,303 @@
+/*
+ * Copyright (c) 2017, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ *
+ * WSO2 Inc. licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.wso2.code.quality.matrices;
+
+import org.apache.log4j.Logger;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.channels.OverlappingFileLockException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+/**
+ * Append only store of blames on the local disk. Blames are appended as compact binary records to fixed size segment
+ * files which are memory mapped, so reading a blame back costs no system call. As the blame of a file at a commit
+ * never changes, records are never updated; a newer record of the same key only replaces the older one in the index.
+ * <p>
+ * The index from the keys to the record positions is rebuilt in memory by scanning the segments when the store is
+ * opened. The length of a record is written after its content, so a record left half written by a crash is seen as
+ * the end of its segment. The store directory is locked while it is open, as it supports a single writer only.
+ *
+ * @since 1.0.0
+ */
+
+public class BlameSegmentStore implements Closeable {
+
+    private static final Logger logger = Logger.getLogger(BlameSegmentStore.class);
+
+    private static final String SEGMENT_FILE_PREFIX = "blame-";
+    private static final String SEGMENT_FILE_SUFFIX = ".segment";
+    private static final String LOCK_FILE_NAME = ".lock";
+    private static final int DEFAULT_SEGMENT_SIZE = 64 * 1024 * 1024;
+    private static final int NO_STRING = -1;
+
+    private final Path storeDirectory;
+    private final int segmentSize;
+    private final FileChannel lockChannel;
+    private final FileLock fileLock;
+    private final List<MappedByteBuffer> segments = new CopyOnWriteArrayList<>();
+    private final Map<BlameKey, Long> recordPositions = new ConcurrentHashMap<>();
+    private int writePosition;
+
+    /**
+     * Opens the store on the given directory, creating it if it does not exist
+     *
+     * @param storeDirectory directory containing the segment files
+     * @throws CodeQualityMatricesException if the store could not be opened or is used by another process
+     */
+    public BlameSegmentStore(Path storeDirectory) throws CodeQualityMatricesException {
+        this(storeDirectory, DEFAULT_SEGMENT_SIZE);
+    }
+
+    /**
+     * Opens the store on the given directory, creating it if it does not exist
+     *
+     * @param storeDirectory directory containing the segment files
+     * @param segmentSize    size of a segment file in bytes
+     * @throws CodeQualityMatricesException if the store could not be opened or is used by another process
+     */
+    public BlameSegmentStore(Path storeDirectory, int segmentSize) throws CodeQualityMatricesException {
+        this.storeDirectory = storeDirectory;
+        this.segmentSize = segmentSize;
+        FileChannel channel = null;
+        try {
+            Files.createDirectories(storeDirectory);
+            channel = FileChannel.open(storeDirectory.resolve(LOCK_FILE_NAME), StandardOpenOption.CREATE, StandardOpenOption.WRITE);
+            fileLock = tryLock(channel);
+            if (fileLock == null) {
+                channel.close();
+                throw new CodeQualityMatricesException("Blame store " + storeDirectory + " is used by another process");
+            }
+            lockChannel = channel;
+            for (int segmentNo = 0; Files.exists(segmentFile(segmentNo)); segmentNo++) {
+                segments.add(mapSegment(segmentNo));
+                writePosition = scanSegment(segmentNo);
+            }
+        } catch (IOException e) {
+            closeQuietly(channel);
+            throw new CodeQualityMatricesException("IOException occurred when opening the blame store on " + storeDirectory, e);
+        }
+        logger.info(recordPositions.size() + " blames are found in the blame store " + storeDirectory);
+    }
+
+    /**
+     * Reads the blame of the given key
+     *
+     * @param key key of the blame
+     * @return the blame or null if the store does not contain a blame for the key
+     */
+    public FileBlame get(BlameKey key) {
+        Long recordPosition = recordPositions.get(key);
+        if (recordPosition == null) {
+            return null;
+        }
+        ByteBuffer record = segments.get((int) (recordPosition >>> 32)).duplicate();
+        // skipping the length and the key of the record
+        record.position((int) (long) recordPosition + Integer.BYTES);
+        readString(record);
+        return readBlame(record);
+    }
+
+    /**
+     * Appends the blame of the given key to the store
+     *
+     * @param key   key of the blame
+     * @param blame blame to be stored
+     * @throws CodeQualityMatricesException if the blame could not be written
+     */
+    public synchronized void put(BlameKey key, FileBlame blame) throws CodeQualityMatricesException {
+        byte[] record = encodeRecord(key, blame);
+        if (record.length + Integer.BYTES > segmentSize) {
+            logger.warn("Blame of " + key + " is too large to be stored in the blame store");
+            return;
+        }
+        try {
+            if (segments.isEmpty() || writePosition + Integer.BYTES + record.length > segmentSize) {
+                segments.add(mapSegment(segments.size()));
+                writePosition = 0;
+            }
+        } catch (IOException e) {
+            throw new CodeQualityMatricesException("IOException occurred when creating a new segment in the blame store " + storeDirectory, e);
+        }
+        int segmentNo = segments.size() - 1;
+        ByteBuffer segment = segments.get(segmentNo).duplicate();
+        segment.position(writePosition + Integer.BYTES);
+        segment.put(record);
+        // the length is written last so that a half written record is never read
+        segment.putInt(writePosition, record.length);
+        recordPositions.put(key, ((long) segmentNo << 32) | writePosition);
+        writePosition += Integer.BYTES + record.length;
+    }
+
+    public int size() {
+        return recordPositions.size();
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        segments.forEach(MappedByteBuffer::force);
+        fileLock.release();
+        lockChannel.close();
+    }
+
+    /**
+     * Locks the store, also against another store of this process which is open on the same directory
+     *
+     * @return the lock or null if the store is already locked
+     */
+    private static FileLock tryLock(FileChannel lockChannel) throws IOException {
+        try {
+            return lockChannel.tryLock();
+        } catch (OverlappingFileLockException e) {
+            return null;
+        }
+    }
+
+    private static void closeQuietly(FileChannel channel) {
+        if (channel == null) {
+            return;
+        }
+        try {
+            channel.close();
+        } catch (IOException e) {
+            logger.warn("IOException occurred when closing " + channel, e);
+        }
+    }
+
+    private Path segmentFile(int segmentNo) {
+        return storeDirectory.resolve(String.format("%s%05d%s", SEGMENT_FILE_PREFIX, segmentNo, SEGMENT_FILE_SUFFIX));
+    }
+
+    private MappedByteBuffer mapSegment(int segmentNo) throws IOException {
+        try (FileChannel fileChannel = FileChannel.open(segmentFile(segmentNo), StandardOpenOption.CREATE, StandardOpenOption.READ,
+                StandardOpenOption.WRITE)) {
+            // the mapping stays valid after the channel is closed
+            return fileChannel.map(FileChannel.MapMode.READ_WRITE, 0, segmentSize);
+        }
+    }
+
+    /**
+     * Adds the records of a segment to the index
+     *
+     * @param segmentNo number of the segment
+     * @return the position after the last complete record of the segment
+     */
+    private int scanSegment(int segmentNo) {
+        ByteBuffer segment = segments.get(segmentNo).duplicate();
+        int position = 0;
+        while (position + Integer.BYTES <= segmentSize) {
+            int recordLength = segment.getInt(position);
+            if (recordLength <= 0 || position + Integer.BYTES + recordLength > segmentSize) {
+                break;
+            }
+            segment.position(position + Integer.BYTES);
+            recordPositions.put(decodeKey(readString(segment)), ((long) segmentNo << 32) | position);
+            position += Integer.BYTES + recordLength;
+        }
+        return position;
+    }
+
+    /**
+     * Encodes a blame as a record holding the key, a table of the distinct strings and the ranges referring to the table
+     */
+    private static byte[] encodeRecord(BlameKey key, FileBlame blame) {
+        Map<String, Integer> stringTable = new LinkedHashMap<>();
+        int rangeCount = blame.getRangeCount();
+        int[] stringIndexes = new int[rangeCount * 3];
+        for (int i = 0; i < rangeCount; i++) {
+            stringIndexes[i * 3] = indexOf(stringTable, blame.getCommitHash(i));
+            stringIndexes[i * 3 + 1] = indexOf(stringTable, blame.getParentCommitHash(i));
+            stringIndexes[i * 3 + 2] = indexOf(stringTable, blame.getAuthorName(i));
+        }
+        byte[] keyBytes = encodeKey(key).getBytes(StandardCharsets.UTF_8);
+        List<byte[]> stringBytes = new ArrayList<>();
+        int size = Integer.BYTES + keyBytes.length + 1 + Integer.BYTES + Integer.BYTES + rangeCount * 6 * Integer.BYTES;
+        for (String string : stringTable.keySet()) {
+            byte[] bytes = string.getBytes(StandardCharsets.UTF_8);
+            stringBytes.add(bytes);
+            size += Integer.BYTES + bytes.length;
+        }
+
+        ByteBuffer record = ByteBuffer.allocate(size);
+        record.putInt(keyBytes.length).put(keyBytes);
+        record.put((byte) (blame.hasParentCommits() ? 1 : 0));
+        record.putInt(stringBytes.size());
+        stringBytes.forEach(bytes -> record.putInt(bytes.length).put(bytes));
+        record.putInt(rangeCount);
+        for (int i = 0; i < rangeCount; i++) {
+            record.putInt(blame.getStartingLine(i)).putInt(blame.getEndingLine(i)).putInt(blame.getAge(i))
+                    .putInt(stringIndexes[i * 3]).putInt(stringIndexes[i * 3 + 1]).putInt(stringIndexes[i * 3 + 2]);
+        }
+        return record.array();
+    }
+
+    private static FileBlame readBlame(ByteBuffer record) {
+        boolean parentCommitsIncluded = record.get() == 1;
+        String[] strings = new String[record.getInt()];
+        for (int i = 0; i < strings.length; i++) {
+            strings[i] = readString(record);
+        }
+        FileBlame.Builder builder = new FileBlame.Builder(parentCommitsIncluded);
+        int rangeCount = record.getInt();
+        for (int i = 0; i < rangeCount; i++) {
+            int startingLine = record.getInt();
+            int endingLine = record.getInt();
+            int age = record.getInt();
+            builder.addRange(startingLine, endingLine, age, stringAt(strings, record.getInt()), stringAt(strings, record.getInt()),
+                    stringAt(strings, record.getInt()));
+        }
+        return builder.build();
+    }
+
+    private static int indexOf(Map<String, Integer> stringTable, String string) {
+        return string == null ? NO_STRING : stringTable.computeIfAbsent(string, key -> stringTable.size());
+    }
+
+    private static String stringAt(String[] strings, int index) {
+        return index == NO_STRING ? null : strings[index];
+    }
+
+    private static String readString(ByteBuffer buffer) {
+        byte[] bytes = new byte[buffer.getInt()];
+        buffer.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    private static String encodeKey(BlameKey key) {
+        return key.getRepoLocation() + '\n' + key.getCommitHash() + '\n' + key.getPath();
+    }
+
+    private static BlameKey decodeKey(String encodedKey) {
+        String[] parts = encodedKey.split("\n", 3);
+        return new BlameKey(parts[0], parts[1], parts[2]);
+    }
+}
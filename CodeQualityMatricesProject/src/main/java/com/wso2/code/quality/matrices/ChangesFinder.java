@@ -20,66 +20,174 @@ package com.wso2.code.quality.matrices;
 
 import org.apache.commons.lang3.StringUtils;
 import org.apache.log4j.Logger;
-import org.json.JSONArray;
-import org.json.JSONObject;
 
+import java.io.Closeable;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
-import java.util.TreeMap;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ForkJoinPool;
+import java.util.stream.Collectors;
 import java.util.stream.IntStream;
+import java.util.stream.Stream;
 
 /**
  * This class is used for getting the blame information on relevant lines changed from the given patch
+ * <p>
+ * The analysis is composed of asynchronous stages at every level, commits of the patch, repositories containing a
+ * commit and files changed in a repository. The API calls of all the stages are made without blocking, so no thread is
+ * held while a response is awaited, and the reading of the blames is run on a pool sized for the available cores.
+ * Each stage completes with an immutable AuthorsAndCommits result which is merged with the results of its sibling
+ * stages, so stages never share mutable state with each other. The blames of all the files changed in a repository,
+ * and of a file at all its parent commits, are taken together in batched GraphQL queries. In the first parent blame
+ * mode, selected with the cqm.analysis.blameMode system property, each changed file is instead blamed once at the
+ * first parent of the commit, and the authors and commits of the old lines of its hunks are read from that blame.
+ * <p>
+ * The repositories of a commit, the parent commits of a changed file and the authors and commits of a line range at a
+ * parent commit are recorded to the analysis journal as they are found, and replayed from it instead of calling the
+ * APIs again when an interrupted analysis is run again.
+ * <p>
+ * The threads of the pool are stopped when the ChangesFinder is closed, so it should be closed once no more commits
+ * are analysed with it.
  *
  * @since 1.0.0
  */
 
-public class ChangesFinder {
+public class ChangesFinder implements Closeable {
 
-    private String urlForObtainingCommits;
-    protected ArrayList<String> fileNames = new ArrayList<String>();
-    protected ArrayList<String> patchString = new ArrayList<>();
-    protected List<ArrayList<String>> lineRangesChanged = new ArrayList<ArrayList<String>>();      // for saving the line no that are changed
-    JSONObject graphqlApiJsonObject = new JSONObject();
-    Map<String, Set<String>> commitHashesMapOfTheParent;
-    Set<String> authorNames = new HashSet<String>();    //as the authors are for all the commits that exists in the relevant patch
+    protected Set<String> authorNames = new HashSet<String>();    //as the authors are for all the commits that exists in the relevant patch
     protected Set<String> commitHashObtainedForPRReview = new HashSet<String>();  //  relevant commits in old file that need to find the PR Reviewer
-    private String repoLocation[];
-    GraphQlApiCaller graphQlApiCaller = new GraphQlApiCaller();
+    private final BlameCache blameCache;
+    private final BlameProvider blameProvider;
+    private final CommitIndex commitIndex;
+    private final ForkJoinPool forkJoinPool;
+    private final BlameMode blameMode;
+    private AnalysisJournal analysisJournal = AnalysisJournal.disabled();
 
     private static final Logger logger = Logger.getLogger(ChangesFinder.class);
-    // constants for accessing the Github API responses
-    private static final String GITHUB_SEARCH_API_ITEMS_KEY_STRING = "items";
-    private static final String GITHUB_SEARCH_API_REPOSITORY_KEY_STRING = "repository";
-    private static final String GITHUB_SEARCH_API_FULL_NAME_OF_REPOSITORY_KEY_STRING = "full_name";
-    private static final String GITHUB_GRAPHQL_API_STARTING_LINE_KEY_STRING = "startingLine";
-    private static final String GITHUB_GRAPHQL_API_ENDING_LINE_KEY_STRING = "endingLine";
-    private static final String GITHUB_GRAPHQL_API_AGE_KEY_STRING = "age";
-    private static final String GITHUB_GRAPHQL_API_DATA_KEY_STRING = "data";
-    private static final String GITHUB_GRAPHQL_API_REPOSITORY_KEY_STRING = "repository";
-    private static final String GITHUB_GRAPHQL_API_OBJECT_KEY_STRING = "object";
-    private static final String GITHUB_GRAPHQL_API_BLAME_KEY_STRING = "blame";
-    private static final String GITHUB_GRAPHQL_API_RANGES_KEY_STRING = "ranges";
-    private static final String GITHUB_GRAPHQL_API_COMMIT_KEY_STRING = "commit";
-    private static final String GITHUB_GRAPHQL_API_AUTHOR_KEY_STRING = "author";
-    private static final String GITHUB_GRAPHQL_API_NAME_KEY_STRING = "name";
-    private static final String GITHUB_GRAPHQL_API_URL_KEY_STRING = "url";
-    private static final String GITHUB_GRAPHQL_API_HISTORY_KEY_STRING = "history";
-    private static final String GITHUB_GRAPHQL_API_EDGE_KEY_STRING = "edges";
-    private static final String GITHUB_GRAPHQL_API_NODE_KEY_STRING = "node";
-
-
-    public String getUrlForSearchingCommits() {
-        return urlForObtainingCommits;
+    // no thread waits for github, so the pool only needs a thread for each of the available cores
+    private static final String PARALLELISM_PROPERTY = "cqm.analysis.parallelism";
+    private static final int DEFAULT_PARALLELISM = Runtime.getRuntime().availableProcessors();
+    // names of the stages of the analysis in the metrics
+    private static final String ANALYSE_COMMITS_STAGE = "analyse_commits";
+    private static final String FIND_REPOSITORIES_STAGE = "find_repositories";
+    private static final String FILES_CHANGED_STAGE = "files_changed";
+    private static final String BLAME_CHANGED_FILES_STAGE = "blame_changed_files";
+    private static final String BLAME_PARENT_COMMITS_STAGE = "blame_parent_commits";
+    private static final String BLAME_FIRST_PARENT_STAGE = "blame_first_parent";
+    // names of the spans of the analysis in the traces
+    private static final String ANALYSE_COMMITS_SPAN = "analyse_commits";
+    private static final String COMMIT_SPAN = "commit";
+    private static final String REPOSITORY_SPAN = "repository";
+    private static final String FILE_SPAN = "file";
+    private static final String BLAME_SPAN = "blame";
+    private static final String PARENT_BLAME_SPAN = "parent_blame";
+    // revision expression of the first parent of a commit, which is understood by github and by the local mirrors
+    private static final String FIRST_PARENT_SUFFIX = "^";
+
+    /**
+     * Creates a ChangesFinder using the parallelism level given in the cqm.analysis.parallelism system property
+     */
+    public ChangesFinder() {
+        this(new GraphQlApiCaller());
+    }
+
+    /**
+     * Creates a ChangesFinder using the parallelism level given in the cqm.analysis.parallelism system property
+     *
+     * @param graphQlApiCaller instance of the GraphQlApiCaller class for accessing the github GraphQL API
+     */
+    public ChangesFinder(GraphQlApiCaller graphQlApiCaller) {
+        this(graphQlApiCaller, Integer.getInteger(PARALLELISM_PROPERTY, DEFAULT_PARALLELISM));
+    }
+
+    /**
+     * Creates a ChangesFinder
+     *
+     * @param graphQlApiCaller instance of the GraphQlApiCaller class for accessing the github GraphQL API
+     * @param parallelism      number of threads reading the blames of the analysis
+     */
+    public ChangesFinder(GraphQlApiCaller graphQlApiCaller, int parallelism) {
+        this(graphQlApiCaller, BlameCache.fromSystemProperties(), parallelism);
+    }
+
+    /**
+     * Creates a ChangesFinder taking the blames from the provider given by the cqm.blame.mirrorDirectory system property
+     * and the repositories of the commits from the index given by the cqm.commitIndex.file system property
+     *
+     * @param graphQlApiCaller instance of the GraphQlApiCaller class for accessing the github GraphQL API
+     * @param blameCache       cache of the blames
+     * @param parallelism      number of threads reading the blames of the analysis
+     */
+    public ChangesFinder(GraphQlApiCaller graphQlApiCaller, BlameCache blameCache, int parallelism) {
+        this(BlameProvider.fromSystemProperties(graphQlApiCaller, blameCache), blameCache, parallelism);
+    }
+
+    /**
+     * Creates a ChangesFinder taking the repositories of the commits from the index given by the cqm.commitIndex.file
+     * system property
+     *
+     * @param blameProvider source of the blames of the changed files
+     * @param blameCache    cache of the blames used by the blame provider
+     * @param parallelism   number of threads reading the blames of the analysis
+     */
+    public ChangesFinder(BlameProvider blameProvider, BlameCache blameCache, int parallelism) {
+        this(blameProvider, CommitIndex.fromSystemProperties(), blameCache, parallelism);
+    }
+
+    /**
+     * Creates a ChangesFinder finding the commits to blame the fixed lines at in the mode given by the
+     * cqm.analysis.blameMode system property
+     *
+     * @param blameProvider source of the blames of the changed files
+     * @param commitIndex   index of the repositories containing the commits, or null if the repositories of all the
+     *                      commits are searched on github
+     * @param blameCache    cache of the blames used by the blame provider
+     * @param parallelism   number of threads reading the blames of the analysis
+     */
+    public ChangesFinder(BlameProvider blameProvider, CommitIndex commitIndex, BlameCache blameCache, int parallelism) {
+        this(blameProvider, commitIndex, blameCache, parallelism, BlameMode.fromSystemProperties());
     }
 
-    public void setUrlForSearchingCommits(String commitHash) {
-        this.urlForObtainingCommits = "https://api.github.com/search/commits?q=hash%3A" + commitHash;
+    /**
+     * Creates a ChangesFinder
+     *
+     * @param blameProvider source of the blames of the changed files
+     * @param commitIndex   index of the repositories containing the commits, or null if the repositories of all the
+     *                      commits are searched on github
+     * @param blameCache    cache of the blames used by the blame provider
+     * @param parallelism   number of threads reading the blames of the analysis
+     * @param blameMode     way of finding the commits to blame the fixed lines at
+     */
+    public ChangesFinder(BlameProvider blameProvider, CommitIndex commitIndex, BlameCache blameCache, int parallelism,
+                         BlameMode blameMode) {
+        this.blameCache = blameCache;
+        this.blameProvider = blameProvider;
+        this.commitIndex = commitIndex;
+        this.forkJoinPool = new ForkJoinPool(parallelism);
+        this.blameMode = blameMode;
+    }
+
+    /**
+     * Sets the journal to which the finished units of the analysis are recorded and from which the units finished by
+     * an earlier run are replayed
+     *
+     * @param analysisJournal journal of the analysis
+     */
+    public void setAnalysisJournal(AnalysisJournal analysisJournal) {
+        this.analysisJournal = analysisJournal;
+    }
+
+    public String getUrlForSearchingCommits(String commitHash) {
+        return ApiUrls.getGitHubApiUrl() + "/search/commits?q=hash%3A" + commitHash;
     }
 
     /**
@@ -89,309 +197,464 @@ public class ChangesFinder {
      * @param commitsInTheGivenPatch Commits that belongs to the given patch
      * @param restApiCaller          Instance of the RestApiCaller class for accessing the REST APIs
      * @return a Set <String> containing the commit hashes that needs to be checked for reviewers
+     * @throws CodeQualityMatricesException if any of the API calls made during the analysis failed
      */
-    public Set obtainRepoNamesForCommitHashes(String gitHubToken, String[] commitsInTheGivenPatch, RestApiCaller restApiCaller) {
-
-        //calling the API calling method
-        IntStream.range(0, commitsInTheGivenPatch.length)
-                .mapToObj(i -> commitsInTheGivenPatch[i])
-                .forEach(commitHash -> {
-                    setUrlForSearchingCommits(commitHash);
-                    JSONObject jsonObject = null;
-                    try {
-                        jsonObject = (JSONObject) restApiCaller.callApi(getUrlForSearchingCommits(), gitHubToken, true, false);
-                    } catch (CodeQualityMatricesException e) {
-                        logger.error(e.getMessage(), e.getCause());
-                        System.exit(1);
-                    }
+    public Set<String> obtainRepoNamesForCommitHashes(String gitHubToken, String[] commitsInTheGivenPatch, RestApiCaller restApiCaller)
+            throws CodeQualityMatricesException {
 
-                    saveRepoNamesInAnArray(jsonObject, commitHash, gitHubToken);
-                });
+        AuthorsAndCommits authorsAndCommits = AuthorsAndCommits.mergeAll(
+                analyseCommits(gitHubToken, Arrays.asList(commitsInTheGivenPatch), restApiCaller).values());
+        authorNames = authorsAndCommits.getAuthorNames();
+        commitHashObtainedForPRReview = authorsAndCommits.getCommitHashes();
+
+        // for printing the author names and commit hashes for the given patch.
+        System.out.println(authorNames);
+        System.out.println(commitHashObtainedForPRReview);
         return commitHashObtainedForPRReview;
     }
 
     /**
-     * saving the  Repo Names in the array and calling to Get files content
+     * Analyses each of the given commits once, even if it is given more than once, so that the result of a commit can
+     * be attributed to every patch containing it
      *
-     * @param rootJsonObject JSON object containing the repositories which are having the current selected commit from the given patch
-     * @param commitHash     the current selected commit hash
-     * @param gitHubToken    github token for accessing the github REST API
+     * @param gitHubToken   Github token
+     * @param commitHashes  commits to be analysed
+     * @param restApiCaller Instance of the RestApiCaller class for accessing the REST APIs
+     * @return a map containing the authors and commits of the lines fixed by each commit against the commit hash
+     * @throws CodeQualityMatricesException if any of the API calls made during the analysis failed
      */
+    public Map<String, AuthorsAndCommits> analyseCommits(String gitHubToken, Collection<String> commitHashes, RestApiCaller restApiCaller)
+            throws CodeQualityMatricesException {
 
-    public void saveRepoNamesInAnArray(JSONObject rootJsonObject, String commitHash, String gitHubToken) {
-        JSONArray jsonArrayOfItems = (JSONArray) rootJsonObject.get(GITHUB_SEARCH_API_ITEMS_KEY_STRING);
-        // setting the size of the repoLocationArray
-        repoLocation = new String[jsonArrayOfItems.length()];
-        //adding the repo name to the array
-        IntStream.range(0, jsonArrayOfItems.length())
-                .forEach(i -> {
-                    JSONObject jsonObject = (JSONObject) jsonArrayOfItems.get(i);
-                    JSONObject repositoryJsonObject = (JSONObject) jsonObject.get(GITHUB_SEARCH_API_REPOSITORY_KEY_STRING);
-                    repoLocation[i] = (String) repositoryJsonObject.get(GITHUB_SEARCH_API_FULL_NAME_OF_REPOSITORY_KEY_STRING);
-                });
-        logger.info("Repo names having the given commit are successfully saved in an array");
-
-        SdkGitHubClient sdkGitHubClient = new SdkGitHubClient(gitHubToken);
-
-        //        for running through the repoName Array
-        IntStream.range(0, repoLocation.length)
-                .filter(i -> StringUtils.contains(repoLocation[i], "wso2/"))
-                .forEach(i -> {
-                    //clearing all the data in the current fileNames and lineRangesChanged arraylists for each repository
-                    //authorNames.clear();
-                    fileNames.clear();
-                    lineRangesChanged.clear();
-                    patchString.clear();
-                    Map<String, ArrayList<String>> mapWithFileNamesAndPatch = null;
-                    try {
-                        mapWithFileNamesAndPatch = sdkGitHubClient.getFilesChanged(repoLocation[i], commitHash);
-                    } catch (CodeQualityMatricesException e) {
-                        logger.error(e.getMessage(), e.getCause());    // as exceptions cannot be thrown inside a lambda expression
-                        System.exit(2);
-                    }
-                    fileNames = mapWithFileNamesAndPatch.get("fileNames");
-                    patchString = mapWithFileNamesAndPatch.get("patchString");
-                    saveRelaventEditLineNumbers(fileNames, patchString);
-                    try {
-                        iterateOverFileChanges(repoLocation[i], commitHash, gitHubToken);
-                    } catch (Exception e) {
-                        logger.error(e.getMessage(), e.getCause());  // as exceptions cannot be thrown inside a lambda expression
-                        System.exit(3);
-                    }
-                });
+        return Futures.join(analyseCommitsAsync(gitHubToken, commitHashes, restApiCaller));
+    }
 
-        // for printing the author names and commit hashes for a certain commit.
-        System.out.println(authorNames);
-        System.out.println(commitHashObtainedForPRReview);
+    /**
+     * Analyses each of the given commits once without blocking the calling thread, calling the APIs for all the
+     * commits at once and running the reading of the blames on the threads of the pool of this ChangesFinder
+     *
+     * @param gitHubToken   Github token
+     * @param commitHashes  commits to be analysed
+     * @param restApiCaller Instance of the RestApiCaller class for accessing the REST APIs
+     * @return a future of a map containing the authors and commits of the lines fixed by each commit against the commit
+     * hash, which fails with a CodeQualityMatricesException as soon as any of the API calls made during the analysis failed
+     */
+    public CompletableFuture<Map<String, AuthorsAndCommits>> analyseCommitsAsync(String gitHubToken, Collection<String> commitHashes,
+                                                                               RestApiCaller restApiCaller) {
+        long startNanos = System.nanoTime();
+        Tracer.Span span = Tracer.getDefault().startDetachedSpan(ANALYSE_COMMITS_SPAN, Tracer.getDefault().currentSpan());
+        AnalysisContext analysisContext = new AnalysisContext(gitHubToken, restApiCaller, new SdkGitHubClient(gitHubToken));
+        List<String> distinctCommitHashes = new ArrayList<>(new LinkedHashSet<>(commitHashes));
+        span.setAttribute(Tracer.COMMIT_COUNT_ATTRIBUTE, distinctCommitHashes.size());
+        List<CompletableFuture<AuthorsAndCommits>> futureResults = distinctCommitHashes.stream()
+                .map(commitHash -> analyseCommit(analysisContext, commitHash, span))
+                .collect(Collectors.toList());
+
+        CompletableFuture<Map<String, AuthorsAndCommits>> futureAuthorsAndCommits = Futures.allOf(futureResults).thenApply(results -> {
+            Map<String, AuthorsAndCommits> authorsAndCommitsOfCommits = new LinkedHashMap<>();
+            for (int i = 0; i < distinctCommitHashes.size(); i++) {
+                authorsAndCommitsOfCommits.put(distinctCommitHashes.get(i), results.get(i));
+            }
+            logger.info(blameCache);
+            return authorsAndCommitsOfCommits;
+        });
+        return Futures.endSpan(span, futureAuthorsAndCommits).whenComplete((result, e) ->
+                Metrics.getDefault().recordStage(ANALYSE_COMMITS_STAGE, startNanos));
     }
 
     /**
-     * This method is used to save the line ranges being modified in a given file to a list and add that list to the root list of
+     * Reading the Repo Names having the given commit
      *
-     * @param fileNames   Arraylist of files names that are being affected by the relevant commit
-     * @param patchString Array list having the patch string value for each of the file being changed
+     * @param searchItems items of the github commit search containing the current selected commit from the given patch
+     * @return the list of wso2 repositories containing the given commit
      */
 
-    public void saveRelaventEditLineNumbers(ArrayList<String> fileNames, ArrayList<String> patchString) {
-        //filtering only the line ranges that are modified and saving to a string array
-
-        // cannot ues parallel streams here as the order of the line changes must be preserved
-        patchString.stream()
-                .map(patch -> StringUtils.substringsBetween(patch, "@@ ", " @@"))
-                .forEach(lineChanges -> {
-                    //filtering the lines ranges that existed in the previous file, that exists in the new file and saving them in to the same array
-                    IntStream.range(0, lineChanges.length)
-                            .forEach(j -> {
-                                //@@ -22,7 +22,7 @@ => -22,7 +22,7 => 22,28/22,28
-                                String tempString = lineChanges[j];
-                                String lineRangeInTheOldFileBeingModified = StringUtils.substringBetween(tempString, "-", " +");      // for taking the authors and commit hashes of the previous lines
-                                String lineRangeInTheNewFileResultedFromModification = StringUtils.substringAfter(tempString, "+");  // for taking the parent commit
-
-                                int intialLineNoInOldFile = Integer.parseInt(StringUtils.substringBefore(lineRangeInTheOldFileBeingModified, ","));
-                                int tempEndLineNoInOldFile = Integer.parseInt(StringUtils.substringAfter(lineRangeInTheOldFileBeingModified, ","));
-                                int endLineNoOfOldFile;
-                                if (intialLineNoInOldFile != 0) {
-                                    // to filterout the newly created files
-                                    endLineNoOfOldFile = intialLineNoInOldFile + (tempEndLineNoInOldFile - 1);
-                                } else {
-                                    endLineNoOfOldFile = tempEndLineNoInOldFile;
-                                }
-                                int intialLineNoInNewFile = Integer.parseInt(StringUtils.substringBefore(lineRangeInTheNewFileResultedFromModification, ","));
-                                int tempEndLineNoInNewFile = Integer.parseInt(StringUtils.substringAfter(lineRangeInTheNewFileResultedFromModification, ","));
-                                int endLineNoOfNewFile = intialLineNoInNewFile + (tempEndLineNoInNewFile - 1);
-                                // storing the line ranges that are being modified in the same array by replacing values
-                                lineChanges[j] = intialLineNoInOldFile + "," + endLineNoOfOldFile + "/" + intialLineNoInNewFile + "," + endLineNoOfNewFile;
-                            });
-                    ArrayList<String> tempArrayList = new ArrayList<>(Arrays.asList(lineChanges));
-                    //adding to the array list which keep track of the line ranges being changed
-                    lineRangesChanged.add(tempArrayList);
-                });
-        System.out.println("done saving file names and their relevant modification line ranges");
-        System.out.println(fileNames);
-        System.out.println(lineRangesChanged + "\n");
+    public List<String> saveRepoNamesInAnArray(List<SearchItem> searchItems) {
+        //adding the repo name to the list
+        List<String> repoLocations = filterWso2Repositories(searchItems.stream().map(SearchItem::getRepositoryFullName));
+        logger.info("Repo names having the given commit are successfully saved in a list");
+        return repoLocations;
+    }
+
+    private List<String> filterWso2Repositories(Stream<String> repoLocations) {
+        return repoLocations
+                .filter(repoLocation -> StringUtils.contains(repoLocation, "wso2/"))
+                .distinct()
+                .collect(Collectors.toList());
     }
 
     /**
-     * This method will iterate over the saved filenames and their relevant changed line ranges and calls the github graphQL API
-     * for getting blame details for each of the files
+     * Reading the blame received for a current selected file name to find the parent commits of the changed lines
      *
-     * @param repoLocation current selected repository
-     * @param commitHash   current selected repository
-     * @param gitHubToken  github token for accessing github GraphQL API
+     * @param blame      blame of the current selected file, including the parent commits
+     * @param fileChange changes made to the current selected file
+     * @return a map containing the parent commit hashes against the index of each of the changed hunks of the file
      */
-    public void iterateOverFileChanges(String repoLocation, String commitHash, String gitHubToken) {
-
-        // filtering the owner and the repository name from the repoLocation
-        String owner = StringUtils.substringBefore(repoLocation, "/");
-        String repositoryName = StringUtils.substringAfter(repoLocation, "/");
-        //        iterating over the fileNames arraylist for the given commit
-        //         cannot use parallel streams here as the order of the file names is important in the process
-        fileNames.stream()
-                .forEach(fileName -> {
-                    int index = fileNames.indexOf(fileName);
-                    // the relevant arraylist of changed lines for that file
-                    ArrayList<String> arrayListOfRelevantChangedLinesOfSelectedFile = lineRangesChanged.get(index);
-                    commitHashesMapOfTheParent = new HashMap<>(); // for storing the parent commit hashes for all the changed line ranges of the relevant file
-                    graphqlApiJsonObject.put("query", "{repository(owner:\"" + owner + "\",name:\"" + repositoryName + "\"){object(expression:\"" + commitHash + "\"){ ... on Commit{blame(path:\"" + fileName + "\"){ranges{startingLine endingLine age commit{history(first: 2) { edges { node {  message url } } } author { name email } } } } } } } }");
-                    JSONObject rootJsonObject = null;
-                    try {
-                        //            calling the graphql API for getting blame information for the current file.
-                        rootJsonObject = (JSONObject) graphQlApiCaller.callGraphQlApi(graphqlApiJsonObject, gitHubToken);
-                    } catch (CodeQualityMatricesException e) {
-                        logger.error(e.getMessage(), e.getCause());     // as exceptions cannot be thrown inside lambda expression
-                        System.exit(1);
+    public Map<Integer, Set<String>> readBlameForParentCommits(FileBlame blame, FileChange fileChange) {
+
+        Map<Integer, Set<String>> commitHashesMapOfTheParent = new HashMap<>(); // for storing the parent commit hashes for all the changed line ranges of the relevant file
+
+        IntStream.range(0, fileChange.getHunkCount())
+                .forEach(hunkIndex -> {
+                    // need to skip the newly created files from taking the blame as they contain no previous commits
+                    if (fileChange.isNewFileHunk(hunkIndex)) {
+                        return;
+                    }
+                    // need to consider the line range in the new file resulted from applying the commit, for finding parent commits
+                    int startingLineNo = fileChange.getNewStartingLine(hunkIndex);
+                    int endLineNo = fileChange.getNewEndingLine(hunkIndex);
+
+                    // the blame ranges overlapping the line range are found with a binary search, instead of checking line by line
+                    int firstRangeIndex = blame.findFirstRangeIndexOverlapping(startingLineNo);
+                    int lastRangeIndex = blame.findLastRangeIndexOverlapping(endLineNo);
+                    if (endLineNo < startingLineNo || firstRangeIndex > lastRangeIndex) {
+                        // lines were only removed from the old file, so there is no line in the new file to take the blame of
+                        return;
                     }
-                    //            reading the above saved output for the current selected file name
-                    readBlameReceivedForAFile(rootJsonObject, arrayListOfRelevantChangedLinesOfSelectedFile, false, null);
-                    logger.info("Parent Commits hashes of the lines which are being fixed by the patch in file " + fileName + " are saved to commitHashesMapOfTheParent map successfully ");
 
-                    iterateOverToFindAuthors(owner, repositoryName, fileName, arrayListOfRelevantChangedLinesOfSelectedFile, gitHubToken);
-                    logger.info("Authors of the bug lines of code which are being fixed from the given patch are saved successfully to authorNames SET");
+                    //for the above line range getting the lastest commit which modified the lines
+                    int minimumAge = Integer.MAX_VALUE;
+                    for (int i = firstRangeIndex; i <= lastRangeIndex; i++) {
+                        minimumAge = Math.min(minimumAge, blame.getAge(i));
+                    }
+                    for (int i = firstRangeIndex; i <= lastRangeIndex; i++) {
+                        if (blame.getAge(i) != minimumAge) {
+                            continue;
+                        }
+                        String commitHash = blame.getParentCommitHash(i);
+                        if (commitHash == null) {
+                            // the commit which modified the lines is the first commit of the repository
+                            continue;
+                        }
+                        commitHashesMapOfTheParent.computeIfAbsent(hunkIndex, key -> new HashSet<String>()).add(commitHash);
+                    }
                 });
+        return commitHashesMapOfTheParent;
     }
 
     /**
-     * Reading the blame received for a current selected file name and insert the parent commits of the changed lines,
-     * relevant authors and the relevant commits hashes to look for the reviewers of those line ranges
+     * Reading the blame received for a file at a parent commit to find the authors of the lines in the given old line range
+     * and the commits that introduced them, which are later used to look for the reviewers of those line ranges
      *
-     * @param rootJsonObject                                JSONObject containing blame information for current selected file
-     * @param arrayListOfRelevantChangedLinesOfSelectedFile arraylist containing the changed line ranges of the current selected file
-     * @param gettingPr                                     should be true if running this method for finding the authors of buggy lines which are being fixed from  the patch
+     * @param blame          blame of the current selected file at a parent commit
+     * @param startingLineNo first line of the line range of the old file which is being fixed from the patch
+     * @param endLineNo      last line of the line range of the old file which is being fixed from the patch
+     * @return the authors and the commits of the lines in the given range
      */
-    public void readBlameReceivedForAFile(JSONObject rootJsonObject, ArrayList<String> arrayListOfRelevantChangedLinesOfSelectedFile, boolean gettingPr, String oldRange) {
-
-        //running a iterator for fileName arrayList to get the location of the above saved file
-        JSONObject dataJSONObject = (JSONObject) rootJsonObject.get(GITHUB_GRAPHQL_API_DATA_KEY_STRING);
-        JSONObject repositoryJSONObect = (JSONObject) dataJSONObject.get(GITHUB_GRAPHQL_API_REPOSITORY_KEY_STRING);
-        JSONObject objectJSONObject = (JSONObject) repositoryJSONObect.get(GITHUB_GRAPHQL_API_OBJECT_KEY_STRING);
-        JSONObject blameJSONObject = (JSONObject) objectJSONObject.get(GITHUB_GRAPHQL_API_BLAME_KEY_STRING);
-        JSONArray rangeJSONArray = (JSONArray) blameJSONObject.get(GITHUB_GRAPHQL_API_RANGES_KEY_STRING);
-
-        //getting the starting line no of the range of lines that are modified from the patch
-        // parallel streams are not used in here as the order of the arraylist is important in the process
-        arrayListOfRelevantChangedLinesOfSelectedFile.stream()
-                .forEach(lineRanges -> {
-                    int startingLineNo = 0;
-                    int endLineNo = 0;
-                    String oldFileRange = StringUtils.substringBefore(lineRanges, "/");
-                    String newFileRange = StringUtils.substringAfter(lineRanges, "/");
-                    // need to skip the newly created files from taking the blame as they contain no previous commits
-                    if (!oldFileRange.equals("0,0")) {
-                        if (gettingPr && oldRange.equals(oldFileRange)) {
-                            // need to consider the line range in the old file for finding authors and reviewers
-                            startingLineNo = Integer.parseInt(StringUtils.substringBefore(oldFileRange, ","));
-                            endLineNo = Integer.parseInt(StringUtils.substringAfter(oldFileRange, ","));
-                        } else if (!gettingPr && oldRange == null) {
-                            // need to consider the line range in the new file resulted from applying the commit, for finding parent commits
-                            startingLineNo = Integer.parseInt(StringUtils.substringBefore(newFileRange, ","));
-                            endLineNo = Integer.parseInt(StringUtils.substringAfter(newFileRange, ","));
-                        } else {
-                            return; // to skip the to the next iteration if oldRange != oldFileRange when finding authornames and commits for obtaining PRs
-                        }
+    public AuthorsAndCommits readBlameForAuthors(FileBlame blame, int startingLineNo, int endLineNo) {
+
+        Set<String> authorNamesOfTheRange = new HashSet<>();
+        Set<String> commitHashesOfTheRange = new HashSet<>();
+
+        // need to consider the line range in the old file for finding authors and reviewers
+        // the blame ranges overlapping the line range are found with a binary search, instead of checking line by line
+        // lines were only added to the old range when it is empty
+        int lastRangeIndex = endLineNo < startingLineNo ? -1 : blame.findLastRangeIndexOverlapping(endLineNo);
+        for (int i = blame.findFirstRangeIndexOverlapping(startingLineNo); i <= lastRangeIndex; i++) {
+            //for saving the author names of commiters
+            if (blame.getAuthorName(i) != null) {
+                authorNamesOfTheRange.add(blame.getAuthorName(i));
+            }
+            commitHashesOfTheRange.add(blame.getCommitHash(i));
+        }
+        return new AuthorsAndCommits(authorNamesOfTheRange, commitHashesOfTheRange);
+    }
 
-                        // as a new mapForStoringAgeAndIndex map should be available for each line range to find the most recent change
-                        Map<Integer, ArrayList<Integer>> mapForStoringAgeAndIndex = new HashMap<Integer, ArrayList<Integer>>();
-
-                        //checking line by line by iterating the startingLineNo
-                        while (endLineNo >= startingLineNo) {
-                            // since the index value is required for later processing, without Java 8 features "for loop" is used for iteration
-                            for (int i = 0; i < rangeJSONArray.length(); i++) {
-                                JSONObject rangeJSONObject = (JSONObject) rangeJSONArray.get(i);
-                                int tempStartingLineNo = (int) rangeJSONObject.get(GITHUB_GRAPHQL_API_STARTING_LINE_KEY_STRING);
-                                int tempEndingLineNo = (int) rangeJSONObject.get(GITHUB_GRAPHQL_API_ENDING_LINE_KEY_STRING);
-
-                                //checking whether the line belongs to that line range group
-                                if ((tempStartingLineNo <= startingLineNo) && (tempEndingLineNo >= startingLineNo)) {
-                                    // so the relevant startingLineNo belongs in this line range in other words in this JSONObject
-                                    if (!gettingPr) {
-                                        int age = (int) rangeJSONObject.get(GITHUB_GRAPHQL_API_AGE_KEY_STRING);
-                                        // storing the age field with relevant index of the JSONObject
-                                        mapForStoringAgeAndIndex.putIfAbsent(age, new ArrayList<Integer>());
-                                        if (!mapForStoringAgeAndIndex.get(age).contains(i)) {
-                                            mapForStoringAgeAndIndex.get(age).add(i);   // adding if the index is not present in the array list for the relevant age
-                                        }
-
-                                    } else {
-                                        //for saving the author names of commiters
-                                        JSONObject commitJSONObject = (JSONObject) rangeJSONObject.get(GITHUB_GRAPHQL_API_COMMIT_KEY_STRING);
-
-                                        JSONObject authorJSONObject = (JSONObject) commitJSONObject.get(GITHUB_GRAPHQL_API_AUTHOR_KEY_STRING);
-                                        String nameOfTheAuthor = (String) authorJSONObject.get(GITHUB_GRAPHQL_API_NAME_KEY_STRING);
-                                        authorNames.add(nameOfTheAuthor);       // authors are added to the Set
-
-                                        String urlOfCommit = (String) commitJSONObject.get(GITHUB_GRAPHQL_API_URL_KEY_STRING);
-                                        String commitHashForPRReview = StringUtils.substringAfter(urlOfCommit, "commit/");
-                                        commitHashObtainedForPRReview.add(commitHashForPRReview);
-                                    }
-                                    break;
-                                } else {
-                                    continue;   // to skip to the next JSON Object in the rangeJSONArray
-                                }
-                            }
-                            startingLineNo++;   // to check for other line numbers
-                        }
+    /**
+     * Reading the blame of a file at the first parent of the commit which changed it to find the authors of the old
+     * lines of each of the changed hunks and the commits that introduced them
+     *
+     * @param blame      blame of the current selected file at the first parent of the commit
+     * @param fileChange changes made to the current selected file
+     * @return a map containing the authors and commits of the old lines against the index of each of the hunks which
+     * changed or removed lines of the old file
+     */
+    public Map<Integer, AuthorsAndCommits> readBlameAtFirstParent(FileBlame blame, FileChange fileChange) {
+        Map<Integer, AuthorsAndCommits> authorsAndCommitsOfHunks = new HashMap<>();
+        for (int hunkIndex : findHunksWithOldLines(fileChange)) {
+            authorsAndCommitsOfHunks.put(hunkIndex, readBlameForAuthors(blame, fileChange.getOldStartingLine(hunkIndex),
+                    fileChange.getOldEndingLine(hunkIndex)));
+        }
+        return authorsAndCommitsOfHunks;
+    }
 
-                        //for the above line range getting the lastest commit which modified the lines
-                        if (!gettingPr) {
-                            //converting the map into a treeMap to get it ordered
-                            TreeMap<Integer, ArrayList<Integer>> treeMap = new TreeMap<>(mapForStoringAgeAndIndex);
-                            int minimumKeyOfMapForStoringAgeAndIndex = treeMap.firstKey(); // getting the minimum key
-                            //getting the relevant JSONObject indexes which consists of the recent change with in the relevant line range
-                            ArrayList<Integer> indexesOfJsonObjectForRecentCommit = mapForStoringAgeAndIndex.get(minimumKeyOfMapForStoringAgeAndIndex);
-                            // the order of the indexesOfJsonObjectForRecentCommit is not important as we only need to get the parent commit hashes
-                            indexesOfJsonObjectForRecentCommit.parallelStream()
-                                    .forEach(index -> {
-                                        JSONObject rangeJSONObject = (JSONObject) rangeJSONArray.get(index);
-                                        JSONObject commitJSONObject = (JSONObject) rangeJSONObject.get(GITHUB_GRAPHQL_API_COMMIT_KEY_STRING);
-                                        JSONObject historyJSONObject = (JSONObject) commitJSONObject.get(GITHUB_GRAPHQL_API_HISTORY_KEY_STRING);
-                                        JSONArray edgesJSONArray = (JSONArray) historyJSONObject.get(GITHUB_GRAPHQL_API_EDGE_KEY_STRING);
-                                        //getting the second json object from the array as it contain the commit of the parent which modified the above line range
-                                        JSONObject edgeJSONObject = (JSONObject) edgesJSONArray.get(1);
-                                        JSONObject nodeJSONObject = (JSONObject) edgeJSONObject.get(GITHUB_GRAPHQL_API_NODE_KEY_STRING);
-                                        String urlOfTheParentCommit = (String) nodeJSONObject.get(GITHUB_GRAPHQL_API_URL_KEY_STRING);       // this contain the URL of the parent commit
-                                        String commitHash = (String) StringUtils.substringAfter(urlOfTheParentCommit, "commit/");
-//                                        commitHashesOfTheParent.add(commitHash);    // commitHashesof the parent for the selected file
-
-                                        commitHashesMapOfTheParent.putIfAbsent(oldFileRange, new HashSet<String>());
-                                        if (!commitHashesMapOfTheParent.get(oldFileRange).contains(commitHash)) {
-                                            commitHashesMapOfTheParent.get(oldFileRange).add(commitHash);
-                                        }
-                                    });
-                        }
+    /**
+     * Finds the repositories containing a commit of the patch and analyses the commit in each of them
+     */
+    private CompletableFuture<AuthorsAndCommits> analyseCommit(AnalysisContext analysisContext, String commitHash, Tracer.Span parentSpan) {
+        Tracer.Span span = Tracer.getDefault().startDetachedSpan(COMMIT_SPAN, parentSpan);
+        span.setAttribute(Tracer.COMMIT_ATTRIBUTE, commitHash);
+        long startNanos = System.nanoTime();
+        List<String> journaledRepoLocations = analysisJournal.getRepositories(commitHash);
+        // the commit index is read on the pool, as a lookup may have to read the index from the disk
+        CompletableFuture<List<String>> futureRepoLocations = journaledRepoLocations != null
+                ? CompletableFuture.completedFuture(journaledRepoLocations)
+                : CompletableFuture.supplyAsync(() -> commitIndex == null
+                ? Collections.<String>emptyList()
+                : filterWso2Repositories(commitIndex.findRepositories(commitHash).stream()), forkJoinPool)
+                .thenCompose(indexedRepoLocations -> {
+                    if (!indexedRepoLocations.isEmpty()) {
+                        logger.info("Repositories of commit " + commitHash + " are found in the commit index");
+                        return CompletableFuture.completedFuture(indexedRepoLocations);
+                    }
+                    // the search API is only called for the commits which are not in the local mirrors
+                    return Tracer.getDefault().inSpan(span, () -> analysisContext.restApiCaller.callApiAsync(
+                            getUrlForSearchingCommits(commitHash), analysisContext.gitHubToken, true, false,
+                            ResponseDecoders::decodeSearchItems))
+                            .thenApply(searchItems -> searchItems == null ? null : saveRepoNamesInAnArray(searchItems));
+                })
+                .thenApply(repoLocations -> {
+                    if (repoLocations != null) {
+                        analysisJournal.recordRepositories(commitHash, repoLocations);
+                    }
+                    return repoLocations;
+                });
 
+        return Futures.endSpan(span, futureRepoLocations.thenCompose(repoLocations -> {
+            if (repoLocations == null) {
+                return CompletableFuture.completedFuture(AuthorsAndCommits.EMPTY);
+            }
+            Metrics.getDefault().recordStage(FIND_REPOSITORIES_STAGE, startNanos);
+            span.setAttribute(Tracer.REPOSITORY_COUNT_ATTRIBUTE, repoLocations.size());
+            return mergeAll(repoLocations.stream()
+                    .map(repoLocation -> analyseRepository(analysisContext, repoLocation, commitHash, span))
+                    .collect(Collectors.toList()))
+                    .thenApply(authorsAndCommits -> {
+                        logger.info("Authors and commits of the lines fixed by commit " + commitHash + " are found successfully");
+                        return authorsAndCommits;
+                    });
+        }));
+    }
+
+    /**
+     * Finds the files changed by a commit in a repository and analyses each of them
+     */
+    private CompletableFuture<AuthorsAndCommits> analyseRepository(AnalysisContext analysisContext, String repoLocation,
+                                                                   String commitHash, Tracer.Span parentSpan) {
+        Tracer.Span span = Tracer.getDefault().startDetachedSpan(REPOSITORY_SPAN, parentSpan);
+        span.setAttribute(Tracer.REPOSITORY_ATTRIBUTE, repoLocation).setAttribute(Tracer.COMMIT_ATTRIBUTE, commitHash);
+        long startNanos = System.nanoTime();
+        CompletableFuture<List<FileChange>> futureFileChanges = Tracer.getDefault().inSpan(span, () ->
+                analysisContext.sdkGitHubClient.getFilesChangedAsync(repoLocation, commitHash, analysisContext.restApiCaller));
+
+        return Futures.endSpan(span, futureFileChanges.thenComposeAsync(fileChanges -> {
+            Metrics.getDefault().recordStage(FILES_CHANGED_STAGE, startNanos);
+            logger.info("File names and their relevant modification line ranges of commit " + commitHash + " on " + repoLocation
+                    + " are saved successfully " + fileChanges);
+
+            // binary files and pure renames do not have any changed line ranges
+            List<FileChange> changedFiles = fileChanges.stream()
+                    .filter(fileChange -> !fileChange.isEmpty())
+                    .collect(Collectors.toList());
+            span.setAttribute(Tracer.FILE_COUNT_ATTRIBUTE, changedFiles.size());
+            if (blameMode == BlameMode.FIRST_PARENT) {
+                return analyseFilesAtFirstParent(analysisContext, repoLocation, commitHash, changedFiles, span);
+            }
+            // the parent commits of the files finished by an earlier run are replayed from the journal
+            Map<String, Map<Integer, Set<String>>> parentCommitsOfFiles = new HashMap<>();
+            changedFiles.forEach(fileChange -> {
+                Map<Integer, Set<String>> parentCommits = analysisJournal.getParentCommits(repoLocation, commitHash,
+                        fileChange.getPath());
+                if (parentCommits != null) {
+                    parentCommitsOfFiles.put(fileChange.getPath(), parentCommits);
+                }
+            });
+            //            getting the blame information for all the other changed files at once
+            long blameStartNanos = System.nanoTime();
+            List<BlameKey> blameKeys = changedFiles.stream()
+                    .filter(fileChange -> !parentCommitsOfFiles.containsKey(fileChange.getPath()))
+                    .map(fileChange -> new BlameKey(repoLocation, commitHash, fileChange.getPath()))
+                    .collect(Collectors.toList());
+            Tracer.Span blameSpan = Tracer.getDefault().startDetachedSpan(BLAME_SPAN, span);
+            blameSpan.setAttribute(Tracer.BLAME_COUNT_ATTRIBUTE, blameKeys.size());
+            CompletableFuture<Map<BlameKey, FileBlame>> futureBlames = Futures.endSpan(blameSpan, blameKeys.isEmpty()
+                    ? CompletableFuture.completedFuture(Collections.<BlameKey, FileBlame>emptyMap())
+                    : Tracer.getDefault().inSpan(blameSpan, () -> blameProvider.getBlamesAsync(blameKeys, true,
+                    analysisContext.gitHubToken)));
+
+            return futureBlames.thenComposeAsync(blames -> {
+                Metrics.getDefault().recordStage(BLAME_CHANGED_FILES_STAGE, blameStartNanos);
+                List<CompletableFuture<AuthorsAndCommits>> futureResults = new ArrayList<>();
+                for (FileChange fileChange : changedFiles) {
+                    Map<Integer, Set<String>> parentCommits = parentCommitsOfFiles.get(fileChange.getPath());
+                    FileBlame blame = blames.get(new BlameKey(repoLocation, commitHash, fileChange.getPath()));
+                    if (parentCommits == null && blame != null) {
+                        parentCommits = readBlameForParentCommits(blame, fileChange);
+                        analysisJournal.recordParentCommits(repoLocation, commitHash, fileChange.getPath(), parentCommits);
+                        logger.info("Parent Commits hashes of the lines which are being fixed by the patch in file "
+                                + fileChange.getPath() + " are found successfully ");
+                    }
+                    if (parentCommits != null) {
+                        futureResults.add(analyseFile(analysisContext, repoLocation, fileChange, parentCommits, span));
                     }
+                }
+                return mergeAll(futureResults);
+            }, forkJoinPool);
+        }, forkJoinPool));
+    }
+
+    /**
+     * Finds the authors and commits of the line ranges changed in a file at their parent commits, blaming the file
+     * only at the parent commits of the line ranges which are not found in the journal
+     */
+    private CompletableFuture<AuthorsAndCommits> analyseFile(AnalysisContext analysisContext, String repoLocation,
+                                                             FileChange fileChange, Map<Integer, Set<String>> commitHashesMapOfTheParent,
+                                                             Tracer.Span parentSpan) {
+        String fileName = fileChange.getPath();
+        Tracer.Span span = Tracer.getDefault().startDetachedSpan(FILE_SPAN, parentSpan);
+        span.setAttribute(Tracer.REPOSITORY_ATTRIBUTE, repoLocation).setAttribute(Tracer.FILE_PATH_ATTRIBUTE, fileName);
+
+        List<AuthorsAndCommits> journaledAuthorsAndCommits = new ArrayList<>();
+        Map<Integer, Set<String>> parentCommitsToBlame = new HashMap<>();
+        commitHashesMapOfTheParent.forEach((hunkIndex, parentCommitHashes) -> parentCommitHashes.forEach(parentCommitHash -> {
+            AuthorsAndCommits authorsAndCommits = analysisJournal.getAuthorsAndCommits(repoLocation, parentCommitHash,
+                    fileName, fileChange.getOldStartingLine(hunkIndex), fileChange.getOldEndingLine(hunkIndex));
+            if (authorsAndCommits != null) {
+                journaledAuthorsAndCommits.add(authorsAndCommits);
+            } else {
+                parentCommitsToBlame.computeIfAbsent(hunkIndex, key -> new HashSet<String>()).add(parentCommitHash);
+            }
+        }));
+
+        //            getting the blame information of the file at all the parent commits at once
+        long startNanos = System.nanoTime();
+        List<BlameKey> parentBlameKeys = parentCommitsToBlame.values().stream()
+                .flatMap(Set::stream)
+                .map(parentCommitHash -> new BlameKey(repoLocation, parentCommitHash, fileName))
+                .distinct()
+                .collect(Collectors.toList());
+        Tracer.Span blameSpan = Tracer.getDefault().startDetachedSpan(PARENT_BLAME_SPAN, span);
+        blameSpan.setAttribute(Tracer.BLAME_COUNT_ATTRIBUTE, parentBlameKeys.size());
+        CompletableFuture<Map<BlameKey, FileBlame>> futureBlamesAtParentCommits = Futures.endSpan(blameSpan,
+                parentBlameKeys.isEmpty()
+                        ? CompletableFuture.completedFuture(Collections.<BlameKey, FileBlame>emptyMap())
+                        : Tracer.getDefault().inSpan(blameSpan, () -> blameProvider.getBlamesAsync(parentBlameKeys, false,
+                        analysisContext.gitHubToken)));
+
+        return Futures.endSpan(span, futureBlamesAtParentCommits.thenApplyAsync(blamesAtParentCommits -> {
+            Metrics.getDefault().recordStage(BLAME_PARENT_COMMITS_STAGE, startNanos);
+            List<AuthorsAndCommits> authorsAndCommitsOfRanges = new ArrayList<>(journaledAuthorsAndCommits);
+            parentCommitsToBlame.forEach((hunkIndex, parentCommitHashes) -> parentCommitHashes.forEach(parentCommitHash -> {
+                FileBlame blameAtParentCommit = blamesAtParentCommits.get(new BlameKey(repoLocation, parentCommitHash, fileName));
+                if (blameAtParentCommit == null) {
+                    return;
+                }
+                int startingLineNo = fileChange.getOldStartingLine(hunkIndex);
+                int endLineNo = fileChange.getOldEndingLine(hunkIndex);
+                AuthorsAndCommits authorsAndCommitsOfRange = readBlameForAuthors(blameAtParentCommit, startingLineNo, endLineNo);
+                analysisJournal.recordAuthorsAndCommits(repoLocation, parentCommitHash, fileName, startingLineNo, endLineNo,
+                        authorsAndCommitsOfRange);
+                authorsAndCommitsOfRanges.add(authorsAndCommitsOfRange);
+            }));
+            AuthorsAndCommits authorsAndCommits = AuthorsAndCommits.mergeAll(authorsAndCommitsOfRanges);
+            logger.info("Authors of the bug lines of code in file " + fileName + " which are being fixed from the given patch are found successfully");
+            return authorsAndCommits;
+        }, forkJoinPool));
+    }
 
+    /**
+     * Finds the authors and commits of the old lines of the hunks changed in the files with a single blame of each file
+     * at the first parent of the commit, blaming only the files having a hunk which is not found in the journal
+     */
+    private CompletableFuture<AuthorsAndCommits> analyseFilesAtFirstParent(AnalysisContext analysisContext, String repoLocation,
+                                                                           String commitHash, List<FileChange> changedFiles,
+                                                                           Tracer.Span parentSpan) {
+        String firstParentCommit = commitHash + FIRST_PARENT_SUFFIX;
+        List<AuthorsAndCommits> journaledAuthorsAndCommits = new ArrayList<>();
+        List<FileChange> filesToBlame = new ArrayList<>();
+        for (FileChange fileChange : changedFiles) {
+            List<Integer> hunkIndexes = findHunksWithOldLines(fileChange);
+            List<AuthorsAndCommits> journaledAuthorsAndCommitsOfFile = new ArrayList<>();
+            for (int hunkIndex : hunkIndexes) {
+                AuthorsAndCommits authorsAndCommits = analysisJournal.getAuthorsAndCommits(repoLocation, firstParentCommit,
+                        fileChange.getPath(), fileChange.getOldStartingLine(hunkIndex), fileChange.getOldEndingLine(hunkIndex));
+                if (authorsAndCommits == null) {
+                    break;
+                }
+                journaledAuthorsAndCommitsOfFile.add(authorsAndCommits);
+            }
+            // a file is blamed again unless all of its hunks are found in the journal
+            if (journaledAuthorsAndCommitsOfFile.size() == hunkIndexes.size()) {
+                journaledAuthorsAndCommits.addAll(journaledAuthorsAndCommitsOfFile);
+            } else {
+                filesToBlame.add(fileChange);
+            }
+        }
+
+        //            getting the blame information of all the files at the first parent at once
+        long startNanos = System.nanoTime();
+        List<BlameKey> blameKeys = filesToBlame.stream()
+                .map(fileChange -> new BlameKey(repoLocation, firstParentCommit, fileChange.getPath()))
+                .collect(Collectors.toList());
+        Tracer.Span blameSpan = Tracer.getDefault().startDetachedSpan(PARENT_BLAME_SPAN, parentSpan);
+        blameSpan.setAttribute(Tracer.BLAME_COUNT_ATTRIBUTE, blameKeys.size());
+        CompletableFuture<Map<BlameKey, FileBlame>> futureBlames = Futures.endSpan(blameSpan, blameKeys.isEmpty()
+                ? CompletableFuture.completedFuture(Collections.<BlameKey, FileBlame>emptyMap())
+                : Tracer.getDefault().inSpan(blameSpan, () -> blameProvider.getBlamesAsync(blameKeys, false,
+                analysisContext.gitHubToken)));
+
+        return futureBlames.thenApplyAsync(blames -> {
+            Metrics.getDefault().recordStage(BLAME_FIRST_PARENT_STAGE, startNanos);
+            List<AuthorsAndCommits> authorsAndCommitsOfHunks = new ArrayList<>(journaledAuthorsAndCommits);
+            for (FileChange fileChange : filesToBlame) {
+                FileBlame blame = blames.get(new BlameKey(repoLocation, firstParentCommit, fileChange.getPath()));
+                if (blame == null) {
+                    continue;
+                }
+                readBlameAtFirstParent(blame, fileChange).forEach((hunkIndex, authorsAndCommits) -> {
+                    analysisJournal.recordAuthorsAndCommits(repoLocation, firstParentCommit, fileChange.getPath(),
+                            fileChange.getOldStartingLine(hunkIndex), fileChange.getOldEndingLine(hunkIndex), authorsAndCommits);
+                    authorsAndCommitsOfHunks.add(authorsAndCommits);
                 });
+                logger.info("Authors of the bug lines of code in file " + fileChange.getPath()
+                        + " which are being fixed from the given patch are found successfully");
+            }
+            return AuthorsAndCommits.mergeAll(authorsAndCommitsOfHunks);
+        }, forkJoinPool);
     }
 
     /**
-     * Finding the authors of the commits
-     *
-     * @param owner                                         owner of the repository
-     * @param repositoryName                                repository name
-     * @param fileName                                      name of the file which is required to get blame details
-     * @param arrayListOfRelevantChangedLinesOfSelectedFile arraylist containing the changed line ranges of the current selected file
-     * @param gitHubToken                                   github token for accessing github GraphQL API
+     * Finds the hunks of a file which changed or removed lines of the old file, skipping the hunks which only added
+     * lines as they have no old lines to blame
      */
-    public void iterateOverToFindAuthors(String owner, String repositoryName, String fileName, ArrayList<String> arrayListOfRelevantChangedLinesOfSelectedFile, String gitHubToken) {
-
-        for (Map.Entry m : commitHashesMapOfTheParent.entrySet()) {
-            String oldRange = (String) m.getKey();
-            Set<String> commitHashes = (Set<String>) m.getValue();
-            commitHashes.parallelStream()
-                    .forEach(parentCommitHashForCallingGraphQl -> {
-                        graphqlApiJsonObject.put("query", "{repository(owner:\"" + owner + "\",name:\"" + repositoryName + "\"){object(expression:\"" + parentCommitHashForCallingGraphQl + "\"){ ... on Commit{blame(path:\"" + fileName + "\"){ranges{startingLine endingLine age commit{ url author { name email } } } } } } } }");
-                        JSONObject rootJsonObject = null;
-                        try {
-                            rootJsonObject = (JSONObject) graphQlApiCaller.callGraphQlApi(graphqlApiJsonObject, gitHubToken);
-                            readBlameReceivedForAFile(rootJsonObject, arrayListOfRelevantChangedLinesOfSelectedFile, true, oldRange);
-                        } catch (CodeQualityMatricesException e) {
-                            logger.error(e.getMessage(), e.getCause());
-                            System.exit(1);
-                        }
-                    });
+    private static List<Integer> findHunksWithOldLines(FileChange fileChange) {
+        List<Integer> hunkIndexes = new ArrayList<>();
+        for (int hunkIndex = 0; hunkIndex < fileChange.getHunkCount(); hunkIndex++) {
+            if (!fileChange.isNewFileHunk(hunkIndex)
+                    && fileChange.getOldEndingLine(hunkIndex) >= fileChange.getOldStartingLine(hunkIndex)) {
+                hunkIndexes.add(hunkIndex);
+            }
         }
+        return hunkIndexes;
     }
-}
 
+    /**
+     * Merges the results of the given futures once all of them are completed
+     */
+    private static CompletableFuture<AuthorsAndCommits> mergeAll(List<CompletableFuture<AuthorsAndCommits>> futureResults) {
+        return Futures.allOf(futureResults).thenApply(AuthorsAndCommits::mergeAll);
+    }
 
+    /**
+     * Stops the threads of the pool once the analyses in flight are finished, after which no more commits can be analysed
+     */
+    @Override
+    public void close() {
+        forkJoinPool.shutdown();
+    }
+
+    /**
+     * Holds the details which are common to all the stages of a single analysis
+     */
+    private static final class AnalysisContext {
+        private final String gitHubToken;
+        private final RestApiCaller restApiCaller;
+        private final SdkGitHubClient sdkGitHubClient;
+
+        private AnalysisContext(String gitHubToken, RestApiCaller restApiCaller, SdkGitHubClient sdkGitHubClient) {
+            this.gitHubToken = gitHubToken;
+            this.restApiCaller = restApiCaller;
+            this.sdkGitHubClient = sdkGitHubClient;
+        }
+    }
+}
@@ -0,0 +1,264 @@
+/*
+ * Copyright (c) 2017, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ *
+ * WSO2 Inc. licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+
+package com.wso2.code.quality.matrices;
+
+import org.apache.log4j.Logger;
+import org.eclipse.jgit.lib.ObjectId;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.regex.Pattern;
+
+/**
+ * Memory mapped index from the commits to the repositories containing them, written by the CommitIndexBuilder from
+ * the local mirrors of the repositories. It answers which repositories hold a commit without calling the github
+ * search API.
+ * <p>
+ * The index file holds, in order, a header, the names of the repositories with the commits they pointed to when the
+ * index was written, a Bloom filter of all the commits, and the entries, each of which is a 20 byte binary commit
+ * hash followed by the ordinal of a repository containing it. The entries are sorted by the commit hash, so a commit
+ * is looked up with a binary search over the mapped file, while the Bloom filter answers most of the commits which
+ * are not in the index without touching the entries.
+ *
+ * @since 1.0.0
+ */
+
+public final class CommitIndex implements Closeable {
+
+    private static final Logger logger = Logger.getLogger(CommitIndex.class);
+
+    static final int MAGIC = 0x43514d49;
+    static final int VERSION = 1;
+    static final int HASH_BYTES = 20;
+    static final int ENTRY_BYTES = HASH_BYTES + Integer.BYTES;
+    static final int BLOOM_FILTER_BITS_PER_ENTRY = 10;
+    static final int BLOOM_FILTER_HASH_COUNT = 7;
+
+    private static final String INDEX_FILE_PROPERTY = "cqm.commitIndex.file";
+    private static final Pattern FULL_COMMIT_HASH_PATTERN = Pattern.compile("[0-9a-fA-F]{40}");
+
+    private final FileChannel fileChannel;
+    private final MappedByteBuffer buffer;
+    private final List<String> repositories;
+    private final Map<String, List<ObjectId>> tipsOfRepositories;
+    private final int bloomFilterOffset;
+    private final long bloomFilterBits;
+    private final int entriesOffset;
+    private final int entryCount;
+
+    private CommitIndex(FileChannel fileChannel, MappedByteBuffer buffer) throws IOException {
+        this.fileChannel = fileChannel;
+        this.buffer = buffer;
+        ByteBuffer header = buffer.duplicate();
+        if (header.getInt() != MAGIC || header.getInt() != VERSION) {
+            throw new IOException("Not a commit index of version " + VERSION);
+        }
+        int repositoryCount = header.getInt();
+        this.entryCount = header.getInt();
+        int bloomFilterWords = header.getInt();
+
+        List<String> repositoryNames = new ArrayList<>(repositoryCount);
+        Map<String, List<ObjectId>> tips = new LinkedHashMap<>();
+        byte[] hash = new byte[HASH_BYTES];
+        for (int i = 0; i < repositoryCount; i++) {
+            byte[] name = new byte[header.getShort() & 0xffff];
+            header.get(name);
+            String repository = new String(name, StandardCharsets.UTF_8);
+            int tipCount = header.getInt();
+            List<ObjectId> tipsOfRepository = new ArrayList<>(tipCount);
+            for (int j = 0; j < tipCount; j++) {
+                header.get(hash);
+                tipsOfRepository.add(ObjectId.fromRaw(hash));
+            }
+            repositoryNames.add(repository);
+            tips.put(repository, Collections.unmodifiableList(tipsOfRepository));
+        }
+        this.repositories = Collections.unmodifiableList(repositoryNames);
+        this.tipsOfRepositories = Collections.unmodifiableMap(tips);
+        this.bloomFilterOffset = header.position();
+        this.bloomFilterBits = (long) bloomFilterWords * Long.SIZE;
+        this.entriesOffset = bloomFilterOffset + bloomFilterWords * Long.BYTES;
+        if (entriesOffset + (long) entryCount * ENTRY_BYTES > buffer.capacity()) {
+            throw new IOException("Commit index is truncated");
+        }
+    }
+
+    /**
+     * Opens the index in the given file
+     *
+     * @param indexFile file written by the CommitIndexBuilder
+     * @return the index
+     * @throws CodeQualityMatricesException if the file could not be read as a commit index
+     */
+    public static CommitIndex open(Path indexFile) throws CodeQualityMatricesException {
+        FileChannel fileChannel = null;
+        try {
+            fileChannel = FileChannel.open(indexFile, StandardOpenOption.READ);
+            return new CommitIndex(fileChannel, fileChannel.map(FileChannel.MapMode.READ_ONLY, 0, fileChannel.size()));
+        } catch (IOException e) {
+            if (fileChannel != null) {
+                try {
+                    fileChannel.close();
+                } catch (IOException closeException) {
+                    e.addSuppressed(closeException);
+                }
+            }
+            throw new CodeQualityMatricesException("IOException occurred when opening the commit index " + indexFile, e);
+        }
+    }
+
+    /**
+     * Opens the index given in the cqm.commitIndex.file system property
+     *
+     * @return the index, or null if no index is given or it could not be opened
+     */
+    public static CommitIndex fromSystemProperties() {
+        String indexFile = System.getProperty(INDEX_FILE_PROPERTY);
+        if (indexFile == null) {
+            return null;
+        }
+        try {
+            CommitIndex commitIndex = open(Paths.get(indexFile));
+            logger.info("Commit index " + indexFile + " of " + commitIndex.getEntryCount() + " commits is opened");
+            return commitIndex;
+        } catch (CodeQualityMatricesException e) {
+            logger.warn("Repositories of the commits will be searched on github as the commit index could not be opened", e);
+            return null;
+        }
+    }
+
+    /**
+     * Finds the repositories containing the given commit
+     *
+     * @param commitHash full hash of the commit
+     * @return the repositories containing the commit in the owner/name form, which is empty if the commit is not in
+     * the index or the hash is not a full commit hash
+     */
+    public List<String> findRepositories(String commitHash) {
+        if (commitHash == null || !FULL_COMMIT_HASH_PATTERN.matcher(commitHash).matches()) {
+            return Collections.emptyList();
+        }
+        byte[] hash = new byte[HASH_BYTES];
+        ObjectId.fromString(commitHash.toLowerCase()).copyRawTo(hash, 0);
+        if (!mightContain(hash)) {
+            return Collections.emptyList();
+        }
+        // finds the first entry of the commit, the entries of a commit held by several repositories are adjacent
+        int low = 0;
+        int high = entryCount;
+        while (low < high) {
+            int middle = (low + high) >>> 1;
+            if (compareHashOfEntry(middle, hash) < 0) {
+                low = middle + 1;
+            } else {
+                high = middle;
+            }
+        }
+        List<String> repositoriesOfCommit = new ArrayList<>(1);
+        for (int i = low; i < entryCount && compareHashOfEntry(i, hash) == 0; i++) {
+            repositoriesOfCommit.add(repositories.get(buffer.getInt(entriesOffset + i * ENTRY_BYTES + HASH_BYTES)));
+        }
+        return repositoriesOfCommit;
+    }
+
+    /**
+     * Checks the Bloom filter for the given commit
+     *
+     * @return false if the commit is surely not in the index
+     */
+    boolean mightContain(byte[] hash) {
+        if (bloomFilterBits == 0) {
+            return false;
+        }
+        for (int i = 0; i < BLOOM_FILTER_HASH_COUNT; i++) {
+            long bit = bloomFilterBit(hash, i, bloomFilterBits);
+            long word = buffer.getLong(bloomFilterOffset + (int) (bit / Long.SIZE) * Long.BYTES);
+            if ((word & (1L << (bit % Long.SIZE))) == 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Returns a bit of the Bloom filter for the given commit. A commit hash is already uniformly distributed, so two
+     * of its words are combined into each of the hashes of the filter instead of hashing it again.
+     */
+    static long bloomFilterBit(byte[] hash, int hashNo, long bloomFilterBits) {
+        long first = ByteBuffer.wrap(hash, 0, Long.BYTES).getLong();
+        long second = ByteBuffer.wrap(hash, Long.BYTES, Long.BYTES).getLong();
+        return Math.floorMod(first + hashNo * second, bloomFilterBits);
+    }
+
+    private int compareHashOfEntry(int entryNo, byte[] hash) {
+        int position = entriesOffset + entryNo * ENTRY_BYTES;
+        for (int i = 0; i < HASH_BYTES; i++) {
+            int difference = (buffer.get(position + i) & 0xff) - (hash[i] & 0xff);
+            if (difference != 0) {
+                return difference;
+            }
+        }
+        return 0;
+    }
+
+    public int getEntryCount() {
+        return entryCount;
+    }
+
+    public List<String> getRepositories() {
+        return repositories;
+    }
+
+    /**
+     * Returns the commits each repository pointed to when the index was written, from which a later update walks
+     */
+    Map<String, List<ObjectId>> getTipsOfRepositories() {
+        return tipsOfRepositories;
+    }
+
+    ObjectId getCommitOfEntry(int entryNo) {
+        byte[] hash = new byte[HASH_BYTES];
+        ByteBuffer entry = buffer.duplicate();
+        entry.position(entriesOffset + entryNo * ENTRY_BYTES);
+        entry.get(hash);
+        return ObjectId.fromRaw(hash);
+    }
+
+    int getRepositoryOrdinalOfEntry(int entryNo) {
+        return buffer.getInt(entriesOffset + entryNo * ENTRY_BYTES + HASH_BYTES);
+    }
+
+    @Override
+    public void close() throws IOException {
+        fileChannel.close();
+    }
+}
@@ -0,0 +1,250 @@
+/*
+ * Copyright (c) 2017, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ *
+ * WSO2 Inc. licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+
+package com.wso2.code.quality.matrices;
+
+import org.apache.log4j.Logger;
+import org.eclipse.jgit.lib.ObjectId;
+import org.eclipse.jgit.lib.Ref;
+import org.eclipse.jgit.lib.RefDatabase;
+import org.eclipse.jgit.lib.Repository;
+import org.eclipse.jgit.revwalk.RevCommit;
+import org.eclipse.jgit.revwalk.RevObject;
+import org.eclipse.jgit.revwalk.RevWalk;
+import org.eclipse.jgit.storage.file.FileRepositoryBuilder;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * This class is used for writing the CommitIndex of the local mirrors of the repositories. The mirror of a
+ * repository owner/name is looked for as owner/name.git or owner/name inside the mirror directory, as in the
+ * JGitBlameProvider.
+ * <p>
+ * When the index file already exists, only the commits which are not reachable from the commits the repositories
+ * pointed to when the index was written are walked, so the index is updated cheaply after each fetch of the mirrors.
+ * The new index is written next to the old one and moved over it, so readers never see a half written index.
+ *
+ * @since 1.0.0
+ */
+
+public class CommitIndexBuilder {
+
+    private static final Logger logger = Logger.getLogger(CommitIndexBuilder.class);
+
+    private static final String GIT_DIRECTORY_SUFFIX = ".git";
+
+    /**
+     * Writes or updates the index of all the mirrors in the given directory
+     *
+     * @param mirrorDirectory directory containing the mirrors of the repositories
+     * @param indexFile       file of the index
+     * @return the number of commits added to the index
+     * @throws CodeQualityMatricesException if the mirrors could not be walked or the index could not be written
+     */
+    public int build(Path mirrorDirectory, Path indexFile) throws CodeQualityMatricesException {
+        List<String> repositories = new ArrayList<>();
+        Map<String, List<ObjectId>> tipsOfRepositories = new LinkedHashMap<>();
+        List<Entry> entries = new ArrayList<>();
+
+        if (Files.exists(indexFile)) {
+            try (CommitIndex commitIndex = CommitIndex.open(indexFile)) {
+                repositories.addAll(commitIndex.getRepositories());
+                tipsOfRepositories.putAll(commitIndex.getTipsOfRepositories());
+                for (int i = 0; i < commitIndex.getEntryCount(); i++) {
+                    entries.add(new Entry(commitIndex.getCommitOfEntry(i), commitIndex.getRepositoryOrdinalOfEntry(i)));
+                }
+            } catch (IOException e) {
+                throw new CodeQualityMatricesException("IOException occurred when reading the commit index " + indexFile, e);
+            }
+        }
+        int existingEntryCount = entries.size();
+
+        for (String repoLocation : findMirroredRepositories(mirrorDirectory)) {
+            if (!repositories.contains(repoLocation)) {
+                repositories.add(repoLocation);
+            }
+            int ordinal = repositories.indexOf(repoLocation);
+            List<ObjectId> tips = walkNewCommits(JGitBlameProvider.findGitDirectory(mirrorDirectory, repoLocation),
+                    tipsOfRepositories.getOrDefault(repoLocation, Collections.emptyList()), ordinal, entries);
+            tipsOfRepositories.put(repoLocation, tips);
+        }
+
+        Collections.sort(entries);
+        List<Entry> distinctEntries = new ArrayList<>(entries.size());
+        for (Entry entry : entries) {
+            if (distinctEntries.isEmpty() || distinctEntries.get(distinctEntries.size() - 1).compareTo(entry) != 0) {
+                distinctEntries.add(entry);
+            }
+        }
+        write(indexFile, repositories, tipsOfRepositories, distinctEntries);
+        int addedEntryCount = distinctEntries.size() - existingEntryCount;
+        logger.info(addedEntryCount + " commits are added to the commit index " + indexFile + " of " + distinctEntries.size() + " commits");
+        return addedEntryCount;
+    }
+
+    /**
+     * Finds the repositories mirrored in the given directory in the owner/name form
+     */
+    private List<String> findMirroredRepositories(Path mirrorDirectory) throws CodeQualityMatricesException {
+        List<String> repositories = new ArrayList<>();
+        try (DirectoryStream<Path> owners = Files.newDirectoryStream(mirrorDirectory, Files::isDirectory)) {
+            for (Path owner : owners) {
+                try (DirectoryStream<Path> names = Files.newDirectoryStream(owner, Files::isDirectory)) {
+                    for (Path name : names) {
+                        String fileName = name.getFileName().toString();
+                        String repoLocation = owner.getFileName() + "/" + (fileName.endsWith(GIT_DIRECTORY_SUFFIX)
+                                ? fileName.substring(0, fileName.length() - GIT_DIRECTORY_SUFFIX.length()) : fileName);
+                        if (JGitBlameProvider.findGitDirectory(mirrorDirectory, repoLocation) != null && !repositories.contains(repoLocation)) {
+                            repositories.add(repoLocation);
+                        }
+                    }
+                }
+            }
+        } catch (IOException e) {
+            throw new CodeQualityMatricesException("IOException occurred when looking for the mirrors in " + mirrorDirectory, e);
+        }
+        Collections.sort(repositories);
+        return repositories;
+    }
+
+    /**
+     * Adds the commits of the repository which are not reachable from the given old tips to the entries
+     *
+     * @return the commits pointed to by the refs of the repository, which are the tips of the next update
+     */
+    private List<ObjectId> walkNewCommits(File gitDirectory, List<ObjectId> oldTips, int ordinal, List<Entry> entries)
+            throws CodeQualityMatricesException {
+        try (Repository repository = new FileRepositoryBuilder().setGitDir(gitDirectory).setMustExist(true).build();
+             RevWalk revWalk = new RevWalk(repository)) {
+            revWalk.setRetainBody(false);
+            Set<ObjectId> tips = new LinkedHashSet<>();
+            for (Ref ref : repository.getRefDatabase().getRefs(RefDatabase.ALL).values()) {
+                if (ref.getObjectId() == null) {
+                    continue;
+                }
+                // annotated tags are peeled to the commits they point to
+                RevObject object = revWalk.peel(revWalk.parseAny(ref.getObjectId()));
+                if (object instanceof RevCommit) {
+                    revWalk.markStart((RevCommit) object);
+                    tips.add(object.copy());
+                }
+            }
+            for (ObjectId oldTip : oldTips) {
+                // a tip removed by a forced push is no longer in the mirror, its commits are kept in the index
+                if (repository.hasObject(oldTip)) {
+                    revWalk.markUninteresting(revWalk.parseCommit(oldTip));
+                }
+            }
+            int addedCommits = 0;
+            for (RevCommit commit : revWalk) {
+                entries.add(new Entry(commit.copy(), ordinal));
+                addedCommits++;
+            }
+            logger.info(addedCommits + " new commits are found in the mirror " + gitDirectory);
+            return new ArrayList<>(tips);
+        } catch (IOException e) {
+            throw new CodeQualityMatricesException("IOException occurred when walking the commits of the mirror " + gitDirectory, e);
+        }
+    }
+
+    private void write(Path indexFile, List<String> repositories, Map<String, List<ObjectId>> tipsOfRepositories,
+                       List<Entry> entries) throws CodeQualityMatricesException {
+        int bloomFilterWords = entries.isEmpty() ? 0
+                : (int) ((long) entries.size() * CommitIndex.BLOOM_FILTER_BITS_PER_ENTRY / Long.SIZE + 1);
+        long[] bloomFilter = new long[bloomFilterWords];
+        byte[] hash = new byte[CommitIndex.HASH_BYTES];
+        for (Entry entry : entries) {
+            entry.commit.copyRawTo(hash, 0);
+            for (int i = 0; i < CommitIndex.BLOOM_FILTER_HASH_COUNT; i++) {
+                long bit = CommitIndex.bloomFilterBit(hash, i, (long) bloomFilterWords * Long.SIZE);
+                bloomFilter[(int) (bit / Long.SIZE)] |= 1L << (bit % Long.SIZE);
+            }
+        }
+
+        Path temporaryFile = indexFile.resolveSibling(indexFile.getFileName() + ".tmp");
+        try {
+            if (indexFile.getParent() != null) {
+                Files.createDirectories(indexFile.getParent());
+            }
+            try (DataOutputStream outputStream = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(temporaryFile)))) {
+                outputStream.writeInt(CommitIndex.MAGIC);
+                outputStream.writeInt(CommitIndex.VERSION);
+                outputStream.writeInt(repositories.size());
+                outputStream.writeInt(entries.size());
+                outputStream.writeInt(bloomFilterWords);
+                for (String repository : repositories) {
+                    byte[] name = repository.getBytes(StandardCharsets.UTF_8);
+                    outputStream.writeShort(name.length);
+                    outputStream.write(name);
+                    List<ObjectId> tips = tipsOfRepositories.getOrDefault(repository, Collections.emptyList());
+                    outputStream.writeInt(tips.size());
+                    for (ObjectId tip : tips) {
+                        tip.copyRawTo(hash, 0);
+                        outputStream.write(hash);
+                    }
+                }
+                for (long word : bloomFilter) {
+                    outputStream.writeLong(word);
+                }
+                for (Entry entry : entries) {
+                    entry.commit.copyRawTo(hash, 0);
+                    outputStream.write(hash);
+                    outputStream.writeInt(entry.ordinal);
+                }
+            }
+            Files.move(temporaryFile, indexFile, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            throw new CodeQualityMatricesException("IOException occurred when writing the commit index " + indexFile, e);
+        }
+    }
+
+    /**
+     * A commit held by a repository, ordered by the commit hash and then by the repository
+     */
+    private static final class Entry implements Comparable<Entry> {
+        private final ObjectId commit;
+        private final int ordinal;
+
+        private Entry(ObjectId commit, int ordinal) {
+            this.commit = commit;
+            this.ordinal = ordinal;
+        }
+
+        @Override
+        public int compareTo(Entry other) {
+            int comparison = commit.compareTo(other.commit);
+            return comparison != 0 ? comparison : Integer.compare(ordinal, other.ordinal);
+        }
+    }
+}
@@ -0,0 +1,47 @@
+/*
+ * Copyright (c) 2017, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ *
+ * WSO2 Inc. licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+
+package com.wso2.code.quality.matrices;
+
+import org.apache.log4j.Logger;
+
+import java.nio.file.Paths;
+
+/**
+ * This is the class having the main method for writing the commit index of the local mirrors of the repositories
+ * The directory of the mirrors and the index file should be passed in order as command line arguments when running
+ * the application. It should be run again after fetching the mirrors, which only adds the new commits to the index.
+ */
+public class CommitIndexMainClass {
+    private final static Logger logger = Logger.getLogger(CommitIndexMainClass.class);
+
+    public static void main(String[] args) {
+        logger.info(" Commit index main method got executed");
+        if (args.length != 2) {
+            logger.error("at least one of the command line arguments are null.");
+            System.exit(4);
+        }
+        try {
+            new CommitIndexBuilder().build(Paths.get(args[0]), Paths.get(args[1]));
+        } catch (CodeQualityMatricesException e) {
+            logger.error(e.getMessage(), e.getCause());
+            System.exit(1);
+        }
+    }
+}
@@ -0,0 +1,110 @@
+/*
+ * Copyright (c) 2017, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ *
+ * WSO2 Inc. licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.wso2.code.quality.matrices;
+
+import org.apache.log4j.Logger;
+
+import java.util.Locale;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * The ways in which the API calls of the analysis are executed, selected with the cqm.executionMode system property.
+ * In the async mode the calls are multiplexed by the non-blocking client of the HttpTransport. In the platform and
+ * virtual modes each call blocks a thread of its own on the pooled blocking client, a platform thread of a fixed pool
+ * or a new virtual thread. Virtual threads are only available when the jar is built with the jdk21 profile and run on
+ * JDK 21 or later.
+ *
+ * @since 1.0.0
+ */
+
+public enum ExecutionMode {
+
+    ASYNC,
+    PLATFORM,
+    VIRTUAL;
+
+    private static final Logger logger = Logger.getLogger(ExecutionMode.class);
+
+    private static final String EXECUTION_MODE_PROPERTY = "cqm.executionMode";
+    private static final String VIRTUAL_THREADS_CLASS = "com.wso2.code.quality.matrices.VirtualThreads";
+
+    /**
+     * Returns the mode given in the cqm.executionMode system property, or the async mode if it is not given. The
+     * platform mode is returned instead of the virtual mode when virtual threads are not available
+     *
+     * @return the selected execution mode
+     */
+    public static ExecutionMode fromSystemProperties() {
+        ExecutionMode executionMode = valueOf(System.getProperty(EXECUTION_MODE_PROPERTY, ASYNC.name())
+                .trim().toUpperCase(Locale.ENGLISH));
+        if (executionMode == VIRTUAL && !isVirtualThreadsAvailable()) {
+            logger.warn("Virtual threads are not available in this build or JVM, so platform threads are used instead");
+            return PLATFORM;
+        }
+        return executionMode;
+    }
+
+    /**
+     * @return true if the virtual threads can be used, that is the jar was built with the jdk21 profile and runs on
+     * JDK 21 or later
+     */
+    public static boolean isVirtualThreadsAvailable() {
+        try {
+            Class.forName(VIRTUAL_THREADS_CLASS);
+            return true;
+        } catch (ClassNotFoundException | LinkageError e) {
+            return false;
+        }
+    }
+
+    /**
+     * @return true if the calls of this mode block the thread executing them
+     */
+    public boolean isBlocking() {
+        return this != ASYNC;
+    }
+
+    /**
+     * Creates an executor for the blocking tasks of this mode. The virtual mode starts a new virtual thread for each
+     * task, while the other modes run the tasks on a fixed pool of daemon platform threads
+     *
+     * @param threadNamePrefix prefix of the names of the threads, which are numbered from 1 onwards
+     * @param platformThreads  number of the threads of the pool, which is not used by the virtual mode
+     * @return the created executor, which should be shut down once it is no longer needed
+     */
+    public ExecutorService newTaskExecutor(String threadNamePrefix, int platformThreads) {
+        if (this == VIRTUAL) {
+            try {
+                return (ExecutorService) Class.forName(VIRTUAL_THREADS_CLASS)
+                        .getDeclaredMethod("newThreadPerTaskExecutor", String.class)
+                        .invoke(null, threadNamePrefix);
+            } catch (ReflectiveOperationException | LinkageError e) {
+                throw new IllegalStateException("Virtual threads need a build of the jdk21 profile running on JDK 21 or later", e);
+            }
+        }
+        AtomicInteger threadCount = new AtomicInteger();
+        return Executors.newFixedThreadPool(Math.max(1, platformThreads), runnable -> {
+            Thread thread = new Thread(runnable, threadNamePrefix + threadCount.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+}
@@ -0,0 +1,269 @@
+/*
+ * Copyright (c) 2017, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ *
+ * WSO2 Inc. licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.wso2.code.quality.matrices;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Immutable and compact form of the blame of a file at a commit. Each blame range is kept as a set of primitive and
+ * string array entries at the same index, instead of the objects of the response received from the github GraphQL API.
+ * Equal commit hashes and author names of different ranges share the same String instance.
+ * <p>
+ * The ranges are sorted by their lines and do not overlap, so the ranges containing a line or overlapping a line
+ * range are found with a binary search.
+ *
+ * @since 1.0.0
+ */
+
+public final class FileBlame {
+
+    // rough sizes used for weighing a blame held in memory
+    private static final int OBJECT_OVERHEAD_BYTES = 16;
+    private static final int ARRAY_OVERHEAD_BYTES = 16;
+    private static final int REFERENCE_BYTES = 8;
+
+    private final int[] startingLines;
+    private final int[] endingLines;
+    private final int[] ages;
+    private final String[] commitHashes;
+    private final String[] parentCommitHashes;
+    private final String[] authorNames;
+    private final boolean parentCommitsIncluded;
+
+    private FileBlame(int[] startingLines, int[] endingLines, int[] ages, String[] commitHashes, String[] parentCommitHashes,
+                      String[] authorNames, boolean parentCommitsIncluded) {
+        this.startingLines = startingLines;
+        this.endingLines = endingLines;
+        this.ages = ages;
+        this.commitHashes = commitHashes;
+        this.parentCommitHashes = parentCommitHashes;
+        this.authorNames = authorNames;
+        this.parentCommitsIncluded = parentCommitsIncluded;
+    }
+
+    public int getRangeCount() {
+        return startingLines.length;
+    }
+
+    public int getStartingLine(int rangeIndex) {
+        return startingLines[rangeIndex];
+    }
+
+    public int getEndingLine(int rangeIndex) {
+        return endingLines[rangeIndex];
+    }
+
+    public int getAge(int rangeIndex) {
+        return ages[rangeIndex];
+    }
+
+    public String getCommitHash(int rangeIndex) {
+        return commitHashes[rangeIndex];
+    }
+
+    /**
+     * @param rangeIndex index of the blame range
+     * @return the parent of the commit of the range or null if the commit has no parent or the parents were not queried
+     */
+    public String getParentCommitHash(int rangeIndex) {
+        return parentCommitHashes[rangeIndex];
+    }
+
+    public String getAuthorName(int rangeIndex) {
+        return authorNames[rangeIndex];
+    }
+
+    /**
+     * @return true if the parent commits of the ranges were queried together with this blame
+     */
+    public boolean hasParentCommits() {
+        return parentCommitsIncluded;
+    }
+
+    /**
+     * Finds the blame range which the given line belongs to
+     *
+     * @param lineNo line number to be searched
+     * @return the index of the blame range containing the line or -1 if there is no such range
+     */
+    public int findRangeIndexOfLine(int lineNo) {
+        int i = findLastRangeIndexStartingAtOrBefore(lineNo);
+        return (i >= 0 && endingLines[i] >= lineNo) ? i : -1;
+    }
+
+    /**
+     * Finds the first blame range overlapping a non empty line range. As the blame ranges are sorted and do not overlap each
+     * other, the ranges overlapping a line range are the ranges from this index up to the index given by
+     * findLastRangeIndexOverlapping, so a line range is resolved without checking each of its lines
+     *
+     * @param startingLine first line of the line range
+     * @return the index of the first blame range ending at or after the starting line, or the number of ranges if
+     * there is no such range
+     */
+    public int findFirstRangeIndexOverlapping(int startingLine) {
+        int low = 0;
+        int high = endingLines.length;
+        while (low < high) {
+            int middle = (low + high) >>> 1;
+            if (endingLines[middle] < startingLine) {
+                low = middle + 1;
+            } else {
+                high = middle;
+            }
+        }
+        return low;
+    }
+
+    /**
+     * Finds the last blame range overlapping a non empty line range
+     *
+     * @param endingLine last line of the line range
+     * @return the index of the last blame range starting at or before the ending line, or -1 if there is no such range
+     */
+    public int findLastRangeIndexOverlapping(int endingLine) {
+        return findLastRangeIndexStartingAtOrBefore(endingLine);
+    }
+
+    private int findLastRangeIndexStartingAtOrBefore(int lineNo) {
+        int low = 0;
+        int high = startingLines.length;
+        while (low < high) {
+            int middle = (low + high) >>> 1;
+            if (startingLines[middle] <= lineNo) {
+                low = middle + 1;
+            } else {
+                high = middle;
+            }
+        }
+        return low - 1;
+    }
+
+    /**
+     * Estimates the number of bytes this blame takes in memory
+     *
+     * @return the estimated size of this blame in bytes
+     */
+    public int getWeight() {
+        int weight = OBJECT_OVERHEAD_BYTES + 6 * ARRAY_OVERHEAD_BYTES + getRangeCount() * (3 * Integer.BYTES + 3 * REFERENCE_BYTES);
+        // strings are shared between the ranges, so each distinct string is only counted once
+        Map<String, Boolean> countedStrings = new HashMap<>();
+        for (String[] strings : Arrays.asList(commitHashes, parentCommitHashes, authorNames)) {
+            for (String string : strings) {
+                if (string != null && countedStrings.put(string, Boolean.TRUE) == null) {
+                    weight += OBJECT_OVERHEAD_BYTES + ARRAY_OVERHEAD_BYTES + string.length() * 2;
+                }
+            }
+        }
+        return weight;
+    }
+
+    /**
+     * Builds a blame range by range
+     */
+    public static final class Builder {
+        private final boolean parentCommitsIncluded;
+        private final Map<String, String> sharedStrings = new HashMap<>();
+        private int[] startingLines = new int[16];
+        private int[] endingLines = new int[16];
+        private int[] ages = new int[16];
+        private String[] commitHashes = new String[16];
+        private String[] parentCommitHashes = new String[16];
+        private String[] authorNames = new String[16];
+        private int rangeCount;
+
+        public Builder(boolean parentCommitsIncluded) {
+            this.parentCommitsIncluded = parentCommitsIncluded;
+        }
+
+        /**
+         * Adds a blame range, the ranges are sorted by their lines when the blame is built
+         */
+        public Builder addRange(int startingLine, int endingLine, int age, String commitHash, String parentCommitHash, String authorName) {
+            if (rangeCount == startingLines.length) {
+                int newLength = rangeCount * 2;
+                startingLines = Arrays.copyOf(startingLines, newLength);
+                endingLines = Arrays.copyOf(endingLines, newLength);
+                ages = Arrays.copyOf(ages, newLength);
+                commitHashes = Arrays.copyOf(commitHashes, newLength);
+                parentCommitHashes = Arrays.copyOf(parentCommitHashes, newLength);
+                authorNames = Arrays.copyOf(authorNames, newLength);
+            }
+            startingLines[rangeCount] = startingLine;
+            endingLines[rangeCount] = endingLine;
+            ages[rangeCount] = age;
+            commitHashes[rangeCount] = share(commitHash);
+            parentCommitHashes[rangeCount] = share(parentCommitHash);
+            authorNames[rangeCount] = share(authorName);
+            rangeCount++;
+            return this;
+        }
+
+        private boolean isSorted() {
+            for (int i = 1; i < rangeCount; i++) {
+                if (startingLines[i - 1] > startingLines[i]) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        private void sortByStartingLine() {
+            Integer[] order = new Integer[rangeCount];
+            for (int i = 0; i < rangeCount; i++) {
+                order[i] = i;
+            }
+            Arrays.sort(order, (first, second) -> Integer.compare(startingLines[first], startingLines[second]));
+            int[] sortedStartingLines = new int[rangeCount];
+            int[] sortedEndingLines = new int[rangeCount];
+            int[] sortedAges = new int[rangeCount];
+            String[] sortedCommitHashes = new String[rangeCount];
+            String[] sortedParentCommitHashes = new String[rangeCount];
+            String[] sortedAuthorNames = new String[rangeCount];
+            for (int i = 0; i < rangeCount; i++) {
+                sortedStartingLines[i] = startingLines[order[i]];
+                sortedEndingLines[i] = endingLines[order[i]];
+                sortedAges[i] = ages[order[i]];
+                sortedCommitHashes[i] = commitHashes[order[i]];
+                sortedParentCommitHashes[i] = parentCommitHashes[order[i]];
+                sortedAuthorNames[i] = authorNames[order[i]];
+            }
+            startingLines = sortedStartingLines;
+            endingLines = sortedEndingLines;
+            ages = sortedAges;
+            commitHashes = sortedCommitHashes;
+            parentCommitHashes = sortedParentCommitHashes;
+            authorNames = sortedAuthorNames;
+        }
+
+        private String share(String string) {
+            return string == null ? null : sharedStrings.computeIfAbsent(string, key -> key);
+        }
+
+        public FileBlame build() {
+            if (!isSorted()) {
+                sortByStartingLine();
+            }
+            return new FileBlame(Arrays.copyOf(startingLines, rangeCount), Arrays.copyOf(endingLines, rangeCount),
+                    Arrays.copyOf(ages, rangeCount), Arrays.copyOf(commitHashes, rangeCount),
+                    Arrays.copyOf(parentCommitHashes, rangeCount), Arrays.copyOf(authorNames, rangeCount), parentCommitsIncluded);
+        }
+    }
+}
@@ -0,0 +1,186 @@
+/*
+ * Copyright (c) 2017, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ *
+ * WSO2 Inc. licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+
+package com.wso2.code.quality.matrices;
+
+import java.util.Arrays;
+
+/**
+ * Immutable form of the changes made to a file by a commit. The line ranges of each hunk of the patch are packed into
+ * a single int array as the starting and ending lines in the old file followed by the starting and ending lines in
+ * the new file, so the ranges are read without parsing any strings again.
+ * <p>
+ * The hunk headers are found with a single pass over the patch, reading the numbers straight from the characters of
+ * the patch. A header may leave out the line count of a side, as in {@code @@ -3 +3 @@}, in which case the count is
+ * one.
+ *
+ * @since 1.0.0
+ */
+
+public final class FileChange {
+
+    private static final String HUNK_HEADER_START = "@@ -";
+    private static final int INTS_PER_HUNK = 4;
+
+    private final String path;
+    private final int[] lineRanges;
+
+    private FileChange(String path, int[] lineRanges) {
+        this.path = path;
+        this.lineRanges = lineRanges;
+    }
+
+    /**
+     * Reads the changed line ranges of a file from its patch
+     *
+     * @param path  path of the file in the repository
+     * @param patch patch of the file, which is null for binary files and pure renames
+     * @return the changes made to the file
+     */
+    public static FileChange fromPatch(String path, String patch) {
+        if (patch == null) {
+            return new FileChange(path, new int[0]);
+        }
+        int[] lineRanges = new int[INTS_PER_HUNK * 4];
+        int size = 0;
+        int[] header = new int[INTS_PER_HUNK];
+        int lineStart = 0;
+        while (lineStart < patch.length()) {
+            int lineEnd = patch.indexOf('\n', lineStart);
+            if (lineEnd < 0) {
+                lineEnd = patch.length();
+            }
+            // lines of the hunks start with a space, a plus or a minus, so only the hunk headers start with @@
+            if (patch.startsWith(HUNK_HEADER_START, lineStart) && readHunkHeader(patch, lineStart, lineEnd, header)) {
+                if (size == lineRanges.length) {
+                    lineRanges = Arrays.copyOf(lineRanges, size * 2);
+                }
+                System.arraycopy(header, 0, lineRanges, size, INTS_PER_HUNK);
+                size += INTS_PER_HUNK;
+            }
+            lineStart = lineEnd + 1;
+        }
+        return new FileChange(path, Arrays.copyOf(lineRanges, size));
+    }
+
+    /**
+     * Reads a header such as {@code @@ -22,7 +22,8 @@} into the starting and ending lines of the old and the new file
+     *
+     * @return false if the line is not a well formed hunk header
+     */
+    private static boolean readHunkHeader(String patch, int lineStart, int lineEnd, int[] header) {
+        // the starting line and the line count of the old file followed by those of the new file
+        int[] numbers = {0, 1, 0, 1};
+        int position = readRange(patch, lineStart + HUNK_HEADER_START.length(), lineEnd, numbers, 0);
+        if (position < 0 || !patch.startsWith(" +", position)) {
+            return false;
+        }
+        position = readRange(patch, position + 2, lineEnd, numbers, 2);
+        if (position < 0 || !patch.startsWith(" @@", position)) {
+            return false;
+        }
+        header[0] = numbers[0];
+        // a file created by the commit has the old range 0,0
+        header[1] = numbers[0] != 0 ? numbers[0] + numbers[1] - 1 : numbers[1];
+        header[2] = numbers[2];
+        header[3] = numbers[2] + numbers[3] - 1;
+        return true;
+    }
+
+    /**
+     * Reads a starting line and an optional line count into the given index of the numbers
+     *
+     * @return the position after the range, or -1 if there is no range at the position
+     */
+    private static int readRange(String patch, int position, int lineEnd, int[] numbers, int index) {
+        position = readNumber(patch, position, lineEnd, numbers, index);
+        if (position >= 0 && position < lineEnd && patch.charAt(position) == ',') {
+            position = readNumber(patch, position + 1, lineEnd, numbers, index + 1);
+        }
+        return position;
+    }
+
+    private static int readNumber(String patch, int position, int lineEnd, int[] numbers, int index) {
+        int start = position;
+        long number = 0;
+        while (position < lineEnd && patch.charAt(position) >= '0' && patch.charAt(position) <= '9') {
+            number = number * 10 + (patch.charAt(position) - '0');
+            if (number > Integer.MAX_VALUE) {
+                return -1;
+            }
+            position++;
+        }
+        if (position == start) {
+            return -1;
+        }
+        numbers[index] = (int) number;
+        return position;
+    }
+
+    public String getPath() {
+        return path;
+    }
+
+    public int getHunkCount() {
+        return lineRanges.length / INTS_PER_HUNK;
+    }
+
+    public boolean isEmpty() {
+        return lineRanges.length == 0;
+    }
+
+    public int getOldStartingLine(int hunkIndex) {
+        return lineRanges[hunkIndex * INTS_PER_HUNK];
+    }
+
+    public int getOldEndingLine(int hunkIndex) {
+        return lineRanges[hunkIndex * INTS_PER_HUNK + 1];
+    }
+
+    public int getNewStartingLine(int hunkIndex) {
+        return lineRanges[hunkIndex * INTS_PER_HUNK + 2];
+    }
+
+    public int getNewEndingLine(int hunkIndex) {
+        return lineRanges[hunkIndex * INTS_PER_HUNK + 3];
+    }
+
+    /**
+     * A hunk which has no lines in the old file, as in a file created by the commit, has no earlier commits to blame
+     *
+     * @param hunkIndex index of the hunk
+     * @return true if the hunk was added to a file which did not exist before the commit
+     */
+    public boolean isNewFileHunk(int hunkIndex) {
+        return getOldStartingLine(hunkIndex) == 0 && getOldEndingLine(hunkIndex) == 0;
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder builder = new StringBuilder(path).append('[');
+        for (int i = 0; i < getHunkCount(); i++) {
+            if (i > 0) {
+                builder.append(", ");
+            }
+            builder.append(getOldStartingLine(i)).append(',').append(getOldEndingLine(i)).append('/')
+                    .append(getNewStartingLine(i)).append(',').append(getNewEndingLine(i));
+        }
+        return builder.append(']').toString();
+    }
+}
@@ -0,0 +1,120 @@
+/*
+ * Copyright (c) 2017, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ *
+ * WSO2 Inc. licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.wso2.code.quality.matrices;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+
+/**
+ * Helpers for composing the asynchronous API calls, whose failures are carried by the futures as a
+ * CodeQualityMatricesException, possibly wrapped in a CompletionException by the stages they passed through.
+ *
+ * @since 1.0.0
+ */
+
+final class Futures {
+
+    private Futures() {
+    }
+
+    /**
+     * @param e   failure of the future
+     * @param <T> type of the result of the future
+     * @return a future which is already completed with the given failure
+     */
+    static <T> CompletableFuture<T> failed(Throwable e) {
+        CompletableFuture<T> future = new CompletableFuture<>();
+        future.completeExceptionally(e);
+        return future;
+    }
+
+    /**
+     * Waits for a future and throws its failure as the CodeQualityMatricesException it was caused by
+     *
+     * @param future future to be waited for
+     * @param <T>    type of the result of the future
+     * @return the result of the future
+     * @throws CodeQualityMatricesException if the future failed
+     */
+    static <T> T join(CompletableFuture<T> future) throws CodeQualityMatricesException {
+        try {
+            return future.join();
+        } catch (CompletionException | CancellationException e) {
+            throw unwrap(e);
+        }
+    }
+
+    /**
+     * Finds the CodeQualityMatricesException behind the failure of a future
+     *
+     * @param e failure of a future
+     * @return the CodeQualityMatricesException which caused the failure, or a new one if it failed for any other reason
+     */
+    static CodeQualityMatricesException unwrap(Throwable e) {
+        for (Throwable cause = e; cause != null; cause = cause.getCause()) {
+            if (cause instanceof CodeQualityMatricesException) {
+                return (CodeQualityMatricesException) cause;
+            }
+        }
+        return new CodeQualityMatricesException("Unexpected exception occurred while waiting for the API calls", e);
+    }
+
+    /**
+     * Ends the given span once the given future is completed, marking the span as failed if the future failed
+     *
+     * @param span   span of the work done by the future
+     * @param future future to be traced
+     * @param <T>    type of the result of the future
+     * @return a future completed as the given future, after the span is ended
+     */
+    static <T> CompletableFuture<T> endSpan(Tracer.Span span, CompletableFuture<T> future) {
+        return future.whenComplete((result, e) -> {
+            if (e != null) {
+                span.setError(unwrap(e).getMessage());
+            }
+            span.close();
+        });
+    }
+
+    /**
+     * Combines the results of the given futures, failing as soon as any of them fails
+     *
+     * @param futures futures to be combined
+     * @param <T>     type of the results of the futures
+     * @return a future of the results, in the order of the given futures
+     */
+    static <T> CompletableFuture<List<T>> allOf(List<CompletableFuture<T>> futures) {
+        CompletableFuture<List<T>> all = CompletableFuture.allOf(futures.toArray(new CompletableFuture<?>[0]))
+                .thenApply(ignored -> {
+                    List<T> results = new ArrayList<>(futures.size());
+                    futures.forEach(future -> results.add(future.join()));
+                    return results;
+                });
+        // allOf waits for all the futures even if one of them has already failed
+        futures.forEach(future -> future.whenComplete((result, e) -> {
+            if (e != null) {
+                all.completeExceptionally(e);
+            }
+        }));
+        return all;
+    }
+}
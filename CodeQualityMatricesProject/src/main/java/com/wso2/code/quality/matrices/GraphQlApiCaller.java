@@ -18,21 +18,24 @@
 
 package com.wso2.code.quality.matrices;
 
+import org.apache.http.HttpResponse;
 import org.apache.http.client.ClientProtocolException;
 import org.apache.http.client.methods.CloseableHttpResponse;
 import org.apache.http.client.methods.HttpPost;
+import org.apache.http.entity.ContentType;
 import org.apache.http.entity.StringEntity;
-import org.apache.http.impl.client.CloseableHttpClient;
-import org.apache.http.impl.client.HttpClients;
+import org.apache.http.util.EntityUtils;
 import org.apache.log4j.Logger;
 import org.json.JSONArray;
 import org.json.JSONObject;
-import org.json.JSONTokener;
 
-import java.io.BufferedReader;
 import java.io.IOException;
-import java.io.InputStreamReader;
-import java.io.UnsupportedEncodingException;
+import java.time.Instant;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.Function;
+import java.util.function.Supplier;
 
 /**
  * This class is used for calling the GithubGraphQL API which is currently in early access mode.
@@ -44,81 +47,454 @@ public class GraphQlApiCaller {
 
     protected static final Logger logger = Logger.getLogger(GraphQlApiCaller.class);
 
+    public static final String GITHUB_GRAPHQL_API_URL = "https://api.github.com/graphql";
+    private static final String GITHUB_GRAPHQL_API_DATA_KEY_STRING = "data";
+    private static final String GITHUB_GRAPHQL_API_ERRORS_KEY_STRING = "errors";
+    private static final String GITHUB_GRAPHQL_API_TYPE_KEY_STRING = "type";
+    private static final String GITHUB_GRAPHQL_API_RATE_LIMITED_ERROR_TYPE = "RATE_LIMITED";
+    private static final String GITHUB_GRAPHQL_API_RATE_LIMIT_KEY_STRING = "rateLimit";
+    private static final String GITHUB_GRAPHQL_API_LIMIT_KEY_STRING = "limit";
+    private static final String GITHUB_GRAPHQL_API_COST_KEY_STRING = "cost";
+    private static final String GITHUB_GRAPHQL_API_REMAINING_KEY_STRING = "remaining";
+    private static final String GITHUB_GRAPHQL_API_RESET_AT_KEY_STRING = "resetAt";
+    private static final int MAX_RATE_LIMITED_ATTEMPTS = 5;
+    private static final String GRAPHQL_ENDPOINT = "graphql";
+    private static final String HTTP_POST_METHOD = "POST";
+    private static final String SINGLE_FLIGHT_NAME = "graphql";
+
+    private final HttpTransport httpTransport;
+    private final RateLimitScheduler rateLimitScheduler;
+    private final String graphQlApiUrl;
+    private final RetryPolicy retryPolicy;
+    private final SingleFlight<List<Object>, GraphQlResponse> responseFlights = new SingleFlight<>(SINGLE_FLIGHT_NAME);
+
+    /**
+     * Creates a GraphQlApiCaller which uses the transport shared across the application
+     */
+    public GraphQlApiCaller() {
+        this(HttpTransport.getDefault());
+    }
+
+    /**
+     * Creates a GraphQlApiCaller which uses the given transport and the url given in the cqm.github.graphQlApiUrl
+     * system property
+     *
+     * @param httpTransport transport used for executing the requests
+     */
+    public GraphQlApiCaller(HttpTransport httpTransport) {
+        this(httpTransport, null, ApiUrls.getGitHubGraphQlApiUrl());
+    }
+
+    /**
+     * Creates a GraphQlApiCaller which schedules the calls within the rate limits of the given scheduler
+     *
+     * @param httpTransport      transport used for executing the requests
+     * @param rateLimitScheduler scheduler providing the github tokens for the calls or null if the given github token
+     *                           should always be used
+     * @param graphQlApiUrl      url of the GraphQL API
+     */
+    public GraphQlApiCaller(HttpTransport httpTransport, RateLimitScheduler rateLimitScheduler, String graphQlApiUrl) {
+        this(httpTransport, rateLimitScheduler, graphQlApiUrl, RetryPolicy.fromSystemProperties());
+    }
+
+    /**
+     * Creates a GraphQlApiCaller which retries the calls failed due to transient errors as given by the retry policy.
+     * A 502 response is not retried, as github answers with it when a query takes too long and the batched queries
+     * are split by their callers instead
+     *
+     * @param httpTransport      transport used for executing the requests
+     * @param rateLimitScheduler scheduler providing the github tokens for the calls or null if the given github token
+     *                           should always be used
+     * @param graphQlApiUrl      url of the GraphQL API
+     * @param retryPolicy        policy deciding the retries of the calls failed without a response or with a server error
+     */
+    public GraphQlApiCaller(HttpTransport httpTransport, RateLimitScheduler rateLimitScheduler, String graphQlApiUrl,
+                            RetryPolicy retryPolicy) {
+        this.httpTransport = httpTransport;
+        this.rateLimitScheduler = rateLimitScheduler;
+        this.graphQlApiUrl = graphQlApiUrl;
+        this.retryPolicy = retryPolicy;
+    }
+
     /**
      * Calls the github graphQL API and returns the relevant JSON response received
+     * When a rate limit scheduler is set, the call uses a token given by the scheduler instead of the given github
+     * token and the rateLimit field of the response, if queried, is used for updating the GraphQL budget
      *
      * @param queryObject the JSONObject required for querying
      * @param gitHubToken github token for accessing github GraphQL API
      * @return Depending on the content return a JSONObject or a JSONArray
-     * @throws IOException
+     * @throws CodeQualityMatricesException if the github GraphQL API call failed
      */
     public Object callGraphQlApi(JSONObject queryObject, String gitHubToken) throws CodeQualityMatricesException {
+        return callGraphQlApi(queryObject, gitHubToken, ResponseDecoders::decodeJson, GraphQlApiCaller::getRateLimit);
+    }
+
+    /**
+     * Calls the github graphQL API and decodes the response with the given decoder while it is read from the connection
+     *
+     * @param queryObject     the JSONObject required for querying
+     * @param gitHubToken     github token for accessing github GraphQL API
+     * @param responseDecoder decoder of the response body
+     * @param <T>             type of the decoded response
+     * @return the decoded response or null if the API responded with an unexpected response code
+     * @throws CodeQualityMatricesException if the github GraphQL API call failed or the response could not be decoded
+     */
+    public <T extends GraphQlResponse> T callGraphQlApi(JSONObject queryObject, String gitHubToken, ResponseDecoder<T> responseDecoder)
+            throws CodeQualityMatricesException {
+        return callGraphQlApi(queryObject, gitHubToken, responseDecoder, GraphQlResponse::getRateLimit);
+    }
+
+    /**
+     * Calls the github graphQL API without blocking the calling thread, and decodes the response with the given decoder
+     * on a callback thread of the transport once it is received. A call rejected due to the rate limit waits for the
+     * GraphQL budget without holding a thread. A call made while an identical call with the same decoder is in flight,
+     * having the same query and variables in any order, shares its response instead of calling the API again
+     *
+     * @param queryObject     the JSONObject required for querying
+     * @param gitHubToken     github token for accessing github GraphQL API
+     * @param responseDecoder decoder of the response body
+     * @param <T>             type of the decoded response
+     * @return a future of the decoded response or of null if the API responded with an unexpected response code, which
+     * fails with a CodeQualityMatricesException if the call failed or the response could not be decoded
+     */
+    public <T extends GraphQlResponse> CompletableFuture<T> callGraphQlApiAsync(JSONObject queryObject, String gitHubToken,
+                                                                            ResponseDecoder<T> responseDecoder) {
+        // the fields of the query object are compared as a map, so that their order does not matter
+        List<Object> requestKey = Arrays.asList(HTTP_POST_METHOD, queryObject.toMap(), gitHubToken, responseDecoder);
+        return shareCall(requestKey, () -> attemptAsync(new Call<>(queryObject, gitHubToken, responseDecoder,
+                GraphQlResponse::getRateLimit), 1));
+    }
+
+    /**
+     * Makes the call through the single flight of the responses, whose key holds the decoder so that the response
+     * shared for a key always has the type of the decoder
+     */
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    private <T extends GraphQlResponse> CompletableFuture<T> shareCall(List<Object> requestKey, Supplier<CompletableFuture<T>> call) {
+        return (CompletableFuture) responseFlights.execute(requestKey, (Supplier) call);
+    }
+
+    /**
+     * @return the number of the calls answered by an identical call which was already in flight
+     */
+    public long getSavedCalls() {
+        return responseFlights.getSavedCalls();
+    }
+
+    /**
+     * @return the policy deciding the retries of the calls, which the callers splitting their batched queries on a 502
+     * also use for retrying a query which can no longer be split
+     */
+    public RetryPolicy getRetryPolicy() {
+        return retryPolicy;
+    }
+
+    private <T> T callGraphQlApi(JSONObject queryObject, String gitHubToken, ResponseDecoder<T> responseDecoder,
+                                 Function<T, GraphQlRateLimit> rateLimitOfResponse) throws CodeQualityMatricesException {
+
+        Call<T> call = new Call<>(queryObject, gitHubToken, responseDecoder, rateLimitOfResponse);
+        for (int attempt = 1; ; attempt++) {
+            CloseableHttpResponse response = null;
+            String token = call.scheduled ? rateLimitScheduler.acquire(RateLimitScheduler.Pool.GRAPHQL) : gitHubToken;
+            call.startAttempt(attempt, token);
+
+            try {
+                response = httpTransport.execute(call.buildRequest());
+                if (call.rescheduleOnRateLimit(response, attempt)) {
+                    call.release(response);
+                    continue;
+                }
+                if (!call.retryOnServerError(response)) {
+                    T returnedObject = call.readResponse(response);
+                    if (call.rescheduleOnRateLimitedQuery(attempt)) {
+                        continue;
+                    }
+                    return returnedObject;
+                }
+            } catch (ClientProtocolException e) {
+                throw new CodeQualityMatricesException("Client protocol exception occurred when calling the github graphQL API", e);
+            } catch (IOException e) {
+                if (!call.retryOnFailure(e)) {
+                    throw new CodeQualityMatricesException("IO Exception occured when calling the github graphQL API", e);
+                }
+            } catch (CodeQualityMatricesException e) {
+                throw e;
+            } catch (Exception e) {
+                throw new CodeQualityMatricesException("Exception occurred when reading the response received from github graphQL API", e);
+            } finally {
+                call.release(response);
+                call.finishAttempt(response);
+                if (response != null) {
+                    try {
+                        // consuming the rest of the entity releases the connection back to the pool for reuse
+                        EntityUtils.consume(response.getEntity());
+                        response.close();
+                    } catch (IOException e) {
+                        throw new CodeQualityMatricesException("IOException occurred when closing the HttpResponse", e);
+                    }
+                }
+            }
+            retryPolicy.awaitBackoff(call.failedAttempts);
+        }
+    }
 
-        CloseableHttpClient client = null;
-        CloseableHttpResponse response = null;
-        BufferedReader bufferedReader = null;
+    private <T> CompletableFuture<T> attemptAsync(Call<T> call, int attempt) {
+        CompletableFuture<String> futureToken = call.scheduled
+                ? rateLimitScheduler.acquireAsync(RateLimitScheduler.Pool.GRAPHQL)
+                : CompletableFuture.completedFuture(call.gitHubToken);
+        return futureToken.thenCompose(token -> {
+            call.startAttempt(attempt, token);
+            return httpTransport.executeAsync(call.buildRequest()).handle((response, failure) -> {
+                T returnedObject = null;
+                CodeQualityMatricesException exception = null;
+                boolean rateLimited = false;
+                boolean retried = false;
+                try {
+                    if (failure != null) {
+                        retried = call.retryOnFailure(failure);
+                        exception = retried ? null : Futures.unwrap(failure);
+                    } else if (call.rescheduleOnRateLimit(response, attempt)) {
+                        rateLimited = true;
+                    } else if (call.retryOnServerError(response)) {
+                        retried = true;
+                    } else {
+                        returnedObject = call.readResponse(response);
+                        rateLimited = call.rescheduleOnRateLimitedQuery(attempt);
+                    }
+                } catch (CodeQualityMatricesException e) {
+                    exception = e;
+                } catch (IOException e) {
+                    exception = new CodeQualityMatricesException("IO Exception occured when calling the github graphQL API", e);
+                } catch (Exception e) {
+                    exception = new CodeQualityMatricesException("Exception occurred when reading the response received from github graphQL API", e);
+                } finally {
+                    // the attempt is finished before the next attempt is started, which may happen on this thread
+                    call.release(response);
+                    call.finishAttempt(response);
+                    if (response != null) {
+                        EntityUtils.consumeQuietly(response.getEntity());
+                    }
+                }
+                if (rateLimited) {
+                    return attemptAsync(call, attempt + 1);
+                }
+                if (retried) {
+                    return retryPolicy.retryAfterBackoff(call.failedAttempts, () -> attemptAsync(call, attempt + 1));
+                }
+                return exception == null ? CompletableFuture.completedFuture(returnedObject) : Futures.<T>failed(exception);
+            }).thenCompose(Function.identity());
+        });
+    }
 
-        Object returnedObject = null;
+    /**
+     * Returns the rateLimit field of a response decoded into a JSON tree, if it was queried, marked as exceeded if the
+     * query was rejected with a RATE_LIMITED error
+     *
+     * @param json JSONObject or JSONArray received from the github GraphQL API
+     * @return the rateLimit field of the response or null if it was not queried and the query was not rejected
+     */
+    private static GraphQlRateLimit getRateLimit(Object json) {
+        JSONObject jsonObject = json instanceof JSONObject ? (JSONObject) json : null;
+        JSONObject dataJsonObject = jsonObject == null ? null : jsonObject.optJSONObject(GITHUB_GRAPHQL_API_DATA_KEY_STRING);
+        JSONObject rateLimitJsonObject = dataJsonObject == null ? null : dataJsonObject.optJSONObject(GITHUB_GRAPHQL_API_RATE_LIMIT_KEY_STRING);
+        GraphQlRateLimit rateLimit = null;
+        if (rateLimitJsonObject != null) {
+            String resetAt = rateLimitJsonObject.optString(GITHUB_GRAPHQL_API_RESET_AT_KEY_STRING, null);
+            rateLimit = new GraphQlRateLimit(rateLimitJsonObject.optLong(GITHUB_GRAPHQL_API_LIMIT_KEY_STRING, -1),
+                    rateLimitJsonObject.optLong(GITHUB_GRAPHQL_API_COST_KEY_STRING, -1),
+                    rateLimitJsonObject.optLong(GITHUB_GRAPHQL_API_REMAINING_KEY_STRING, -1),
+                    resetAt == null ? -1 : Instant.parse(resetAt).getEpochSecond(), false);
+        }
+        JSONArray errorsJsonArray = jsonObject == null ? null : jsonObject.optJSONArray(GITHUB_GRAPHQL_API_ERRORS_KEY_STRING);
+        for (int i = 0; errorsJsonArray != null && i < errorsJsonArray.length(); i++) {
+            JSONObject errorJsonObject = errorsJsonArray.optJSONObject(i);
+            if (errorJsonObject != null
+                    && GITHUB_GRAPHQL_API_RATE_LIMITED_ERROR_TYPE.equals(errorJsonObject.optString(GITHUB_GRAPHQL_API_TYPE_KEY_STRING))) {
+                return GraphQlRateLimit.exceeded(rateLimit);
+            }
+        }
+        return rateLimit;
+    }
+
+    /**
+     * A single call of the GraphQL API, made in one or more attempts as the calls rejected due to the rate limit are
+     * retried. The attempts of a call are made one after another, so the state of the current attempt is kept in the call
+     */
+    private final class Call<T> {
+        private final JSONObject queryObject;
+        private final String gitHubToken;
+        private final ResponseDecoder<T> responseDecoder;
+        private final Function<T, GraphQlRateLimit> rateLimitOfResponse;
+        private final boolean scheduled;
+        private final Tracer.Span parentSpan;
+        private int attempt;
+        private int failedAttempts;
+        private String token;
+        private boolean released;
+        private boolean rateLimitExceeded;
+        private long startNanos;
+        private long responseBytes;
+        private Tracer.Span span;
 
-        try {
-            client = HttpClients.createDefault();
-            HttpPost httpPost = new HttpPost("https://api.github.com/graphql");
-            httpPost.addHeader("Authorization", "Bearer " + gitHubToken);
+        private Call(JSONObject queryObject, String gitHubToken, ResponseDecoder<T> responseDecoder,
+                     Function<T, GraphQlRateLimit> rateLimitOfResponse) {
+            this.queryObject = queryObject;
+            this.gitHubToken = gitHubToken;
+            this.responseDecoder = responseDecoder;
+            this.rateLimitOfResponse = rateLimitOfResponse;
+            this.scheduled = rateLimitScheduler != null;
+            this.parentSpan = Tracer.getDefault().currentSpan();
+        }
+
+        private void startAttempt(int attempt, String token) {
+            this.attempt = attempt;
+            this.token = token;
+            this.released = !scheduled;
+            this.rateLimitExceeded = false;
+            this.startNanos = System.nanoTime();
+            this.responseBytes = 0;
+            this.span = Tracer.getDefault().startClientSpan(HTTP_POST_METHOD + " " + GRAPHQL_ENDPOINT, parentSpan);
+        }
+
+        private HttpPost buildRequest() {
+            HttpPost httpPost = new HttpPost(graphQlApiUrl);
+            httpPost.addHeader("Authorization", "Bearer " + token);
             httpPost.addHeader("Accept", "application/json");
-            StringEntity entity = new StringEntity(queryObject.toString());
+            StringEntity entity = new StringEntity(queryObject.toString(), ContentType.APPLICATION_JSON);
             httpPost.setEntity(entity);
-            response = client.execute(httpPost);
+            span.setAttribute(Tracer.HTTP_REQUEST_BODY_SIZE_ATTRIBUTE, entity.getContentLength());
+            return httpPost;
+        }
+
+        /**
+         * Decodes the response of the current attempt
+         *
+         * @return the decoded response or null if the API responded with an unexpected response code
+         */
+        private T readResponse(HttpResponse response) throws CodeQualityMatricesException, IOException {
             int responseCode = response.getStatusLine().getStatusCode();
+            T returnedObject;
 
             switch (responseCode) {
                 case 200:
-
-                    bufferedReader = new BufferedReader(new InputStreamReader(response.getEntity().getContent(), "UTF-8"));
-                    String line;
-                    StringBuilder stringBuilder = new StringBuilder();
-                    while ((line = bufferedReader.readLine()) != null) {
-                        stringBuilder.append(line);
+                    try (CountingInputStream inputStream = new CountingInputStream(response.getEntity().getContent())) {
+                        returnedObject = responseDecoder.decode(inputStream);
+                        responseBytes = inputStream.getCount();
                     }
-
-                    String jsonText = stringBuilder.toString();
-                    logger.info("The response received from the Github GraphQL converted to a JSON text successfully");
-
-                    Object json = new JSONTokener(jsonText).nextValue();     // gives an object http://stackoverflow.com/questions/14685777/how-to-check-if-response-from-server-is-jsonaobject-or-jsonarray
-
-                    if (json instanceof JSONObject) {
-                        JSONObject jsonObject = (JSONObject) json;
-                        returnedObject = jsonObject;
-                        logger.info("JSONObject was returned successfully after calling the GraphQL API");
-                    } else if (json instanceof JSONArray) {
-                        JSONArray jsonArray = (JSONArray) json;
-                        returnedObject = jsonArray;
-                        logger.info("JSONArray was returned successfully after calling the GraphQL API");
+                    GraphQlRateLimit rateLimit = returnedObject == null ? null : rateLimitOfResponse.apply(returnedObject);
+                    rateLimitExceeded = rateLimit != null && rateLimit.isExceeded();
+                    if (scheduled) {
+                        // the budget is released only after reading the rateLimit field so that no other call
+                        // is scheduled on a budget which is already spent
+                        released = true;
+                        rateLimitScheduler.releaseGraphQl(token, response, rateLimit);
                     }
+                    logger.info("The response received from the Github GraphQL API is decoded successfully");
                     break;
 
                 case 401:
                     // to handle Response code 401: Unauthorized
                     throw new CodeQualityMatricesException("Response code 401 : Git hub access token is invalid");
+                case 403:
+                case 429:
+                    if (RateLimitScheduler.isRateLimited(response)) {
+                        // a rejection which is not scheduled again is reported instead of being taken as an empty result
+                        throw new CodeQualityMatricesException("Response code " + responseCode
+                                + " : Rate limit of the github GraphQL API is exceeded");
+                    }
+                    returnedObject = null;
+                    break;
                 default:
                     returnedObject = null;
             }
-        } catch (UnsupportedEncodingException e) {
-            throw new CodeQualityMatricesException("Encoding error occured before calling the github graphQL API", e);
-        } catch (ClientProtocolException e) {
-            throw new CodeQualityMatricesException("Client protocol exception occurred when calling the github graphQL API", e);
-        } catch (IOException e) {
-            throw new CodeQualityMatricesException("IO Exception occured when calling the github graphQL API", e);
-        } catch (Exception e) {
-            throw new CodeQualityMatricesException("Exception occurred when reading the response received from github graphQL API", e);
-        } finally {
-            if (bufferedReader != null) {
-                try {
-                    bufferedReader.close();
-                } catch (IOException e) {
-                    throw new CodeQualityMatricesException("IOException occurred when closing the buffered reader", e);
-                }
+            return returnedObject;
+        }
+
+        /**
+         * Decides whether the current attempt, which was rejected with the given response as the rate limit of its
+         * token was exceeded, is scheduled again once the GraphQL budget is available
+         *
+         * @param response response received for the attempt
+         * @param attempt  number of the current attempt
+         * @return true if the call should be scheduled again
+         */
+        private boolean rescheduleOnRateLimit(HttpResponse response, int attempt) {
+            if (!scheduled || !RateLimitScheduler.isRateLimited(response) || attempt >= MAX_RATE_LIMITED_ATTEMPTS) {
+                return false;
+            }
+            logger.info("Rate limit exceeded when calling the github GraphQL API, the call is scheduled again");
+            return true;
+        }
+
+        /**
+         * Decides whether the current attempt, whose query was rejected with a RATE_LIMITED error in a 200 response,
+         * is scheduled again once the GraphQL budget is available. The budget of its token is already released as
+         * exceeded while reading the response
+         *
+         * @param attempt number of the current attempt
+         * @return true if the call should be scheduled again
+         */
+        private boolean rescheduleOnRateLimitedQuery(int attempt) {
+            if (!scheduled || !rateLimitExceeded || attempt >= MAX_RATE_LIMITED_ATTEMPTS) {
+                return false;
             }
+            logger.info("Query was rejected as the rate limit of the github GraphQL API was exceeded, the call is scheduled again");
+            return true;
+        }
+
+        /**
+         * Decides whether the current attempt, which failed without a response, is retried
+         *
+         * @param failure failure of the attempt
+         * @return true if the call should be attempted again after the backoff
+         */
+        private boolean retryOnFailure(Throwable failure) {
+            if (!RetryPolicy.isTransient(failure) || !retryPolicy.shouldRetry(++failedAttempts)) {
+                return false;
+            }
+            logger.warn("Calling the github GraphQL API failed with " + failure + ", the call is retried");
+            return true;
+        }
+
+        /**
+         * Decides whether the current attempt, which was answered with the given response, is retried due to a
+         * server error other than the 502 of a query which took too long
+         *
+         * @param response response received for the attempt
+         * @return true if the call should be attempted again after the backoff
+         */
+        private boolean retryOnServerError(HttpResponse response) {
+            int statusCode = response.getStatusLine().getStatusCode();
+            if (statusCode == 502 || !RetryPolicy.isTransient(statusCode) || !retryPolicy.shouldRetry(++failedAttempts)) {
+                return false;
+            }
+            logger.warn("Response code " + statusCode + " received from the github GraphQL API, the call is retried");
+            return true;
+        }
+
+        /**
+         * Releases the token of the current attempt unless it is already released
+         *
+         * @param response response received for the attempt or null if no response was received
+         */
+        private void release(HttpResponse response) {
+            if (!released) {
+                released = true;
+                rateLimitScheduler.release(token, RateLimitScheduler.Pool.GRAPHQL, response);
+            }
+        }
+
+        /**
+         * Records the metrics and the span of the current attempt
+         *
+         * @param response response received for the attempt or null if no response was received
+         */
+        private void finishAttempt(HttpResponse response) {
+            int statusCode = response == null ? 0 : response.getStatusLine().getStatusCode();
+            Metrics.getDefault().recordApiCall(GRAPHQL_ENDPOINT, statusCode == 0 ? "error" : String.valueOf(statusCode),
+                    startNanos, responseBytes);
+            span.setHttpAttributes(HTTP_POST_METHOD, graphQlApiUrl, attempt, statusCode, responseBytes).close();
         }
-        return returnedObject;
     }
 }
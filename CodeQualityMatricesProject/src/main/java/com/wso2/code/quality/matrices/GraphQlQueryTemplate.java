@@ -0,0 +1,180 @@
+/*
+ * Copyright (c) 2017, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ *
+ * WSO2 Inc. licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.wso2.code.quality.matrices;
+
+import org.json.JSONObject;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * A GraphQL query which selects the same field for many items under the aliases made of a prefix and the index of the
+ * item, such as the blames of a batch of files. The field selection is parsed once when the template is created, and
+ * the text of the query for a number of aliases is built once and reused by all the batches of that size. The values
+ * of the items are never written into the query text but sent as the variables of the query, suffixed with the index
+ * of their alias, so that quotes, backslashes and other characters of a path or a search need no escaping and the
+ * query text stays the same between the batches. The variables are of the String! type unless another type is given
+ * after the name of the variable, such as "id: ID!" for the id of a node.
+ *
+ * @since 1.0.0
+ */
+
+public class GraphQlQueryTemplate {
+
+    private static final String QUERY_KEY_STRING = "query";
+    private static final String VARIABLES_KEY_STRING = "variables";
+    private static final String DEFAULT_VARIABLE_TYPE = "String!";
+    private static final String VARIABLE_TYPE_SEPARATOR = ":";
+    private static final Pattern VARIABLE_PATTERN = Pattern.compile("\\$([A-Za-z_][A-Za-z0-9_]*)");
+
+    private final String operationName;
+    private final String aliasPrefix;
+    private final List<String> variables;
+    private final List<String> variableTypes;
+    // the selection split around its variables, holding the text between them at the even indices and the variable
+    // names at the odd indices
+    private final List<String> selectionParts;
+    private final ConcurrentMap<Integer, String> queriesByAliasCount = new ConcurrentHashMap<>();
+
+    /**
+     * Creates a GraphQlQueryTemplate
+     *
+     * @param operationName  name of the query operation
+     * @param aliasPrefix    prefix of the alias of each item, which is followed by the index of the item
+     * @param fieldSelection field selected for each item, in which the values of the item are referred as $ followed
+     *                       by the name of a variable
+     * @param variables      names of the variables of each item, in the order of the values given for an item, each
+     *                       optionally followed by a colon and the type of the variable, whose values are still
+     *                       given as strings
+     * @throws IllegalArgumentException if the field selection refers to an unknown variable or does not refer to one
+     *                                  of the given variables
+     */
+    public GraphQlQueryTemplate(String operationName, String aliasPrefix, String fieldSelection, String... variables) {
+        this.operationName = operationName;
+        this.aliasPrefix = aliasPrefix;
+        List<String> variableNames = new ArrayList<>(variables.length);
+        List<String> types = new ArrayList<>(variables.length);
+        for (String variable : variables) {
+            int separator = variable.indexOf(VARIABLE_TYPE_SEPARATOR);
+            variableNames.add(separator < 0 ? variable : variable.substring(0, separator).trim());
+            types.add(separator < 0 ? DEFAULT_VARIABLE_TYPE : variable.substring(separator + 1).trim());
+        }
+        this.variables = Collections.unmodifiableList(variableNames);
+        this.variableTypes = Collections.unmodifiableList(types);
+        this.selectionParts = parseSelection(fieldSelection, new LinkedHashSet<>(this.variables));
+    }
+
+    /**
+     * Creates the query object selecting the field for each of the given items
+     *
+     * @param itemValues values of the variables of each item, in the order of the variables of the template
+     * @return a new query object holding the query text and its variables
+     */
+    public JSONObject newQueryObject(List<List<String>> itemValues) {
+        JSONObject variableValues = new JSONObject();
+        for (int i = 0; i < itemValues.size(); i++) {
+            List<String> values = itemValues.get(i);
+            if (values.size() != variables.size()) {
+                throw new IllegalArgumentException("Expected " + variables.size() + " values for an item but received "
+                        + values.size());
+            }
+            for (int j = 0; j < variables.size(); j++) {
+                variableValues.put(variables.get(j) + i, values.get(j));
+            }
+        }
+        // a new query object is created for each call as the calls are made concurrently
+        JSONObject queryObject = new JSONObject();
+        queryObject.put(QUERY_KEY_STRING, queryOf(itemValues.size()));
+        queryObject.put(VARIABLES_KEY_STRING, variableValues);
+        return queryObject;
+    }
+
+    /**
+     * Returns the text of the query selecting the field for the given number of items, which is built only once for
+     * each number of items
+     *
+     * @param aliasCount number of items
+     * @return the query text
+     */
+    public String queryOf(int aliasCount) {
+        return queriesByAliasCount.computeIfAbsent(aliasCount, this::buildQuery);
+    }
+
+    /**
+     * @param index index of an item
+     * @return the alias the field of the item is selected under
+     */
+    public String aliasOf(int index) {
+        return aliasPrefix + index;
+    }
+
+    private String buildQuery(int aliasCount) {
+        StringBuilder query = new StringBuilder("query ").append(operationName);
+        if (aliasCount > 0) {
+            List<String> declarations = new ArrayList<>();
+            for (int i = 0; i < aliasCount; i++) {
+                for (int j = 0; j < variables.size(); j++) {
+                    declarations.add("$" + variables.get(j) + i + ": " + variableTypes.get(j));
+                }
+            }
+            query.append('(').append(String.join(", ", declarations)).append(')');
+        }
+        query.append('{').append(RateLimitScheduler.GRAPHQL_RATE_LIMIT_SELECTION);
+        for (int i = 0; i < aliasCount; i++) {
+            query.append(' ').append(aliasOf(i)).append(": ");
+            for (int j = 0; j < selectionParts.size(); j++) {
+                query.append(j % 2 == 0 ? selectionParts.get(j) : "$" + selectionParts.get(j) + i);
+            }
+        }
+        return query.append('}').toString();
+    }
+
+    /**
+     * Splits the field selection around the variables it refers to, checking that each of them is a variable of the
+     * template and that each variable of the template is used
+     */
+    private static List<String> parseSelection(String fieldSelection, Set<String> variables) {
+        List<String> parts = new ArrayList<>();
+        Set<String> unusedVariables = new LinkedHashSet<>(variables);
+        Matcher matcher = VARIABLE_PATTERN.matcher(fieldSelection);
+        int end = 0;
+        while (matcher.find()) {
+            String variable = matcher.group(1);
+            if (!variables.contains(variable)) {
+                throw new IllegalArgumentException("Unknown variable $" + variable + " in " + fieldSelection);
+            }
+            unusedVariables.remove(variable);
+            parts.add(fieldSelection.substring(end, matcher.start()));
+            parts.add(variable);
+            end = matcher.end();
+        }
+        if (!unusedVariables.isEmpty()) {
+            throw new IllegalArgumentException("Variables " + unusedVariables + " are not used in " + fieldSelection);
+        }
+        parts.add(fieldSelection.substring(end));
+        return Collections.unmodifiableList(parts);
+    }
+}
@@ -0,0 +1,85 @@
+/*
+ * Copyright (c) 2017, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ *
+ * WSO2 Inc. licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.wso2.code.quality.matrices;
+
+/**
+ * The rateLimit field of a github GraphQL API response, which also tells whether the query was rejected as the rate
+ * limit was exceeded
+ *
+ * @since 1.0.0
+ */
+
+public final class GraphQlRateLimit {
+
+    private final long limit;
+    private final long cost;
+    private final long remaining;
+    private final long resetAtEpochSeconds;
+    private final boolean exceeded;
+
+    /**
+     * Creates a rate limit
+     *
+     * @param limit               budget of the token in a window, or -1 if it was not reported
+     * @param cost                cost of the query, or -1 if it was not reported
+     * @param remaining           remaining budget of the token, or -1 if it was not reported
+     * @param resetAtEpochSeconds time at which the budget is reset, or -1 if it was not reported
+     * @param exceeded            should be true if the query was rejected with a RATE_LIMITED error as the budget of
+     *                            the token was exceeded
+     */
+    public GraphQlRateLimit(long limit, long cost, long remaining, long resetAtEpochSeconds, boolean exceeded) {
+        this.limit = limit;
+        this.cost = cost;
+        this.remaining = remaining;
+        this.resetAtEpochSeconds = resetAtEpochSeconds;
+        this.exceeded = exceeded;
+    }
+
+    /**
+     * Returns the rate limit of a query which was rejected with a RATE_LIMITED error
+     *
+     * @param rateLimit the rateLimit field of the response or null if it was not received
+     * @return the rate limit marked as exceeded
+     */
+    public static GraphQlRateLimit exceeded(GraphQlRateLimit rateLimit) {
+        return rateLimit == null
+                ? new GraphQlRateLimit(-1, -1, -1, -1, true)
+                : new GraphQlRateLimit(rateLimit.limit, rateLimit.cost, rateLimit.remaining, rateLimit.resetAtEpochSeconds, true);
+    }
+
+    public long getLimit() {
+        return limit;
+    }
+
+    public long getCost() {
+        return cost;
+    }
+
+    public long getRemaining() {
+        return remaining;
+    }
+
+    public long getResetAtEpochSeconds() {
+        return resetAtEpochSeconds;
+    }
+
+    public boolean isExceeded() {
+        return exceeded;
+    }
+}
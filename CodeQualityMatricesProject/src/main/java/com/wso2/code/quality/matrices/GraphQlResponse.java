@@ -0,0 +1,34 @@
+/*
+ * Copyright (c) 2017, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ *
+ * WSO2 Inc. licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.wso2.code.quality.matrices;
+
+/**
+ * A typed response of the github GraphQL API, which exposes the rateLimit field so that the budget of the token used
+ * for the call can be updated
+ *
+ * @since 1.0.0
+ */
+
+public interface GraphQlResponse {
+
+    /**
+     * @return the rateLimit field of the response or null if it was not queried
+     */
+    GraphQlRateLimit getRateLimit();
+}
@@ -0,0 +1,388 @@
+/*
+ * Copyright (c) 2017, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ *
+ * WSO2 Inc. licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.wso2.code.quality.matrices;
+
+import org.apache.http.Header;
+import org.apache.http.HttpHeaders;
+import org.apache.http.HttpResponse;
+import org.apache.http.client.config.RequestConfig;
+import org.apache.http.client.entity.GzipDecompressingEntity;
+import org.apache.http.client.methods.CloseableHttpResponse;
+import org.apache.http.client.methods.HttpUriRequest;
+import org.apache.http.concurrent.FutureCallback;
+import org.apache.http.entity.BufferedHttpEntity;
+import org.apache.http.impl.client.CloseableHttpClient;
+import org.apache.http.impl.client.DefaultConnectionKeepAliveStrategy;
+import org.apache.http.impl.client.HttpClients;
+import org.apache.http.impl.conn.PoolingHttpClientConnectionManager;
+import org.apache.http.impl.nio.client.CloseableHttpAsyncClient;
+import org.apache.http.impl.nio.client.HttpAsyncClients;
+import org.apache.http.impl.nio.conn.PoolingNHttpClientConnectionManager;
+import org.apache.http.impl.nio.reactor.DefaultConnectingIOReactor;
+import org.apache.http.impl.nio.reactor.IOReactorConfig;
+import org.apache.http.nio.reactor.IOReactorException;
+import org.apache.log4j.Logger;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.net.URI;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * This class holds the long lived HTTP client shared by the RestApiCaller and the GraphQlApiCaller.
+ * Connections are pooled per route and kept alive between calls, so consecutive calls to github.com or WSO2 PMT
+ * reuse an already established TCP/TLS connection instead of doing a fresh handshake for every request.
+ * Responses are requested with gzip Accept-Encoding and decompressed while they are being streamed.
+ * <p>
+ * The asynchronous calls are executed by a non-blocking client, started on first use with its own connection pool of
+ * the same size, whose few I/O threads multiplex all the connections. The responses of the asynchronous calls are
+ * received whole and handed over to a small pool of callback threads, so that decoding them never holds up the I/O.
+ * <p>
+ * In the platform and virtual execution modes the asynchronous calls are instead executed by the blocking client, each
+ * on a thread of its own, and a fair semaphore of each upstream caps the number of its calls in flight, so that
+ * thousands of virtual threads do not all wait on the connection pool of a single host.
+ *
+ * @since 1.0.0
+ */
+
+public class HttpTransport implements Closeable {
+
+    private static final Logger logger = Logger.getLogger(HttpTransport.class);
+
+    // system properties which can be used for tuning the shared transport
+    private static final String MAX_CONNECTIONS_PER_ROUTE_PROPERTY = "cqm.http.maxConnectionsPerRoute";
+    private static final String MAX_CONNECTIONS_TOTAL_PROPERTY = "cqm.http.maxConnectionsTotal";
+    private static final String CONNECT_TIMEOUT_PROPERTY = "cqm.http.connectTimeoutMillis";
+    private static final String READ_TIMEOUT_PROPERTY = "cqm.http.readTimeoutMillis";
+    private static final String IO_THREADS_PROPERTY = "cqm.http.ioThreads";
+    private static final String CALLBACK_THREADS_PROPERTY = "cqm.http.callbackThreads";
+    private static final String MAX_CONCURRENT_CALLS_PER_UPSTREAM_PROPERTY = "cqm.http.maxConcurrentCallsPerUpstream";
+    private static final String PLATFORM_THREADS_PROPERTY = "cqm.http.platformThreads";
+
+    private static final int DEFAULT_MAX_CONNECTIONS_PER_ROUTE = 20;
+    private static final int DEFAULT_MAX_CONNECTIONS_TOTAL = 50;
+    private static final int DEFAULT_CONNECT_TIMEOUT_MILLIS = 10000;
+    private static final int DEFAULT_READ_TIMEOUT_MILLIS = 60000;
+    private static final int IDLE_CONNECTION_EVICTION_SECONDS = 30;
+    private static final int VALIDATE_AFTER_INACTIVITY_MILLIS = 2000;
+    private static final String GZIP_ENCODING = "gzip";
+
+    private static HttpTransport defaultTransport;
+
+    private final PoolingHttpClientConnectionManager connectionManager;
+    private final CloseableHttpClient httpClient;
+    private final int maxConnectionsPerRoute;
+    private final int maxConnectionsTotal;
+    private final int connectTimeoutMillis;
+    private final int readTimeoutMillis;
+    private final RequestConfig requestConfig;
+    private final ExecutionMode executionMode;
+    private final int maxConcurrentCallsPerUpstream;
+    private final ExecutorService blockingCallExecutor;
+    private final Map<String, Semaphore> upstreamPermits = new ConcurrentHashMap<>();
+    private CloseableHttpAsyncClient asyncClient;
+    private ExecutorService callbackExecutor;
+
+    /**
+     * Creates a transport with its own connection pool
+     *
+     * @param maxConnectionsPerRoute maximum number of pooled connections kept for a single host
+     * @param maxConnectionsTotal    maximum number of pooled connections kept for all the hosts
+     * @param connectTimeoutMillis   timeout for establishing a connection in milliseconds
+     * @param readTimeoutMillis      timeout for waiting on data from an established connection in milliseconds
+     */
+    public HttpTransport(int maxConnectionsPerRoute, int maxConnectionsTotal, int connectTimeoutMillis, int readTimeoutMillis) {
+        this(maxConnectionsPerRoute, maxConnectionsTotal, connectTimeoutMillis, readTimeoutMillis, ExecutionMode.ASYNC,
+                maxConnectionsPerRoute, maxConnectionsTotal);
+    }
+
+    /**
+     * Creates a transport with its own connection pool, executing the asynchronous calls in the given mode
+     *
+     * @param maxConnectionsPerRoute        maximum number of pooled connections kept for a single host
+     * @param maxConnectionsTotal           maximum number of pooled connections kept for all the hosts
+     * @param connectTimeoutMillis          timeout for establishing a connection in milliseconds
+     * @param readTimeoutMillis             timeout for waiting on data from an established connection in milliseconds
+     * @param executionMode                 mode in which the asynchronous calls are executed
+     * @param maxConcurrentCallsPerUpstream maximum number of calls in flight to a single host in the blocking modes
+     * @param platformThreads               number of the threads executing the calls in the platform mode
+     */
+    public HttpTransport(int maxConnectionsPerRoute, int maxConnectionsTotal, int connectTimeoutMillis, int readTimeoutMillis,
+                         ExecutionMode executionMode, int maxConcurrentCallsPerUpstream, int platformThreads) {
+        this.executionMode = executionMode;
+        this.maxConcurrentCallsPerUpstream = Math.max(1, maxConcurrentCallsPerUpstream);
+        this.blockingCallExecutor = executionMode.isBlocking() ? executionMode.newTaskExecutor("http-call-", platformThreads) : null;
+        this.maxConnectionsPerRoute = maxConnectionsPerRoute;
+        this.maxConnectionsTotal = maxConnectionsTotal;
+        this.connectTimeoutMillis = connectTimeoutMillis;
+        this.readTimeoutMillis = readTimeoutMillis;
+        connectionManager = new PoolingHttpClientConnectionManager();
+        connectionManager.setDefaultMaxPerRoute(maxConnectionsPerRoute);
+        connectionManager.setMaxTotal(maxConnectionsTotal);
+        connectionManager.setValidateAfterInactivity(VALIDATE_AFTER_INACTIVITY_MILLIS);
+
+        requestConfig = RequestConfig.custom()
+                .setConnectTimeout(connectTimeoutMillis)
+                .setConnectionRequestTimeout(connectTimeoutMillis)
+                .setSocketTimeout(readTimeoutMillis)
+                .build();
+
+        // content compression is enabled by default in the builder, which adds the gzip Accept-Encoding header
+        // and wraps the response entity so that it is decompressed while it is being read
+        httpClient = HttpClients.custom()
+                .setConnectionManager(connectionManager)
+                .setDefaultRequestConfig(requestConfig)
+                .setKeepAliveStrategy(DefaultConnectionKeepAliveStrategy.INSTANCE)
+                .evictExpiredConnections()
+                .evictIdleConnections(IDLE_CONNECTION_EVICTION_SECONDS, TimeUnit.SECONDS)
+                .build();
+        logger.info("HTTP transport is created with " + maxConnectionsPerRoute + " connections per route and " + maxConnectionsTotal + " connections in total"
+                + " in the " + executionMode.name().toLowerCase(Locale.ENGLISH) + " execution mode");
+    }
+
+    /**
+     * Returns the transport shared by all the API callers of this application, creating it on first use
+     * from the cqm.http.* system properties and the execution mode given in the cqm.executionMode system property
+     *
+     * @return the shared HttpTransport instance
+     */
+    public static synchronized HttpTransport getDefault() {
+        if (defaultTransport == null) {
+            int maxConnectionsPerRoute = Integer.getInteger(MAX_CONNECTIONS_PER_ROUTE_PROPERTY, DEFAULT_MAX_CONNECTIONS_PER_ROUTE);
+            int maxConnectionsTotal = Integer.getInteger(MAX_CONNECTIONS_TOTAL_PROPERTY, DEFAULT_MAX_CONNECTIONS_TOTAL);
+            defaultTransport = new HttpTransport(maxConnectionsPerRoute, maxConnectionsTotal,
+                    Integer.getInteger(CONNECT_TIMEOUT_PROPERTY, DEFAULT_CONNECT_TIMEOUT_MILLIS),
+                    Integer.getInteger(READ_TIMEOUT_PROPERTY, DEFAULT_READ_TIMEOUT_MILLIS),
+                    ExecutionMode.fromSystemProperties(),
+                    Integer.getInteger(MAX_CONCURRENT_CALLS_PER_UPSTREAM_PROPERTY, maxConnectionsPerRoute),
+                    Integer.getInteger(PLATFORM_THREADS_PROPERTY, maxConnectionsTotal));
+        }
+        return defaultTransport;
+    }
+
+    /**
+     * Executes the given request on a pooled connection.
+     * The entity of the returned response must be fully consumed before closing it so that the connection
+     * is released back to the pool instead of being discarded. In the blocking execution modes the call waits for a
+     * permit of its upstream and the response is returned already buffered
+     *
+     * @param request the request to be executed
+     * @return the response received for the request
+     * @throws IOException if the request could not be executed
+     */
+    public CloseableHttpResponse execute(HttpUriRequest request) throws IOException {
+        if (!executionMode.isBlocking()) {
+            return httpClient.execute(request);
+        }
+        Semaphore permits = permitsOf(request);
+        try {
+            permits.acquire();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while waiting to call " + request.getURI(), e);
+        }
+        try {
+            return executeBuffered(request);
+        } finally {
+            permits.release();
+        }
+    }
+
+    /**
+     * Executes the given request without blocking the calling thread. The response is received whole, decompressed if
+     * it was gzip encoded, and the returned future is completed on a callback thread of this transport, or on the thread
+     * which executed the call in the blocking execution modes
+     *
+     * @param request the request to be executed
+     * @return a future of the response, which fails with a CodeQualityMatricesException if the request could not be
+     * executed
+     */
+    public CompletableFuture<HttpResponse> executeAsync(HttpUriRequest request) {
+        if (executionMode.isBlocking()) {
+            return executeOnOwnThread(request);
+        }
+        CompletableFuture<HttpResponse> futureResponse = new CompletableFuture<>();
+        CloseableHttpAsyncClient client;
+        try {
+            client = getAsyncClient();
+        } catch (CodeQualityMatricesException e) {
+            return Futures.failed(e);
+        }
+        // unlike the blocking client, the non-blocking client does not decompress the responses by itself
+        request.addHeader(HttpHeaders.ACCEPT_ENCODING, GZIP_ENCODING);
+        client.execute(request, new FutureCallback<HttpResponse>() {
+            @Override
+            public void completed(HttpResponse response) {
+                Header contentEncoding = response.getFirstHeader(HttpHeaders.CONTENT_ENCODING);
+                if (response.getEntity() != null && contentEncoding != null && GZIP_ENCODING.equalsIgnoreCase(contentEncoding.getValue())) {
+                    response.setEntity(new GzipDecompressingEntity(response.getEntity()));
+                    response.removeHeaders(HttpHeaders.CONTENT_ENCODING);
+                    response.removeHeaders(HttpHeaders.CONTENT_LENGTH);
+                }
+                handOver(() -> futureResponse.complete(response));
+            }
+
+            @Override
+            public void failed(Exception e) {
+                handOver(() -> futureResponse.completeExceptionally(
+                        new CodeQualityMatricesException("IOException occurred when calling " + request.getURI(), e)));
+            }
+
+            @Override
+            public void cancelled() {
+                handOver(() -> futureResponse.completeExceptionally(new CancellationException("Call to " + request.getURI()
+                        + " was cancelled")));
+            }
+        });
+        return futureResponse;
+    }
+
+    /**
+     * Executes the given request with the blocking client on a thread of the blocking execution mode, once a permit of
+     * its upstream is acquired. The response is buffered and its connection released before the permit is given back
+     */
+    private CompletableFuture<HttpResponse> executeOnOwnThread(HttpUriRequest request) {
+        CompletableFuture<HttpResponse> futureResponse = new CompletableFuture<>();
+        Semaphore permits = permitsOf(request);
+        try {
+            blockingCallExecutor.execute(() -> {
+                HttpResponse response;
+                try {
+                    permits.acquire();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    futureResponse.completeExceptionally(new CodeQualityMatricesException(
+                            "Interrupted while waiting to call " + request.getURI(), e));
+                    return;
+                }
+                try {
+                    response = executeBuffered(request);
+                } catch (IOException e) {
+                    futureResponse.completeExceptionally(
+                            new CodeQualityMatricesException("IOException occurred when calling " + request.getURI(), e));
+                    return;
+                } finally {
+                    permits.release();
+                }
+                futureResponse.complete(response);
+            });
+        } catch (RejectedExecutionException e) {
+            return Futures.failed(new CodeQualityMatricesException("Call to " + request.getURI()
+                    + " could not be started as the HTTP transport is closed", e));
+        }
+        return futureResponse;
+    }
+
+    /**
+     * Executes the given request with the blocking client and reads its response whole, so that its connection is
+     * released back to the pool before the permit of the call is given back
+     */
+    private CloseableHttpResponse executeBuffered(HttpUriRequest request) throws IOException {
+        try (CloseableHttpResponse response = httpClient.execute(request)) {
+            if (response.getEntity() != null) {
+                response.setEntity(new BufferedHttpEntity(response.getEntity()));
+            }
+            return response;
+        }
+    }
+
+    private Semaphore permitsOf(HttpUriRequest request) {
+        URI uri = request.getURI();
+        return upstreamPermits.computeIfAbsent(uri.getScheme() + "://" + uri.getRawAuthority(),
+                upstream -> new Semaphore(maxConcurrentCallsPerUpstream, true));
+    }
+
+    /**
+     * Runs a completion on a callback thread, so that the stages depending on the response do not run on an I/O
+     * thread, or on the I/O thread itself if the transport is being closed
+     */
+    private void handOver(Runnable completion) {
+        try {
+            callbackExecutor.execute(completion);
+        } catch (RejectedExecutionException e) {
+            completion.run();
+        }
+    }
+
+    private synchronized CloseableHttpAsyncClient getAsyncClient() throws CodeQualityMatricesException {
+        if (asyncClient == null) {
+            int availableProcessors = Runtime.getRuntime().availableProcessors();
+            IOReactorConfig ioReactorConfig = IOReactorConfig.custom()
+                    .setIoThreadCount(Integer.getInteger(IO_THREADS_PROPERTY, Math.min(availableProcessors, 4)))
+                    .setConnectTimeout(connectTimeoutMillis)
+                    .setSoTimeout(readTimeoutMillis)
+                    .build();
+            PoolingNHttpClientConnectionManager asyncConnectionManager;
+            try {
+                asyncConnectionManager = new PoolingNHttpClientConnectionManager(new DefaultConnectingIOReactor(ioReactorConfig));
+            } catch (IOReactorException e) {
+                throw new CodeQualityMatricesException("I/O reactor of the non-blocking HTTP client could not be created", e);
+            }
+            asyncConnectionManager.setDefaultMaxPerRoute(maxConnectionsPerRoute);
+            asyncConnectionManager.setMaxTotal(maxConnectionsTotal);
+            AtomicInteger threadCount = new AtomicInteger();
+            callbackExecutor = Executors.newFixedThreadPool(Integer.getInteger(CALLBACK_THREADS_PROPERTY, availableProcessors),
+                    runnable -> {
+                        Thread thread = new Thread(runnable, "http-callback-" + threadCount.incrementAndGet());
+                        thread.setDaemon(true);
+                        return thread;
+                    });
+            asyncClient = HttpAsyncClients.custom()
+                    .setConnectionManager(asyncConnectionManager)
+                    // the calls waiting for a connection are queued on the pool without holding a thread, so they wait
+                    // as long as it takes instead of failing once the pool is busy for longer than the connect timeout
+                    .setDefaultRequestConfig(RequestConfig.copy(requestConfig).setConnectionRequestTimeout(0).build())
+                    .setKeepAliveStrategy(DefaultConnectionKeepAliveStrategy.INSTANCE)
+                    .build();
+            asyncClient.start();
+            logger.info("Non-blocking HTTP client is started with " + ioReactorConfig.getIoThreadCount() + " I/O threads");
+        }
+        return asyncClient;
+    }
+
+    /**
+     * Closes the underlying clients together with all the pooled connections
+     *
+     * @throws IOException if the client could not be closed
+     */
+    @Override
+    public void close() throws IOException {
+        if (blockingCallExecutor != null) {
+            blockingCallExecutor.shutdownNow();
+        }
+        httpClient.close();
+        connectionManager.close();
+        synchronized (this) {
+            if (asyncClient != null) {
+                asyncClient.close();
+                callbackExecutor.shutdown();
+            }
+        }
+    }
+}
@@ -0,0 +1,300 @@
+/*
+ * Copyright (c) 2017, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ *
+ * WSO2 Inc. licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+
+package com.wso2.code.quality.matrices;
+
+import org.apache.log4j.Logger;
+import org.eclipse.jgit.blame.BlameGenerator;
+import org.eclipse.jgit.blame.BlameResult;
+import org.eclipse.jgit.errors.MissingObjectException;
+import org.eclipse.jgit.lib.ObjectId;
+import org.eclipse.jgit.lib.ObjectReader;
+import org.eclipse.jgit.lib.PersonIdent;
+import org.eclipse.jgit.lib.Repository;
+import org.eclipse.jgit.lib.RepositoryCache;
+import org.eclipse.jgit.revwalk.RevCommit;
+import org.eclipse.jgit.revwalk.RevWalk;
+import org.eclipse.jgit.storage.file.FileRepositoryBuilder;
+import org.eclipse.jgit.treewalk.TreeWalk;
+import org.eclipse.jgit.treewalk.filter.PathFilterGroup;
+import org.eclipse.jgit.util.FS;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * This class is used for taking the blames of files with JGit from local mirrors of the repositories, without any
+ * github API calls. The mirror of a repository owner/name is looked for as owner/name.git or owner/name inside the
+ * mirror directory, and may be a bare or a non bare repository.
+ * <p>
+ * The blames of the files at the same commit are taken together, resolving the commit once and finding the blobs of
+ * all the files with a single walk over the tree of the commit. The blames of the repositories which are not mirrored
+ * and of the commits which are not found in a mirror, for example as it was not fetched yet, are taken from the
+ * fallback provider.
+ *
+ * @since 1.0.0
+ */
+
+public class JGitBlameProvider implements BlameProvider, Closeable {
+
+    private static final Logger logger = Logger.getLogger(JGitBlameProvider.class);
+
+    private static final int SECONDS_PER_MINUTE = 60;
+
+    private final Path mirrorDirectory;
+    private final BlameCache blameCache;
+    private final BlameProvider fallbackBlameProvider;
+    // repositories are opened once and shared by all the threads, as reading a repository is thread safe
+    private final Map<String, Optional<Repository>> repositories = new ConcurrentHashMap<>();
+
+    /**
+     * Creates a JGitBlameProvider
+     *
+     * @param mirrorDirectory       directory containing the mirrors of the repositories
+     * @param blameCache            cache of the blames
+     * @param fallbackBlameProvider provider of the blames which cannot be taken from the mirrors
+     */
+    public JGitBlameProvider(Path mirrorDirectory, BlameCache blameCache, BlameProvider fallbackBlameProvider) {
+        this.mirrorDirectory = mirrorDirectory;
+        this.blameCache = blameCache;
+        this.fallbackBlameProvider = fallbackBlameProvider;
+    }
+
+    @Override
+    public Map<BlameKey, FileBlame> getBlames(Collection<BlameKey> blameKeys, boolean parentCommitsRequired, String gitHubToken)
+            throws CodeQualityMatricesException {
+
+        Map<BlameKey, FileBlame> blames = new HashMap<>();
+        List<BlameKey> fallbackKeys = blameFromMirrors(blameKeys, parentCommitsRequired, blames);
+        if (!fallbackKeys.isEmpty()) {
+            logger.info(fallbackKeys.size() + " blames are not found in the local mirrors and are taken from the fallback provider");
+            blames.putAll(fallbackBlameProvider.getBlames(fallbackKeys, parentCommitsRequired, gitHubToken));
+        }
+        return blames;
+    }
+
+    /**
+     * Takes the blames from the mirrors on the calling thread, which should be allowed to block, and the blames which
+     * are not found in the mirrors from the fallback provider without blocking
+     *
+     * @param blameKeys             keys of the blames
+     * @param parentCommitsRequired should be true if the parent commits of the blame ranges are needed
+     * @param gitHubToken           github token for accessing github GraphQL API
+     * @return a future of a map containing the blames against their keys, without the blames which could not be taken,
+     * which fails with a CodeQualityMatricesException if the blames could not be taken
+     */
+    @Override
+    public CompletableFuture<Map<BlameKey, FileBlame>> getBlamesAsync(Collection<BlameKey> blameKeys, boolean parentCommitsRequired,
+                                                                      String gitHubToken) {
+        Map<BlameKey, FileBlame> blames = new HashMap<>();
+        List<BlameKey> fallbackKeys;
+        try {
+            fallbackKeys = blameFromMirrors(blameKeys, parentCommitsRequired, blames);
+        } catch (CodeQualityMatricesException e) {
+            return Futures.failed(e);
+        }
+        if (fallbackKeys.isEmpty()) {
+            return CompletableFuture.completedFuture(blames);
+        }
+        logger.info(fallbackKeys.size() + " blames are not found in the local mirrors and are taken from the fallback provider");
+        return fallbackBlameProvider.getBlamesAsync(fallbackKeys, parentCommitsRequired, gitHubToken).thenApply(fallbackBlames -> {
+            blames.putAll(fallbackBlames);
+            return blames;
+        });
+    }
+
+    /**
+     * Adds the cached blames and the blames taken from the mirrors to the given map
+     *
+     * @return keys of the blames which could not be taken from the mirrors
+     * @throws CodeQualityMatricesException if a mirror could not be read
+     */
+    private List<BlameKey> blameFromMirrors(Collection<BlameKey> blameKeys, boolean parentCommitsRequired,
+                                            Map<BlameKey, FileBlame> blames) throws CodeQualityMatricesException {
+        // the keys of each repository and commit are blamed together
+        Map<String, Map<String, List<BlameKey>>> keysOfCommits = new LinkedHashMap<>();
+        for (BlameKey blameKey : new LinkedHashSet<>(blameKeys)) {
+            FileBlame blame = blameCache.get(blameKey, parentCommitsRequired);
+            if (blame != null) {
+                blames.put(blameKey, blame);
+            } else {
+                keysOfCommits.computeIfAbsent(blameKey.getRepoLocation(), key -> new LinkedHashMap<>())
+                        .computeIfAbsent(blameKey.getCommitHash(), key -> new ArrayList<>())
+                        .add(blameKey);
+            }
+        }
+
+        List<BlameKey> fallbackKeys = new ArrayList<>();
+        for (Map.Entry<String, Map<String, List<BlameKey>>> keysOfRepository : keysOfCommits.entrySet()) {
+            Optional<Repository> repository = getRepository(keysOfRepository.getKey());
+            for (List<BlameKey> keysOfCommit : keysOfRepository.getValue().values()) {
+                if (!repository.isPresent() || !blameCommit(repository.get(), keysOfCommit, blames)) {
+                    fallbackKeys.addAll(keysOfCommit);
+                }
+            }
+        }
+        return fallbackKeys;
+    }
+
+    /**
+     * Takes the blames of the files of a single commit
+     *
+     * @return false if the commit is not found in the repository
+     */
+    private boolean blameCommit(Repository repository, List<BlameKey> keysOfCommit, Map<BlameKey, FileBlame> blames)
+            throws CodeQualityMatricesException {
+
+        String commitHash = keysOfCommit.get(0).getCommitHash();
+        try (ObjectReader objectReader = repository.newObjectReader(); RevWalk revWalk = new RevWalk(objectReader)) {
+            ObjectId commitId;
+            try {
+                commitId = repository.resolve(commitHash);
+            } catch (MissingObjectException e) {
+                // the parent of a commit which is not in the mirror is asked for
+                return false;
+            }
+            if (commitId == null || !objectReader.has(commitId)) {
+                return false;
+            }
+            RevCommit commit = revWalk.parseCommit(commitId);
+            Set<String> existingPaths = findExistingPaths(objectReader, commit, keysOfCommit);
+
+            for (BlameKey blameKey : keysOfCommit) {
+                if (!existingPaths.contains(blameKey.getPath())) {
+                    logger.warn("Blame of " + blameKey + " could not be taken as the file does not exist at the commit");
+                    continue;
+                }
+                FileBlame blame = blameFile(repository, commit, blameKey.getPath());
+                blameCache.put(blameKey, blame);
+                blames.put(blameKey, blame);
+            }
+            return true;
+        } catch (IOException e) {
+            throw new CodeQualityMatricesException("IO Exception occurred when taking the blames of commit " + commitHash
+                    + " from the local mirror " + repository.getDirectory(), e);
+        }
+    }
+
+    /**
+     * Finds which of the files of the commit exist in its tree, walking the tree once for all the files
+     */
+    private Set<String> findExistingPaths(ObjectReader objectReader, RevCommit commit, List<BlameKey> keysOfCommit) throws IOException {
+        Set<String> paths = new HashSet<>();
+        keysOfCommit.forEach(blameKey -> paths.add(blameKey.getPath()));
+        Set<String> existingPaths = new HashSet<>();
+        try (TreeWalk treeWalk = new TreeWalk(objectReader)) {
+            treeWalk.addTree(commit.getTree());
+            treeWalk.setRecursive(true);
+            treeWalk.setFilter(PathFilterGroup.createFromStrings(paths));
+            while (treeWalk.next()) {
+                existingPaths.add(treeWalk.getPathString());
+            }
+        }
+        return existingPaths;
+    }
+
+    /**
+     * Takes the blame of a file, grouping the consecutive lines which were last changed by the same commit into a range
+     */
+    private FileBlame blameFile(Repository repository, RevCommit commit, String path) throws IOException {
+        FileBlame.Builder builder = new FileBlame.Builder(true);
+        try (BlameGenerator blameGenerator = new BlameGenerator(repository, path)) {
+            blameGenerator.setFollowFileRenames(true);
+            blameGenerator.push(null, commit);
+            BlameResult blameResult = BlameResult.create(blameGenerator);
+            if (blameResult == null) {
+                return builder.build();
+            }
+            blameResult.computeAll();
+            int lineCount = blameResult.getResultContents().size();
+            int rangeStart = 0;
+            for (int line = 1; line <= lineCount; line++) {
+                RevCommit sourceCommit = blameResult.getSourceCommit(rangeStart);
+                if (line < lineCount && sourceCommit != null && sourceCommit.equals(blameResult.getSourceCommit(line))) {
+                    continue;
+                }
+                if (sourceCommit != null) {
+                    // github gives the age as a recency rank, so a count of minutes keeps the most recent commit the youngest
+                    int age = Math.max(0, (commit.getCommitTime() - sourceCommit.getCommitTime()) / SECONDS_PER_MINUTE);
+                    PersonIdent author = blameResult.getSourceAuthor(rangeStart);
+                    builder.addRange(rangeStart + 1, line, age, sourceCommit.name(),
+                            sourceCommit.getParentCount() > 0 ? sourceCommit.getParent(0).name() : null,
+                            author == null ? null : author.getName());
+                }
+                rangeStart = line;
+            }
+        }
+        return builder.build();
+    }
+
+    /**
+     * Opens the mirror of the given repository, which is looked for only once
+     */
+    private Optional<Repository> getRepository(String repoLocation) {
+        return repositories.computeIfAbsent(repoLocation, key -> {
+            File gitDirectory = findGitDirectory(mirrorDirectory, key);
+            if (gitDirectory == null) {
+                return Optional.empty();
+            }
+            try {
+                return Optional.of(new FileRepositoryBuilder().setGitDir(gitDirectory).setMustExist(true).build());
+            } catch (IOException e) {
+                logger.warn("Local mirror " + gitDirectory + " of " + key + " could not be opened", e);
+                return Optional.empty();
+            }
+        });
+    }
+
+    /**
+     * Finds the git directory of the mirror of the given repository
+     *
+     * @param mirrorDirectory directory containing the mirrors of the repositories
+     * @param repoLocation    repository in the owner/name form
+     * @return the git directory of the mirror, or null if the repository is not mirrored
+     */
+    static File findGitDirectory(Path mirrorDirectory, String repoLocation) {
+        for (String candidate : new String[]{repoLocation + ".git", repoLocation}) {
+            File gitDirectory = RepositoryCache.FileKey.resolve(mirrorDirectory.resolve(candidate).toFile(), FS.DETECTED);
+            if (gitDirectory != null) {
+                return gitDirectory;
+            }
+        }
+        return null;
+    }
+
+    @Override
+    public void close() {
+        repositories.values().forEach(repository -> repository.ifPresent(Repository::close));
+        repositories.clear();
+    }
+}
@@ -19,19 +19,30 @@
 package com.wso2.code.quality.matrices;
 
 import org.apache.log4j.Logger;
-import org.json.JSONArray;
 
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.List;
 import java.util.Set;
 
 
 /**
  * This is the class having the main method of this application
  * PMT Access token, patch id and github access token
- * should be passed in order as command line arguments when running the application
+ * should be passed in order as command line arguments when running the application.
+ * Several github access tokens can be given separated by commas to spread the github API calls across their rate limits
+ * The metrics of the run are exported through JMX and to the file given in the cqm.metrics.file system property
+ * The spans of the run are written to the file given in the cqm.trace.file system property
+ * The finished units of the analysis are recorded to a journal of the patch in the directory given in the
+ * cqm.journal.directory system property, so that running the application again for a patch whose analysis failed
+ * resumes it without calling the APIs again for the units already finished. The journal is deleted once the analysis
+ * of the patch succeeds
  */
 public class MainClass {
     private final static Logger logger = Logger.getLogger(MainClass.class);
 
+    private static final String PATCH_SPAN = "patch";
+
     public static void main(String[] args) {
         logger.info(" Main method got executed");
         if (args.length==3) {
@@ -39,41 +50,97 @@ public class MainClass {
             String pmtToken = args[0];
             String patchId = args[1];
 
-            String pmtUrl = "http://umt.private.wso2.com:9765/codequalitymatricesapi/1.0.0//properties?path=/_system/governance/patchs/" + patchId;
+            String pmtUrl = Pmt.getUrlForPatch(patchId);
 
-            RestApiCaller restApiCaller = new RestApiCaller();
-            JSONArray jsonArray = null;
+            String[] gitHubTokens = args[2].split(",");
+            // the metrics and trace files are written for the last time when the JVM exits, also after a failed analysis
+            MetricsExporter metricsExporter = MetricsExporter.fromSystemProperties();
+            Runtime.getRuntime().addShutdownHook(new Thread(metricsExporter::close));
+            Runtime.getRuntime().addShutdownHook(new Thread(Tracer.getDefault()::close));
+            AnalysisJournal analysisJournal = AnalysisJournal.fromSystemProperties("patch-" + patchId);
+            Runtime.getRuntime().addShutdownHook(new Thread(() -> closeJournal(analysisJournal)));
+            Tracer.Span patchSpan = Tracer.getDefault().startRootSpan(PATCH_SPAN).setAttribute(Tracer.PATCH_ID_ATTRIBUTE, patchId);
+            RateLimitScheduler rateLimitScheduler = new RateLimitScheduler(Arrays.asList(gitHubTokens));
+            ResponseCache responseCache = null;
             try {
-                jsonArray = (JSONArray) restApiCaller.callApi(pmtUrl, pmtToken, false, false);
+                responseCache = ResponseCache.fromSystemProperties();
+            } catch (CodeQualityMatricesException e) {
+                logger.warn("Responses will not be cached as the response cache could not be created", e);
+            }
+            RestApiCaller restApiCaller = new RestApiCaller(HttpTransport.getDefault(), rateLimitScheduler, responseCache);
+            List<PmtProperty> pmtProperties = null;
+            try {
+                pmtProperties = restApiCaller.callApi(pmtUrl, pmtToken, false, false, ResponseDecoders::decodePmtProperties);
             } catch (CodeQualityMatricesException e) {
                 logger.error(e.getMessage(), e.getCause());
+                patchSpan.setError(e.getMessage());
                 System.exit(1);
             }
-            logger.info("JSON response is received successfully from WSO2 PMT for the given patch " + args[1]);
+            logger.info("Response is received successfully from WSO2 PMT for the given patch " + args[1]);
 
             Pmt pmt = new Pmt();
             String[] commitsInTheGivenPatch = null;
-            if (jsonArray != null) {
-                commitsInTheGivenPatch = pmt.getPublicGitCommitHashes(jsonArray);
+            if (pmtProperties != null) {
+                commitsInTheGivenPatch = pmt.getPublicGitCommitHashes(pmtProperties);
             }
             logger.info("Commits received from WSO2 PMT are saved in an array successfully");
 
-            String gitHubToken = args[2];
-            ChangesFinder changesFinder = new ChangesFinder();
+            String gitHubToken = gitHubTokens[0];
+            GraphQlApiCaller graphQlApiCaller = new GraphQlApiCaller(HttpTransport.getDefault(), rateLimitScheduler,
+                    ApiUrls.getGitHubGraphQlApiUrl());
+            ChangesFinder changesFinder = new ChangesFinder(graphQlApiCaller);
+            changesFinder.setAnalysisJournal(analysisJournal);
             Set<String> commitHashObtainedForPRReview = null;
             if (commitsInTheGivenPatch != null) {
-                commitHashObtainedForPRReview = changesFinder.obtainRepoNamesForCommitHashes(gitHubToken, commitsInTheGivenPatch, restApiCaller);
+                try {
+                    commitHashObtainedForPRReview = changesFinder.obtainRepoNamesForCommitHashes(gitHubToken, commitsInTheGivenPatch, restApiCaller);
+                } catch (CodeQualityMatricesException e) {
+                    logger.error(e.getMessage(), e.getCause());
+                    logger.error("The analysis of the patch stopped, run it again to resume from the " + analysisJournal.size()
+                            + " finished units in its journal");
+                    patchSpan.setError(e.getMessage());
+                    System.exit(2);
+                }
             }
+            changesFinder.close();
             logger.info("Author commits that introduce bug lines of code to the repository are saved in commitHashObtainedForPRReview SET successfully");
 
             Reviewer reviewer = new Reviewer();
             if (commitHashObtainedForPRReview != null) {
-                reviewer.findReviewers(commitHashObtainedForPRReview, gitHubToken, restApiCaller);
+                try {
+                    PullRequestResolver pullRequestResolver = new PullRequestResolver(graphQlApiCaller);
+                    pullRequestResolver.setAnalysisJournal(analysisJournal);
+                    reviewer.findReviewers(commitHashObtainedForPRReview, gitHubToken, pullRequestResolver);
+                } catch (CodeQualityMatricesException e) {
+                    logger.error(e.getMessage(), e.getCause());
+                    logger.error("The analysis of the patch stopped, run it again to resume from the " + analysisJournal.size()
+                            + " finished units in its journal");
+                    patchSpan.setError(e.getMessage());
+                    System.exit(1);
+                }
             }
+            completeJournal(analysisJournal);
+            patchSpan.close();
         }
         else{
             logger.error("at least one of the command line arguments are null.");
             System.exit(4);
         }
     }
+
+    static void completeJournal(AnalysisJournal analysisJournal) {
+        try {
+            analysisJournal.complete();
+        } catch (IOException e) {
+            logger.warn("The journal of the succeeded analysis could not be deleted", e);
+        }
+    }
+
+    static void closeJournal(AnalysisJournal analysisJournal) {
+        try {
+            analysisJournal.close();
+        } catch (IOException e) {
+            logger.warn("The journal of the analysis could not be closed", e);
+        }
+    }
 }
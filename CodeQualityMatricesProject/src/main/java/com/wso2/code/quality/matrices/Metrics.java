@@ -0,0 +1,346 @@
+/*
+ * Copyright (c) 2017, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ *
+ * WSO2 Inc. licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.wso2.code.quality.matrices;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.SortedMap;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.DoubleAdder;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.DoubleSupplier;
+
+/**
+ * Registry of the metrics of the analysis: counters, histograms and gauges, each of which is a family of time series
+ * told apart by the values of their labels. The metrics are exported in the Prometheus text format and as the
+ * attributes of an MBean by the MetricsExporter.
+ * <p>
+ * The metrics recorded by the analysis are the latency, the calls by status code and the response bytes of each API
+ * endpoint, the duration of each stage of the analysis, the hit ratio of the caches and the remaining rate limit
+ * budget of each token.
+ *
+ * @since 1.0.0
+ */
+
+public final class Metrics {
+
+    public static final String API_CALL_DURATION = "cqm_api_call_duration_seconds";
+    public static final String API_CALLS = "cqm_api_calls_total";
+    public static final String API_RESPONSE_BYTES = "cqm_api_response_bytes_total";
+    public static final String STAGE_DURATION = "cqm_stage_duration_seconds";
+    public static final String CACHE_REQUESTS = "cqm_cache_requests_total";
+    public static final String CACHE_HIT_RATIO = "cqm_cache_hit_ratio";
+    public static final String RATE_LIMIT_REMAINING = "cqm_rate_limit_remaining";
+
+    // upper bounds of the buckets of the histograms in seconds, from a fast API call to a slow analysis stage
+    private static final double[] DURATION_BUCKETS = {0.005, 0.01, 0.025, 0.05, 0.1, 0.25, 0.5, 1, 2.5, 5, 10, 30, 60, 300};
+
+    private static final Metrics DEFAULT = new Metrics();
+
+    private final ConcurrentMap<String, Family> families = new ConcurrentHashMap<>();
+
+    /**
+     * @return the registry shared across the application
+     */
+    public static Metrics getDefault() {
+        return DEFAULT;
+    }
+
+    /**
+     * Records the latency, the status code and the response bytes of an API call
+     *
+     * @param endpoint      endpoint which was called
+     * @param status        status code of the response, or error if no response was received
+     * @param startNanos    value of System.nanoTime when the call was started
+     * @param responseBytes number of bytes of the response body
+     */
+    public void recordApiCall(String endpoint, String status, long startNanos, long responseBytes) {
+        histogram(API_CALL_DURATION, "Latency of the API calls", "endpoint", endpoint).observeSince(startNanos);
+        counter(API_CALLS, "API calls by endpoint and status code", "endpoint", endpoint, "status", status).increment();
+        if (responseBytes > 0) {
+            counter(API_RESPONSE_BYTES, "Bytes of the API responses", "endpoint", endpoint).add(responseBytes);
+        }
+    }
+
+    /**
+     * Records the duration of a stage of the analysis
+     *
+     * @param stage      name of the stage
+     * @param startNanos value of System.nanoTime when the stage was started
+     */
+    public void recordStage(String stage, long startNanos) {
+        histogram(STAGE_DURATION, "Duration of the stages of the analysis", "stage", stage).observeSince(startNanos);
+    }
+
+    /**
+     * Records a lookup of a cache, and keeps the hit ratio of the cache as a gauge
+     *
+     * @param cache name of the cache
+     * @param hit   true if the value was found in the cache
+     */
+    public void recordCacheRequest(String cache, boolean hit) {
+        Counter hits = counter(CACHE_REQUESTS, "Lookups of the caches", "cache", cache, "result", "hit");
+        Counter misses = counter(CACHE_REQUESTS, "Lookups of the caches", "cache", cache, "result", "miss");
+        (hit ? hits : misses).increment();
+        family(CACHE_HIT_RATIO, "Share of the lookups of the caches which were hits", Type.GAUGE)
+                .series.computeIfAbsent(labels("cache", cache), key -> new Gauge(() -> {
+                    long total = hits.get() + misses.get();
+                    return total == 0 ? 0 : (double) hits.get() / total;
+                }));
+    }
+
+    /**
+     * Returns the counter of the given labels, creating it on the first use
+     *
+     * @param name                name of the counter
+     * @param help                description of the counter
+     * @param labelNamesAndValues names of the labels each followed by its value
+     * @return the counter
+     */
+    public Counter counter(String name, String help, String... labelNamesAndValues) {
+        return (Counter) family(name, help, Type.COUNTER).series.computeIfAbsent(labels(labelNamesAndValues), key -> new Counter());
+    }
+
+    /**
+     * Returns the histogram of the given labels, with buckets for durations in seconds, creating it on the first use
+     *
+     * @param name                name of the histogram
+     * @param help                description of the histogram
+     * @param labelNamesAndValues names of the labels each followed by its value
+     * @return the histogram
+     */
+    public Histogram histogram(String name, String help, String... labelNamesAndValues) {
+        return (Histogram) family(name, help, Type.HISTOGRAM).series.computeIfAbsent(labels(labelNamesAndValues),
+                key -> new Histogram(DURATION_BUCKETS));
+    }
+
+    /**
+     * Registers a gauge reading its value from the given supplier, in place of the gauge registered earlier with the
+     * same labels
+     *
+     * @param name                name of the gauge
+     * @param help                description of the gauge
+     * @param supplier            supplier of the value of the gauge
+     * @param labelNamesAndValues names of the labels each followed by its value
+     */
+    public void gauge(String name, String help, DoubleSupplier supplier, String... labelNamesAndValues) {
+        family(name, help, Type.GAUGE).series.put(labels(labelNamesAndValues), new Gauge(supplier));
+    }
+
+    /**
+     * Writes all the metrics in the Prometheus text exposition format
+     *
+     * @param writer writer to write the metrics to
+     * @throws IOException if the metrics could not be written
+     */
+    public void writePrometheusText(Writer writer) throws IOException {
+        for (Map.Entry<String, Family> familyEntry : sortedFamilies().entrySet()) {
+            String name = familyEntry.getKey();
+            Family family = familyEntry.getValue();
+            writer.write("# HELP " + name + " " + family.help + "\n");
+            writer.write("# TYPE " + name + " " + family.type.name().toLowerCase(Locale.ENGLISH) + "\n");
+            for (Map.Entry<String, Object> seriesEntry : new TreeMap<>(family.series).entrySet()) {
+                String labels = seriesEntry.getKey();
+                Object series = seriesEntry.getValue();
+                if (series instanceof Histogram) {
+                    Histogram histogram = (Histogram) series;
+                    long cumulativeCount = 0;
+                    for (int i = 0; i < histogram.upperBounds.length; i++) {
+                        cumulativeCount += histogram.bucketCounts[i].sum();
+                        writer.write(name + "_bucket" + withLabel(labels, "le", format(histogram.upperBounds[i])) + " " + cumulativeCount + "\n");
+                    }
+                    writer.write(name + "_bucket" + withLabel(labels, "le", "+Inf") + " " + histogram.getCount() + "\n");
+                    writer.write(name + "_sum" + braces(labels) + " " + format(histogram.getSum()) + "\n");
+                    writer.write(name + "_count" + braces(labels) + " " + histogram.getCount() + "\n");
+                } else {
+                    writer.write(name + braces(labels) + " " + format(valueOf(series)) + "\n");
+                }
+            }
+        }
+    }
+
+    /**
+     * Returns the current value of every time series, with the count and sum of each histogram, keyed by the name of
+     * the series in the Prometheus format
+     *
+     * @return the values of the time series
+     */
+    public Map<String, Double> snapshot() {
+        Map<String, Double> values = new LinkedHashMap<>();
+        sortedFamilies().forEach((name, family) -> new TreeMap<>(family.series).forEach((labels, series) -> {
+            if (series instanceof Histogram) {
+                values.put(name + "_count" + braces(labels), (double) ((Histogram) series).getCount());
+                values.put(name + "_sum" + braces(labels), ((Histogram) series).getSum());
+            } else {
+                values.put(name + braces(labels), valueOf(series));
+            }
+        }));
+        return values;
+    }
+
+    private Family family(String name, String help, Type type) {
+        Family family = families.computeIfAbsent(name, key -> new Family(help, type));
+        if (family.type != type) {
+            throw new IllegalArgumentException("Metric " + name + " is already registered as a " + family.type);
+        }
+        return family;
+    }
+
+    private SortedMap<String, Family> sortedFamilies() {
+        return new TreeMap<>(families);
+    }
+
+    private static double valueOf(Object series) {
+        return series instanceof Counter ? ((Counter) series).get() : ((Gauge) series).supplier.getAsDouble();
+    }
+
+    /**
+     * Builds the labels of a time series in the Prometheus format, without the braces
+     */
+    private static String labels(String... labelNamesAndValues) {
+        if (labelNamesAndValues.length % 2 != 0) {
+            throw new IllegalArgumentException("Each label name should be followed by its value");
+        }
+        List<String> labels = new ArrayList<>();
+        for (int i = 0; i < labelNamesAndValues.length; i += 2) {
+            labels.add(labelNamesAndValues[i] + "=\"" + escape(labelNamesAndValues[i + 1]) + "\"");
+        }
+        return String.join(",", labels);
+    }
+
+    private static String escape(String labelValue) {
+        return String.valueOf(labelValue).replace("\\", "\\\\").replace("\"", "\\\"").replace("\n", "\\n");
+    }
+
+    private static String braces(String labels) {
+        return labels.isEmpty() ? "" : "{" + labels + "}";
+    }
+
+    private static String withLabel(String labels, String name, String value) {
+        return "{" + (labels.isEmpty() ? "" : labels + ",") + name + "=\"" + value + "\"}";
+    }
+
+    private static String format(double value) {
+        return value == Math.rint(value) && !Double.isInfinite(value) && Math.abs(value) < 1e15
+                ? String.valueOf((long) value) : String.valueOf(value);
+    }
+
+    private enum Type {
+        COUNTER, GAUGE, HISTOGRAM
+    }
+
+    /**
+     * Time series of a metric against their labels
+     */
+    private static final class Family {
+        private final String help;
+        private final Type type;
+        private final ConcurrentMap<String, Object> series = new ConcurrentHashMap<>();
+
+        private Family(String help, Type type) {
+            this.help = help;
+            this.type = type;
+        }
+    }
+
+    /**
+     * A value which only goes up
+     */
+    public static final class Counter {
+        private final LongAdder value = new LongAdder();
+
+        public void increment() {
+            value.increment();
+        }
+
+        public void add(long amount) {
+            value.add(amount);
+        }
+
+        public long get() {
+            return value.sum();
+        }
+    }
+
+    /**
+     * A distribution of observed values counted in cumulative buckets
+     */
+    public static final class Histogram {
+        private final double[] upperBounds;
+        private final LongAdder[] bucketCounts;
+        private final LongAdder count = new LongAdder();
+        private final DoubleAdder sum = new DoubleAdder();
+
+        private Histogram(double[] upperBounds) {
+            this.upperBounds = upperBounds;
+            this.bucketCounts = new LongAdder[upperBounds.length];
+            for (int i = 0; i < upperBounds.length; i++) {
+                bucketCounts[i] = new LongAdder();
+            }
+        }
+
+        /**
+         * Observes the seconds elapsed since the given value of System.nanoTime
+         *
+         * @param startNanos value of System.nanoTime at the start of the observed duration
+         */
+        public void observeSince(long startNanos) {
+            observe((System.nanoTime() - startNanos) / (double) TimeUnit.SECONDS.toNanos(1));
+        }
+
+        public void observe(double value) {
+            // only the first bucket which can hold the value is counted, the buckets are summed up when exported
+            for (int i = 0; i < upperBounds.length; i++) {
+                if (value <= upperBounds[i]) {
+                    bucketCounts[i].increment();
+                    break;
+                }
+            }
+            count.increment();
+            sum.add(value);
+        }
+
+        public long getCount() {
+            return count.sum();
+        }
+
+        public double getSum() {
+            return sum.sum();
+        }
+    }
+
+    /**
+     * A value read when the metrics are exported
+     */
+    private static final class Gauge {
+        private final DoubleSupplier supplier;
+
+        private Gauge(DoubleSupplier supplier) {
+            this.supplier = supplier;
+        }
+    }
+}
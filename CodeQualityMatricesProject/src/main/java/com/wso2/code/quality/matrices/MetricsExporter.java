@@ -0,0 +1,222 @@
+/*
+ * Copyright (c) 2017, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ *
+ * WSO2 Inc. licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.wso2.code.quality.matrices;
+
+import org.apache.log4j.Logger;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.Writer;
+import java.lang.management.ManagementFactory;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import javax.management.Attribute;
+import javax.management.AttributeList;
+import javax.management.AttributeNotFoundException;
+import javax.management.DynamicMBean;
+import javax.management.JMException;
+import javax.management.MBeanAttributeInfo;
+import javax.management.MBeanInfo;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+/**
+ * Exports the metrics of a registry as the attributes of an MBean and as a file in the Prometheus text format, which
+ * is rewritten periodically so that it can be read by the textfile collector of the Prometheus node exporter. The
+ * AnalysisServer also serves the metrics in the Prometheus text format on /metrics.
+ *
+ * @since 1.0.0
+ */
+
+public class MetricsExporter implements Closeable {
+
+    public static final String OBJECT_NAME = "com.wso2.code.quality.matrices:type=Metrics";
+
+    private static final Logger logger = Logger.getLogger(MetricsExporter.class);
+
+    private static final String JMX_ENABLED_PROPERTY = "cqm.metrics.jmx";
+    private static final String FILE_PROPERTY = "cqm.metrics.file";
+    private static final String FILE_INTERVAL_SECONDS_PROPERTY = "cqm.metrics.fileIntervalSeconds";
+    private static final int DEFAULT_FILE_INTERVAL_SECONDS = 15;
+
+    private final Metrics metrics;
+    private final ObjectName objectName;
+    private final Path file;
+    private final ScheduledExecutorService fileWriter;
+    private final AtomicBoolean closed = new AtomicBoolean();
+
+    /**
+     * Creates an exporter of the shared registry using the cqm.metrics.jmx, cqm.metrics.file and
+     * cqm.metrics.fileIntervalSeconds system properties. The MBean is registered unless cqm.metrics.jmx is false, and
+     * the file is only written if cqm.metrics.file is given
+     *
+     * @return the started exporter
+     */
+    public static MetricsExporter fromSystemProperties() {
+        String file = System.getProperty(FILE_PROPERTY);
+        return new MetricsExporter(Metrics.getDefault(), Boolean.parseBoolean(System.getProperty(JMX_ENABLED_PROPERTY, "true")),
+                file == null ? null : Paths.get(file), Integer.getInteger(FILE_INTERVAL_SECONDS_PROPERTY, DEFAULT_FILE_INTERVAL_SECONDS));
+    }
+
+    /**
+     * Creates an exporter and starts exporting the metrics
+     *
+     * @param metrics             registry of the metrics
+     * @param jmxEnabled          true if the metrics should be exported as the attributes of an MBean
+     * @param file                file the metrics are written to, or null if they should not be written to a file
+     * @param fileIntervalSeconds number of seconds between the writes of the file
+     */
+    public MetricsExporter(Metrics metrics, boolean jmxEnabled, Path file, int fileIntervalSeconds) {
+        this.metrics = metrics;
+        this.objectName = jmxEnabled ? registerMBean(metrics) : null;
+        this.file = file;
+        if (file == null) {
+            this.fileWriter = null;
+        } else {
+            this.fileWriter = Executors.newSingleThreadScheduledExecutor(runnable -> {
+                Thread thread = new Thread(runnable, "metrics-file-writer");
+                thread.setDaemon(true);
+                return thread;
+            });
+            long interval = Math.max(1, fileIntervalSeconds);
+            fileWriter.scheduleWithFixedDelay(this::writeFile, interval, interval, TimeUnit.SECONDS);
+        }
+    }
+
+    /**
+     * Writes the metrics to the file, replacing the earlier file at once so that a reader never sees a partial file
+     */
+    public void writeFile() {
+        if (file == null) {
+            return;
+        }
+        try {
+            Path directory = file.toAbsolutePath().getParent();
+            Files.createDirectories(directory);
+            Path temporaryFile = Files.createTempFile(directory, file.getFileName().toString(), ".tmp");
+            try (Writer writer = Files.newBufferedWriter(temporaryFile, StandardCharsets.UTF_8)) {
+                metrics.writePrometheusText(writer);
+            }
+            Files.move(temporaryFile, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            logger.warn("Metrics could not be written to " + file, e);
+        }
+    }
+
+    /**
+     * Writes the file for the last time and unregisters the MBean
+     */
+    @Override
+    public void close() {
+        if (!closed.compareAndSet(false, true)) {
+            return;
+        }
+        if (fileWriter != null) {
+            fileWriter.shutdownNow();
+            writeFile();
+        }
+        if (objectName != null) {
+            try {
+                ManagementFactory.getPlatformMBeanServer().unregisterMBean(objectName);
+            } catch (JMException e) {
+                logger.warn("Metrics MBean could not be unregistered", e);
+            }
+        }
+    }
+
+    private static ObjectName registerMBean(Metrics metrics) {
+        try {
+            ObjectName objectName = new ObjectName(OBJECT_NAME);
+            MBeanServer mBeanServer = ManagementFactory.getPlatformMBeanServer();
+            if (mBeanServer.isRegistered(objectName)) {
+                mBeanServer.unregisterMBean(objectName);
+            }
+            mBeanServer.registerMBean(new MetricsMBean(metrics), objectName);
+            return objectName;
+        } catch (JMException e) {
+            logger.warn("Metrics could not be exported through JMX", e);
+            return null;
+        }
+    }
+
+    /**
+     * MBean having each time series of the metrics as a read only attribute named as the series in the Prometheus
+     * format. The attributes are read from the registry whenever they are listed, as new series appear during a run
+     */
+    private static final class MetricsMBean implements DynamicMBean {
+        private final Metrics metrics;
+
+        private MetricsMBean(Metrics metrics) {
+            this.metrics = metrics;
+        }
+
+        @Override
+        public Object getAttribute(String attribute) throws AttributeNotFoundException {
+            Double value = metrics.snapshot().get(attribute);
+            if (value == null) {
+                throw new AttributeNotFoundException(attribute);
+            }
+            return value;
+        }
+
+        @Override
+        public AttributeList getAttributes(String[] attributes) {
+            Map<String, Double> snapshot = metrics.snapshot();
+            AttributeList attributeList = new AttributeList();
+            for (String attribute : attributes) {
+                if (snapshot.containsKey(attribute)) {
+                    attributeList.add(new Attribute(attribute, snapshot.get(attribute)));
+                }
+            }
+            return attributeList;
+        }
+
+        @Override
+        public void setAttribute(Attribute attribute) throws AttributeNotFoundException {
+            throw new AttributeNotFoundException("Metrics are read only");
+        }
+
+        @Override
+        public AttributeList setAttributes(AttributeList attributes) {
+            return new AttributeList();
+        }
+
+        @Override
+        public Object invoke(String actionName, Object[] params, String[] signature) {
+            throw new UnsupportedOperationException("Metrics have no operations");
+        }
+
+        @Override
+        public MBeanInfo getMBeanInfo() {
+            MBeanAttributeInfo[] attributeInfos = metrics.snapshot().keySet().stream()
+                    .map(name -> new MBeanAttributeInfo(name, Double.class.getName(), name, true, false, false))
+                    .toArray(MBeanAttributeInfo[]::new);
+            return new MBeanInfo(MetricsMBean.class.getName(), "Metrics of the code quality matrices analysis",
+                    attributeInfos, null, null, null);
+        }
+    }
+}
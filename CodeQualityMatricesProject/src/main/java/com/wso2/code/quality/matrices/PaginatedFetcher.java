@@ -0,0 +1,318 @@
+/*
+ * Copyright (c) 2017, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ *
+ * WSO2 Inc. licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+
+package com.wso2.code.quality.matrices;
+
+import org.apache.log4j.Logger;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.function.Consumer;
+import java.util.function.Function;
+import java.util.function.Predicate;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+/**
+ * This class is used for reading all the pages of the paginated github REST API responses. The items of all the pages
+ * are given as a lazy stream, which calls the API for a page only when the items of the previous page are used up,
+ * following the url in the Link header of each response. A caller which stops consuming the stream early, for example
+ * with limit or anyMatch, never pays for the remaining pages.
+ * <p>
+ * Since a stream cannot throw a checked exception, a failed call is thrown as an IllegalStateException having the
+ * CodeQualityMatricesException as its cause, which fetchConcurrently throws again as it is. The listings can also be
+ * read without blocking with fetchAsync and fetchAllAsync, which chain the call for the next page to the response of
+ * the previous page instead of holding a thread for each listing. In the virtual execution mode fetchConcurrently
+ * reads each listing on a virtual thread of its own, leaving the cap of the calls in flight to the HttpTransport.
+ *
+ * @since 1.0.0
+ */
+
+public class PaginatedFetcher {
+
+    private static final Logger logger = Logger.getLogger(PaginatedFetcher.class);
+
+    private static final String PARALLELISM_PROPERTY = "cqm.rest.pageFetchParallelism";
+    private static final int DEFAULT_PARALLELISM = 8;
+
+    private final RestApiCaller restApiCaller;
+    private final int parallelism;
+    private final ExecutionMode executionMode;
+
+    /**
+     * Creates a PaginatedFetcher reading the listings concurrently up to the parallelism level given in the
+     * cqm.rest.pageFetchParallelism system property, on the threads of the mode given in the cqm.executionMode system
+     * property
+     *
+     * @param restApiCaller instance of the RestApiCaller class for accessing the REST APIs
+     */
+    public PaginatedFetcher(RestApiCaller restApiCaller) {
+        this(restApiCaller, Integer.getInteger(PARALLELISM_PROPERTY, DEFAULT_PARALLELISM), ExecutionMode.fromSystemProperties());
+    }
+
+    /**
+     * Creates a PaginatedFetcher reading the listings concurrently on platform threads
+     *
+     * @param restApiCaller instance of the RestApiCaller class for accessing the REST APIs
+     * @param parallelism   maximum number of listings read at once by fetchConcurrently
+     */
+    public PaginatedFetcher(RestApiCaller restApiCaller, int parallelism) {
+        this(restApiCaller, parallelism, ExecutionMode.PLATFORM);
+    }
+
+    /**
+     * Creates a PaginatedFetcher
+     *
+     * @param restApiCaller instance of the RestApiCaller class for accessing the REST APIs
+     * @param parallelism   maximum number of listings read at once by fetchConcurrently on platform threads
+     * @param executionMode mode whose threads read the listings of fetchConcurrently
+     */
+    public PaginatedFetcher(RestApiCaller restApiCaller, int parallelism, ExecutionMode executionMode) {
+        this.restApiCaller = restApiCaller;
+        this.parallelism = Math.max(1, parallelism);
+        this.executionMode = executionMode;
+    }
+
+    /**
+     * Gives the items of all the pages of a listing as a lazy stream
+     *
+     * @param firstPageUrl        url of the first page of the listing
+     * @param accessToken         github access token
+     * @param requireCommitHeader should be true for accessing the github commit search API and false otherwise
+     * @param requireReviewHeader should be true for accessing the github review API or false otherwise
+     * @param pageDecoder         decoder of the items of a page
+     * @param <T>                 type of the items
+     * @return the stream of the items, which ends early if a page is answered with an unexpected response code
+     */
+    public <T> Stream<T> stream(String firstPageUrl, String accessToken, boolean requireCommitHeader, boolean requireReviewHeader,
+                                ResponseDecoder<List<T>> pageDecoder) {
+        return StreamSupport.stream(new PageSpliterator<>(firstPageUrl, accessToken, requireCommitHeader, requireReviewHeader,
+                pageDecoder), false);
+    }
+
+    /**
+     * Reads many listings concurrently, each with the given reader, up to the parallelism level of this fetcher or each
+     * on its own thread in the virtual execution mode
+     *
+     * @param firstPageUrls       urls of the first pages of the listings against their keys
+     * @param accessToken         github access token
+     * @param requireCommitHeader should be true for accessing the github commit search API and false otherwise
+     * @param requireReviewHeader should be true for accessing the github review API or false otherwise
+     * @param pageDecoder         decoder of the items of a page
+     * @param reader              reads what is needed from the stream of the items of a listing
+     * @param <K>                 type of the keys of the listings
+     * @param <T>                 type of the items
+     * @param <R>                 type of the results of the reader
+     * @return the results of the reader against the keys, in the order of the given listings
+     * @throws CodeQualityMatricesException if an API call failed
+     */
+    public <K, T, R> Map<K, R> fetchConcurrently(Map<K, String> firstPageUrls, String accessToken, boolean requireCommitHeader,
+                                                 boolean requireReviewHeader, ResponseDecoder<List<T>> pageDecoder,
+                                                 Function<Stream<T>, R> reader) throws CodeQualityMatricesException {
+        Map<K, R> results = new LinkedHashMap<>();
+        if (firstPageUrls.isEmpty()) {
+            return results;
+        }
+        ExecutorService executorService = executionMode.newTaskExecutor("listing-reader-",
+                Math.min(parallelism, firstPageUrls.size()));
+        try {
+            Map<K, Future<R>> futureResults = new LinkedHashMap<>();
+            // the calls made on the threads of the executor are traced under the span of the calling thread
+            firstPageUrls.forEach((key, firstPageUrl) -> futureResults.put(key, executorService.submit(Tracer.getDefault().wrap(() -> {
+                try (Stream<T> items = stream(firstPageUrl, accessToken, requireCommitHeader, requireReviewHeader, pageDecoder)) {
+                    return reader.apply(items);
+                }
+            }))));
+            for (Map.Entry<K, Future<R>> futureResult : futureResults.entrySet()) {
+                results.put(futureResult.getKey(), futureResult.getValue().get());
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new CodeQualityMatricesException("Interrupted while reading the pages of the REST API responses", e);
+        } catch (ExecutionException e) {
+            throw unwrap(e.getCause());
+        } finally {
+            executorService.shutdownNow();
+        }
+        return results;
+    }
+
+    /**
+     * Reads the pages of a listing without blocking the calling thread, calling the API for a page only when the
+     * earlier pages did not give enough of the items
+     *
+     * @param firstPageUrl        url of the first page of the listing
+     * @param accessToken         github access token
+     * @param requireCommitHeader should be true for accessing the github commit search API and false otherwise
+     * @param requireReviewHeader should be true for accessing the github review API or false otherwise
+     * @param pageDecoder         decoder of the items of a page
+     * @param filter              selects the items which are needed
+     * @param limit               number of the selected items after which the rest of the pages are not read
+     * @param <T>                 type of the items
+     * @return a future of the selected items, in the order of the listing, which fails with a
+     * CodeQualityMatricesException if an API call failed
+     */
+    public <T> CompletableFuture<List<T>> fetchAsync(String firstPageUrl, String accessToken, boolean requireCommitHeader,
+                                                     boolean requireReviewHeader, ResponseDecoder<List<T>> pageDecoder,
+                                                     Predicate<T> filter, int limit) {
+        return fetchPagesAsync(firstPageUrl, 1, accessToken, requireCommitHeader, requireReviewHeader, pageDecoder, filter,
+                limit, new ArrayList<>());
+    }
+
+    /**
+     * Reads many listings without blocking the calling thread, each as given by fetchAsync. As no thread is held while
+     * a page is awaited, the listings are not limited by the parallelism level of this fetcher
+     *
+     * @param firstPageUrls       urls of the first pages of the listings against their keys
+     * @param accessToken         github access token
+     * @param requireCommitHeader should be true for accessing the github commit search API and false otherwise
+     * @param requireReviewHeader should be true for accessing the github review API or false otherwise
+     * @param pageDecoder         decoder of the items of a page
+     * @param filter              selects the items which are needed
+     * @param limit               number of the selected items of a listing after which the rest of its pages are not read
+     * @param <K>                 type of the keys of the listings
+     * @param <T>                 type of the items
+     * @return a future of the selected items against the keys, in the order of the given listings, which fails with a
+     * CodeQualityMatricesException as soon as an API call failed
+     */
+    public <K, T> CompletableFuture<Map<K, List<T>>> fetchAllAsync(Map<K, String> firstPageUrls, String accessToken,
+                                                                   boolean requireCommitHeader, boolean requireReviewHeader,
+                                                                   ResponseDecoder<List<T>> pageDecoder, Predicate<T> filter,
+                                                                   int limit) {
+        List<K> keys = new ArrayList<>(firstPageUrls.keySet());
+        List<CompletableFuture<List<T>>> futureItems = new ArrayList<>();
+        firstPageUrls.values().forEach(firstPageUrl -> futureItems.add(fetchAsync(firstPageUrl, accessToken,
+                requireCommitHeader, requireReviewHeader, pageDecoder, filter, limit)));
+        return Futures.allOf(futureItems).thenApply(itemsOfListings -> {
+            Map<K, List<T>> results = new LinkedHashMap<>();
+            for (int i = 0; i < keys.size(); i++) {
+                results.put(keys.get(i), itemsOfListings.get(i));
+            }
+            return results;
+        });
+    }
+
+    private <T> CompletableFuture<List<T>> fetchPagesAsync(String pageUrl, int pageCount, String accessToken,
+                                                           boolean requireCommitHeader, boolean requireReviewHeader,
+                                                           ResponseDecoder<List<T>> pageDecoder, Predicate<T> filter,
+                                                           int limit, List<T> items) {
+        // the span of the caller is restored for the later pages, which are called from the callback threads
+        Tracer.Span parentSpan = Tracer.getDefault().currentSpan();
+        return restApiCaller.callApiPageAsync(pageUrl, accessToken, requireCommitHeader, requireReviewHeader, pageDecoder)
+                .thenCompose(page -> {
+                    if (page == null) {
+                        logger.warn("Page " + pageCount + " of " + pageUrl + " could not be read, the rest of the pages are skipped");
+                        return CompletableFuture.completedFuture(items);
+                    }
+                    if (pageCount > 1) {
+                        logger.info("Page " + pageCount + " is read from " + pageUrl);
+                    }
+                    if (page.getContent() != null) {
+                        page.getContent().stream()
+                                .filter(item -> item != null && filter.test(item))
+                                .limit(limit - items.size())
+                                .forEach(items::add);
+                    }
+                    if (items.size() >= limit || page.getNextPageUrl() == null) {
+                        return CompletableFuture.completedFuture(items);
+                    }
+                    return Tracer.getDefault().inSpan(parentSpan, () -> fetchPagesAsync(page.getNextPageUrl(), pageCount + 1,
+                            accessToken, requireCommitHeader, requireReviewHeader, pageDecoder, filter, limit, items));
+                });
+    }
+
+    /**
+     * Finds the CodeQualityMatricesException behind an exception thrown from a stream of this fetcher
+     *
+     * @param e exception thrown while the stream was consumed
+     * @return the failure of the API call, or a new exception if the stream failed for any other reason
+     */
+    public static CodeQualityMatricesException unwrap(Throwable e) {
+        for (Throwable cause = e; cause != null; cause = cause.getCause()) {
+            if (cause instanceof CodeQualityMatricesException) {
+                return (CodeQualityMatricesException) cause;
+            }
+        }
+        return new CodeQualityMatricesException("Unexpected exception occurred while reading the pages of the REST API responses", e);
+    }
+
+    /**
+     * Calls the API for the next page only when all the items of the current page are consumed
+     */
+    private final class PageSpliterator<T> extends Spliterators.AbstractSpliterator<T> {
+        private final String accessToken;
+        private final boolean requireCommitHeader;
+        private final boolean requireReviewHeader;
+        private final ResponseDecoder<List<T>> pageDecoder;
+        private String nextPageUrl;
+        private Iterator<T> itemsOfPage = Collections.emptyIterator();
+        private int pageCount;
+
+        private PageSpliterator(String firstPageUrl, String accessToken, boolean requireCommitHeader, boolean requireReviewHeader,
+                                ResponseDecoder<List<T>> pageDecoder) {
+            super(Long.MAX_VALUE, Spliterator.ORDERED | Spliterator.NONNULL);
+            this.nextPageUrl = firstPageUrl;
+            this.accessToken = accessToken;
+            this.requireCommitHeader = requireCommitHeader;
+            this.requireReviewHeader = requireReviewHeader;
+            this.pageDecoder = pageDecoder;
+        }
+
+        @Override
+        public boolean tryAdvance(Consumer<? super T> action) {
+            while (!itemsOfPage.hasNext()) {
+                if (nextPageUrl == null) {
+                    return false;
+                }
+                ApiPage<List<T>> page;
+                try {
+                    page = restApiCaller.callApiPage(nextPageUrl, accessToken, requireCommitHeader, requireReviewHeader, pageDecoder);
+                } catch (CodeQualityMatricesException e) {
+                    throw new IllegalStateException(e.getMessage(), e);
+                }
+                pageCount++;
+                if (page == null) {
+                    logger.warn("Page " + pageCount + " of " + nextPageUrl + " could not be read, the rest of the pages are skipped");
+                    nextPageUrl = null;
+                    return false;
+                }
+                if (pageCount > 1) {
+                    logger.info("Page " + pageCount + " is read from " + nextPageUrl);
+                }
+                nextPageUrl = page.getNextPageUrl();
+                itemsOfPage = page.getContent() == null ? Collections.<T>emptyIterator() : page.getContent().iterator();
+            }
+            T item = itemsOfPage.next();
+            if (item != null) {
+                action.accept(item);
+            }
+            return true;
+        }
+    }
+}
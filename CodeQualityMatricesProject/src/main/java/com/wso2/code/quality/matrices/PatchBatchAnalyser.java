@@ -0,0 +1,309 @@
+/*
+ * Copyright (c) 2017, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ *
+ * WSO2 Inc. licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+
+package com.wso2.code.quality.matrices;
+
+import org.apache.log4j.Logger;
+
+import java.io.BufferedReader;
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * This class is used for analysing many patches in a single run. The commits of all the patches are read from WSO2
+ * PMT concurrently, and each commit is analysed only once even if it belongs to several patches, after which its
+ * result is attributed back to every patch containing it. The reviewers of a commit which introduced bug lines are
+ * also looked for only once, and the caches of the run are shared by all the patches.
+ *
+ * @since 1.0.0
+ */
+
+public class PatchBatchAnalyser implements Closeable {
+
+    private static final Logger logger = Logger.getLogger(PatchBatchAnalyser.class);
+
+    private static final String PMT_PARALLELISM_PROPERTY = "cqm.batch.pmtParallelism";
+    private static final int DEFAULT_PMT_PARALLELISM = 8;
+    // names of the root spans of the analyses in the traces
+    private static final String PATCH_SPAN = "patch";
+    private static final String PATCH_BATCH_SPAN = "patch_batch";
+
+    private final RestApiCaller restApiCaller;
+    private final ChangesFinder changesFinder;
+    private final PullRequestResolver pullRequestResolver;
+    private final String pmtToken;
+    private final String gitHubToken;
+    private final int pmtParallelism;
+    private AnalysisJournal analysisJournal = AnalysisJournal.disabled();
+
+    /**
+     * Creates a PatchBatchAnalyser reading the patches using the parallelism level given in the cqm.batch.pmtParallelism
+     * system property
+     *
+     * @param restApiCaller instance of the RestApiCaller class for accessing the REST APIs
+     * @param changesFinder instance of the ChangesFinder class for analysing the commits
+     * @param pmtToken      access token of WSO2 PMT
+     * @param gitHubToken   github token for accessing the github APIs
+     */
+    public PatchBatchAnalyser(RestApiCaller restApiCaller, ChangesFinder changesFinder, String pmtToken, String gitHubToken) {
+        this(restApiCaller, changesFinder, pmtToken, gitHubToken, Integer.getInteger(PMT_PARALLELISM_PROPERTY, DEFAULT_PMT_PARALLELISM));
+    }
+
+    /**
+     * Creates a PatchBatchAnalyser finding the reviewers with batched GraphQL queries and reading the patches using the
+     * parallelism level given in the cqm.batch.pmtParallelism system property
+     *
+     * @param restApiCaller       instance of the RestApiCaller class for accessing the REST APIs
+     * @param changesFinder       instance of the ChangesFinder class for analysing the commits
+     * @param pullRequestResolver instance of the PullRequestResolver class for finding the reviewers of all the commits
+     * @param pmtToken            access token of WSO2 PMT
+     * @param gitHubToken         github token for accessing the github APIs
+     */
+    public PatchBatchAnalyser(RestApiCaller restApiCaller, ChangesFinder changesFinder, PullRequestResolver pullRequestResolver,
+                              String pmtToken, String gitHubToken) {
+        this(restApiCaller, changesFinder, pullRequestResolver, pmtToken, gitHubToken,
+                Integer.getInteger(PMT_PARALLELISM_PROPERTY, DEFAULT_PMT_PARALLELISM));
+    }
+
+    /**
+     * Creates a PatchBatchAnalyser
+     *
+     * @param restApiCaller  instance of the RestApiCaller class for accessing the REST APIs
+     * @param changesFinder  instance of the ChangesFinder class for analysing the commits
+     * @param pmtToken       access token of WSO2 PMT
+     * @param gitHubToken    github token for accessing the github APIs
+     * @param pmtParallelism maximum number of patches read from WSO2 PMT at once
+     */
+    public PatchBatchAnalyser(RestApiCaller restApiCaller, ChangesFinder changesFinder, String pmtToken, String gitHubToken,
+                              int pmtParallelism) {
+        this(restApiCaller, changesFinder, null, pmtToken, gitHubToken, pmtParallelism);
+    }
+
+    /**
+     * Creates a PatchBatchAnalyser
+     *
+     * @param restApiCaller       instance of the RestApiCaller class for accessing the REST APIs
+     * @param changesFinder       instance of the ChangesFinder class for analysing the commits
+     * @param pullRequestResolver instance of the PullRequestResolver class for finding the reviewers of all the commits
+     *                            with batched GraphQL queries, or null if they are found with the REST APIs
+     * @param pmtToken            access token of WSO2 PMT
+     * @param gitHubToken         github token for accessing the github APIs
+     * @param pmtParallelism      maximum number of patches read from WSO2 PMT at once
+     */
+    public PatchBatchAnalyser(RestApiCaller restApiCaller, ChangesFinder changesFinder, PullRequestResolver pullRequestResolver,
+                              String pmtToken, String gitHubToken, int pmtParallelism) {
+        this.restApiCaller = restApiCaller;
+        this.changesFinder = changesFinder;
+        this.pullRequestResolver = pullRequestResolver;
+        this.pmtToken = pmtToken;
+        this.gitHubToken = gitHubToken;
+        this.pmtParallelism = Math.max(1, pmtParallelism);
+    }
+
+    /**
+     * Sets the journal to which the finished units of the analysis are recorded and from which the units finished by
+     * an earlier run of the same patches are replayed
+     *
+     * @param analysisJournal journal of the analysis
+     */
+    public void setAnalysisJournal(AnalysisJournal analysisJournal) {
+        this.analysisJournal = analysisJournal;
+        changesFinder.setAnalysisJournal(analysisJournal);
+        if (pullRequestResolver != null) {
+            pullRequestResolver.setAnalysisJournal(analysisJournal);
+        }
+    }
+
+    /**
+     * Reads the ids of the patches, one per line, skipping the blank lines, the lines starting with # and the
+     * repeated ids
+     *
+     * @param reader reader of the list of patch ids
+     * @return the patch ids in the order they were given
+     * @throws IOException if the list could not be read
+     */
+    public static List<String> readPatchIds(BufferedReader reader) throws IOException {
+        Set<String> patchIds = new LinkedHashSet<>();
+        String line;
+        while ((line = reader.readLine()) != null) {
+            String patchId = line.trim();
+            if (!patchId.isEmpty() && !patchId.startsWith("#")) {
+                patchIds.add(patchId);
+            }
+        }
+        return new ArrayList<>(patchIds);
+    }
+
+    /**
+     * Analyses all the given patches
+     *
+     * @param patchIds ids of the patches
+     * @return the report of each patch against its id, in the order the patches were given
+     * @throws CodeQualityMatricesException if any of the github API calls made during the analysis failed
+     */
+    public Map<String, PatchReport> analysePatches(Collection<String> patchIds) throws CodeQualityMatricesException {
+        // a single patch, as analysed for each request of the analysis server, is traced on its own
+        Tracer.Span span;
+        if (patchIds.size() == 1) {
+            span = Tracer.getDefault().startRootSpan(PATCH_SPAN).setAttribute(Tracer.PATCH_ID_ATTRIBUTE, patchIds.iterator().next());
+        } else {
+            span = Tracer.getDefault().startRootSpan(PATCH_BATCH_SPAN).setAttribute(Tracer.PATCH_COUNT_ATTRIBUTE, patchIds.size());
+        }
+        try {
+            return analyseTracedPatches(patchIds);
+        } catch (CodeQualityMatricesException e) {
+            span.setError(e.getMessage());
+            throw e;
+        } finally {
+            span.close();
+        }
+    }
+
+    private Map<String, PatchReport> analyseTracedPatches(Collection<String> patchIds) throws CodeQualityMatricesException {
+        Map<String, PatchReport> reports = new LinkedHashMap<>();
+        Map<String, List<String>> commitsOfPatches = readCommitsOfPatches(patchIds, reports);
+
+        Set<String> uniqueCommits = new LinkedHashSet<>();
+        commitsOfPatches.values().forEach(uniqueCommits::addAll);
+        logger.info(commitsOfPatches.size() + " patches containing " + uniqueCommits.size() + " distinct commits are analysed");
+        Map<String, AuthorsAndCommits> authorsAndCommitsOfCommits = changesFinder.analyseCommits(gitHubToken, uniqueCommits, restApiCaller);
+        Map<String, AuthorsAndCommits> authorsAndCommitsOfPatches = attributeToPatches(commitsOfPatches, authorsAndCommitsOfCommits);
+
+        // the reviewers of a commit which introduced bug lines to several patches are only looked for once
+        Map<String, Reviewer> reviewersOfCommits = new HashMap<>();
+        if (pullRequestResolver != null) {
+            Set<String> bugIntroducingCommits = new LinkedHashSet<>();
+            authorsAndCommitsOfPatches.values().forEach(authorsAndCommits -> bugIntroducingCommits.addAll(authorsAndCommits.getCommitHashes()));
+            // the pull requests of all the commits are found together, with their reviews, in a few batched queries
+            Map<String, List<PullRequest>> pullRequestsOfCommits = pullRequestResolver.findPullRequests(bugIntroducingCommits, gitHubToken);
+            for (String commitHash : bugIntroducingCommits) {
+                Reviewer reviewer = new Reviewer();
+                reviewer.savePullRequestReviews(pullRequestsOfCommits.getOrDefault(commitHash, Collections.emptyList()));
+                reviewersOfCommits.put(commitHash, reviewer);
+            }
+        }
+        for (Map.Entry<String, AuthorsAndCommits> authorsAndCommitsOfPatch : authorsAndCommitsOfPatches.entrySet()) {
+            String patchId = authorsAndCommitsOfPatch.getKey();
+            AuthorsAndCommits authorsAndCommits = authorsAndCommitsOfPatch.getValue();
+            Set<String> approvedReviewers = new HashSet<>();
+            Set<String> commentedReviewers = new HashSet<>();
+            for (String commitHash : authorsAndCommits.getCommitHashes()) {
+                Reviewer reviewer = reviewersOfCommits.get(commitHash);
+                if (reviewer == null) {
+                    reviewer = new Reviewer();
+                    reviewer.setAnalysisJournal(analysisJournal);
+                    reviewer.collectReviewers(Collections.singleton(commitHash), gitHubToken, restApiCaller);
+                    reviewersOfCommits.put(commitHash, reviewer);
+                }
+                approvedReviewers.addAll(reviewer.getApprovedReviewers());
+                commentedReviewers.addAll(reviewer.getCommentedReviewers());
+            }
+            reports.put(patchId, new PatchReport(patchId, commitsOfPatches.get(patchId), authorsAndCommits, approvedReviewers,
+                    commentedReviewers));
+        }
+
+        // the reports are returned in the order of the given patches
+        Map<String, PatchReport> orderedReports = new LinkedHashMap<>();
+        patchIds.forEach(patchId -> orderedReports.put(patchId, reports.get(patchId)));
+        return orderedReports;
+    }
+
+    /**
+     * Merges the results of the commits of each patch
+     *
+     * @param commitsOfPatches           commits of each patch against the patch id
+     * @param authorsAndCommitsOfCommits result of each commit against the commit hash
+     * @return the merged result of the commits of each patch against the patch id
+     */
+    public static Map<String, AuthorsAndCommits> attributeToPatches(Map<String, List<String>> commitsOfPatches,
+                                                                    Map<String, AuthorsAndCommits> authorsAndCommitsOfCommits) {
+        Map<String, AuthorsAndCommits> authorsAndCommitsOfPatches = new LinkedHashMap<>();
+        commitsOfPatches.forEach((patchId, commitHashes) -> {
+            List<AuthorsAndCommits> results = new ArrayList<>();
+            commitHashes.stream()
+                    .map(authorsAndCommitsOfCommits::get)
+                    .filter(result -> result != null)
+                    .forEach(results::add);
+            authorsAndCommitsOfPatches.put(patchId, AuthorsAndCommits.mergeAll(results));
+        });
+        return authorsAndCommitsOfPatches;
+    }
+
+    /**
+     * Reads the commits of the given patches from WSO2 PMT concurrently, adding a failed report for each patch which
+     * could not be read
+     */
+    private Map<String, List<String>> readCommitsOfPatches(Collection<String> patchIds, Map<String, PatchReport> reports)
+            throws CodeQualityMatricesException {
+        ExecutorService executorService = Executors.newFixedThreadPool(Math.min(pmtParallelism, Math.max(1, patchIds.size())));
+        Map<String, Future<List<PmtProperty>>> pmtResponses = new LinkedHashMap<>();
+        try {
+            patchIds.forEach(patchId -> pmtResponses.put(patchId, executorService.submit(Tracer.getDefault().wrap(() ->
+                    restApiCaller.callApi(Pmt.getUrlForPatch(patchId), pmtToken, false, false, ResponseDecoders::decodePmtProperties)))));
+
+            Pmt pmt = new Pmt();
+            Map<String, List<String>> commitsOfPatches = new LinkedHashMap<>();
+            for (Map.Entry<String, Future<List<PmtProperty>>> pmtResponse : pmtResponses.entrySet()) {
+                String patchId = pmtResponse.getKey();
+                try {
+                    List<PmtProperty> pmtProperties = pmtResponse.getValue().get();
+                    if (pmtProperties == null) {
+                        reports.put(patchId, PatchReport.failed(patchId, "no response was received from WSO2 PMT"));
+                        continue;
+                    }
+                    commitsOfPatches.put(patchId, pmt.getCommitHashesToList(pmtProperties));
+                } catch (ExecutionException e) {
+                    logger.error("Commits of patch " + patchId + " could not be read from WSO2 PMT", e.getCause());
+                    reports.put(patchId, PatchReport.failed(patchId, e.getCause().getMessage()));
+                }
+            }
+            logger.info("Commits of " + commitsOfPatches.size() + " patches are read from WSO2 PMT successfully");
+            return commitsOfPatches;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new CodeQualityMatricesException("Interrupted while reading the patches from WSO2 PMT", e);
+        } finally {
+            executorService.shutdownNow();
+        }
+    }
+
+    /**
+     * Closes the ChangesFinder analysing the commits of the patches
+     */
+    @Override
+    public void close() {
+        if (changesFinder != null) {
+            changesFinder.close();
+        }
+    }
+}
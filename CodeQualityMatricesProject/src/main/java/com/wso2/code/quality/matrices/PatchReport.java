@@ -0,0 +1,117 @@
+/*
+ * Copyright (c) 2017, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ *
+ * WSO2 Inc. licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+
+package com.wso2.code.quality.matrices;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Result of analysing a single patch of a batch
+ *
+ * @since 1.0.0
+ */
+
+public final class PatchReport {
+
+    private final String patchId;
+    private final List<String> commitHashes;
+    private final AuthorsAndCommits authorsAndCommits;
+    private final Set<String> approvedReviewers;
+    private final Set<String> commentedReviewers;
+    private final String error;
+
+    /**
+     * Creates the report of a patch which was analysed
+     *
+     * @param patchId            id of the patch
+     * @param commitHashes       commits of the patch as given by WSO2 PMT
+     * @param authorsAndCommits  authors of the lines fixed by the patch and the commits that introduced them
+     * @param approvedReviewers  users who approved the pull requests of the commits that introduced the lines
+     * @param commentedReviewers users who commented on the pull requests of the commits that introduced the lines
+     */
+    public PatchReport(String patchId, List<String> commitHashes, AuthorsAndCommits authorsAndCommits,
+                       Set<String> approvedReviewers, Set<String> commentedReviewers) {
+        this(patchId, commitHashes, authorsAndCommits, approvedReviewers, commentedReviewers, null);
+    }
+
+    private PatchReport(String patchId, List<String> commitHashes, AuthorsAndCommits authorsAndCommits,
+                        Set<String> approvedReviewers, Set<String> commentedReviewers, String error) {
+        this.patchId = patchId;
+        this.commitHashes = Collections.unmodifiableList(commitHashes);
+        this.authorsAndCommits = authorsAndCommits;
+        this.approvedReviewers = Collections.unmodifiableSet(approvedReviewers);
+        this.commentedReviewers = Collections.unmodifiableSet(commentedReviewers);
+        this.error = error;
+    }
+
+    /**
+     * Creates the report of a patch which could not be analysed
+     *
+     * @param patchId id of the patch
+     * @param error   reason for the failure
+     * @return the report of the failed patch
+     */
+    public static PatchReport failed(String patchId, String error) {
+        return new PatchReport(patchId, Collections.emptyList(), AuthorsAndCommits.EMPTY, Collections.emptySet(),
+                Collections.emptySet(), error);
+    }
+
+    public String getPatchId() {
+        return patchId;
+    }
+
+    public List<String> getCommitHashes() {
+        return commitHashes;
+    }
+
+    public AuthorsAndCommits getAuthorsAndCommits() {
+        return authorsAndCommits;
+    }
+
+    public Set<String> getApprovedReviewers() {
+        return approvedReviewers;
+    }
+
+    public Set<String> getCommentedReviewers() {
+        return commentedReviewers;
+    }
+
+    public boolean isFailed() {
+        return error != null;
+    }
+
+    public String getError() {
+        return error;
+    }
+
+    @Override
+    public String toString() {
+        if (isFailed()) {
+            return "Patch " + patchId + " could not be analysed: " + error;
+        }
+        return "Patch " + patchId + System.lineSeparator()
+                + "  commits: " + commitHashes + System.lineSeparator()
+                + "  authors of the bug lines: " + authorsAndCommits.getAuthorNames() + System.lineSeparator()
+                + "  commits that introduced the bug lines: " + authorsAndCommits.getCommitHashes() + System.lineSeparator()
+                + "  reviewed and approved users of the bug lines: " + approvedReviewers + System.lineSeparator()
+                + "  reviewed and commented users on bug lines: " + commentedReviewers;
+    }
+}
@@ -19,15 +19,10 @@
 package com.wso2.code.quality.matrices;
 
 import org.apache.log4j.Logger;
-import org.json.JSONArray;
-import org.json.JSONObject;
 
 import java.util.Collections;
 import java.util.List;
-import java.util.stream.Collectors;
 import java.util.stream.IntStream;
-import java.util.stream.Stream;
-import java.util.stream.StreamSupport;
 
 /**
  * This class is used for obtaining the commit hashes that belongs to the given patch
@@ -40,18 +35,26 @@ public class Pmt {
     private final Logger logger = Logger.getLogger(Pmt.class.getName());
 
     private static final String COMMITS_IN_PATCH_IDENTIFIER = "patchInformation_svnRevisionpublic";  //key used to identify the commits in a patch from JSON response received from PMT
-    private static final String KEY_STRING = "name";
-    private static final String VALUE_STRING = "value";
+
+    /**
+     * Returns the URL of WSO2 PMT for reading the properties of the given patch
+     *
+     * @param patchId id of the patch
+     * @return the URL of the properties of the patch
+     */
+    public static String getUrlForPatch(String patchId) {
+        return ApiUrls.getPmtUrl() + patchId;
+    }
 
     /**
      * getting the commit IDs from the received json response
      *
-     * @param jsonArray jsonarray containing the output received from WSO2 PMT for the given patch
+     * @param pmtProperties properties received from WSO2 PMT for the given patch
      * @return a copy of the array containing the commit hashes that belongs to the given patch
      */
-    public String[] getPublicGitCommitHashes(JSONArray jsonArray) {
+    public String[] getPublicGitCommitHashes(List<PmtProperty> pmtProperties) {
 
-        List<String> listOfCommits = getCommitHashesToList(jsonArray);
+        List<String> listOfCommits = getCommitHashesToList(pmtProperties);
         logger.info(" The commits hashes obtained from WSO2 PMT are successfully saved to an Array list");
         patchInformation_svnRevisionpublic = listOfCommits.toArray(new String[listOfCommits.size()]);
         logger.info(" The commits hashes obtained from WSO2 PMT are successfully saved to an array");
@@ -70,33 +73,15 @@ public class Pmt {
     /**
      * This method returns the commit hashes belongs to the given patch in as a list of Strings
      *
-     * @param array jsonarray containing the output received from WSO2 PMT for the given patch
+     * @param pmtProperties properties received from WSO2 PMT for the given patch
      * @return a List containing the commit hashes that belongs to the given patch
      */
 
-    public List<String> getCommitHashesToList(JSONArray array) {
-        return arrayToStream(array)
-                .map(JSONObject.class::cast)
-                .filter(o -> o.get(KEY_STRING).equals(COMMITS_IN_PATCH_IDENTIFIER))
+    public List<String> getCommitHashesToList(List<PmtProperty> pmtProperties) {
+        return pmtProperties.stream()
+                .filter(pmtProperty -> COMMITS_IN_PATCH_IDENTIFIER.equals(pmtProperty.getName()))
                 .findFirst()
-                .map(o -> (JSONArray) o.get(VALUE_STRING))
-                .map(Pmt::arrayToStream)
-                .map(commits ->
-                        commits.map(Object::toString)
-                                .map(String::trim)
-                                .collect(Collectors.toList())
-                )
+                .map(PmtProperty::getValues)
                 .orElseGet(Collections::emptyList);
     }
-
-    /**
-     * This method is used to obtain a sequential stream
-     *
-     * @param array JSON array that a sequential stream should be obtained from
-     * @return a sequential stream created from the supplied JSON Array
-     */
-    public static Stream<Object> arrayToStream(JSONArray array) {
-        return StreamSupport.stream(array.spliterator(), false);
-    }
-
 }
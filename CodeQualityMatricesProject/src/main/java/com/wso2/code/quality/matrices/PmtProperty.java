@@ -0,0 +1,58 @@
+/*
+ * Copyright (c) 2017, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ *
+ * WSO2 Inc. licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.wso2.code.quality.matrices;
+
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * A property of a patch received from WSO2 PMT, which holds a list of values against its name
+ *
+ * @since 1.0.0
+ */
+
+public final class PmtProperty {
+
+    private final String name;
+    private final List<String> values;
+
+    /**
+     * Creates a property
+     *
+     * @param name   name of the property
+     * @param values values of the property
+     */
+    public PmtProperty(String name, List<String> values) {
+        this.name = name;
+        this.values = Collections.unmodifiableList(values);
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public List<String> getValues() {
+        return values;
+    }
+
+    @Override
+    public String toString() {
+        return name + "=" + values;
+    }
+}
@@ -0,0 +1,73 @@
+/*
+ * Copyright (c) 2017, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ *
+ * WSO2 Inc. licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+
+package com.wso2.code.quality.matrices;
+
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * A pull request received from the github GraphQL API together with its reviews
+ *
+ * @since 1.0.0
+ */
+
+public final class PullRequest {
+
+    private final String repositoryFullName;
+    private final int number;
+    private final String state;
+    private final List<Review> reviews;
+
+    /**
+     * Creates a pull request
+     *
+     * @param repositoryFullName repository of the pull request in the owner/name form
+     * @param number             number of the pull request
+     * @param state              state of the pull request such as OPEN, CLOSED or MERGED
+     * @param reviews            reviews of the pull request
+     */
+    public PullRequest(String repositoryFullName, int number, String state, List<Review> reviews) {
+        this.repositoryFullName = repositoryFullName;
+        this.number = number;
+        this.state = state;
+        this.reviews = Collections.unmodifiableList(reviews);
+    }
+
+    public String getRepositoryFullName() {
+        return repositoryFullName;
+    }
+
+    public int getNumber() {
+        return number;
+    }
+
+    public String getState() {
+        return state;
+    }
+
+    public List<Review> getReviews() {
+        return reviews;
+    }
+
+    @Override
+    public String toString() {
+        return repositoryFullName + "#" + number + " " + state + " " + reviews;
+    }
+}
@@ -0,0 +1,132 @@
+/*
+ * Copyright (c) 2017, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ *
+ * WSO2 Inc. licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+
+package com.wso2.code.quality.matrices;
+
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Response of a batched github GraphQL query, holding the pull requests and the errors against the aliases of the
+ * fields they were selected under, together with the cursors of the searches and of the reviews which have more pages
+ *
+ * @since 1.0.0
+ */
+
+public final class PullRequestBatchResponse implements GraphQlResponse {
+
+    private final boolean dataReceived;
+    private final Map<String, List<PullRequest>> pullRequestsByAlias;
+    private final Map<String, String> errorsByAlias;
+    private final Map<String, String> searchCursorsByAlias;
+    private final Map<String, String> nodeIdsOfPullRequests;
+    private final Map<String, String> reviewCursorsOfPullRequests;
+    private final GraphQlRateLimit rateLimit;
+
+    /**
+     * Creates a response
+     *
+     * @param dataReceived                should be false if the response had no data field, as the whole query failed
+     * @param pullRequestsByAlias         pull requests against the aliases they were selected under
+     * @param errorsByAlias               error messages against the aliases of the fields they were raised on
+     * @param searchCursorsByAlias        cursors after the last pull request received against the aliases of the
+     *                                    searches which have more pull requests
+     * @param nodeIdsOfPullRequests       node ids of the pull requests which have more reviews, against the keys of
+     *                                    the pull requests
+     * @param reviewCursorsOfPullRequests cursors after the last review received of the pull requests which have more
+     *                                    reviews, against the keys of the pull requests
+     * @param rateLimit                   the rateLimit field of the response or null if it was not received
+     */
+    public PullRequestBatchResponse(boolean dataReceived, Map<String, List<PullRequest>> pullRequestsByAlias,
+                                    Map<String, String> errorsByAlias, Map<String, String> searchCursorsByAlias,
+                                    Map<String, String> nodeIdsOfPullRequests, Map<String, String> reviewCursorsOfPullRequests,
+                                    GraphQlRateLimit rateLimit) {
+        this.dataReceived = dataReceived;
+        this.pullRequestsByAlias = Collections.unmodifiableMap(pullRequestsByAlias);
+        this.errorsByAlias = Collections.unmodifiableMap(errorsByAlias);
+        this.searchCursorsByAlias = Collections.unmodifiableMap(searchCursorsByAlias);
+        this.nodeIdsOfPullRequests = Collections.unmodifiableMap(nodeIdsOfPullRequests);
+        this.reviewCursorsOfPullRequests = Collections.unmodifiableMap(reviewCursorsOfPullRequests);
+        this.rateLimit = rateLimit;
+    }
+
+    /**
+     * @param pullRequest a pull request
+     * @return the key the cursors of the pull request are kept against
+     */
+    public static String keyOf(PullRequest pullRequest) {
+        return pullRequest.getRepositoryFullName() + "#" + pullRequest.getNumber();
+    }
+
+    public boolean isDataReceived() {
+        return dataReceived;
+    }
+
+    /**
+     * @param alias alias of the search field
+     * @return the pull requests selected under the alias or null if they were not received
+     */
+    public List<PullRequest> getPullRequests(String alias) {
+        return pullRequestsByAlias.get(alias);
+    }
+
+    /**
+     * @param alias alias of the search field
+     * @return the error raised on the alias or null if there is none
+     */
+    public String getError(String alias) {
+        return errorsByAlias.get(alias);
+    }
+
+    /**
+     * @param alias alias of the search field
+     * @return the cursor after the last pull request received under the alias, or null if the search has no more
+     * pull requests
+     */
+    public String getSearchCursor(String alias) {
+        return searchCursorsByAlias.get(alias);
+    }
+
+    /**
+     * @param pullRequest a pull request of the response
+     * @return the node id of the pull request, or null if it has no more reviews
+     */
+    public String getNodeId(PullRequest pullRequest) {
+        return nodeIdsOfPullRequests.get(keyOf(pullRequest));
+    }
+
+    /**
+     * @param pullRequest a pull request of the response
+     * @return the cursor after the last review received of the pull request, or null if it has no more reviews
+     */
+    public String getReviewCursor(PullRequest pullRequest) {
+        return reviewCursorsOfPullRequests.get(keyOf(pullRequest));
+    }
+
+    public Collection<String> getErrors() {
+        return errorsByAlias.values();
+    }
+
+    @Override
+    public GraphQlRateLimit getRateLimit() {
+        return rateLimit;
+    }
+}
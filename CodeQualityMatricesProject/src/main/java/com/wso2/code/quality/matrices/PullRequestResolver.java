@@ -0,0 +1,411 @@
+/*
+ * Copyright (c) 2017, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ *
+ * WSO2 Inc. licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.wso2.code.quality.matrices;
+
+import org.apache.log4j.Logger;
+import org.json.JSONObject;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * This class is used for finding the pull requests of many commits, together with their reviews, with a few calls to
+ * the github GraphQL API. The pull requests of each commit are searched under their own field alias of a single
+ * query, and the reviews of each pull request are selected in the same query, in place of a call to the issue search
+ * API for each commit followed by a call to the review API for each pull request.
+ * <p>
+ * A batch for which no data is received, for example as the query timed out on github, is split into halves which
+ * are sent again, while a batch of a single commit is retried as given by the retry policy of the GraphQlApiCaller
+ * and fails the search once the attempts run out. An error on the search of a single commit within the received data
+ * only drops the pull requests of that commit. The batches can also be sent at once without blocking with
+ * findPullRequestsAsync.
+ * <p>
+ * The search of a commit selects a page of its pull requests with a page of the reviews of each. A commit in more
+ * pull requests, or a pull request with more reviews, is completed with further queries after the cursor of the last
+ * page received, so that neither is silently truncated.
+ * <p>
+ * The pull requests of a commit and their reviews are recorded to the analysis journal once they are received, and
+ * the commits whose pull requests are found in the journal are not searched again.
+ *
+ * @since 1.0.0
+ */
+
+public class PullRequestResolver {
+
+    private static final Logger logger = Logger.getLogger(PullRequestResolver.class);
+
+    private static final String MAX_BATCH_SIZE_PROPERTY = "cqm.graphql.maxPullRequestBatchSize";
+    private static final int DEFAULT_MAX_BATCH_SIZE = 50;
+    // a commit is rarely part of more pull requests than this, and a pull request rarely has more reviews than this, so
+    // the further pages are seldom queried
+    private static final int MAX_PULL_REQUESTS_PER_PAGE = 10;
+    private static final int MAX_REVIEWS_PER_PAGE = 100;
+    private static final String PULL_REQUESTS_SPAN = "pull_requests";
+    private static final String SEARCH_ALIAS_PREFIX = "p";
+    private static final String NODE_ALIAS_PREFIX = "r";
+
+    // only the fields read by ResponseDecoders are selected from each of the pull requests
+    private static final String PAGE_INFO_SELECTION = "pageInfo{ hasNextPage endCursor }";
+    private static final String REVIEWS_SELECTION = "{ " + PAGE_INFO_SELECTION + " nodes{ state author{ login } } }";
+    private static final String PULL_REQUEST_SELECTION = "... on PullRequest{ id number state repository{ nameWithOwner } reviews(first: "
+            + MAX_REVIEWS_PER_PAGE + ")" + REVIEWS_SELECTION + " }";
+    private static final String SEARCH_SELECTION = "search(query: $query, type: ISSUE, first: " + MAX_PULL_REQUESTS_PER_PAGE
+            + "){ " + PAGE_INFO_SELECTION + " nodes{ " + PULL_REQUEST_SELECTION + " } }";
+    private static final String NEXT_SEARCH_SELECTION = "search(query: $query, type: ISSUE, first: " + MAX_PULL_REQUESTS_PER_PAGE
+            + ", after: $cursor){ " + PAGE_INFO_SELECTION + " nodes{ " + PULL_REQUEST_SELECTION + " } }";
+    private static final String NEXT_REVIEWS_SELECTION = "node(id: $id){ ... on PullRequest{ id number state repository{ nameWithOwner }"
+            + " reviews(first: " + MAX_REVIEWS_PER_PAGE + ", after: $cursor)" + REVIEWS_SELECTION + " } }";
+    private static final GraphQlQueryTemplate PULL_REQUEST_QUERY = new GraphQlQueryTemplate("PullRequests",
+            SEARCH_ALIAS_PREFIX, SEARCH_SELECTION, "query");
+    private static final GraphQlQueryTemplate NEXT_PULL_REQUEST_QUERY = new GraphQlQueryTemplate("NextPullRequests",
+            SEARCH_ALIAS_PREFIX, NEXT_SEARCH_SELECTION, "query", "cursor");
+    private static final GraphQlQueryTemplate NEXT_REVIEW_QUERY = new GraphQlQueryTemplate("NextReviews",
+            NODE_ALIAS_PREFIX, NEXT_REVIEWS_SELECTION, "id: ID!", "cursor");
+
+    private final GraphQlApiCaller graphQlApiCaller;
+    private final int maxBatchSize;
+    private AnalysisJournal analysisJournal = AnalysisJournal.disabled();
+
+    /**
+     * Creates a PullRequestResolver using the batch size given in the cqm.graphql.maxPullRequestBatchSize system property
+     *
+     * @param graphQlApiCaller instance of the GraphQlApiCaller class for accessing the github GraphQL API
+     */
+    public PullRequestResolver(GraphQlApiCaller graphQlApiCaller) {
+        this(graphQlApiCaller, Integer.getInteger(MAX_BATCH_SIZE_PROPERTY, DEFAULT_MAX_BATCH_SIZE));
+    }
+
+    /**
+     * Creates a PullRequestResolver
+     *
+     * @param graphQlApiCaller instance of the GraphQlApiCaller class for accessing the github GraphQL API
+     * @param maxBatchSize     maximum number of commits searched in a single query
+     */
+    public PullRequestResolver(GraphQlApiCaller graphQlApiCaller, int maxBatchSize) {
+        this.graphQlApiCaller = graphQlApiCaller;
+        this.maxBatchSize = Math.max(1, maxBatchSize);
+    }
+
+    /**
+     * Sets the journal to which the pull requests found are recorded and from which the pull requests found by an
+     * earlier run are replayed
+     *
+     * @param analysisJournal journal of the analysis
+     */
+    public void setAnalysisJournal(AnalysisJournal analysisJournal) {
+        this.analysisJournal = analysisJournal;
+    }
+
+    /**
+     * Finds the pull requests containing each of the given commits
+     *
+     * @param commitHashes commits to be searched
+     * @param gitHubToken  github token for accessing github GraphQL API
+     * @return a map containing the pull requests with their reviews against the commit hashes, without the commits
+     * which could not be searched
+     * @throws CodeQualityMatricesException if a github GraphQL API call failed
+     */
+    public Map<String, List<PullRequest>> findPullRequests(Collection<String> commitHashes, String gitHubToken)
+            throws CodeQualityMatricesException {
+
+        Map<String, List<PullRequest>> pullRequestsOfCommits = new HashMap<>();
+        List<String> distinctCommitHashes = replayPullRequests(commitHashes, pullRequestsOfCommits);
+        try (Tracer.Span span = Tracer.getDefault().startSpan(PULL_REQUESTS_SPAN)) {
+            span.setAttribute(Tracer.COMMIT_COUNT_ATTRIBUTE, distinctCommitHashes.size());
+            for (int start = 0; start < distinctCommitHashes.size(); start += maxBatchSize) {
+                fetchBatch(distinctCommitHashes.subList(start, Math.min(distinctCommitHashes.size(), start + maxBatchSize)),
+                        gitHubToken, pullRequestsOfCommits);
+            }
+            if (span.isRecording()) {
+                span.setAttribute(Tracer.PULL_REQUEST_COUNT_ATTRIBUTE, pullRequestsOfCommits.values().stream().mapToInt(List::size).sum());
+            }
+        }
+        return pullRequestsOfCommits;
+    }
+
+    /**
+     * Finds the pull requests containing each of the given commits without blocking the calling thread, sending all
+     * the batches at once
+     *
+     * @param commitHashes commits to be searched
+     * @param gitHubToken  github token for accessing github GraphQL API
+     * @return a future of a map containing the pull requests with their reviews against the commit hashes, without the
+     * commits which could not be searched, which fails with a CodeQualityMatricesException if a github GraphQL API call
+     * failed
+     */
+    public CompletableFuture<Map<String, List<PullRequest>>> findPullRequestsAsync(Collection<String> commitHashes, String gitHubToken) {
+        // the batches add their pull requests as their responses are received on the callback threads
+        Map<String, List<PullRequest>> pullRequestsOfCommits = new ConcurrentHashMap<>();
+        List<String> distinctCommitHashes = replayPullRequests(commitHashes, pullRequestsOfCommits);
+        Tracer.Span span = Tracer.getDefault().startDetachedSpan(PULL_REQUESTS_SPAN, Tracer.getDefault().currentSpan());
+        span.setAttribute(Tracer.COMMIT_COUNT_ATTRIBUTE, distinctCommitHashes.size());
+        List<CompletableFuture<Void>> futureBatches = new ArrayList<>();
+        for (int start = 0; start < distinctCommitHashes.size(); start += maxBatchSize) {
+            futureBatches.add(fetchBatchAsync(distinctCommitHashes.subList(start, Math.min(distinctCommitHashes.size(),
+                    start + maxBatchSize)), gitHubToken, pullRequestsOfCommits, span));
+        }
+        return Futures.endSpan(span, Futures.allOf(futureBatches).thenApply(ignored -> {
+            if (span.isRecording()) {
+                span.setAttribute(Tracer.PULL_REQUEST_COUNT_ATTRIBUTE, pullRequestsOfCommits.values().stream().mapToInt(List::size).sum());
+            }
+            return pullRequestsOfCommits;
+        }));
+    }
+
+    /**
+     * Adds the pull requests of the given commits which are found in the journal, with all their reviews, to the given map
+     *
+     * @return the distinct commits whose pull requests are not found in the journal
+     */
+    private List<String> replayPullRequests(Collection<String> commitHashes, Map<String, List<PullRequest>> pullRequestsOfCommits) {
+        List<String> commitHashesToSearch = new ArrayList<>();
+        for (String commitHash : new LinkedHashSet<>(commitHashes)) {
+            List<PullRequest> pullRequests = analysisJournal.getPullRequests(commitHash);
+            List<PullRequest> replayedPullRequests = new ArrayList<>();
+            for (int i = 0; pullRequests != null && i < pullRequests.size(); i++) {
+                PullRequest pullRequest = pullRequests.get(i);
+                List<Review> reviews = analysisJournal.getReviews(pullRequest.getRepositoryFullName(), pullRequest.getNumber());
+                if (reviews == null) {
+                    pullRequests = null;
+                } else {
+                    replayedPullRequests.add(new PullRequest(pullRequest.getRepositoryFullName(), pullRequest.getNumber(),
+                            pullRequest.getState(), reviews));
+                }
+            }
+            if (pullRequests == null) {
+                commitHashesToSearch.add(commitHash);
+            } else {
+                pullRequestsOfCommits.put(commitHash, replayedPullRequests);
+            }
+        }
+        return commitHashesToSearch;
+    }
+
+    /**
+     * Searches the pull requests of a batch of commits with a single query and adds them to the given map
+     */
+    private void fetchBatch(List<String> batch, String gitHubToken, Map<String, List<PullRequest>> pullRequestsOfCommits)
+            throws CodeQualityMatricesException {
+
+        RetryPolicy retryPolicy = graphQlApiCaller.getRetryPolicy();
+        int failedAttempts = 0;
+        PullRequestBatchResponse response;
+        while (isResendNeeded(batch, response = graphQlApiCaller.callGraphQlApi(buildQuery(batch), gitHubToken,
+                ResponseDecoders::decodePullRequestBatch))) {
+            if (batch.size() > 1) {
+                int middle = batch.size() / 2;
+                fetchBatch(batch.subList(0, middle), gitHubToken, pullRequestsOfCommits);
+                fetchBatch(batch.subList(middle, batch.size()), gitHubToken, pullRequestsOfCommits);
+                return;
+            }
+            // a single commit can no longer be split, so it is searched again as the failure may be transient
+            if (!retryPolicy.shouldRetry(++failedAttempts)) {
+                throw pullRequestsNotTaken(batch.get(0), failedAttempts);
+            }
+            retryPolicy.awaitBackoff(failedAttempts);
+        }
+        // the further pages are rarely needed, so they are queried in the same way as for the batches sent at once
+        Futures.join(readBatch(batch, response, gitHubToken, pullRequestsOfCommits, Tracer.getDefault().currentSpan()));
+    }
+
+    /**
+     * Searches the pull requests of a batch of commits with a single query without blocking and adds them to the given map
+     */
+    private CompletableFuture<Void> fetchBatchAsync(List<String> batch, String gitHubToken,
+                                                    Map<String, List<PullRequest>> pullRequestsOfCommits, Tracer.Span parentSpan) {
+        return fetchBatchAsync(batch, gitHubToken, pullRequestsOfCommits, parentSpan, 0);
+    }
+
+    private CompletableFuture<Void> fetchBatchAsync(List<String> batch, String gitHubToken,
+                                                    Map<String, List<PullRequest>> pullRequestsOfCommits, Tracer.Span parentSpan,
+                                                    int failedAttempts) {
+        // the halves of a failed batch are sent from a callback thread, so the span of the caller is restored for them
+        return Tracer.getDefault().inSpan(parentSpan, () -> graphQlApiCaller.callGraphQlApiAsync(buildQuery(batch), gitHubToken,
+                ResponseDecoders::decodePullRequestBatch))
+                .thenCompose(response -> {
+                    if (!isResendNeeded(batch, response)) {
+                        return readBatch(batch, response, gitHubToken, pullRequestsOfCommits, parentSpan);
+                    }
+                    if (batch.size() == 1) {
+                        // a single commit can no longer be split, so it is searched again as the failure may be transient
+                        RetryPolicy retryPolicy = graphQlApiCaller.getRetryPolicy();
+                        int attempt = failedAttempts + 1;
+                        if (!retryPolicy.shouldRetry(attempt)) {
+                            return Futures.failed(pullRequestsNotTaken(batch.get(0), attempt));
+                        }
+                        return retryPolicy.retryAfterBackoff(attempt, () -> fetchBatchAsync(batch, gitHubToken,
+                                pullRequestsOfCommits, parentSpan, attempt));
+                    }
+                    int middle = batch.size() / 2;
+                    return CompletableFuture.allOf(
+                            fetchBatchAsync(batch.subList(0, middle), gitHubToken, pullRequestsOfCommits, parentSpan),
+                            fetchBatchAsync(batch.subList(middle, batch.size()), gitHubToken, pullRequestsOfCommits, parentSpan));
+                });
+    }
+
+    /**
+     * Fails the analysis when the pull requests of a commit could not be taken even alone, instead of leaving the
+     * commit out of it
+     */
+    private static CodeQualityMatricesException pullRequestsNotTaken(String commitHash, int attempts) {
+        return new CodeQualityMatricesException("Pull requests of commit " + commitHash
+                + " could not be taken from the github GraphQL API after " + attempts + " attempts");
+    }
+
+    /**
+     * Checks whether data was received for a batch
+     *
+     * @return true if no data was received for the batch, which should then be split and sent again or, if it has a
+     * single commit, sent again as it is
+     */
+    private boolean isResendNeeded(List<String> batch, PullRequestBatchResponse response) {
+        if (response != null && response.isDataReceived()) {
+            return false;
+        }
+        List<String> errors = response == null ? Collections.<String>emptyList() : new ArrayList<>(response.getErrors());
+        if (batch.size() > 1) {
+            logger.info("No data was received for a batch of " + batch.size() + " commits, the batch is split and sent again " + errors);
+        } else {
+            logger.warn("No data was received for the pull requests of commit " + batch.get(0) + " " + errors);
+        }
+        return true;
+    }
+
+    /**
+     * Adds the pull requests received for a batch to the given map, once their further pages are received
+     */
+    private CompletableFuture<Void> readBatch(List<String> batch, PullRequestBatchResponse response, String gitHubToken,
+                                              Map<String, List<PullRequest>> pullRequestsOfCommits, Tracer.Span parentSpan) {
+        List<CompletableFuture<Void>> futureCommits = new ArrayList<>();
+        for (int i = 0; i < batch.size(); i++) {
+            String commitHash = batch.get(i);
+            String alias = PULL_REQUEST_QUERY.aliasOf(i);
+            List<PullRequest> pullRequests = response.getPullRequests(alias);
+            if (pullRequests == null) {
+                String error = response.getError(alias);
+                logger.warn("Pull requests of commit " + commitHash + " could not be taken from the github GraphQL API: "
+                        + (error == null ? "no search result in the response" : error));
+                continue;
+            }
+            futureCommits.add(readNextPages(commitHash, pullRequests, response, alias, gitHubToken, parentSpan)
+                    .thenAccept(allPullRequests -> {
+                        // the reviews are recorded before the pull requests, so that the pull requests are only replayed with their reviews
+                        allPullRequests.forEach(pullRequest -> analysisJournal.recordReviews(pullRequest.getRepositoryFullName(),
+                                pullRequest.getNumber(), pullRequest.getReviews()));
+                        analysisJournal.recordPullRequests(commitHash, allPullRequests);
+                        pullRequestsOfCommits.put(commitHash, allPullRequests);
+                    }));
+        }
+        logger.info("Pull requests of a batch of " + batch.size() + " commits are taken from the github GraphQL API");
+        return Futures.allOf(futureCommits).thenApply(ignored -> null);
+    }
+
+    /**
+     * Completes the pull requests of a commit received in a response, which hold the first page of their reviews, with
+     * the further pages of their reviews and the further pages of the pull requests of the commit
+     *
+     * @return a future of all the pull requests of the commit with all their reviews
+     */
+    private CompletableFuture<List<PullRequest>> readNextPages(String commitHash, List<PullRequest> pullRequests,
+                                                               PullRequestBatchResponse response, String alias,
+                                                               String gitHubToken, Tracer.Span parentSpan) {
+        List<CompletableFuture<PullRequest>> futurePullRequests = new ArrayList<>(pullRequests.size());
+        for (PullRequest pullRequest : pullRequests) {
+            String cursor = response.getReviewCursor(pullRequest);
+            futurePullRequests.add(cursor == null ? CompletableFuture.completedFuture(pullRequest)
+                    : readNextReviews(pullRequest, response.getNodeId(pullRequest), cursor, new ArrayList<>(pullRequest.getReviews()),
+                    gitHubToken, parentSpan));
+        }
+        CompletableFuture<List<PullRequest>> futurePage = Futures.allOf(futurePullRequests);
+        String cursor = response.getSearchCursor(alias);
+        if (cursor == null) {
+            return futurePage;
+        }
+        JSONObject queryObject = NEXT_PULL_REQUEST_QUERY.newQueryObject(Collections.singletonList(
+                Arrays.asList(searchQueryOf(commitHash), cursor)));
+        CompletableFuture<List<PullRequest>> futureNextPages = Tracer.getDefault().inSpan(parentSpan, () ->
+                graphQlApiCaller.callGraphQlApiAsync(queryObject, gitHubToken, ResponseDecoders::decodePullRequestBatch))
+                .thenCompose(nextPage -> {
+                    String nextAlias = NEXT_PULL_REQUEST_QUERY.aliasOf(0);
+                    List<PullRequest> nextPullRequests = nextPage == null ? null : nextPage.getPullRequests(nextAlias);
+                    if (nextPullRequests == null) {
+                        logger.warn("Further pull requests of commit " + commitHash + " could not be taken from the github GraphQL API "
+                                + (nextPage == null ? "" : nextPage.getErrors()));
+                        return CompletableFuture.completedFuture(Collections.<PullRequest>emptyList());
+                    }
+                    return readNextPages(commitHash, nextPullRequests, nextPage, nextAlias, gitHubToken, parentSpan);
+                });
+        return futurePage.thenCombine(futureNextPages, (page, nextPages) -> {
+            List<PullRequest> allPullRequests = new ArrayList<>(page);
+            allPullRequests.addAll(nextPages);
+            return allPullRequests;
+        });
+    }
+
+    /**
+     * Adds the pages of the reviews of a pull request after the given cursor to the given reviews
+     *
+     * @return a future of the pull request with all its reviews
+     */
+    private CompletableFuture<PullRequest> readNextReviews(PullRequest pullRequest, String nodeId, String cursor, List<Review> reviews,
+                                                           String gitHubToken, Tracer.Span parentSpan) {
+        JSONObject queryObject = NEXT_REVIEW_QUERY.newQueryObject(Collections.singletonList(Arrays.asList(nodeId, cursor)));
+        return Tracer.getDefault().inSpan(parentSpan, () -> graphQlApiCaller.callGraphQlApiAsync(queryObject, gitHubToken,
+                ResponseDecoders::decodePullRequestNodeBatch))
+                .thenCompose(nextPage -> {
+                    List<PullRequest> nextPullRequests = nextPage == null ? null : nextPage.getPullRequests(NEXT_REVIEW_QUERY.aliasOf(0));
+                    if (nextPullRequests == null || nextPullRequests.isEmpty()) {
+                        logger.warn("Further reviews of pull request " + PullRequestBatchResponse.keyOf(pullRequest)
+                                + " could not be taken from the github GraphQL API " + (nextPage == null ? "" : nextPage.getErrors()));
+                    } else {
+                        reviews.addAll(nextPullRequests.get(0).getReviews());
+                        String nextCursor = nextPage.getReviewCursor(nextPullRequests.get(0));
+                        if (nextCursor != null) {
+                            return readNextReviews(pullRequest, nodeId, nextCursor, reviews, gitHubToken, parentSpan);
+                        }
+                    }
+                    return CompletableFuture.completedFuture(new PullRequest(pullRequest.getRepositoryFullName(),
+                            pullRequest.getNumber(), pullRequest.getState(), reviews));
+                });
+    }
+
+    /**
+     * Builds a query searching the pull requests of each commit of the batch under the alias p followed by its index,
+     * from the template of the query which is built once for each batch size
+     */
+    private JSONObject buildQuery(List<String> batch) {
+        List<List<String>> itemValues = new ArrayList<>(batch.size());
+        for (String commitHash : batch) {
+            itemValues.add(Collections.singletonList(searchQueryOf(commitHash)));
+        }
+        return PULL_REQUEST_QUERY.newQueryObject(itemValues);
+    }
+
+    private static String searchQueryOf(String commitHash) {
+        return commitHash + " type:pr";
+    }
+}
@@ -0,0 +1,454 @@
+/*
+ * Copyright (c) 2017, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ *
+ * WSO2 Inc. licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.wso2.code.quality.matrices;
+
+import org.apache.commons.lang3.StringUtils;
+import org.apache.http.Header;
+import org.apache.http.HttpResponse;
+import org.apache.log4j.Logger;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.EnumMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * This class is used for scheduling the calls made to the github APIs within the rate limits of a pool of github tokens.
+ * <p>
+ * A separate budget is kept for each token in each of the search, core and GraphQL rate limit pools of github.
+ * The budgets are learnt from the X-RateLimit-* headers of the REST API responses and the rateLimit field of the
+ * GraphQL API responses. A call is given the token having the largest remaining budget in its pool and when all the
+ * tokens of a pool have run out of budget, the call waits until the earliest reset instead of failing. A token whose
+ * call is rejected by a secondary rate limit, or by a RATE_LIMITED error of a GraphQL query, is not used again until
+ * the time given with the Retry-After header, or for a minute if that time is not given.
+ * <p>
+ * An asynchronous call waits without holding a thread. Its acquisition is queued and granted in order whenever a call
+ * of the pool releases its budget, or when a timer fires at the earliest reset of the pool.
+ *
+ * @since 1.0.0
+ */
+
+public class RateLimitScheduler {
+
+    private static final Logger logger = Logger.getLogger(RateLimitScheduler.class);
+
+    public static final String GITHUB_API_URL = "https://api.github.com";
+    // selection set to be added to GraphQL queries for receiving the rate limit details with the response
+    public static final String GRAPHQL_RATE_LIMIT_SELECTION = "rateLimit { limit cost remaining resetAt }";
+
+    private static final String REMAINING_HEADER = "X-RateLimit-Remaining";
+    private static final String LIMIT_HEADER = "X-RateLimit-Limit";
+    private static final String RESET_HEADER = "X-RateLimit-Reset";
+    private static final String RETRY_AFTER_HEADER = "Retry-After";
+    // a small delay after the reset time announced by github to tolerate clock differences
+    private static final long RESET_SKEW_MILLIS = 500;
+    // time to wait after a call is rejected due to the rate limit without being told until when, as advised by github
+    private static final long RATE_LIMITED_WAIT_MILLIS = 60000;
+
+    // timer for granting the queued asynchronous acquisitions once a budget is reset, shared by all the schedulers
+    private static final ScheduledExecutorService RESET_TIMER = Executors.newSingleThreadScheduledExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "rate-limit-reset-timer");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    /**
+     * The rate limit pools of github, each of them having its own budget per token
+     */
+    public enum Pool {
+        CORE, SEARCH, GRAPHQL;
+
+        /**
+         * Finds the rate limit pool of a github REST API url
+         *
+         * @param url url of the REST API
+         * @return the rate limit pool which the url is counted against
+         */
+        public static Pool forRestApiUrl(String url) {
+            return StringUtils.contains(url, "/search/") ? SEARCH : CORE;
+        }
+    }
+
+    private final String apiUrl;
+    private final Map<String, Map<Pool, Budget>> budgetsOfTokens = new LinkedHashMap<>();
+    private final Deque<Acquisition> queuedAcquisitions = new ArrayDeque<>();
+    private long nextGrantMillis = Long.MAX_VALUE;
+
+    /**
+     * Creates a scheduler for the github API on the url given in the cqm.github.apiUrl system property
+     *
+     * @param gitHubTokens tokens which the calls are spread across
+     */
+    public RateLimitScheduler(List<String> gitHubTokens) {
+        this(gitHubTokens, ApiUrls.getGitHubApiUrl());
+    }
+
+    /**
+     * Creates a scheduler for the API on the given url
+     *
+     * @param gitHubTokens tokens which the calls are spread across
+     * @param apiUrl       base url of the API whose calls are scheduled
+     */
+    public RateLimitScheduler(List<String> gitHubTokens, String apiUrl) {
+        if (gitHubTokens.isEmpty()) {
+            throw new IllegalArgumentException("At least one github token is required for scheduling the calls");
+        }
+        this.apiUrl = apiUrl;
+        gitHubTokens.forEach(token -> {
+            Map<Pool, Budget> budgets = new EnumMap<>(Pool.class);
+            for (Pool pool : Pool.values()) {
+                budgets.put(pool, new Budget());
+            }
+            budgetsOfTokens.put(token, budgets);
+        });
+        // the tokens are told apart by their position, so that they are not exposed by the metrics
+        int tokenIndex = 0;
+        for (Map<Pool, Budget> budgets : budgetsOfTokens.values()) {
+            for (Map.Entry<Pool, Budget> budget : budgets.entrySet()) {
+                Metrics.getDefault().gauge(Metrics.RATE_LIMIT_REMAINING, "Remaining rate limit budget of the github tokens",
+                        () -> getRemaining(budget.getValue()), "pool", budget.getKey().name().toLowerCase(Locale.ENGLISH),
+                        "token", String.valueOf(tokenIndex));
+            }
+            tokenIndex++;
+        }
+    }
+
+    private synchronized double getRemaining(Budget budget) {
+        return budget.known ? budget.remaining : Double.NaN;
+    }
+
+    /**
+     * Checks whether the calls to the given url should be scheduled by this scheduler
+     *
+     * @param url url of the API being called
+     * @return true if the url belongs to the API of this scheduler
+     */
+    public boolean isScheduled(String url) {
+        return StringUtils.startsWith(url, apiUrl);
+    }
+
+    public List<String> getGitHubTokens() {
+        return Collections.unmodifiableList(new ArrayList<>(budgetsOfTokens.keySet()));
+    }
+
+    /**
+     * Reserves budget for a single call in the given pool, waiting until a budget is reset if all the tokens have
+     * run out of budget. Each acquired token must be released with release once the call is completed
+     *
+     * @param pool rate limit pool of the call
+     * @return the token to be used for the call
+     * @throws CodeQualityMatricesException if the thread is interrupted while waiting for budget
+     */
+    public synchronized String acquire(Pool pool) throws CodeQualityMatricesException {
+        while (true) {
+            long now = System.currentTimeMillis();
+            String selectedToken = tryAcquire(pool, now);
+            if (selectedToken != null) {
+                return selectedToken;
+            }
+            long earliestReset = findEarliestReset(pool);
+            try {
+                if (earliestReset == Long.MAX_VALUE) {
+                    // waiting for an in flight call to complete and report the budget it left
+                    wait();
+                } else {
+                    long waitingTime = Math.max(1, earliestReset + RESET_SKEW_MILLIS - now);
+                    logger.info("Rate limit budget of the " + pool + " pool is exhausted on all the tokens, waiting " + waitingTime + "ms until it is reset");
+                    wait(waitingTime);
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new CodeQualityMatricesException("Interrupted while waiting for the github rate limit budget of the " + pool + " pool", e);
+            }
+        }
+    }
+
+    /**
+     * Reserves budget for a single call in the given pool without blocking the calling thread. The returned future is
+     * completed with the token once the budget is available, on the thread releasing the budget or on the timer
+     * thread, so the stages depending on it should hand over any long work to another thread.
+     * Each acquired token must be released with release once the call is completed
+     *
+     * @param pool rate limit pool of the call
+     * @return a future of the token to be used for the call
+     */
+    public CompletableFuture<String> acquireAsync(Pool pool) {
+        CompletableFuture<String> token = new CompletableFuture<>();
+        synchronized (this) {
+            queuedAcquisitions.add(new Acquisition(pool, token));
+        }
+        grantQueuedAcquisitions();
+        return token;
+    }
+
+    /**
+     * Grants the queued asynchronous acquisitions for which budget is available, in the order they were queued, and
+     * schedules the timer for the earliest reset of the pools of the rest
+     */
+    private void grantQueuedAcquisitions() {
+        List<Runnable> grants = new ArrayList<>();
+        synchronized (this) {
+            long now = System.currentTimeMillis();
+            long earliestReset = Long.MAX_VALUE;
+            for (Iterator<Acquisition> iterator = queuedAcquisitions.iterator(); iterator.hasNext(); ) {
+                Acquisition acquisition = iterator.next();
+                String token = tryAcquire(acquisition.pool, now);
+                if (token != null) {
+                    iterator.remove();
+                    grants.add(() -> acquisition.token.complete(token));
+                } else {
+                    earliestReset = Math.min(earliestReset, findEarliestReset(acquisition.pool));
+                }
+            }
+            if (earliestReset != Long.MAX_VALUE && earliestReset < nextGrantMillis) {
+                nextGrantMillis = earliestReset;
+                long waitingTime = Math.max(1, earliestReset + RESET_SKEW_MILLIS - now);
+                logger.info("Rate limit budget is exhausted on all the tokens, queued calls are granted in " + waitingTime + "ms");
+                RESET_TIMER.schedule(() -> {
+                    synchronized (this) {
+                        nextGrantMillis = Long.MAX_VALUE;
+                    }
+                    grantQueuedAcquisitions();
+                }, waitingTime, TimeUnit.MILLISECONDS);
+            }
+        }
+        // the futures are completed outside the lock, as the stages depending on them run on this thread
+        grants.forEach(Runnable::run);
+    }
+
+    /**
+     * Reserves budget for a single call on the token having the largest available budget in the given pool
+     *
+     * @return the token or null if none of the tokens has budget available now
+     */
+    private String tryAcquire(Pool pool, long now) {
+        String selectedToken = null;
+        long selectedAvailable = 0;
+        for (Map.Entry<String, Map<Pool, Budget>> entry : budgetsOfTokens.entrySet()) {
+            long available = entry.getValue().get(pool).available(now);
+            if (available > selectedAvailable) {
+                selectedToken = entry.getKey();
+                selectedAvailable = available;
+            }
+        }
+        if (selectedToken != null) {
+            budgetsOfTokens.get(selectedToken).get(pool).inFlight++;
+        }
+        return selectedToken;
+    }
+
+    /**
+     * Finds the earliest reset of the budgets of the given pool which have run out or are blocked, or Long.MAX_VALUE if
+     * a budget can only become available by an in flight call reporting the budget it left
+     */
+    private long findEarliestReset(Pool pool) {
+        long earliestReset = Long.MAX_VALUE;
+        for (Map<Pool, Budget> budgets : budgetsOfTokens.values()) {
+            Budget budget = budgets.get(pool);
+            if (budget.inFlight == 0) {
+                earliestReset = Math.min(earliestReset, budget.nextResetMillis());
+            }
+        }
+        return earliestReset;
+    }
+
+    /**
+     * Releases the budget reserved for a call and updates the budget of the token from the rate limit headers
+     * of the response received for the call
+     *
+     * @param token    token used for the call
+     * @param pool     rate limit pool of the call
+     * @param response response received for the call or null if no response was received
+     */
+    public void release(String token, Pool pool, HttpResponse response) {
+        release(token, pool, response, null);
+        grantQueuedAcquisitions();
+    }
+
+    /**
+     * Releases the budget reserved for a GraphQL call and updates the budget of the token from the rateLimit field
+     * of the GraphQL response, or from the rate limit headers if the rateLimit field was not queried. The budget is
+     * taken as spent if the query was rejected with a RATE_LIMITED error
+     *
+     * @param token     token used for the call
+     * @param response  response received for the call
+     * @param rateLimit the rateLimit field of the response or null if it was not queried
+     */
+    public void releaseGraphQl(String token, HttpResponse response, GraphQlRateLimit rateLimit) {
+        release(token, Pool.GRAPHQL, response, rateLimit);
+        grantQueuedAcquisitions();
+    }
+
+    private synchronized void release(String token, Pool pool, HttpResponse response, GraphQlRateLimit rateLimit) {
+        Budget budget = budgetsOfTokens.get(token).get(pool);
+        budget.inFlight--;
+        long remaining = response == null ? -1 : getLongHeader(response, REMAINING_HEADER);
+        long reset = response == null ? -1 : getLongHeader(response, RESET_HEADER);
+        long limit = response == null ? -1 : getLongHeader(response, LIMIT_HEADER);
+        boolean rateLimited = response != null && isRateLimited(response);
+        if (rateLimit != null) {
+            rateLimited |= rateLimit.isExceeded();
+            if (rateLimit.getRemaining() >= 0 && rateLimit.getResetAtEpochSeconds() >= 0) {
+                remaining = rateLimit.getRemaining();
+                reset = rateLimit.getResetAtEpochSeconds();
+            }
+            if (rateLimit.getLimit() >= 0) {
+                limit = rateLimit.getLimit();
+            }
+            // the cost of the last query is used as the estimated cost of the next query of the pool
+            if (rateLimit.getCost() >= 0) {
+                budget.cost = Math.max(1, rateLimit.getCost());
+            }
+        }
+        boolean reported = remaining >= 0 && reset >= 0;
+        if (reported) {
+            budget.update(remaining, limit >= 0 ? limit : budget.limit, reset * 1000);
+        } else if (budget.known && budget.remaining > 0) {
+            // the budget is not reported with the response, so the estimated cost of the call is deducted
+            budget.remaining = Math.max(0, budget.remaining - budget.cost);
+        }
+        long retryAfter = response == null ? -1 : getLongHeader(response, RETRY_AFTER_HEADER);
+        if (retryAfter >= 0) {
+            // secondary rate limits are reported with a Retry-After header instead of the remaining budget
+            budget.block(System.currentTimeMillis() + retryAfter * 1000);
+        } else if (rateLimited && !(reported && remaining == 0)) {
+            // the call was rejected without being told until when, so no call is made on the token for a while
+            budget.block(System.currentTimeMillis() + RATE_LIMITED_WAIT_MILLIS);
+        }
+        notifyAll();
+    }
+
+    /**
+     * Checks whether a response was rejected because the rate limit of the token was exceeded. A 429 response is
+     * always a rejection due to the rate limit, while a 403 response is only one when it reports no remaining budget
+     * or tells when to retry
+     *
+     * @param response response received for a call
+     * @return true if the call should be retried once the budget is available again
+     */
+    public static boolean isRateLimited(HttpResponse response) {
+        int statusCode = response.getStatusLine().getStatusCode();
+        return statusCode == 429 || statusCode == 403
+                && (getLongHeader(response, REMAINING_HEADER) == 0 || getLongHeader(response, RETRY_AFTER_HEADER) >= 0);
+    }
+
+    private static long getLongHeader(HttpResponse response, String name) {
+        Header header = response.getFirstHeader(name);
+        if (header == null) {
+            return -1;
+        }
+        try {
+            return Long.parseLong(header.getValue().trim());
+        } catch (NumberFormatException e) {
+            return -1;
+        }
+    }
+
+    /**
+     * Asynchronous acquisition waiting for budget in a pool
+     */
+    private static final class Acquisition {
+        private final Pool pool;
+        private final CompletableFuture<String> token;
+
+        private Acquisition(Pool pool, CompletableFuture<String> token) {
+            this.pool = pool;
+            this.token = token;
+        }
+    }
+
+    /**
+     * Budget of a single token in a single rate limit pool
+     */
+    private static final class Budget {
+        private boolean known;              // false until the budget is learnt from a response
+        private long remaining;
+        private long limit = -1;            // -1 until the limit is reported with a response
+        private long resetMillis;
+        private long blockedUntilMillis;    // 0 unless the token is blocked by a secondary rate limit
+        private long cost = 1;              // estimated cost of a single call
+        private int inFlight;
+
+        /**
+         * Returns the number of calls which can be started now without exceeding the budget
+         */
+        private long available(long now) {
+            if (known && now >= resetMillis + RESET_SKEW_MILLIS) {
+                // the budget has been reset by github since it was last learnt, to its limit if the limit is known
+                // or else to a budget which is unknown until it is learnt again
+                known = limit >= 0;
+                remaining = Math.max(0, limit);
+            }
+            if (blockedUntilMillis != 0) {
+                if (now < blockedUntilMillis + RESET_SKEW_MILLIS) {
+                    return 0;
+                }
+                blockedUntilMillis = 0;
+            }
+            if (!known) {
+                // only a single call is allowed until the budget is learnt from its response
+                return inFlight == 0 ? 1 : 0;
+            }
+            return remaining / cost - inFlight;
+        }
+
+        /**
+         * Returns the time after which the budget may be available again, or Long.MAX_VALUE if it can only become
+         * available by an in flight call reporting the budget it left
+         */
+        private long nextResetMillis() {
+            if (blockedUntilMillis == 0) {
+                return known ? resetMillis : Long.MAX_VALUE;
+            }
+            return known && remaining < cost ? Math.max(resetMillis, blockedUntilMillis) : blockedUntilMillis;
+        }
+
+        private void update(long remaining, long limit, long resetMillis) {
+            if (known && resetMillis < this.resetMillis) {
+                // a late response of an earlier window must not overwrite the budget of the current window
+                return;
+            }
+            if (known && resetMillis == this.resetMillis) {
+                // responses of the same window may arrive out of order, the lowest remaining budget is the latest
+                remaining = Math.min(remaining, this.remaining);
+            }
+            this.known = true;
+            this.remaining = remaining;
+            this.limit = limit;
+            this.resetMillis = resetMillis;
+        }
+
+        /**
+         * Blocks the token until the given time, without changing the budget of the current window
+         */
+        private void block(long untilMillis) {
+            blockedUntilMillis = Math.max(blockedUntilMillis, untilMillis);
+        }
+    }
+}
@@ -0,0 +1,346 @@
+/*
+ * Copyright (c) 2017, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ *
+ * WSO2 Inc. licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.wso2.code.quality.matrices;
+
+import org.apache.log4j.Logger;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.nio.file.attribute.FileTime;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * This class is used for keeping the REST API responses on the local disk, so that they can be revalidated with
+ * the ETag and Last-Modified validators instead of being downloaded again. github does not count the 304 Not Modified
+ * responses against the rate limit, so repeated analyses of the same patch cost almost no quota.
+ * <p>
+ * Each response is stored gzip compressed in its own file named after the hash of the url, the Accept header and
+ * the access token scope. Files are written to a temporary file and atomically moved in place, and the least
+ * recently used files are evicted under a file lock, so the cache directory can be shared by concurrent JVMs. The
+ * temporary files left by a JVM which stopped while storing a response are deleted when the cache is opened and
+ * before each eviction.
+ *
+ * @since 1.0.0
+ */
+
+public class ResponseCache {
+
+    private static final Logger logger = Logger.getLogger(ResponseCache.class);
+
+    private static final String CACHE_DIRECTORY_PROPERTY = "cqm.cache.directory";
+    private static final String CACHE_MAX_BYTES_PROPERTY = "cqm.cache.maxBytes";
+    private static final String DEFAULT_CACHE_DIRECTORY = System.getProperty("user.home") + "/.code-quality-matrices/http-cache";
+    private static final long DEFAULT_MAX_BYTES = 256L * 1024 * 1024;
+    private static final String ENTRY_FILE_SUFFIX = ".entry";
+    private static final String TEMPORARY_FILE_SUFFIX = ".tmp";
+    // a temporary file older than this is left by a JVM which stopped before moving it in place, as a response is
+    // written in far less time
+    private static final long STALE_TEMPORARY_FILE_MILLIS = TimeUnit.HOURS.toMillis(1);
+    private static final char[] HEX_DIGITS = "0123456789abcdef".toCharArray();
+    private static final String LOCK_FILE_NAME = ".lock";
+    private static final int FORMAT_VERSION = 1;
+    // eviction removes entries until the cache is below this fraction of the maximum size, so it does not run on every write
+    private static final double EVICTION_LOW_WATER_MARK = 0.9;
+
+    private final Path cacheDirectory;
+    private final long maxBytes;
+    private final AtomicLong approximateSize = new AtomicLong();
+
+    /**
+     * Creates a cache on the given directory
+     *
+     * @param cacheDirectory directory in which the responses are stored
+     * @param maxBytes       maximum number of bytes the stored responses may take on the disk
+     * @throws CodeQualityMatricesException if the cache directory could not be created
+     */
+    public ResponseCache(Path cacheDirectory, long maxBytes) throws CodeQualityMatricesException {
+        this.cacheDirectory = cacheDirectory;
+        this.maxBytes = maxBytes;
+        try {
+            Files.createDirectories(cacheDirectory);
+            deleteStaleTemporaryFiles();
+            approximateSize.set(listEntries().stream().mapToLong(CachedFile::getSize).sum());
+        } catch (IOException e) {
+            throw new CodeQualityMatricesException("IOException occurred when creating the response cache on " + cacheDirectory, e);
+        }
+    }
+
+    /**
+     * Creates a cache from the cqm.cache.directory and cqm.cache.maxBytes system properties
+     *
+     * @return the cache
+     * @throws CodeQualityMatricesException if the cache directory could not be created
+     */
+    public static ResponseCache fromSystemProperties() throws CodeQualityMatricesException {
+        return new ResponseCache(Paths.get(System.getProperty(CACHE_DIRECTORY_PROPERTY, DEFAULT_CACHE_DIRECTORY)),
+                Long.getLong(CACHE_MAX_BYTES_PROPERTY, DEFAULT_MAX_BYTES));
+    }
+
+    /**
+     * Builds the key of a response
+     *
+     * @param url         url of the request
+     * @param accept      Accept header of the request or null if there is none
+     * @param accessToken access token of the request, which is only stored as part of a hash
+     * @return the key of the response
+     */
+    public static String keyOf(String url, String accept, String accessToken) {
+        MessageDigest messageDigest;
+        try {
+            messageDigest = MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            // every Java platform is required to support SHA-256
+            throw new IllegalStateException("SHA-256 is not supported", e);
+        }
+        byte[] digest = messageDigest.digest((url + '\n' + accept + '\n' + accessToken).getBytes(StandardCharsets.UTF_8));
+        char[] key = new char[digest.length * 2];
+        for (int i = 0; i < digest.length; i++) {
+            key[i * 2] = HEX_DIGITS[(digest[i] >> 4) & 0xf];
+            key[i * 2 + 1] = HEX_DIGITS[digest[i] & 0xf];
+        }
+        return new String(key);
+    }
+
+    /**
+     * @return the approximate number of bytes the stored responses take on the disk, which may not include the changes
+     * made by other JVMs sharing the cache directory since the last eviction
+     */
+    public long getApproximateSize() {
+        return approximateSize.get();
+    }
+
+    /**
+     * Returns the stored response for the given key and marks it as recently used
+     *
+     * @param key key of the response
+     * @return the stored response or null if there is no stored response for the key
+     */
+    public Entry get(String key) {
+        Path entryFile = cacheDirectory.resolve(key + ENTRY_FILE_SUFFIX);
+        try (DataInputStream inputStream = new DataInputStream(new GZIPInputStream(new BufferedInputStream(Files.newInputStream(entryFile))))) {
+            if (inputStream.readInt() != FORMAT_VERSION) {
+                return null;
+            }
+            String eTag = emptyToNull(inputStream.readUTF());
+            String lastModified = emptyToNull(inputStream.readUTF());
+            byte[] body = new byte[inputStream.readInt()];
+            inputStream.readFully(body);
+            Files.setLastModifiedTime(entryFile, FileTime.fromMillis(System.currentTimeMillis()));
+            return new Entry(eTag, lastModified, body);
+        } catch (NoSuchFileException e) {
+            return null;
+        } catch (IOException e) {
+            // a partially written or corrupted entry is treated as a miss and overwritten on the next store
+            logger.warn("Cached response " + entryFile + " could not be read", e);
+            return null;
+        }
+    }
+
+    /**
+     * Stores a response, replacing any response stored before for the same key
+     *
+     * @param key   key of the response
+     * @param entry response to be stored
+     */
+    public void put(String key, Entry entry) {
+        Path entryFile = cacheDirectory.resolve(key + ENTRY_FILE_SUFFIX);
+        Path temporaryFile = null;
+        try {
+            temporaryFile = Files.createTempFile(cacheDirectory, key, TEMPORARY_FILE_SUFFIX);
+            try (DataOutputStream outputStream = new DataOutputStream(new GZIPOutputStream(new BufferedOutputStream(Files.newOutputStream(temporaryFile))))) {
+                outputStream.writeInt(FORMAT_VERSION);
+                outputStream.writeUTF(nullToEmpty(entry.getETag()));
+                outputStream.writeUTF(nullToEmpty(entry.getLastModified()));
+                outputStream.writeInt(entry.getBody().length);
+                outputStream.write(entry.getBody());
+            }
+            long size = Files.size(temporaryFile);
+            // the size of the response replaced by a revalidated one is no longer taken on the disk
+            long replacedSize = sizeOf(entryFile);
+            Files.move(temporaryFile, entryFile, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            if (approximateSize.addAndGet(size - replacedSize) > maxBytes) {
+                evict();
+            }
+        } catch (IOException e) {
+            logger.warn("Response could not be stored in the cache " + cacheDirectory, e);
+            if (temporaryFile != null) {
+                try {
+                    Files.deleteIfExists(temporaryFile);
+                } catch (IOException deleteException) {
+                    logger.warn("Temporary file " + temporaryFile + " could not be deleted", deleteException);
+                }
+            }
+        }
+    }
+
+    /**
+     * Removes the least recently used responses until the cache fits within its maximum size
+     *
+     * @throws IOException if the cache directory could not be read
+     */
+    private synchronized void evict() throws IOException {
+        try (FileChannel lockChannel = FileChannel.open(cacheDirectory.resolve(LOCK_FILE_NAME), StandardOpenOption.CREATE,
+                StandardOpenOption.WRITE);
+             FileLock ignored = lockChannel.lock()) {
+            deleteStaleTemporaryFiles();
+            // the directory is listed again as other JVMs sharing the cache may have added or removed entries
+            List<CachedFile> cachedFiles = listEntries();
+            cachedFiles.sort(Comparator.comparing(CachedFile::getLastUsedTime));
+            long size = cachedFiles.stream().mapToLong(CachedFile::getSize).sum();
+            long targetSize = (long) (maxBytes * EVICTION_LOW_WATER_MARK);
+            int evictedFiles = 0;
+            for (CachedFile cachedFile : cachedFiles) {
+                if (size <= targetSize) {
+                    break;
+                }
+                Files.deleteIfExists(cachedFile.path);
+                size -= cachedFile.size;
+                evictedFiles++;
+            }
+            approximateSize.set(size);
+            logger.info(evictedFiles + " least recently used responses are evicted from the response cache");
+        }
+    }
+
+    /**
+     * Deletes the temporary files left by the JVMs which stopped while storing a response, leaving the recent ones
+     * which may still be written by another JVM sharing the cache directory
+     */
+    private void deleteStaleTemporaryFiles() throws IOException {
+        long staleBefore = System.currentTimeMillis() - STALE_TEMPORARY_FILE_MILLIS;
+        int deletedFiles = 0;
+        try (DirectoryStream<Path> directoryStream = Files.newDirectoryStream(cacheDirectory, "*" + TEMPORARY_FILE_SUFFIX)) {
+            for (Path path : directoryStream) {
+                try {
+                    if (Files.getLastModifiedTime(path).toMillis() < staleBefore && Files.deleteIfExists(path)) {
+                        deletedFiles++;
+                    }
+                } catch (NoSuchFileException e) {
+                    // moved in place or deleted by another JVM while listing
+                }
+            }
+        }
+        if (deletedFiles > 0) {
+            logger.info(deletedFiles + " stale temporary files are deleted from the response cache");
+        }
+    }
+
+    private static long sizeOf(Path file) throws IOException {
+        try {
+            return Files.size(file);
+        } catch (NoSuchFileException e) {
+            return 0;
+        }
+    }
+
+    private List<CachedFile> listEntries() throws IOException {
+        List<CachedFile> cachedFiles = new ArrayList<>();
+        try (DirectoryStream<Path> directoryStream = Files.newDirectoryStream(cacheDirectory, "*" + ENTRY_FILE_SUFFIX)) {
+            for (Path path : directoryStream) {
+                try {
+                    BasicFileAttributes attributes = Files.readAttributes(path, BasicFileAttributes.class);
+                    cachedFiles.add(new CachedFile(path, attributes.size(), attributes.lastModifiedTime().toMillis()));
+                } catch (NoSuchFileException e) {
+                    // evicted by another JVM while listing
+                }
+            }
+        }
+        return cachedFiles;
+    }
+
+    private static String nullToEmpty(String value) {
+        return value == null ? "" : value;
+    }
+
+    private static String emptyToNull(String value) {
+        return value.isEmpty() ? null : value;
+    }
+
+    /**
+     * A stored response together with the validators used for revalidating it
+     */
+    public static final class Entry {
+        private final String eTag;
+        private final String lastModified;
+        private final byte[] body;
+
+        public Entry(String eTag, String lastModified, byte[] body) {
+            this.eTag = eTag;
+            this.lastModified = lastModified;
+            this.body = body;
+        }
+
+        public String getETag() {
+            return eTag;
+        }
+
+        public String getLastModified() {
+            return lastModified;
+        }
+
+        public byte[] getBody() {
+            return body;
+        }
+    }
+
+    /**
+     * A file of the cache directory with the details needed for eviction
+     */
+    private static final class CachedFile {
+        private final Path path;
+        private final long size;
+        private final long lastUsedTime;
+
+        private CachedFile(Path path, long size, long lastUsedTime) {
+            this.path = path;
+            this.size = size;
+            this.lastUsedTime = lastUsedTime;
+        }
+
+        private long getSize() {
+            return size;
+        }
+
+        private long getLastUsedTime() {
+            return lastUsedTime;
+        }
+    }
+}
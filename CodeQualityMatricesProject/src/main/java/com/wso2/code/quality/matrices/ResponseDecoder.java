@@ -0,0 +1,42 @@
+/*
+ * Copyright (c) 2017, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ *
+ * WSO2 Inc. licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.wso2.code.quality.matrices;
+
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * Decodes the body of an API response while it is read from the connection
+ *
+ * @param <T> type of the decoded response
+ * @since 1.0.0
+ */
+
+@FunctionalInterface
+public interface ResponseDecoder<T> {
+
+    /**
+     * Decodes a response body
+     *
+     * @param inputStream stream of the response body, which is closed by the caller
+     * @return the decoded response
+     * @throws IOException if the body could not be read or is not of the expected form
+     */
+    T decode(InputStream inputStream) throws IOException;
+}
@@ -0,0 +1,824 @@
+/*
+ * Copyright (c) 2017, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ *
+ * WSO2 Inc. licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.wso2.code.quality.matrices;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonParseException;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import org.apache.commons.lang3.StringUtils;
+import org.json.JSONArray;
+import org.json.JSONObject;
+import org.json.JSONTokener;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.time.format.DateTimeParseException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Streaming decoders of the github and WSO2 PMT API responses. The responses are read token by token straight from
+ * the response stream into the typed records used by the analysis, skipping all the fields which are not used, so
+ * neither the response text nor a JSON tree of it is ever held in memory.
+ *
+ * @since 1.0.0
+ */
+
+public final class ResponseDecoders {
+
+    // the parser does not close the response stream as it is closed together with the response
+    private static final JsonFactory JSON_FACTORY = new JsonFactory().disable(JsonParser.Feature.AUTO_CLOSE_SOURCE);
+
+    // constants for accessing the API responses
+    private static final String GITHUB_SEARCH_API_ITEMS_KEY_STRING = "items";
+    private static final String GITHUB_SEARCH_API_REPOSITORY_KEY_STRING = "repository";
+    private static final String GITHUB_SEARCH_API_FULL_NAME_OF_REPOSITORY_KEY_STRING = "full_name";
+    private static final String GITHUB_SEARCH_API_REPOSITORY_URL_KEY_STRING = "repository_url";
+    private static final String GITHUB_SEARCH_API_NUMBER_KEY_STRING = "number";
+    private static final String GITHUB_SEARCH_API_STATE_KEY_STRING = "state";
+    private static final String GITHUB_REVIEW_API_STATE_KEY_STRING = "state";
+    private static final String GITHUB_REVIEW_API_USER_KEY_STRING = "user";
+    private static final String GITHUB_REVIEW_API_LOGIN_KEY_STRING = "login";
+    private static final String GITHUB_COMMIT_API_FILES_KEY_STRING = "files";
+    private static final String GITHUB_COMMIT_API_FILENAME_KEY_STRING = "filename";
+    private static final String GITHUB_COMMIT_API_PATCH_KEY_STRING = "patch";
+    private static final String PMT_NAME_KEY_STRING = "name";
+    private static final String PMT_VALUE_KEY_STRING = "value";
+    private static final String GITHUB_GRAPHQL_API_DATA_KEY_STRING = "data";
+    private static final String GITHUB_GRAPHQL_API_ERRORS_KEY_STRING = "errors";
+    private static final String GITHUB_GRAPHQL_API_MESSAGE_KEY_STRING = "message";
+    private static final String GITHUB_GRAPHQL_API_PATH_KEY_STRING = "path";
+    private static final String GITHUB_GRAPHQL_API_TYPE_KEY_STRING = "type";
+    private static final String GITHUB_GRAPHQL_API_RATE_LIMITED_ERROR_TYPE = "RATE_LIMITED";
+    private static final String GITHUB_GRAPHQL_API_RATE_LIMIT_KEY_STRING = "rateLimit";
+    private static final String GITHUB_GRAPHQL_API_LIMIT_KEY_STRING = "limit";
+    private static final String GITHUB_GRAPHQL_API_COST_KEY_STRING = "cost";
+    private static final String GITHUB_GRAPHQL_API_REMAINING_KEY_STRING = "remaining";
+    private static final String GITHUB_GRAPHQL_API_RESET_AT_KEY_STRING = "resetAt";
+    private static final String GITHUB_GRAPHQL_API_OBJECT_KEY_STRING = "object";
+    private static final String GITHUB_GRAPHQL_API_BLAME_KEY_STRING = "blame";
+    private static final String GITHUB_GRAPHQL_API_RANGES_KEY_STRING = "ranges";
+    private static final String GITHUB_GRAPHQL_API_STARTING_LINE_KEY_STRING = "startingLine";
+    private static final String GITHUB_GRAPHQL_API_ENDING_LINE_KEY_STRING = "endingLine";
+    private static final String GITHUB_GRAPHQL_API_AGE_KEY_STRING = "age";
+    private static final String GITHUB_GRAPHQL_API_COMMIT_KEY_STRING = "commit";
+    private static final String GITHUB_GRAPHQL_API_OID_KEY_STRING = "oid";
+    private static final String GITHUB_GRAPHQL_API_AUTHOR_KEY_STRING = "author";
+    private static final String GITHUB_GRAPHQL_API_NAME_KEY_STRING = "name";
+    private static final String GITHUB_GRAPHQL_API_PARENTS_KEY_STRING = "parents";
+    private static final String GITHUB_GRAPHQL_API_NODES_KEY_STRING = "nodes";
+    private static final String GITHUB_GRAPHQL_API_NUMBER_KEY_STRING = "number";
+    private static final String GITHUB_GRAPHQL_API_STATE_KEY_STRING = "state";
+    private static final String GITHUB_GRAPHQL_API_REPOSITORY_KEY_STRING = "repository";
+    private static final String GITHUB_GRAPHQL_API_NAME_WITH_OWNER_KEY_STRING = "nameWithOwner";
+    private static final String GITHUB_GRAPHQL_API_REVIEWS_KEY_STRING = "reviews";
+    private static final String GITHUB_GRAPHQL_API_LOGIN_KEY_STRING = "login";
+    private static final String GITHUB_GRAPHQL_API_ID_KEY_STRING = "id";
+    private static final String GITHUB_GRAPHQL_API_PAGE_INFO_KEY_STRING = "pageInfo";
+    private static final String GITHUB_GRAPHQL_API_HAS_NEXT_PAGE_KEY_STRING = "hasNextPage";
+    private static final String GITHUB_GRAPHQL_API_END_CURSOR_KEY_STRING = "endCursor";
+
+    private ResponseDecoders() {
+    }
+
+    /**
+     * Decodes the items of a github commit search or issue search response
+     *
+     * @param inputStream stream of the response body
+     * @return the items of the response
+     * @throws IOException if the body could not be read or is not a search response
+     */
+    public static List<SearchItem> decodeSearchItems(InputStream inputStream) throws IOException {
+        List<SearchItem> searchItems = new ArrayList<>();
+        try (JsonParser parser = JSON_FACTORY.createParser(inputStream)) {
+            expectStart(parser, JsonToken.START_OBJECT);
+            while (nextField(parser)) {
+                if (GITHUB_SEARCH_API_ITEMS_KEY_STRING.equals(parser.getCurrentName()) && parser.currentToken() == JsonToken.START_ARRAY) {
+                    while (nextElement(parser)) {
+                        if (parser.currentToken() == JsonToken.START_OBJECT) {
+                            searchItems.add(readSearchItem(parser));
+                        } else {
+                            parser.skipChildren();
+                        }
+                    }
+                } else {
+                    parser.skipChildren();
+                }
+            }
+        }
+        return searchItems;
+    }
+
+    /**
+     * Decodes a github pull request review API response
+     *
+     * @param inputStream stream of the response body
+     * @return the reviews of the response
+     * @throws IOException if the body could not be read or is not a review response
+     */
+    public static List<Review> decodeReviews(InputStream inputStream) throws IOException {
+        List<Review> reviews = new ArrayList<>();
+        try (JsonParser parser = JSON_FACTORY.createParser(inputStream)) {
+            expectStart(parser, JsonToken.START_ARRAY);
+            while (nextElement(parser)) {
+                if (parser.currentToken() != JsonToken.START_OBJECT) {
+                    parser.skipChildren();
+                    continue;
+                }
+                String state = null;
+                String userLogin = null;
+                while (nextField(parser)) {
+                    switch (parser.getCurrentName()) {
+                        case GITHUB_REVIEW_API_STATE_KEY_STRING:
+                            state = readString(parser);
+                            break;
+                        case GITHUB_REVIEW_API_USER_KEY_STRING:
+                            userLogin = readStringField(parser, GITHUB_REVIEW_API_LOGIN_KEY_STRING);
+                            break;
+                        default:
+                            parser.skipChildren();
+                    }
+                }
+                reviews.add(new Review(state, userLogin));
+            }
+        }
+        return reviews;
+    }
+
+    /**
+     * Decodes the files changed by a commit from a github commit API response
+     *
+     * @param inputStream stream of the response body
+     * @return the changes made to each of the files, in the order given by github
+     * @throws IOException if the body could not be read or is not a commit response
+     */
+    public static List<FileChange> decodeFileChanges(InputStream inputStream) throws IOException {
+        List<FileChange> fileChanges = new ArrayList<>();
+        try (JsonParser parser = JSON_FACTORY.createParser(inputStream)) {
+            expectStart(parser, JsonToken.START_OBJECT);
+            while (nextField(parser)) {
+                if (!GITHUB_COMMIT_API_FILES_KEY_STRING.equals(parser.getCurrentName()) || parser.currentToken() != JsonToken.START_ARRAY) {
+                    parser.skipChildren();
+                    continue;
+                }
+                while (nextElement(parser)) {
+                    if (parser.currentToken() != JsonToken.START_OBJECT) {
+                        parser.skipChildren();
+                        continue;
+                    }
+                    String fileName = null;
+                    String patch = null;
+                    while (nextField(parser)) {
+                        switch (parser.getCurrentName()) {
+                            case GITHUB_COMMIT_API_FILENAME_KEY_STRING:
+                                fileName = readString(parser);
+                                break;
+                            case GITHUB_COMMIT_API_PATCH_KEY_STRING:
+                                patch = readString(parser);
+                                break;
+                            default:
+                                parser.skipChildren();
+                        }
+                    }
+                    fileChanges.add(FileChange.fromPatch(fileName, patch));
+                }
+            }
+        }
+        return fileChanges;
+    }
+
+    /**
+     * Decodes the properties of a patch received from WSO2 PMT
+     *
+     * @param inputStream stream of the response body
+     * @return the properties of the patch
+     * @throws IOException if the body could not be read or is not a list of properties
+     */
+    public static List<PmtProperty> decodePmtProperties(InputStream inputStream) throws IOException {
+        List<PmtProperty> pmtProperties = new ArrayList<>();
+        try (JsonParser parser = JSON_FACTORY.createParser(inputStream)) {
+            expectStart(parser, JsonToken.START_ARRAY);
+            while (nextElement(parser)) {
+                if (parser.currentToken() != JsonToken.START_OBJECT) {
+                    parser.skipChildren();
+                    continue;
+                }
+                String name = null;
+                List<String> values = new ArrayList<>();
+                while (nextField(parser)) {
+                    if (PMT_NAME_KEY_STRING.equals(parser.getCurrentName())) {
+                        name = readString(parser);
+                    } else if (PMT_VALUE_KEY_STRING.equals(parser.getCurrentName())) {
+                        readStrings(parser, values);
+                    } else {
+                        parser.skipChildren();
+                    }
+                }
+                pmtProperties.add(new PmtProperty(name, values));
+            }
+        }
+        return pmtProperties;
+    }
+
+    /**
+     * Creates a decoder of the response of a batched blame query, in which the blame of each file is selected under
+     * its own alias of the data field
+     *
+     * @param parentCommitsIncluded should be true if the parents of the commits were queried
+     * @return the decoder
+     */
+    public static ResponseDecoder<BlameBatchResponse> blameBatchDecoder(boolean parentCommitsIncluded) {
+        return inputStream -> decodeBlameBatch(inputStream, parentCommitsIncluded);
+    }
+
+    /**
+     * Decodes the response of a batched pull request search, in which the pull requests of each commit are selected
+     * under their own alias of the data field
+     *
+     * @param inputStream stream of the response body
+     * @return the pull requests and the errors of the response against their aliases
+     * @throws IOException if the body could not be read or is not a GraphQL response
+     */
+    public static PullRequestBatchResponse decodePullRequestBatch(InputStream inputStream) throws IOException {
+        return decodePullRequestBatch(inputStream, true);
+    }
+
+    /**
+     * Decodes the response of a batched query of the next reviews of pull requests, in which each pull request is
+     * selected as a node under its own alias of the data field
+     *
+     * @param inputStream stream of the response body
+     * @return the pull requests and the errors of the response against their aliases
+     * @throws IOException if the body could not be read or is not a GraphQL response
+     */
+    public static PullRequestBatchResponse decodePullRequestNodeBatch(InputStream inputStream) throws IOException {
+        return decodePullRequestBatch(inputStream, false);
+    }
+
+    private static PullRequestBatchResponse decodePullRequestBatch(InputStream inputStream, boolean searched) throws IOException {
+        boolean dataReceived = false;
+        Map<String, List<PullRequest>> pullRequestsByAlias = new HashMap<>();
+        Map<String, String> errorsByAlias = new HashMap<>();
+        Map<String, String> searchCursorsByAlias = new HashMap<>();
+        Map<String, String> nodeIdsOfPullRequests = new HashMap<>();
+        Map<String, String> reviewCursorsOfPullRequests = new HashMap<>();
+        GraphQlRateLimit rateLimit = null;
+        boolean rateLimited = false;
+        try (JsonParser parser = JSON_FACTORY.createParser(inputStream)) {
+            expectStart(parser, JsonToken.START_OBJECT);
+            while (nextField(parser)) {
+                if (GITHUB_GRAPHQL_API_DATA_KEY_STRING.equals(parser.getCurrentName()) && parser.currentToken() == JsonToken.START_OBJECT) {
+                    dataReceived = true;
+                    while (nextField(parser)) {
+                        String alias = parser.getCurrentName();
+                        if (GITHUB_GRAPHQL_API_RATE_LIMIT_KEY_STRING.equals(alias)) {
+                            rateLimit = readRateLimit(parser);
+                            continue;
+                        }
+                        List<PullRequest> pullRequests;
+                        if (searched) {
+                            pullRequests = readPullRequestsOfAlias(parser, alias, searchCursorsByAlias, nodeIdsOfPullRequests,
+                                    reviewCursorsOfPullRequests);
+                        } else if (enterObject(parser)) {
+                            PullRequest pullRequest = readPullRequest(parser, nodeIdsOfPullRequests, reviewCursorsOfPullRequests);
+                            pullRequests = pullRequest == null ? null : Collections.singletonList(pullRequest);
+                        } else {
+                            pullRequests = null;
+                        }
+                        if (pullRequests != null) {
+                            pullRequestsByAlias.put(alias, pullRequests);
+                        }
+                    }
+                } else if (GITHUB_GRAPHQL_API_ERRORS_KEY_STRING.equals(parser.getCurrentName()) && parser.currentToken() == JsonToken.START_ARRAY) {
+                    rateLimited = readErrors(parser, errorsByAlias);
+                } else {
+                    parser.skipChildren();
+                }
+            }
+        }
+        return new PullRequestBatchResponse(dataReceived, pullRequestsByAlias, errorsByAlias, searchCursorsByAlias,
+                nodeIdsOfPullRequests, reviewCursorsOfPullRequests,
+                rateLimited ? GraphQlRateLimit.exceeded(rateLimit) : rateLimit);
+    }
+
+    /**
+     * Decodes a response body into a JSON tree, for the callers which are not given a typed decoder
+     *
+     * @param inputStream stream of the response body
+     * @return Depending on the content return a JSONObject or a JSONArray, or null for any other content
+     */
+    public static Object decodeJson(InputStream inputStream) {
+        // gives an object http://stackoverflow.com/questions/14685777/how-to-check-if-response-from-server-is-jsonaobject-or-jsonarray
+        Object json = new JSONTokener(new InputStreamReader(inputStream, StandardCharsets.UTF_8)).nextValue();
+        if (json instanceof JSONObject || json instanceof JSONArray) {
+            return json;
+        }
+        return null;
+    }
+
+    private static BlameBatchResponse decodeBlameBatch(InputStream inputStream, boolean parentCommitsIncluded) throws IOException {
+        boolean dataReceived = false;
+        Map<String, FileBlame> blamesByAlias = new HashMap<>();
+        Map<String, String> errorsByAlias = new HashMap<>();
+        GraphQlRateLimit rateLimit = null;
+        boolean rateLimited = false;
+        try (JsonParser parser = JSON_FACTORY.createParser(inputStream)) {
+            expectStart(parser, JsonToken.START_OBJECT);
+            while (nextField(parser)) {
+                if (GITHUB_GRAPHQL_API_DATA_KEY_STRING.equals(parser.getCurrentName()) && parser.currentToken() == JsonToken.START_OBJECT) {
+                    dataReceived = true;
+                    while (nextField(parser)) {
+                        String alias = parser.getCurrentName();
+                        if (GITHUB_GRAPHQL_API_RATE_LIMIT_KEY_STRING.equals(alias)) {
+                            rateLimit = readRateLimit(parser);
+                            continue;
+                        }
+                        FileBlame blame = readBlameOfAlias(parser, parentCommitsIncluded);
+                        if (blame != null) {
+                            blamesByAlias.put(alias, blame);
+                        }
+                    }
+                } else if (GITHUB_GRAPHQL_API_ERRORS_KEY_STRING.equals(parser.getCurrentName()) && parser.currentToken() == JsonToken.START_ARRAY) {
+                    rateLimited = readErrors(parser, errorsByAlias);
+                } else {
+                    parser.skipChildren();
+                }
+            }
+        }
+        return new BlameBatchResponse(dataReceived, blamesByAlias, errorsByAlias,
+                rateLimited ? GraphQlRateLimit.exceeded(rateLimit) : rateLimit);
+    }
+
+    /**
+     * Reads the blame of the repository{object{blame{ranges}}} selection of an alias
+     */
+    private static FileBlame readBlameOfAlias(JsonParser parser, boolean parentCommitsIncluded) throws IOException {
+        FileBlame blame = null;
+        if (!enterObject(parser)) {
+            return null;
+        }
+        while (nextField(parser)) {
+            if (!GITHUB_GRAPHQL_API_OBJECT_KEY_STRING.equals(parser.getCurrentName()) || !enterObject(parser)) {
+                parser.skipChildren();
+                continue;
+            }
+            while (nextField(parser)) {
+                if (!GITHUB_GRAPHQL_API_BLAME_KEY_STRING.equals(parser.getCurrentName()) || !enterObject(parser)) {
+                    parser.skipChildren();
+                    continue;
+                }
+                while (nextField(parser)) {
+                    if (GITHUB_GRAPHQL_API_RANGES_KEY_STRING.equals(parser.getCurrentName()) && parser.currentToken() == JsonToken.START_ARRAY) {
+                        blame = readBlameRanges(parser, parentCommitsIncluded);
+                    } else {
+                        parser.skipChildren();
+                    }
+                }
+            }
+        }
+        return blame;
+    }
+
+    private static FileBlame readBlameRanges(JsonParser parser, boolean parentCommitsIncluded) throws IOException {
+        FileBlame.Builder builder = new FileBlame.Builder(parentCommitsIncluded);
+        while (nextElement(parser)) {
+            if (!enterObject(parser)) {
+                parser.skipChildren();
+                continue;
+            }
+            int startingLine = 0;
+            int endingLine = 0;
+            int age = 0;
+            String commitHash = null;
+            String parentCommitHash = null;
+            String authorName = null;
+            while (nextField(parser)) {
+                switch (parser.getCurrentName()) {
+                    case GITHUB_GRAPHQL_API_STARTING_LINE_KEY_STRING:
+                        startingLine = parser.getIntValue();
+                        break;
+                    case GITHUB_GRAPHQL_API_ENDING_LINE_KEY_STRING:
+                        endingLine = parser.getIntValue();
+                        break;
+                    case GITHUB_GRAPHQL_API_AGE_KEY_STRING:
+                        age = parser.getIntValue();
+                        break;
+                    case GITHUB_GRAPHQL_API_COMMIT_KEY_STRING:
+                        if (!enterObject(parser)) {
+                            break;
+                        }
+                        while (nextField(parser)) {
+                            switch (parser.getCurrentName()) {
+                                case GITHUB_GRAPHQL_API_OID_KEY_STRING:
+                                    commitHash = readString(parser);
+                                    break;
+                                case GITHUB_GRAPHQL_API_AUTHOR_KEY_STRING:
+                                    authorName = readStringField(parser, GITHUB_GRAPHQL_API_NAME_KEY_STRING);
+                                    break;
+                                case GITHUB_GRAPHQL_API_PARENTS_KEY_STRING:
+                                    parentCommitHash = readParentCommitHash(parser);
+                                    break;
+                                default:
+                                    parser.skipChildren();
+                            }
+                        }
+                        break;
+                    default:
+                        parser.skipChildren();
+                }
+            }
+            builder.addRange(startingLine, endingLine, age, commitHash, parentCommitsIncluded ? parentCommitHash : null, authorName);
+        }
+        return builder.build();
+    }
+
+    /**
+     * Reads the parent commit from the parents(first: 1){nodes{oid}} selection of a commit. The first commit of the
+     * repository has no parent
+     */
+    private static String readParentCommitHash(JsonParser parser) throws IOException {
+        String parentCommitHash = null;
+        if (!enterObject(parser)) {
+            return null;
+        }
+        while (nextField(parser)) {
+            if (!GITHUB_GRAPHQL_API_NODES_KEY_STRING.equals(parser.getCurrentName()) || parser.currentToken() != JsonToken.START_ARRAY) {
+                parser.skipChildren();
+                continue;
+            }
+            while (nextElement(parser)) {
+                if (parentCommitHash == null) {
+                    parentCommitHash = readStringField(parser, GITHUB_GRAPHQL_API_OID_KEY_STRING);
+                } else {
+                    parser.skipChildren();
+                }
+            }
+        }
+        return parentCommitHash;
+    }
+
+    /**
+     * Reads the pull requests of the search{pageInfo nodes} selection of an alias, keeping the cursor of the search
+     * against the alias if it has more pull requests. The nodes which are not pull requests are received as empty
+     * objects and are skipped
+     */
+    private static List<PullRequest> readPullRequestsOfAlias(JsonParser parser, String alias, Map<String, String> searchCursorsByAlias,
+                                                             Map<String, String> nodeIdsOfPullRequests,
+                                                             Map<String, String> reviewCursorsOfPullRequests) throws IOException {
+        List<PullRequest> pullRequests = null;
+        if (!enterObject(parser)) {
+            return null;
+        }
+        while (nextField(parser)) {
+            if (GITHUB_GRAPHQL_API_PAGE_INFO_KEY_STRING.equals(parser.getCurrentName())) {
+                String cursor = readNextPageCursor(parser);
+                if (cursor != null) {
+                    searchCursorsByAlias.put(alias, cursor);
+                }
+                continue;
+            }
+            if (!GITHUB_GRAPHQL_API_NODES_KEY_STRING.equals(parser.getCurrentName()) || parser.currentToken() != JsonToken.START_ARRAY) {
+                parser.skipChildren();
+                continue;
+            }
+            pullRequests = new ArrayList<>();
+            while (nextElement(parser)) {
+                if (!enterObject(parser)) {
+                    continue;
+                }
+                PullRequest pullRequest = readPullRequest(parser, nodeIdsOfPullRequests, reviewCursorsOfPullRequests);
+                if (pullRequest != null) {
+                    pullRequests.add(pullRequest);
+                }
+            }
+        }
+        return pullRequests;
+    }
+
+    /**
+     * Reads the fields of a pull request object, keeping its node id and the cursor of its reviews against the key of
+     * the pull request if it has more reviews
+     *
+     * @return the pull request or null if the object is not a pull request
+     */
+    private static PullRequest readPullRequest(JsonParser parser, Map<String, String> nodeIdsOfPullRequests,
+                                               Map<String, String> reviewCursorsOfPullRequests) throws IOException {
+        String nodeId = null;
+        String repositoryFullName = null;
+        int number = 0;
+        String state = null;
+        List<Review> reviews = new ArrayList<>();
+        String reviewCursor = null;
+        while (nextField(parser)) {
+            switch (parser.getCurrentName()) {
+                case GITHUB_GRAPHQL_API_ID_KEY_STRING:
+                    nodeId = readString(parser);
+                    break;
+                case GITHUB_GRAPHQL_API_REPOSITORY_KEY_STRING:
+                    repositoryFullName = readStringField(parser, GITHUB_GRAPHQL_API_NAME_WITH_OWNER_KEY_STRING);
+                    break;
+                case GITHUB_GRAPHQL_API_NUMBER_KEY_STRING:
+                    number = parser.getIntValue();
+                    break;
+                case GITHUB_GRAPHQL_API_STATE_KEY_STRING:
+                    state = readString(parser);
+                    break;
+                case GITHUB_GRAPHQL_API_REVIEWS_KEY_STRING:
+                    reviewCursor = readReviewNodes(parser, reviews);
+                    break;
+                default:
+                    parser.skipChildren();
+            }
+        }
+        if (repositoryFullName == null) {
+            return null;
+        }
+        PullRequest pullRequest = new PullRequest(repositoryFullName, number, state, reviews);
+        if (reviewCursor != null && nodeId != null) {
+            nodeIdsOfPullRequests.put(PullRequestBatchResponse.keyOf(pullRequest), nodeId);
+            reviewCursorsOfPullRequests.put(PullRequestBatchResponse.keyOf(pullRequest), reviewCursor);
+        }
+        return pullRequest;
+    }
+
+    /**
+     * Reads the reviews of the reviews{pageInfo nodes{state author{login}}} selection of a pull request into the given
+     * list
+     *
+     * @return the cursor after the last review read, or null if the pull request has no more reviews
+     */
+    private static String readReviewNodes(JsonParser parser, List<Review> reviews) throws IOException {
+        String cursor = null;
+        if (!enterObject(parser)) {
+            return null;
+        }
+        while (nextField(parser)) {
+            if (GITHUB_GRAPHQL_API_PAGE_INFO_KEY_STRING.equals(parser.getCurrentName())) {
+                cursor = readNextPageCursor(parser);
+                continue;
+            }
+            if (!GITHUB_GRAPHQL_API_NODES_KEY_STRING.equals(parser.getCurrentName()) || parser.currentToken() != JsonToken.START_ARRAY) {
+                parser.skipChildren();
+                continue;
+            }
+            while (nextElement(parser)) {
+                if (!enterObject(parser)) {
+                    continue;
+                }
+                String state = null;
+                String userLogin = null;
+                while (nextField(parser)) {
+                    switch (parser.getCurrentName()) {
+                        case GITHUB_GRAPHQL_API_STATE_KEY_STRING:
+                            state = readString(parser);
+                            break;
+                        case GITHUB_GRAPHQL_API_AUTHOR_KEY_STRING:
+                            // the author of a review is null when the account has been deleted
+                            userLogin = readStringField(parser, GITHUB_GRAPHQL_API_LOGIN_KEY_STRING);
+                            break;
+                        default:
+                            parser.skipChildren();
+                    }
+                }
+                reviews.add(new Review(state, userLogin));
+            }
+        }
+        return cursor;
+    }
+
+    /**
+     * Reads the pageInfo{hasNextPage endCursor} selection of a connection
+     *
+     * @return the end cursor of the page, or null if there is no next page
+     */
+    private static String readNextPageCursor(JsonParser parser) throws IOException {
+        boolean hasNextPage = false;
+        String endCursor = null;
+        if (!enterObject(parser)) {
+            return null;
+        }
+        while (nextField(parser)) {
+            switch (parser.getCurrentName()) {
+                case GITHUB_GRAPHQL_API_HAS_NEXT_PAGE_KEY_STRING:
+                    hasNextPage = parser.currentToken() == JsonToken.VALUE_TRUE;
+                    break;
+                case GITHUB_GRAPHQL_API_END_CURSOR_KEY_STRING:
+                    endCursor = readString(parser);
+                    break;
+                default:
+                    parser.skipChildren();
+            }
+        }
+        return hasNextPage ? endCursor : null;
+    }
+
+    private static GraphQlRateLimit readRateLimit(JsonParser parser) throws IOException {
+        if (!enterObject(parser)) {
+            return null;
+        }
+        long limit = -1;
+        long cost = -1;
+        long remaining = -1;
+        long resetAtEpochSeconds = -1;
+        while (nextField(parser)) {
+            switch (parser.getCurrentName()) {
+                case GITHUB_GRAPHQL_API_LIMIT_KEY_STRING:
+                    limit = parser.getLongValue();
+                    break;
+                case GITHUB_GRAPHQL_API_COST_KEY_STRING:
+                    cost = parser.getLongValue();
+                    break;
+                case GITHUB_GRAPHQL_API_REMAINING_KEY_STRING:
+                    remaining = parser.getLongValue();
+                    break;
+                case GITHUB_GRAPHQL_API_RESET_AT_KEY_STRING:
+                    resetAtEpochSeconds = parseEpochSeconds(readString(parser));
+                    break;
+                default:
+                    parser.skipChildren();
+            }
+        }
+        return new GraphQlRateLimit(limit, cost, remaining, resetAtEpochSeconds, false);
+    }
+
+    /**
+     * Reads the errors of a GraphQL response against the aliases of the fields they were raised on
+     *
+     * @return true if the query was rejected as the rate limit was exceeded
+     */
+    private static boolean readErrors(JsonParser parser, Map<String, String> errorsByAlias) throws IOException {
+        boolean rateLimited = false;
+        while (nextElement(parser)) {
+            if (!enterObject(parser)) {
+                parser.skipChildren();
+                continue;
+            }
+            String message = null;
+            String alias = "";
+            while (nextField(parser)) {
+                if (GITHUB_GRAPHQL_API_MESSAGE_KEY_STRING.equals(parser.getCurrentName())) {
+                    message = readString(parser);
+                } else if (GITHUB_GRAPHQL_API_PATH_KEY_STRING.equals(parser.getCurrentName()) && parser.currentToken() == JsonToken.START_ARRAY) {
+                    // the first element of the path is the alias of the field the error was raised on
+                    List<String> path = new ArrayList<>();
+                    readStrings(parser, path);
+                    alias = path.isEmpty() ? "" : path.get(0);
+                } else if (GITHUB_GRAPHQL_API_TYPE_KEY_STRING.equals(parser.getCurrentName())) {
+                    rateLimited |= GITHUB_GRAPHQL_API_RATE_LIMITED_ERROR_TYPE.equals(readString(parser));
+                } else {
+                    parser.skipChildren();
+                }
+            }
+            errorsByAlias.merge(alias, String.valueOf(message), (first, second) -> first + "; " + second);
+        }
+        return rateLimited;
+    }
+
+    private static SearchItem readSearchItem(JsonParser parser) throws IOException {
+        String repositoryFullName = null;
+        int number = 0;
+        String state = null;
+        while (nextField(parser)) {
+            switch (parser.getCurrentName()) {
+                case GITHUB_SEARCH_API_REPOSITORY_KEY_STRING:
+                    // commit search items refer to their repository with an object
+                    repositoryFullName = readStringField(parser, GITHUB_SEARCH_API_FULL_NAME_OF_REPOSITORY_KEY_STRING);
+                    break;
+                case GITHUB_SEARCH_API_REPOSITORY_URL_KEY_STRING:
+                    // issue search items refer to their repository with its API url
+                    repositoryFullName = StringUtils.substringAfter(readString(parser), "/repos/");
+                    break;
+                case GITHUB_SEARCH_API_NUMBER_KEY_STRING:
+                    number = parser.getIntValue();
+                    break;
+                case GITHUB_SEARCH_API_STATE_KEY_STRING:
+                    state = readString(parser);
+                    break;
+                default:
+                    parser.skipChildren();
+            }
+        }
+        return new SearchItem(repositoryFullName, number, state);
+    }
+
+    private static void expectStart(JsonParser parser, JsonToken expectedToken) throws IOException {
+        if (parser.nextToken() != expectedToken) {
+            throw new JsonParseException(parser, "Expected " + expectedToken + " at the start of the response but found "
+                    + parser.currentToken());
+        }
+    }
+
+    /**
+     * Moves to the value of the next field of the current object
+     *
+     * @return false if the end of the object is reached
+     */
+    private static boolean nextField(JsonParser parser) throws IOException {
+        if (parser.nextToken() != JsonToken.FIELD_NAME) {
+            return false;
+        }
+        parser.nextToken();
+        return true;
+    }
+
+    /**
+     * Moves to the next element of the current array
+     *
+     * @return false if the end of the array is reached
+     */
+    private static boolean nextElement(JsonParser parser) throws IOException {
+        return parser.nextToken() != JsonToken.END_ARRAY;
+    }
+
+    /**
+     * Checks whether the current value is an object, skipping it if it is not, for example if it is null
+     *
+     * @return true if the fields of the current object can be read
+     */
+    private static boolean enterObject(JsonParser parser) throws IOException {
+        if (parser.currentToken() == JsonToken.START_OBJECT) {
+            return true;
+        }
+        parser.skipChildren();
+        return false;
+    }
+
+    /**
+     * Reads the current value as a string, skipping it if it is an object or an array
+     */
+    private static String readString(JsonParser parser) throws IOException {
+        if (parser.currentToken().isStructStart()) {
+            parser.skipChildren();
+            return null;
+        }
+        return parser.currentToken() == JsonToken.VALUE_NULL ? null : parser.getValueAsString();
+    }
+
+    /**
+     * Reads a single string field of the current object, skipping all its other fields
+     */
+    private static String readStringField(JsonParser parser, String fieldName) throws IOException {
+        String value = null;
+        if (!enterObject(parser)) {
+            return null;
+        }
+        while (nextField(parser)) {
+            if (fieldName.equals(parser.getCurrentName())) {
+                value = readString(parser);
+            } else {
+                parser.skipChildren();
+            }
+        }
+        return value;
+    }
+
+    /**
+     * Reads the current value, which is either a single string or an array of strings, into the given list
+     */
+    private static void readStrings(JsonParser parser, List<String> values) throws IOException {
+        if (parser.currentToken() != JsonToken.START_ARRAY) {
+            String value = readString(parser);
+            if (value != null) {
+                values.add(value.trim());
+            }
+            return;
+        }
+        while (nextElement(parser)) {
+            String value = readString(parser);
+            if (value != null) {
+                values.add(value.trim());
+            }
+        }
+    }
+
+    private static long parseEpochSeconds(String time) {
+        try {
+            return time == null ? -1 : Instant.parse(time).getEpochSecond();
+        } catch (DateTimeParseException e) {
+            return -1;
+        }
+    }
+}
@@ -18,19 +18,23 @@
 
 package com.wso2.code.quality.matrices;
 
+import org.apache.http.Header;
+import org.apache.http.HttpResponse;
 import org.apache.http.client.ClientProtocolException;
 import org.apache.http.client.methods.CloseableHttpResponse;
 import org.apache.http.client.methods.HttpGet;
-import org.apache.http.impl.client.CloseableHttpClient;
-import org.apache.http.impl.client.HttpClients;
+import org.apache.http.util.EntityUtils;
 import org.apache.log4j.Logger;
-import org.json.JSONArray;
-import org.json.JSONObject;
-import org.json.JSONTokener;
 
-import java.io.BufferedReader;
+import java.io.ByteArrayInputStream;
 import java.io.IOException;
-import java.io.InputStreamReader;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.Function;
+import java.util.function.Supplier;
+import java.util.regex.Pattern;
 
 /**
  * This class is used to call the REST API of both WSO2 PMT and github.com
@@ -40,67 +44,477 @@ public class RestApiCaller {
 
     private static Logger logger = Logger.getLogger(RestApiCaller.class);
 
+    private static final int MAX_RATE_LIMITED_ATTEMPTS = 5;
+    private static final String GITHUB_REVIEW_API_ACCEPT_HEADER = "application/vnd.github.black-cat-preview+json";
+    private static final String GITHUB_COMMIT_SEARCH_API_ACCEPT_HEADER = "application/vnd.github.cloak-preview";
+    private static final String LINK_HEADER = "Link";
+    private static final String NEXT_PAGE_RELATION = "rel=\"next\"";
+    private static final String RESPONSE_CACHE_NAME = "response";
+    private static final String HTTP_GET_METHOD = "GET";
+    private static final String SINGLE_FLIGHT_NAME = "rest";
+    private static final Pattern REVIEWS_URL_PATTERN = Pattern.compile("/pulls/\\d+/reviews");
+    private static final Pattern COMMIT_URL_PATTERN = Pattern.compile("/repos/[^/]+/[^/]+/commits/");
+
+    private final HttpTransport httpTransport;
+    private final RateLimitScheduler rateLimitScheduler;
+    private final ResponseCache responseCache;
+    private final RetryPolicy retryPolicy;
+    private final SingleFlight<List<Object>, ApiPage<?>> pageFlights = new SingleFlight<>(SINGLE_FLIGHT_NAME);
+
+    /**
+     * Creates a RestApiCaller which uses the transport shared across the application
+     */
+    public RestApiCaller() {
+        this(HttpTransport.getDefault());
+    }
+
+    /**
+     * Creates a RestApiCaller which uses the given transport
+     *
+     * @param httpTransport transport used for executing the requests
+     */
+    public RestApiCaller(HttpTransport httpTransport) {
+        this(httpTransport, null);
+    }
+
+    /**
+     * Creates a RestApiCaller which schedules the github API calls within the rate limits of the given scheduler
+     *
+     * @param httpTransport      transport used for executing the requests
+     * @param rateLimitScheduler scheduler providing the github tokens for the calls or null if the given access token
+     *                           should always be used
+     */
+    public RestApiCaller(HttpTransport httpTransport, RateLimitScheduler rateLimitScheduler) {
+        this(httpTransport, rateLimitScheduler, null);
+    }
+
+    /**
+     * Creates a RestApiCaller which revalidates the responses kept in the given cache instead of downloading them again
+     *
+     * @param httpTransport      transport used for executing the requests
+     * @param rateLimitScheduler scheduler providing the github tokens for the calls or null if the given access token
+     *                           should always be used
+     * @param responseCache      cache of the responses or null if the responses should not be cached
+     */
+    public RestApiCaller(HttpTransport httpTransport, RateLimitScheduler rateLimitScheduler, ResponseCache responseCache) {
+        this(httpTransport, rateLimitScheduler, responseCache, RetryPolicy.fromSystemProperties());
+    }
+
+    /**
+     * Creates a RestApiCaller which retries the calls failed due to transient errors as given by the retry policy
+     *
+     * @param httpTransport      transport used for executing the requests
+     * @param rateLimitScheduler scheduler providing the github tokens for the calls or null if the given access token
+     *                           should always be used
+     * @param responseCache      cache of the responses or null if the responses should not be cached
+     * @param retryPolicy        policy deciding the retries of the calls failed without a response or with a server error
+     */
+    public RestApiCaller(HttpTransport httpTransport, RateLimitScheduler rateLimitScheduler, ResponseCache responseCache,
+                         RetryPolicy retryPolicy) {
+        this.httpTransport = httpTransport;
+        this.rateLimitScheduler = rateLimitScheduler;
+        this.responseCache = responseCache;
+        this.retryPolicy = retryPolicy;
+    }
+
     /**
      * calling the relevant API and saving the output to a file
+     * When a rate limit scheduler is set, calls to the github API use a token given by the scheduler instead of the
+     * given access token and a call rejected due to the rate limit is retried once the budget is available again.
+     * When a response cache is set, a cached response is revalidated with its ETag or Last-Modified validator and
+     * reused if github answers with 304 Not Modified. A call which failed without a response or with a server error is
+     * retried after a backoff as given by the retry policy
      *
      * @param URL                 url of the REST API to be called
      * @param accessToken         either the WSO2 PMT access accessToken or giihub.com access accessToken
      * @param requireCommitHeader should be true for accessing the github commit search API and false otherwise
      * @param requireReviewHeader should be true for accessing the github review API or false otherwise
+     * @return Depending on the content return a JSONObject or a JSONArray
      */
 
     public Object callApi(String URL, String accessToken, boolean requireCommitHeader, boolean requireReviewHeader) throws CodeQualityMatricesException {
+        return callApi(URL, accessToken, requireCommitHeader, requireReviewHeader, ResponseDecoders::decodeJson);
+    }
 
-        BufferedReader bufferedReader = null;
-        CloseableHttpClient httpclient = null;
-        CloseableHttpResponse httpResponse = null;
-        Object returnedObject = null;
+    /**
+     * Calls the relevant API and decodes the response with the given decoder while it is read from the connection
+     *
+     * @param URL                 url of the REST API to be called
+     * @param accessToken         either the WSO2 PMT access accessToken or giihub.com access accessToken
+     * @param requireCommitHeader should be true for accessing the github commit search API and false otherwise
+     * @param requireReviewHeader should be true for accessing the github review API or false otherwise
+     * @param responseDecoder     decoder of the response body
+     * @param <T>                 type of the decoded response
+     * @return the decoded response or null if the API responded with an unexpected response code
+     * @throws CodeQualityMatricesException if the call failed or the response could not be decoded
+     */
+    public <T> T callApi(String URL, String accessToken, boolean requireCommitHeader, boolean requireReviewHeader,
+                         ResponseDecoder<T> responseDecoder) throws CodeQualityMatricesException {
+        ApiPage<T> page = callApiPage(URL, accessToken, requireCommitHeader, requireReviewHeader, responseDecoder);
+        return page == null ? null : page.getContent();
+    }
 
-        try {
-            httpclient = HttpClients.createDefault();
-            HttpGet httpGet = new HttpGet(URL);
+    /**
+     * Calls the relevant API for a page of a paginated response and decodes it with the given decoder, reading the url
+     * of the next page from the Link header of the response. A call made while an identical call with the same
+     * decoder is in flight shares its page instead of calling the API again
+     *
+     * @param URL                 url of the page to be called
+     * @param accessToken         either the WSO2 PMT access accessToken or giihub.com access accessToken
+     * @param requireCommitHeader should be true for accessing the github commit search API and false otherwise
+     * @param requireReviewHeader should be true for accessing the github review API or false otherwise
+     * @param responseDecoder     decoder of the response body
+     * @param <T>                 type of the decoded response
+     * @return the decoded page or null if the API responded with an unexpected response code
+     * @throws CodeQualityMatricesException if the call failed or the response could not be decoded
+     */
+    public <T> ApiPage<T> callApiPage(String URL, String accessToken, boolean requireCommitHeader, boolean requireReviewHeader,
+                                      ResponseDecoder<T> responseDecoder) throws CodeQualityMatricesException {
+        // the call is made on the calling thread, while the identical calls made meanwhile wait for its page
+        return Futures.join(shareCall(requestKeyOf(URL, accessToken, requireCommitHeader, requireReviewHeader, responseDecoder),
+                () -> {
+                    try {
+                        return CompletableFuture.completedFuture(attempt(URL, accessToken, requireCommitHeader,
+                                requireReviewHeader, responseDecoder));
+                    } catch (CodeQualityMatricesException e) {
+                        return Futures.failed(e);
+                    }
+                }));
+    }
+
+    private <T> ApiPage<T> attempt(String URL, String accessToken, boolean requireCommitHeader, boolean requireReviewHeader,
+                                   ResponseDecoder<T> responseDecoder) throws CodeQualityMatricesException {
+
+        Call<T> call = new Call<>(URL, accessToken, requireCommitHeader, requireReviewHeader, responseDecoder);
+        for (int attempt = 1; ; attempt++) {
+            CloseableHttpResponse httpResponse = null;
+            String token = call.scheduled ? rateLimitScheduler.acquire(call.pool) : accessToken;
+            boolean released = !call.scheduled;
+            call.startAttempt(attempt);
+
+            try {
+                httpResponse = httpTransport.execute(call.buildRequest(token));
+                if (call.scheduled) {
+                    rateLimitScheduler.release(token, call.pool, httpResponse);
+                    released = true;
+                }
+                if (call.rescheduleOnRateLimit(httpResponse)) {
+                    continue;
+                }
+                if (!call.retryOnServerError(httpResponse)) {
+                    return call.readResponse(httpResponse);
+                }
 
-            if (accessToken != null) {
+            } catch (ClientProtocolException e) {
+                throw new CodeQualityMatricesException("ClientProtocolException when calling the REST API", e);
 
-                httpGet.addHeader("Authorization", "Bearer " + accessToken);        // passing the accessToken for the API call
+            } catch (IOException e) {
+                if (!call.retryOnFailure(e)) {
+                    throw new CodeQualityMatricesException("IOException occurred when calling the REST API", e);
+                }
+            } finally {
+                if (!released) {
+                    rateLimitScheduler.release(token, call.pool, httpResponse);
+                }
+                call.finishAttempt(httpResponse);
+                if (httpResponse != null) {
+                    try {
+                        // consuming the rest of the entity releases the connection back to the pool for reuse
+                        EntityUtils.consume(httpResponse.getEntity());
+                        httpResponse.close();
+                    } catch (IOException e) {
+                        throw new CodeQualityMatricesException("IOException occurred when closing the HttpResponse", e);
+                    }
+                }
             }
+            retryPolicy.awaitBackoff(call.failedAttempts);
+        }
+    }
 
-            //as the accept header is needed for the review API since it is still in preview mode   
-            if (requireReviewHeader) {
-                httpGet.addHeader("Accept", "application/vnd.github.black-cat-preview+json");
+    /**
+     * Calls the relevant API without blocking the calling thread, and decodes the response with the given decoder on
+     * a callback thread of the transport once it is received. A call rejected due to the rate limit waits for the
+     * budget without holding a thread
+     *
+     * @param URL                 url of the REST API to be called
+     * @param accessToken         either the WSO2 PMT access accessToken or giihub.com access accessToken
+     * @param requireCommitHeader should be true for accessing the github commit search API and false otherwise
+     * @param requireReviewHeader should be true for accessing the github review API or false otherwise
+     * @param responseDecoder     decoder of the response body
+     * @param <T>                 type of the decoded response
+     * @return a future of the decoded response or of null if the API responded with an unexpected response code,
+     * which fails with a CodeQualityMatricesException if the call failed or the response could not be decoded
+     */
+    public <T> CompletableFuture<T> callApiAsync(String URL, String accessToken, boolean requireCommitHeader,
+                                                 boolean requireReviewHeader, ResponseDecoder<T> responseDecoder) {
+        return callApiPageAsync(URL, accessToken, requireCommitHeader, requireReviewHeader, responseDecoder)
+                .thenApply(page -> page == null ? null : page.getContent());
+    }
+
+    /**
+     * Calls the relevant API for a page of a paginated response without blocking the calling thread. A call made
+     * while an identical call with the same decoder is in flight shares its page instead of calling the API again
+     *
+     * @param URL                 url of the page to be called
+     * @param accessToken         either the WSO2 PMT access accessToken or giihub.com access accessToken
+     * @param requireCommitHeader should be true for accessing the github commit search API and false otherwise
+     * @param requireReviewHeader should be true for accessing the github review API or false otherwise
+     * @param responseDecoder     decoder of the response body
+     * @param <T>                 type of the decoded response
+     * @return a future of the decoded page or of null if the API responded with an unexpected response code, which
+     * fails with a CodeQualityMatricesException if the call failed or the response could not be decoded
+     */
+    public <T> CompletableFuture<ApiPage<T>> callApiPageAsync(String URL, String accessToken, boolean requireCommitHeader,
+                                                              boolean requireReviewHeader, ResponseDecoder<T> responseDecoder) {
+        return shareCall(requestKeyOf(URL, accessToken, requireCommitHeader, requireReviewHeader, responseDecoder), () -> attemptAsync(new Call<>(URL, accessToken, requireCommitHeader, requireReviewHeader,
+                responseDecoder), 1));
+    }
+
+    /**
+     * Builds the key of a call in the single flight of the pages, in which the query parameters of the url are sorted
+     * so that the urls differing only in the order of their parameters are the same call
+     */
+    private static List<Object> requestKeyOf(String URL, String accessToken, boolean requireCommitHeader,
+                                             boolean requireReviewHeader, ResponseDecoder<?> responseDecoder) {
+        return Arrays.asList(HTTP_GET_METHOD, normalize(URL), accessToken, requireCommitHeader, requireReviewHeader,
+                responseDecoder);
+    }
+
+    private static String normalize(String URL) {
+        int queryStart = URL.indexOf('?');
+        if (queryStart < 0 || URL.indexOf('#') >= 0) {
+            return URL;
+        }
+        String[] parameters = URL.substring(queryStart + 1).split("&");
+        // the sort is stable, so the values of a repeated parameter keep their order
+        Arrays.sort(parameters, Comparator.comparing(parameter -> parameter.split("=", 2)[0]));
+        return URL.substring(0, queryStart + 1) + String.join("&", parameters);
+    }
+
+    /**
+     * Makes the call through the single flight of the pages, whose key holds the decoder so that the page shared for a
+     * key always has the type of the decoder
+     */
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    private <T> CompletableFuture<ApiPage<T>> shareCall(List<Object> requestKey, Supplier<CompletableFuture<ApiPage<T>>> call) {
+        return (CompletableFuture) pageFlights.execute(requestKey, (Supplier) call);
+    }
+
+    /**
+     * @return the number of the calls answered by an identical call which was already in flight
+     */
+    public long getSavedCalls() {
+        return pageFlights.getSavedCalls();
+    }
+
+    private <T> CompletableFuture<ApiPage<T>> attemptAsync(Call<T> call, int attempt) {
+        CompletableFuture<String> futureToken = call.scheduled ? rateLimitScheduler.acquireAsync(call.pool)
+                : CompletableFuture.completedFuture(call.accessToken);
+        return futureToken.thenCompose(token -> {
+            call.startAttempt(attempt);
+            return httpTransport.executeAsync(call.buildRequest(token)).handle((httpResponse, failure) -> {
+                ApiPage<T> page = null;
+                CodeQualityMatricesException exception = null;
+                boolean rateLimited = false;
+                boolean retried = false;
+                try {
+                    if (call.scheduled) {
+                        rateLimitScheduler.release(token, call.pool, httpResponse);
+                    }
+                    if (failure != null) {
+                        retried = call.retryOnFailure(failure);
+                        exception = retried ? null : Futures.unwrap(failure);
+                    } else if (call.rescheduleOnRateLimit(httpResponse)) {
+                        rateLimited = true;
+                    } else if (call.retryOnServerError(httpResponse)) {
+                        retried = true;
+                    } else {
+                        page = call.readResponse(httpResponse);
+                    }
+                } catch (CodeQualityMatricesException e) {
+                    exception = e;
+                } catch (IOException e) {
+                    exception = new CodeQualityMatricesException("IOException occurred when calling the REST API", e);
+                } finally {
+                    // the attempt is finished before the next attempt is started, which may happen on this thread
+                    call.finishAttempt(httpResponse);
+                    if (httpResponse != null) {
+                        EntityUtils.consumeQuietly(httpResponse.getEntity());
+                    }
+                }
+                if (rateLimited) {
+                    return attemptAsync(call, attempt + 1);
+                }
+                if (retried) {
+                    return retryPolicy.retryAfterBackoff(call.failedAttempts, () -> attemptAsync(call, attempt + 1));
+                }
+                return exception == null ? CompletableFuture.completedFuture(page) : Futures.<ApiPage<T>>failed(exception);
+            }).thenCompose(Function.identity());
+        });
+    }
+
+    /**
+     * Names the endpoint of a url for the metrics, leaving out the parts of the url which differ between the calls
+     *
+     * @param url url of the REST API
+     * @return name of the endpoint
+     */
+    static String endpointOf(String url) {
+        if (url.startsWith(ApiUrls.getPmtUrl())) {
+            return "pmt";
+        } else if (url.contains("/search/commits")) {
+            return "search_commits";
+        } else if (url.contains("/search/issues")) {
+            return "search_issues";
+        } else if (REVIEWS_URL_PATTERN.matcher(url).find()) {
+            return "reviews";
+        } else if (COMMIT_URL_PATTERN.matcher(url).find()) {
+            return "commit";
+        }
+        return "other";
+    }
+
+    /**
+     * Finds the url of the next page in a Link header such as {@code <url>; rel="next", <url>; rel="last"}
+     *
+     * @param linkHeader Link header of the response or null if there is none
+     * @return the url of the next page or null if there is no next page
+     */
+    static String findNextPageUrl(Header linkHeader) {
+        if (linkHeader == null) {
+            return null;
+        }
+        for (String link : linkHeader.getValue().split(",")) {
+            String[] parts = link.split(";");
+            String url = parts[0].trim();
+            if (!url.startsWith("<") || !url.endsWith(">")) {
+                continue;
+            }
+            for (int i = 1; i < parts.length; i++) {
+                if (parts[i].trim().replace(" ", "").equals(NEXT_PAGE_RELATION)) {
+                    return url.substring(1, url.length() - 1);
+                }
             }
+        }
+        return null;
+    }
 
-            //as the accept header is needed for accessing commit search API which is still in preview mode
+    /**
+     * A single call of the REST API, made in one or more attempts as the calls rejected due to the rate limit are
+     * retried, holding what is shared by the blocking and the non-blocking calls. The attempts of a call are made one
+     * after another, so the state of the current attempt is kept in the call
+     */
+    private final class Call<T> {
+        private final String url;
+        private final String accessToken;
+        private final String acceptHeader;
+        private final ResponseDecoder<T> responseDecoder;
+        private final boolean scheduled;
+        private final RateLimitScheduler.Pool pool;
+        private final String endpoint;
+        private final String cacheKey;
+        private final ResponseCache.Entry cachedEntry;
+        private final Tracer.Span parentSpan;
+        private int attempt;
+        private int failedAttempts;
+        private long startNanos;
+        private long responseBytes;
+        private Tracer.Span span;
+
+        private Call(String url, String accessToken, boolean requireCommitHeader, boolean requireReviewHeader,
+                     ResponseDecoder<T> responseDecoder) {
+            this.url = url;
+            this.accessToken = accessToken;
+            this.responseDecoder = responseDecoder;
+            this.scheduled = rateLimitScheduler != null && rateLimitScheduler.isScheduled(url);
+            this.pool = RateLimitScheduler.Pool.forRestApiUrl(url);
+            this.endpoint = endpointOf(url);
+            //as the accept header is needed for the review API and the commit search API since they are still in preview mode
+            String header = null;
+            if (requireReviewHeader) {
+                header = GITHUB_REVIEW_API_ACCEPT_HEADER;
+            }
             if (requireCommitHeader) {
-                httpGet.addHeader("Accept", "application/vnd.github.cloak-preview");
+                header = GITHUB_COMMIT_SEARCH_API_ACCEPT_HEADER;
+            }
+            this.acceptHeader = header;
+            this.cacheKey = responseCache == null ? null : ResponseCache.keyOf(url, acceptHeader, accessToken);
+            this.cachedEntry = responseCache == null ? null : responseCache.get(cacheKey);
+            this.parentSpan = Tracer.getDefault().currentSpan();
+        }
+
+        private void startAttempt(int attempt) {
+            this.attempt = attempt;
+            this.startNanos = System.nanoTime();
+            this.responseBytes = 0;
+            this.span = Tracer.getDefault().startClientSpan(HTTP_GET_METHOD + " " + endpoint, parentSpan);
+        }
+
+        private HttpGet buildRequest(String token) {
+            HttpGet httpGet = new HttpGet(url);
+
+            if (token != null) {
+
+                httpGet.addHeader("Authorization", "Bearer " + token);        // passing the accessToken for the API call
+            }
+
+            if (acceptHeader != null) {
+                httpGet.addHeader("Accept", acceptHeader);
             }
 
-            httpResponse = httpclient.execute(httpGet);
+            // validators of the cached response, github answers with 304 Not Modified if it has not changed
+            if (cachedEntry != null && cachedEntry.getETag() != null) {
+                httpGet.addHeader("If-None-Match", cachedEntry.getETag());
+            }
+            if (cachedEntry != null && cachedEntry.getLastModified() != null) {
+                httpGet.addHeader("If-Modified-Since", cachedEntry.getLastModified());
+            }
+            return httpGet;
+        }
+
+        /**
+         * Decodes the response of the current attempt
+         *
+         * @return the decoded page or null if the API responded with an unexpected response code
+         */
+        private ApiPage<T> readResponse(HttpResponse httpResponse) throws CodeQualityMatricesException, IOException {
             int responseCode = httpResponse.getStatusLine().getStatusCode();     // to get the response code
+            // github sends the Link header with a 304 Not Modified response as well
+            String nextPageUrl = findNextPageUrl(httpResponse.getFirstHeader(LINK_HEADER));
+            ApiPage<T> returnedPage;
 
             switch (responseCode) {
                 case 200:
                     //success
-                    bufferedReader = new BufferedReader(new InputStreamReader(httpResponse.getEntity().getContent(), "UTF-8"));
-                    StringBuilder stringBuilder = new StringBuilder();
-                    String line;
-                    while ((line = bufferedReader.readLine()) != null) {
-                        stringBuilder.append(line);
+                    Header eTagHeader = httpResponse.getFirstHeader("ETag");
+                    Header lastModifiedHeader = httpResponse.getFirstHeader("Last-Modified");
+                    if (responseCache != null && (eTagHeader != null || lastModifiedHeader != null)) {
+                        // the body is only held in memory when it has to be stored in the response cache
+                        byte[] responseBody = EntityUtils.toByteArray(httpResponse.getEntity());
+                        responseBytes = responseBody.length;
+                        responseCache.put(cacheKey, new ResponseCache.Entry(eTagHeader == null ? null : eTagHeader.getValue(),
+                                lastModifiedHeader == null ? null : lastModifiedHeader.getValue(), responseBody));
+                        returnedPage = new ApiPage<>(responseDecoder.decode(new ByteArrayInputStream(responseBody)), nextPageUrl);
+                    } else {
+                        try (CountingInputStream inputStream = new CountingInputStream(httpResponse.getEntity().getContent())) {
+                            returnedPage = new ApiPage<>(responseDecoder.decode(inputStream), nextPageUrl);
+                            responseBytes = inputStream.getCount();
+                        }
                     }
-
-                    // creating a JSON object from the response
-                    String JSONText = stringBuilder.toString();
-                    Object json = new JSONTokener(JSONText).nextValue();    // gives an object http://stackoverflow.com/questions/14685777/how-to-check-if-response-from-server-is-jsonaobject-or-jsonarray
-
-                    if (json instanceof JSONObject) {
-                        JSONObject jsonObject = (JSONObject) json;
-                        returnedObject = jsonObject;
-                    } else if (json instanceof JSONArray) {
-                        JSONArray jsonArray = (JSONArray) json;
-                        returnedObject = jsonArray;
+                    if (responseCache != null) {
+                        Metrics.getDefault().recordCacheRequest(RESPONSE_CACHE_NAME, false);
                     }
                     logger.info("JSON response is passed after calling the given REST API");
                     break;
+                case 304:
+                    // the cached response is still valid
+                    if (cachedEntry == null) {
+                        throw new CodeQualityMatricesException("Response code 304 received for " + url + " without a cached response");
+                    }
+                    returnedPage = new ApiPage<>(responseDecoder.decode(new ByteArrayInputStream(cachedEntry.getBody())), nextPageUrl);
+                    Metrics.getDefault().recordCacheRequest(RESPONSE_CACHE_NAME, true);
+                    logger.info("JSON response is passed from the response cache after revalidating with the given REST API");
+                    break;
                 case 401:
                     // to handle Response code 401: Unauthorized
                     throw new CodeQualityMatricesException("Response code 401 : Git hub access token is invalid");
@@ -111,40 +525,76 @@ public class RestApiCaller {
                     // to handle invalid patch
                     throw new CodeQualityMatricesException("Response Code 404: Patch not found, enter a valid patch");
                 default:
-                    returnedObject = null;
+                    returnedPage = null;
             }
+            return returnedPage;
+        }
 
-        } catch (ClientProtocolException e) {
-            throw new CodeQualityMatricesException("ClientProtocolException when calling the REST API", e);
-
-        } catch (IOException e) {
-            throw new CodeQualityMatricesException("IOException occurred when calling the REST API", e);
-        } finally {
-            if (bufferedReader != null) {
-                try {
-                    bufferedReader.close();
-                } catch (IOException e) {
-                    throw new CodeQualityMatricesException("IOException occurred when closing the BufferedReader", e);
-                }
+        /**
+         * Decides whether the current attempt, which was answered with the given response, is scheduled again as the
+         * rate limit of its token was exceeded. A rejection which is not scheduled again fails the call, instead of
+         * being read as invalid credentials or as a response without a page
+         *
+         * @param httpResponse response received for the attempt
+         * @return true if the call should be scheduled again once the budget is available
+         * @throws CodeQualityMatricesException if the call was rejected due to the rate limit and is not scheduled again
+         */
+        private boolean rescheduleOnRateLimit(HttpResponse httpResponse) throws CodeQualityMatricesException {
+            if (!RateLimitScheduler.isRateLimited(httpResponse)) {
+                return false;
             }
-            if (httpResponse != null) {
-                try {
-                    httpResponse.close();
-                } catch (IOException e) {
-                    throw new CodeQualityMatricesException("IOException occurred when closing the HttpResponse", e);
-                }
+            int statusCode = httpResponse.getStatusLine().getStatusCode();
+            if (!scheduled) {
+                throw new CodeQualityMatricesException("Response code " + statusCode + " : Rate limit is exceeded when calling " + url);
             }
-            if (httpclient != null) {
-                try {
-                    httpclient.close();
-                } catch (IOException e) {
-                    throw new CodeQualityMatricesException("IOException occurred when closing the HttpClient", e);
-                }
+            if (attempt >= MAX_RATE_LIMITED_ATTEMPTS) {
+                throw new CodeQualityMatricesException("Response code " + statusCode + " : Rate limit is still exhausted after "
+                        + attempt + " attempts when calling " + url);
             }
+            logger.info("Rate limit exceeded when calling " + url + ", the call is scheduled again");
+            return true;
         }
-        return returnedObject;
-    }
-}
 
+        /**
+         * Decides whether the current attempt, which failed without a response, is retried
+         *
+         * @param failure failure of the attempt
+         * @return true if the call should be attempted again after the backoff
+         */
+        private boolean retryOnFailure(Throwable failure) {
+            if (!RetryPolicy.isTransient(failure) || !retryPolicy.shouldRetry(++failedAttempts)) {
+                return false;
+            }
+            logger.warn("Calling " + url + " failed with " + failure + ", the call is retried");
+            return true;
+        }
 
+        /**
+         * Decides whether the current attempt, which was answered with the given response, is retried due to a
+         * server error
+         *
+         * @param httpResponse response received for the attempt
+         * @return true if the call should be attempted again after the backoff
+         */
+        private boolean retryOnServerError(HttpResponse httpResponse) {
+            int statusCode = httpResponse.getStatusLine().getStatusCode();
+            if (!RetryPolicy.isTransient(statusCode) || !retryPolicy.shouldRetry(++failedAttempts)) {
+                return false;
+            }
+            logger.warn("Response code " + statusCode + " received when calling " + url + ", the call is retried");
+            return true;
+        }
 
+        /**
+         * Records the metrics and the span of the current attempt
+         *
+         * @param httpResponse response received for the attempt or null if no response was received
+         */
+        private void finishAttempt(HttpResponse httpResponse) {
+            int statusCode = httpResponse == null ? 0 : httpResponse.getStatusLine().getStatusCode();
+            Metrics.getDefault().recordApiCall(endpoint, statusCode == 0 ? "error" : String.valueOf(statusCode),
+                    startNanos, responseBytes);
+            span.setHttpAttributes(HTTP_GET_METHOD, url, attempt, statusCode, responseBytes).close();
+        }
+    }
+}
@@ -0,0 +1,157 @@
+/*
+ * Copyright (c) 2017, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ *
+ * WSO2 Inc. licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.wso2.code.quality.matrices;
+
+import java.io.IOException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+/**
+ * Decides whether a failed API call is retried and how long it waits before the next attempt. Calls which failed
+ * without a response, or were answered with a server error, are retried with an exponential backoff with jitter, so
+ * that a transient failure of github or WSO2 PMT does not end the analysis. The attempts are limited by the
+ * cqm.retry.maxAttempts system property, and the backoff starts from cqm.retry.initialBackoffMillis and is capped at
+ * cqm.retry.maxBackoffMillis.
+ *
+ * @since 1.0.0
+ */
+
+public class RetryPolicy {
+
+    private static final String MAX_ATTEMPTS_PROPERTY = "cqm.retry.maxAttempts";
+    private static final String INITIAL_BACKOFF_MILLIS_PROPERTY = "cqm.retry.initialBackoffMillis";
+    private static final String MAX_BACKOFF_MILLIS_PROPERTY = "cqm.retry.maxBackoffMillis";
+    private static final int DEFAULT_MAX_ATTEMPTS = 4;
+    private static final int DEFAULT_INITIAL_BACKOFF_MILLIS = 500;
+    private static final int DEFAULT_MAX_BACKOFF_MILLIS = 30000;
+
+    // the asynchronous attempts wait for their backoff on this timer instead of holding a thread
+    private static final ScheduledExecutorService BACKOFF_TIMER = Executors.newSingleThreadScheduledExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "retry-backoff-timer");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    private final int maxAttempts;
+    private final long initialBackoffMillis;
+    private final long maxBackoffMillis;
+
+    /**
+     * Creates a RetryPolicy from the cqm.retry.maxAttempts, cqm.retry.initialBackoffMillis and
+     * cqm.retry.maxBackoffMillis system properties
+     *
+     * @return the created policy
+     */
+    public static RetryPolicy fromSystemProperties() {
+        return new RetryPolicy(Integer.getInteger(MAX_ATTEMPTS_PROPERTY, DEFAULT_MAX_ATTEMPTS),
+                Integer.getInteger(INITIAL_BACKOFF_MILLIS_PROPERTY, DEFAULT_INITIAL_BACKOFF_MILLIS),
+                Integer.getInteger(MAX_BACKOFF_MILLIS_PROPERTY, DEFAULT_MAX_BACKOFF_MILLIS));
+    }
+
+    /**
+     * Creates a RetryPolicy
+     *
+     * @param maxAttempts          maximum number of attempts of a call, including the first one
+     * @param initialBackoffMillis wait before the second attempt, which is doubled for each of the later attempts
+     * @param maxBackoffMillis     maximum wait before an attempt
+     */
+    public RetryPolicy(int maxAttempts, long initialBackoffMillis, long maxBackoffMillis) {
+        this.maxAttempts = Math.max(1, maxAttempts);
+        this.initialBackoffMillis = Math.max(0, initialBackoffMillis);
+        this.maxBackoffMillis = Math.max(this.initialBackoffMillis, maxBackoffMillis);
+    }
+
+    /**
+     * @param statusCode status code of a response
+     * @return true if the status code tells of a server error which may not happen again
+     */
+    public static boolean isTransient(int statusCode) {
+        return statusCode == 500 || statusCode == 502 || statusCode == 503 || statusCode == 504;
+    }
+
+    /**
+     * @param failure failure of a call
+     * @return true if the call failed without a response, due to an IOException such as a refused connection or a
+     * timeout
+     */
+    public static boolean isTransient(Throwable failure) {
+        for (Throwable cause = failure; cause != null; cause = cause.getCause()) {
+            if (cause instanceof IOException) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * @param attempt number of the attempt which failed, starting from 1
+     * @return true if another attempt should be made
+     */
+    public boolean shouldRetry(int attempt) {
+        return attempt < maxAttempts;
+    }
+
+    /**
+     * Returns the wait before the attempt following the given failed attempt, which is a random duration between half
+     * and the whole of the exponential backoff so that the calls failed together are not retried together
+     *
+     * @param attempt number of the attempt which failed, starting from 1
+     * @return the wait in milliseconds
+     */
+    public long backoffMillis(int attempt) {
+        int doublings = Math.max(0, Math.min(attempt - 1, Long.SIZE - 2));
+        // the backoff is capped before it is doubled, as the doubled value may overflow into any smaller value
+        long backoffMillis = initialBackoffMillis > maxBackoffMillis >> doublings ? maxBackoffMillis
+                : initialBackoffMillis << doublings;
+        return backoffMillis / 2 + ThreadLocalRandom.current().nextLong(backoffMillis / 2 + 1);
+    }
+
+    /**
+     * Blocks the calling thread for the backoff after the given failed attempt
+     *
+     * @param attempt number of the attempt which failed, starting from 1
+     * @throws CodeQualityMatricesException if the thread was interrupted while waiting
+     */
+    public void awaitBackoff(int attempt) throws CodeQualityMatricesException {
+        try {
+            Thread.sleep(backoffMillis(attempt));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new CodeQualityMatricesException("Interrupted while waiting to retry an API call", e);
+        }
+    }
+
+    /**
+     * Makes the next attempt once the backoff after the given failed attempt is over, without blocking the calling thread
+     *
+     * @param attempt     number of the attempt which failed, starting from 1
+     * @param nextAttempt makes the next attempt
+     * @param <T>         type of the result of the attempt
+     * @return a future of the result of the next attempt
+     */
+    public <T> CompletableFuture<T> retryAfterBackoff(int attempt, Supplier<CompletableFuture<T>> nextAttempt) {
+        CompletableFuture<Void> backoff = new CompletableFuture<>();
+        BACKOFF_TIMER.schedule(() -> backoff.complete(null), backoffMillis(attempt), TimeUnit.MILLISECONDS);
+        return backoff.thenCompose(ignored -> nextAttempt.get());
+    }
+}
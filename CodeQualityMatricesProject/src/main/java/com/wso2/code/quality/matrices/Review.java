@@ -0,0 +1,55 @@
+/*
+ * Copyright (c) 2017, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ *
+ * WSO2 Inc. licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.wso2.code.quality.matrices;
+
+/**
+ * A review of a pull request received from the github review API or the github GraphQL API
+ *
+ * @since 1.0.0
+ */
+
+public final class Review {
+
+    private final String state;
+    private final String userLogin;
+
+    /**
+     * Creates a review
+     *
+     * @param state     state of the review such as APPROVED or COMMENTED
+     * @param userLogin login of the user who made the review
+     */
+    public Review(String state, String userLogin) {
+        this.state = state;
+        this.userLogin = userLogin;
+    }
+
+    public String getState() {
+        return state;
+    }
+
+    public String getUserLogin() {
+        return userLogin;
+    }
+
+    @Override
+    public String toString() {
+        return userLogin + " " + state;
+    }
+}
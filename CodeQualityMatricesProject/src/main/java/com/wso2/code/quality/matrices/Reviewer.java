@@ -20,16 +20,21 @@ package com.wso2.code.quality.matrices;
 
 import org.apache.commons.lang3.StringUtils;
 import org.apache.log4j.Logger;
-import org.json.JSONArray;
-import org.json.JSONObject;
 
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.stream.Collectors;
 
 /**
  * This class is used to find the revierwers of the buggy lines of code
+ * The pull requests of the commits and the reviews of the pull requests are recorded to the analysis journal, and
+ * replayed from it instead of calling the github API again when an interrupted analysis is run again
  */
 
 public class Reviewer {
@@ -42,15 +47,39 @@ public class Reviewer {
     private static final Logger logger = Logger.getLogger(Reviewer.class);
 
     //constants for accessing github API
-    private static final String GITHUB_REVIEW_API_STATE_KEY = "state";
     private static final String GITHUB_REVIEW_API_APPROVED_KEY = "APPROVED";
     private static final String GITHUB_REVIEW_API_COMMENTED_KEY = "COMMENTED";
-    private static final String GITHUB_REVIEW_API_LOGIN_KEY = "login";
-    private static final String GITHUB_REVIEW_API_USER_KEY = "user";
-    private static final String GITHUB_REVIEW_API_ITEMS_KEY = "items";
-    private static final String GITHUB_REVIEW_API_REPOSITORY_URL_KEY = "repository_url";
-    private static final String GITHUB_REVIEW_API_NUMBER_KEY = "number";
     private static final String GITHUB_REVIEW_API_CLOSED_STATE_KEY = "closed";
+    // a page of reviews as large as github allows, so that even a busy pull request rarely needs a second page
+    private static final int REVIEWS_PER_PAGE = 100;
+    private static final String PULL_REQUEST_NUMBER_SEPARATOR = "#";
+    private static final String MAX_PULL_REQUESTS_PER_COMMIT_PROPERTY = "cqm.reviewer.maxPullRequestsPerCommit";
+    // the first page of the issue search, which was all that was read of the search results before they were paginated
+    private static final int DEFAULT_MAX_PULL_REQUESTS_PER_COMMIT = 30;
+    private static final String FIND_REVIEWERS_STAGE = "find_reviewers";
+    // names of the spans of the reviewer lookup in the traces
+    private static final String FIND_REVIEWERS_SPAN = "find_reviewers";
+    private static final String PULL_REQUESTS_SPAN = "pull_requests";
+    private static final String REVIEWS_SPAN = "reviews";
+
+    // the closed state of the issue search API is split into closed and merged in the GraphQL API
+    private static final String GITHUB_GRAPHQL_API_CLOSED_STATE_KEY = "CLOSED";
+    private static final String GITHUB_GRAPHQL_API_MERGED_STATE_KEY = "MERGED";
+
+    // the search results of a commit are only read until this many relevant pull requests are found
+    private final int maxPullRequestsPerCommit = Integer.getInteger(MAX_PULL_REQUESTS_PER_COMMIT_PROPERTY,
+            DEFAULT_MAX_PULL_REQUESTS_PER_COMMIT);
+    private AnalysisJournal analysisJournal = AnalysisJournal.disabled();
+
+    /**
+     * Sets the journal to which the pull requests and reviews found are recorded and from which the ones found by an
+     * earlier run are replayed
+     *
+     * @param analysisJournal journal of the analysis
+     */
+    public void setAnalysisJournal(AnalysisJournal analysisJournal) {
+        this.analysisJournal = analysisJournal;
+    }
 
 
     public String getSearchPullReqeustAPI() {
@@ -64,7 +93,7 @@ public class Reviewer {
      */
 
     public void setSearchPullReqeustAPI(String commitHashToBeSearched) {
-        this.searchPullReqeustAPIUrl = "https://api.github.com/search/issues?q=" + commitHashToBeSearched;
+        this.searchPullReqeustAPIUrl = ApiUrls.getGitHubApiUrl() + "/search/issues?q=" + commitHashToBeSearched;
     }
 
     public String getPullRequestReviewAPIUrl() {
@@ -72,7 +101,8 @@ public class Reviewer {
     }
 
     public void setPullRequestReviewAPIUrl(String repoLocation, int pullRequestNumber) {
-        this.pullRequestReviewAPIUrl = "https://api.github.com/repos/" + repoLocation + "/pulls/" + pullRequestNumber + "/reviews";
+        this.pullRequestReviewAPIUrl = ApiUrls.getGitHubApiUrl() + "/repos/" + repoLocation + "/pulls/" + pullRequestNumber
+                + "/reviews?per_page=" + REVIEWS_PER_PAGE;
     }
 
     // map for storing the pull requests numbers against their repository
@@ -83,101 +113,245 @@ public class Reviewer {
      *
      * @param commitHashObtainedForPRReview commit hash Set for finding the pull requests
      * @param githubToken                   github token for accessing github REST API
+     * @throws CodeQualityMatricesException if any of the github REST API calls failed
      */
-    public void findReviewers(Set<String> commitHashObtainedForPRReview, String githubToken, RestApiCaller restApiCaller) {
-
-        commitHashObtainedForPRReview.stream()
-                .forEach(commitHashForFindingReviewers -> {
-                    setSearchPullReqeustAPI(commitHashForFindingReviewers);
-                    // calling the github search API
-                    JSONObject rootJsonObject = null;
-                    try {
-                        rootJsonObject = (JSONObject) restApiCaller.callApi(getSearchPullReqeustAPI(), githubToken, false, true);
-                    } catch (CodeQualityMatricesException e) {
-                        logger.error(e.getMessage(), e.getCause());
-                        System.exit(1);
-                    }
-                    // reading thus saved json file
-                    if (rootJsonObject != null) {
-                        savePrNumberAndRepoName(rootJsonObject);
-                    }
-                });
+    public void findReviewers(Set<String> commitHashObtainedForPRReview, String githubToken, RestApiCaller restApiCaller)
+            throws CodeQualityMatricesException {
+        collectReviewers(commitHashObtainedForPRReview, githubToken, restApiCaller);
+        // printing the list of reviewers of pull requests
+        printReviewUsers();
+        logger.info("Names of approved reviewers and commented reviewers are printed successfully");
+    }
 
-        logger.info("PR numbers which introduce bug lines of code with their relevant repository are saved successfully to mapContainingPRNoAgainstRepoName map");
-        saveReviewersToList(githubToken, restApiCaller);
-        logger.info("List of approved reviwers and comment users of the PRs which introduce bug lines to repository are saved in commentedReviewers and approvedReviewers list ");
+    /**
+     * for finding the reviewers of each commit and storing them in a Set, without printing them
+     *
+     * @param commitHashObtainedForPRReview commit hash Set for finding the pull requests
+     * @param githubToken                   github token for accessing github REST API
+     * @throws CodeQualityMatricesException if any of the github REST API calls failed
+     */
+    public void collectReviewers(Set<String> commitHashObtainedForPRReview, String githubToken, RestApiCaller restApiCaller)
+            throws CodeQualityMatricesException {
+        Futures.join(collectReviewersAsync(commitHashObtainedForPRReview, githubToken, restApiCaller));
+    }
+
+    /**
+     * for finding the reviewers of each commit and storing them in a Set without blocking the calling thread
+     *
+     * @param commitHashObtainedForPRReview commit hash Set for finding the pull requests
+     * @param githubToken                   github token for accessing github REST API
+     * @return a future completed once the reviewers are saved, which fails with a CodeQualityMatricesException if any
+     * of the github REST API calls failed
+     */
+    public CompletableFuture<Void> collectReviewersAsync(Set<String> commitHashObtainedForPRReview, String githubToken,
+                                                         RestApiCaller restApiCaller) {
+        long startNanos = System.nanoTime();
+        Tracer.Span span = Tracer.getDefault().startDetachedSpan(FIND_REVIEWERS_SPAN, Tracer.getDefault().currentSpan());
+        span.setAttribute(Tracer.COMMIT_COUNT_ATTRIBUTE, commitHashObtainedForPRReview.size());
+        PaginatedFetcher paginatedFetcher = new PaginatedFetcher(restApiCaller);
+        Map<String, String> searchUrls = new LinkedHashMap<>();
+        for (String commitHashForFindingReviewers : commitHashObtainedForPRReview) {
+            List<PullRequest> journaledPullRequests = analysisJournal.getPullRequests(commitHashForFindingReviewers);
+            if (journaledPullRequests != null) {
+                journaledPullRequests.forEach(pullRequest -> mapContainingPRNoAgainstRepoName
+                        .computeIfAbsent(pullRequest.getRepositoryFullName(), key -> new HashSet<Integer>())
+                        .add(pullRequest.getNumber()));
+                continue;
+            }
+            setSearchPullReqeustAPI(commitHashForFindingReviewers);
+            searchUrls.put(commitHashForFindingReviewers, getSearchPullReqeustAPI());
+        }
+        // calling the github search API for the commits at once, reading the pages of the results only until
+        // enough of the relevant pull requests are found
+        Tracer.Span pullRequestsSpan = Tracer.getDefault().startDetachedSpan(PULL_REQUESTS_SPAN, span);
+        pullRequestsSpan.setAttribute(Tracer.COMMIT_COUNT_ATTRIBUTE, searchUrls.size());
+        CompletableFuture<Map<String, List<SearchItem>>> futureSearchItems = Futures.endSpan(pullRequestsSpan,
+                Tracer.getDefault().inSpan(pullRequestsSpan, () -> paginatedFetcher.fetchAllAsync(searchUrls, githubToken,
+                        false, true, ResponseDecoders::decodeSearchItems, this::isRelevantPullRequest, maxPullRequestsPerCommit)));
+
+        CompletableFuture<Void> futureReviewers = futureSearchItems.thenCompose(searchItemsOfCommits -> {
+            // reading thus received search items
+            searchItemsOfCommits.forEach((commitHash, searchItems) -> {
+                savePrNumberAndRepoName(searchItems);
+                analysisJournal.recordPullRequests(commitHash, searchItems.stream()
+                        .filter(this::isRelevantPullRequest)
+                        .map(searchItem -> new PullRequest(searchItem.getRepositoryFullName(), searchItem.getNumber(),
+                                searchItem.getState(), Collections.<Review>emptyList()))
+                        .collect(Collectors.toList()));
+            });
+            logger.info("PR numbers which introduce bug lines of code with their relevant repository are saved successfully to mapContainingPRNoAgainstRepoName map");
+            return Tracer.getDefault().inSpan(span, () -> saveReviewersToListAsync(githubToken, restApiCaller));
+        });
+        return Futures.endSpan(span, futureReviewers).thenRun(() -> {
+            Metrics.getDefault().recordStage(FIND_REVIEWERS_STAGE, startNanos);
+            logger.info("List of approved reviwers and comment users of the PRs which introduce bug lines to repository are saved in commentedReviewers and approvedReviewers list ");
+        });
+    }
+
+    /**
+     * for finding the reviewers of each commit with batched github GraphQL API calls and storing them in a Set
+     *
+     * @param commitHashObtainedForPRReview commit hash Set for finding the pull requests
+     * @param githubToken                   github token for accessing github GraphQL API
+     * @param pullRequestResolver           instance of the PullRequestResolver class for finding the pull requests
+     * @throws CodeQualityMatricesException if any of the github GraphQL API calls failed
+     */
+    public void findReviewers(Set<String> commitHashObtainedForPRReview, String githubToken, PullRequestResolver pullRequestResolver)
+            throws CodeQualityMatricesException {
+        collectReviewers(commitHashObtainedForPRReview, githubToken, pullRequestResolver);
         // printing the list of reviewers of pull requests
         printReviewUsers();
         logger.info("Names of approved reviewers and commented reviewers are printed successfully");
     }
 
+    /**
+     * for finding the reviewers of each commit with batched github GraphQL API calls and storing them in a Set,
+     * without printing them
+     *
+     * @param commitHashObtainedForPRReview commit hash Set for finding the pull requests
+     * @param githubToken                   github token for accessing github GraphQL API
+     * @param pullRequestResolver           instance of the PullRequestResolver class for finding the pull requests
+     * @throws CodeQualityMatricesException if any of the github GraphQL API calls failed
+     */
+    public void collectReviewers(Set<String> commitHashObtainedForPRReview, String githubToken, PullRequestResolver pullRequestResolver)
+            throws CodeQualityMatricesException {
+        Futures.join(collectReviewersAsync(commitHashObtainedForPRReview, githubToken, pullRequestResolver));
+    }
+
+    /**
+     * for finding the reviewers of each commit with batched github GraphQL API calls and storing them in a Set,
+     * without blocking the calling thread
+     *
+     * @param commitHashObtainedForPRReview commit hash Set for finding the pull requests
+     * @param githubToken                   github token for accessing github GraphQL API
+     * @param pullRequestResolver           instance of the PullRequestResolver class for finding the pull requests
+     * @return a future completed once the reviewers are saved, which fails with a CodeQualityMatricesException if any
+     * of the github GraphQL API calls failed
+     */
+    public CompletableFuture<Void> collectReviewersAsync(Set<String> commitHashObtainedForPRReview, String githubToken,
+                                                         PullRequestResolver pullRequestResolver) {
+        long startNanos = System.nanoTime();
+        Tracer.Span span = Tracer.getDefault().startDetachedSpan(FIND_REVIEWERS_SPAN, Tracer.getDefault().currentSpan());
+        span.setAttribute(Tracer.COMMIT_COUNT_ATTRIBUTE, commitHashObtainedForPRReview.size());
+        // the reviews are received together with the pull requests, so no further calls are needed
+        CompletableFuture<Void> futureReviewers = Tracer.getDefault().inSpan(span, () -> pullRequestResolver
+                .findPullRequestsAsync(commitHashObtainedForPRReview, githubToken))
+                .thenAccept(pullRequestsOfCommits -> pullRequestsOfCommits.values().forEach(this::savePullRequestReviews));
+        return Futures.endSpan(span, futureReviewers).thenRun(() -> {
+            Metrics.getDefault().recordStage(FIND_REVIEWERS_STAGE, startNanos);
+            logger.info("List of approved reviwers and comment users of the PRs which introduce bug lines to repository are saved in commentedReviewers and approvedReviewers list ");
+        });
+    }
+
+    public Set<String> getApprovedReviewers() {
+        return approvedReviewers;
+    }
+
+    public Set<String> getCommentedReviewers() {
+        return commentedReviewers;
+    }
+
     /**
      * reads the search API output and save the pull request number with the repo name in a map
      *
-     * @param rootJsonObject JSONObject received from github search API
-     */
-    public void savePrNumberAndRepoName(JSONObject rootJsonObject) {
-        JSONArray itemsJsonArray = (JSONArray) rootJsonObject.get(GITHUB_REVIEW_API_ITEMS_KEY);
-
-        Pmt.arrayToStream(itemsJsonArray)
-                .map(JSONObject.class::cast)
-                .filter(o -> o.get(GITHUB_REVIEW_API_STATE_KEY).equals(GITHUB_REVIEW_API_CLOSED_STATE_KEY))
-                .forEach(prJsonObject -> {
-                    String repositoryUrl = (String) prJsonObject.get(GITHUB_REVIEW_API_REPOSITORY_URL_KEY);
-                    String repositoryLocation = StringUtils.substringAfter(repositoryUrl, "https://api.github.com/repos/");
-                    if (repositoryLocation.contains("wso2/")) {
-                        // to filter out only the repositories belongs to wso2
-                        int pullRequetNumber = (int) prJsonObject.get(GITHUB_REVIEW_API_NUMBER_KEY);
-                        mapContainingPRNoAgainstRepoName.putIfAbsent(repositoryLocation, new HashSet<Integer>()); // put the repo name key only if it does not exists in the map
-                        mapContainingPRNoAgainstRepoName.get(repositoryLocation).add(pullRequetNumber);  // since SET is there we do not need to check for availability of the key in the map
-                    }
+     * @param searchItems items received from github search API
+     */
+    public void savePrNumberAndRepoName(List<SearchItem> searchItems) {
+        searchItems.stream()
+                .filter(this::isRelevantPullRequest)
+                .forEach(searchItem -> {
+                    String repositoryLocation = searchItem.getRepositoryFullName();
+                    int pullRequetNumber = searchItem.getNumber();
+                    mapContainingPRNoAgainstRepoName.putIfAbsent(repositoryLocation, new HashSet<Integer>()); // put the repo name key only if it does not exists in the map
+                    mapContainingPRNoAgainstRepoName.get(repositoryLocation).add(pullRequetNumber);  // since SET is there we do not need to check for availability of the key in the map
                 });
     }
 
+    /**
+     * Checks whether a search item is a closed pull request of a repository belongs to wso2
+     */
+    private boolean isRelevantPullRequest(SearchItem searchItem) {
+        return GITHUB_REVIEW_API_CLOSED_STATE_KEY.equals(searchItem.getState())
+                && StringUtils.contains(searchItem.getRepositoryFullName(), "wso2/");
+    }
+
+    /**
+     * Saves the reviewers of the closed pull requests of wso2 received from the github GraphQL API, reading the
+     * reviews of a pull request only once even if it contains several of the commits
+     *
+     * @param pullRequests pull requests received from the github GraphQL API together with their reviews
+     */
+    public void savePullRequestReviews(List<PullRequest> pullRequests) {
+        pullRequests.stream()
+                .filter(pullRequest -> GITHUB_GRAPHQL_API_CLOSED_STATE_KEY.equals(pullRequest.getState())
+                        || GITHUB_GRAPHQL_API_MERGED_STATE_KEY.equals(pullRequest.getState()))
+                .filter(pullRequest -> StringUtils.contains(pullRequest.getRepositoryFullName(), "wso2/"))
+                .filter(pullRequest -> mapContainingPRNoAgainstRepoName
+                        .computeIfAbsent(pullRequest.getRepositoryFullName(), key -> new HashSet<Integer>())
+                        .add(pullRequest.getNumber()))
+                .forEach(pullRequest -> readTheReviewOutJSON(pullRequest.getReviews(), pullRequest.getRepositoryFullName(),
+                        pullRequest.getNumber()));
+    }
+
     /**
      * Calling the github review API for a selected pull request on its relevant product
      *
      * @param githubToken github token for accessing github REST API
+     * @throws CodeQualityMatricesException if any of the github REST API calls failed
+     */
+    public void saveReviewersToList(String githubToken, RestApiCaller restApiCaller) throws CodeQualityMatricesException {
+        Futures.join(saveReviewersToListAsync(githubToken, restApiCaller));
+    }
+
+    /**
+     * Calling the github review API for the selected pull requests without blocking the calling thread
+     *
+     * @param githubToken github token for accessing github REST API
+     * @return a future completed once the reviewers are saved, which fails with a CodeQualityMatricesException if any
+     * of the github REST API calls failed
      */
-    public void saveReviewersToList(String githubToken, RestApiCaller restApiCaller) {
-
-        for (Map.Entry m : mapContainingPRNoAgainstRepoName.entrySet()) {
-            String productLocation = (String) m.getKey();
-            Set<Integer> prNumbers = (Set<Integer>) m.getValue();
-            prNumbers.stream()
-                    .forEach(prNumber -> {
-                        setPullRequestReviewAPIUrl(productLocation, prNumber);
-                        JSONArray reviewJsonArray = null;
-                        try {
-                            reviewJsonArray = (JSONArray) restApiCaller.callApi(getPullRequestReviewAPIUrl(), githubToken, false, true);
-                        } catch (CodeQualityMatricesException e) {
-                            logger.error(e.getMessage(), e.getCause());
-                            System.exit(1);
-                        }
-                        // for reading the output JSON from above and adding the reviewers to the Set
-                        if (reviewJsonArray != null) {
-                            readTheReviewOutJSON(reviewJsonArray, productLocation, prNumber);
-                        }
-
-                    });
+    public CompletableFuture<Void> saveReviewersToListAsync(String githubToken, RestApiCaller restApiCaller) {
+
+        Map<String, String> reviewUrls = new LinkedHashMap<>();
+        for (Map.Entry<String, Set<Integer>> m : mapContainingPRNoAgainstRepoName.entrySet()) {
+            String productLocation = m.getKey();
+            Set<Integer> prNumbers = m.getValue();
+            for (int prNumber : prNumbers) {
+                List<Review> journaledReviews = analysisJournal.getReviews(productLocation, prNumber);
+                if (journaledReviews != null) {
+                    readTheReviewOutJSON(journaledReviews, productLocation, prNumber);
+                    continue;
+                }
+                setPullRequestReviewAPIUrl(productLocation, prNumber);
+                reviewUrls.put(productLocation + PULL_REQUEST_NUMBER_SEPARATOR + prNumber, getPullRequestReviewAPIUrl());
+            }
         }
+        // the reviews of the pull requests are read at once, following all the pages of the reviews of a busy pull request
+        Tracer.Span span = Tracer.getDefault().startDetachedSpan(REVIEWS_SPAN, Tracer.getDefault().currentSpan());
+        span.setAttribute(Tracer.PULL_REQUEST_COUNT_ATTRIBUTE, reviewUrls.size());
+        CompletableFuture<Map<String, List<Review>>> futureReviews = Futures.endSpan(span, Tracer.getDefault().inSpan(span,
+                () -> new PaginatedFetcher(restApiCaller).fetchAllAsync(reviewUrls, githubToken, false, true,
+                        ResponseDecoders::decodeReviews, review -> true, Integer.MAX_VALUE)));
+        // for reading the output JSON from above and adding the reviewers to the Set
+        return futureReviews.thenAccept(reviewsOfPullRequests -> reviewsOfPullRequests.forEach((pullRequest, reviews) -> {
+            String productLocation = StringUtils.substringBefore(pullRequest, PULL_REQUEST_NUMBER_SEPARATOR);
+            int prNumber = Integer.parseInt(StringUtils.substringAfter(pullRequest, PULL_REQUEST_NUMBER_SEPARATOR));
+            analysisJournal.recordReviews(productLocation, prNumber, reviews);
+            readTheReviewOutJSON(reviews, productLocation, prNumber);
+        }));
     }
 
     /**
      * Reading the output received from the review API and saving the relevant reviewers and commented users to relevant Sets
      *
-     * @param reviewJsonArray JSON response from the github Review API
+     * @param reviews         reviews received from the github Review API
      * @param productLocation Product Location for printing the error message when there are no reviewers and a commented users
      * @param prNumber        relevant PR number for finding the reviewers and commenters
      */
-    public void readTheReviewOutJSON(JSONArray reviewJsonArray, String productLocation, int prNumber) {
+    public void readTheReviewOutJSON(List<Review> reviews, String productLocation, int prNumber) {
 
-        if (reviewJsonArray.length() != 0) {
-            Pmt.arrayToStream(reviewJsonArray)
-                    .map(JSONObject.class::cast)
-                    .forEach(reviewJsonObject->{
-                        addRelevantUsersToList(reviewJsonObject);
-                    });
+        if (!reviews.isEmpty()) {
+            reviews.forEach(this::addRelevantUsersToList);
 
 //            for (Object object : reviewJsonArray) {
 //                if (object instanceof JSONObject) {
@@ -195,19 +369,17 @@ public class Reviewer {
     /**
      * This method is used for saving the relevant reviewers and commented users to relevant Sets
      *
-     * @param reviewJsonObject jsonObject received from readTheReviewOutJSON method
+     * @param review review received from readTheReviewOutJSON method
      */
 
-    public void addRelevantUsersToList(JSONObject reviewJsonObject) {
-        if ((reviewJsonObject.get(GITHUB_REVIEW_API_STATE_KEY)).equals(GITHUB_REVIEW_API_APPROVED_KEY)) {
+    public void addRelevantUsersToList(Review review) {
+        if (GITHUB_REVIEW_API_APPROVED_KEY.equals(review.getState())) {
 
-            JSONObject userJsonObject = (JSONObject) reviewJsonObject.get(GITHUB_REVIEW_API_USER_KEY);
-            String approvedReviwer = (String) userJsonObject.get(GITHUB_REVIEW_API_LOGIN_KEY);
+            String approvedReviwer = review.getUserLogin();
             approvedReviewers.add(approvedReviwer);         // adding the approved user to the Set
 
-        } else if ((reviewJsonObject.get(GITHUB_REVIEW_API_STATE_KEY)).equals(GITHUB_REVIEW_API_COMMENTED_KEY)) {
-            JSONObject userJsonObject = (JSONObject) reviewJsonObject.get(GITHUB_REVIEW_API_USER_KEY);
-            String commentedReviwer = (String) userJsonObject.get(GITHUB_REVIEW_API_LOGIN_KEY);
+        } else if (GITHUB_REVIEW_API_COMMENTED_KEY.equals(review.getState())) {
+            String commentedReviwer = review.getUserLogin();
             commentedReviewers.add(commentedReviwer);        // adding the commented user to the Set
         }
     }
@@ -23,14 +23,15 @@ import org.eclipse.egit.github.core.CommitFile;
 import org.eclipse.egit.github.core.IRepositoryIdProvider;
 import org.eclipse.egit.github.core.RepositoryCommit;
 import org.eclipse.egit.github.core.client.GitHubClient;
+import org.eclipse.egit.github.core.client.RequestException;
 import org.eclipse.egit.github.core.service.CommitService;
 import org.eclipse.egit.github.core.service.RepositoryService;
 
 import java.io.IOException;
-import java.util.ArrayList;
-import java.util.HashMap;
+import java.net.URI;
 import java.util.List;
-import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.stream.Collectors;
 
 /**
  * This class is used for communicating with the github REST API from egit github API.
@@ -42,48 +43,84 @@ public class SdkGitHubClient {
     protected GitHubClient gitHubClient = null;
     protected CommitService commitService = null;
     protected RepositoryService repositoryService = null;
-    protected ArrayList<String> fileNames = new ArrayList<String>();
-    protected ArrayList<String> patchString = new ArrayList<String>();
+    private final String githubToken;
 
     private static final Logger logger = Logger.getLogger(SdkGitHubClient.class);
+    private static final String COMMIT_ENDPOINT = "commit";
+    private static final String HTTP_GET_METHOD = "GET";
 
     SdkGitHubClient(String githubToken) {
-        gitHubClient = new GitHubClient();
+        // a server other than api.github.com is addressed as a github enterprise server, under the /api/v3 prefix
+        URI gitHubApiUri = URI.create(ApiUrls.getGitHubApiUrl());
+        gitHubClient = new GitHubClient(gitHubApiUri.getHost(), gitHubApiUri.getPort(), gitHubApiUri.getScheme());
         gitHubClient.setOAuth2Token(githubToken);
+        this.githubToken = githubToken;
         commitService = new CommitService(gitHubClient);
         repositoryService = new RepositoryService(gitHubClient);
     }
 
     /**
-     * This method is used for saving the files changed and their relevant changed line ranges from
+     * This method is used for reading the files changed and their relevant changed line ranges from
      * the given commit in the given repository
      *
      * @param repositoryName The repository name that contain the given commit hash
      * @param commitHash     The querying commit hash
-     * @return a map containg arraylist of file changed and their relevant patch
+     * @return a list containing the changes made to each of the files, in the order given by github
      */
-    public Map<String, ArrayList<String>> getFilesChanged(String repositoryName, String commitHash) throws CodeQualityMatricesException {
-        Map<String, ArrayList<String>> mapWithFileNamesAndPatches = new HashMap<>();
+    public List<FileChange> getFilesChanged(String repositoryName, String commitHash) throws CodeQualityMatricesException {
+        long startNanos = System.nanoTime();
+        int statusCode = 0;
+        Tracer.Span span = Tracer.getDefault().startClientSpan(HTTP_GET_METHOD + " " + COMMIT_ENDPOINT);
         try {
             IRepositoryIdProvider iRepositoryIdProvider = () -> repositoryName;
             RepositoryCommit repositoryCommit = commitService.getCommit(iRepositoryIdProvider, commitHash);
             List<CommitFile> filesChanged = repositoryCommit.getFiles();
-            ArrayList<String> tempFileNames=new ArrayList<>();
-            ArrayList<String> tempPatchString= new ArrayList<>();
 
-            // this can be run parallely as patchString of a file will always be in the same index as the file
-            filesChanged.parallelStream()
-                    .forEach(commitFile -> {
-                        tempFileNames.add(commitFile.getFilename());
-                        tempPatchString.add(commitFile.getPatch());
-                    });
-            logger.info("for" + commitHash + " on the " + repositoryName + " repository, files changed and their relevant changed line ranges added to the arraylists successfully");
-            mapWithFileNamesAndPatches.put("fileNames", tempFileNames);
-            mapWithFileNamesAndPatches.put("patchString", tempPatchString);
-            logger.info("map with the modified file names with their relevant modified line ranges are saved successfully");
+            // each file is kept together with the line ranges read from its patch
+            List<FileChange> fileChanges = filesChanged.stream()
+                    .map(commitFile -> FileChange.fromPatch(commitFile.getFilename(), commitFile.getPatch()))
+                    .collect(Collectors.toList());
+            statusCode = 200;
+            logger.info("for" + commitHash + " on the " + repositoryName + " repository, files changed and their relevant changed line ranges are read successfully");
+            return fileChanges;
+        } catch (RequestException e) {
+            statusCode = e.getStatus();
+            throw new CodeQualityMatricesException("IO Exception occurred when getting the commit with the given SHA form the given repository ", e);
         } catch (IOException e) {
             throw new CodeQualityMatricesException("IO Exception occurred when getting the commit with the given SHA form the given repository ", e);
+        } finally {
+            // the SDK reads the response itself, so the bytes of the response are not known
+            Metrics.getDefault().recordApiCall(COMMIT_ENDPOINT, statusCode == 0 ? "error" : String.valueOf(statusCode), startNanos, 0);
+            if (span.isRecording()) {
+                span.setAttribute(Tracer.REPOSITORY_ATTRIBUTE, repositoryName).setAttribute(Tracer.COMMIT_ATTRIBUTE, commitHash)
+                        .setHttpAttributes(HTTP_GET_METHOD, ApiUrls.getGitHubApiUrl() + "/repos/" + repositoryName
+                                + "/commits/" + commitHash, 1, statusCode, -1);
+            }
+            span.close();
         }
-        return mapWithFileNamesAndPatches;
+    }
+
+    /**
+     * Reads the files changed by the given commit without blocking the calling thread. As the SDK only makes blocking
+     * calls, the github commit API is called through the given RestApiCaller instead, which also schedules the call
+     * within the rate limit when it is given a scheduler
+     *
+     * @param repositoryName The repository name that contain the given commit hash
+     * @param commitHash     The querying commit hash
+     * @param restApiCaller  Instance of the RestApiCaller class for accessing the REST APIs
+     * @return a future of a list containing the changes made to each of the files, in the order given by github, which
+     * fails with a CodeQualityMatricesException if the commit could not be read
+     */
+    public CompletableFuture<List<FileChange>> getFilesChangedAsync(String repositoryName, String commitHash, RestApiCaller restApiCaller) {
+        String url = ApiUrls.getGitHubApiUrl() + "/repos/" + repositoryName + "/commits/" + commitHash;
+        return restApiCaller.callApiAsync(url, githubToken, false, false, ResponseDecoders::decodeFileChanges)
+                .thenCompose(fileChanges -> {
+                    if (fileChanges == null) {
+                        return Futures.failed(new CodeQualityMatricesException("Files changed by commit " + commitHash
+                                + " on the " + repositoryName + " repository could not be read"));
+                    }
+                    logger.info("for" + commitHash + " on the " + repositoryName + " repository, files changed and their relevant changed line ranges are read successfully");
+                    return CompletableFuture.completedFuture(fileChanges);
+                });
     }
 }
@@ -0,0 +1,62 @@
+/*
+ * Copyright (c) 2017, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ *
+ * WSO2 Inc. licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.wso2.code.quality.matrices;
+
+/**
+ * An item of a github search API response, which is either a commit or an issue depending on the searched API
+ *
+ * @since 1.0.0
+ */
+
+public final class SearchItem {
+
+    private final String repositoryFullName;
+    private final int number;
+    private final String state;
+
+    /**
+     * Creates an item
+     *
+     * @param repositoryFullName repository of the item in the owner/name form
+     * @param number             number of the issue or pull request, 0 for a commit
+     * @param state              state of the issue or pull request, null for a commit
+     */
+    public SearchItem(String repositoryFullName, int number, String state) {
+        this.repositoryFullName = repositoryFullName;
+        this.number = number;
+        this.state = state;
+    }
+
+    public String getRepositoryFullName() {
+        return repositoryFullName;
+    }
+
+    public int getNumber() {
+        return number;
+    }
+
+    public String getState() {
+        return state;
+    }
+
+    @Override
+    public String toString() {
+        return repositoryFullName + "#" + number + " " + state;
+    }
+}
@@ -0,0 +1,74 @@
+/*
+ * Copyright (c) 2017, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ *
+ * WSO2 Inc. licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+
+package com.wso2.code.quality.matrices;
+
+import org.apache.log4j.Logger;
+
+import java.io.IOException;
+import java.util.Arrays;
+
+/**
+ * This is the class having the main method for running the analysis as a long running local service
+ * PMT Access token and github access tokens separated by commas should be passed in order as command line arguments
+ * when running the application. The reviewers of a patch are then read with GET /patches/{id}/reviewers on the port
+ * given in the cqm.server.port system property, and the metrics of the service with GET /metrics in the Prometheus text
+ * format. The metrics are also exported through JMX and to the file given in the cqm.metrics.file system property, and
+ * the spans of each analysis are written to the file given in the cqm.trace.file system property.
+ */
+public class ServerMainClass {
+    private final static Logger logger = Logger.getLogger(ServerMainClass.class);
+
+    public static void main(String[] args) {
+        logger.info(" Server main method got executed");
+        if (args.length != 2) {
+            logger.error("at least one of the command line arguments are null.");
+            System.exit(4);
+        }
+        String pmtToken = args[0];
+        String[] gitHubTokens = args[1].split(",");
+
+        // the metrics and trace files are written for the last time when the JVM exits, also after a failed analysis
+        MetricsExporter metricsExporter = MetricsExporter.fromSystemProperties();
+        Runtime.getRuntime().addShutdownHook(new Thread(metricsExporter::close));
+        Runtime.getRuntime().addShutdownHook(new Thread(Tracer.getDefault()::close));
+        RateLimitScheduler rateLimitScheduler = new RateLimitScheduler(Arrays.asList(gitHubTokens));
+        ResponseCache responseCache = null;
+        try {
+            responseCache = ResponseCache.fromSystemProperties();
+        } catch (CodeQualityMatricesException e) {
+            logger.warn("Responses will not be cached as the response cache could not be created", e);
+        }
+        RestApiCaller restApiCaller = new RestApiCaller(HttpTransport.getDefault(), rateLimitScheduler, responseCache);
+        GraphQlApiCaller graphQlApiCaller = new GraphQlApiCaller(HttpTransport.getDefault(), rateLimitScheduler,
+                ApiUrls.getGitHubGraphQlApiUrl());
+        ChangesFinder changesFinder = new ChangesFinder(graphQlApiCaller);
+        PatchBatchAnalyser patchBatchAnalyser = new PatchBatchAnalyser(restApiCaller, changesFinder,
+                new PullRequestResolver(graphQlApiCaller), pmtToken, gitHubTokens[0]);
+
+        try {
+            AnalysisServer analysisServer = AnalysisServer.fromSystemProperties(patchBatchAnalyser);
+            Runtime.getRuntime().addShutdownHook(new Thread(analysisServer::close));
+            analysisServer.start();
+        } catch (IOException e) {
+            logger.error("Analysis server could not be started", e);
+            System.exit(1);
+        }
+    }
+}
@@ -0,0 +1,158 @@
+/*
+ * Copyright (c) 2017, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ *
+ * WSO2 Inc. licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.wso2.code.quality.matrices;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Function;
+import java.util.function.Supplier;
+
+/**
+ * Shares the result of a call among all the identical calls made while it is in flight. A call is identified by a
+ * key, which should hold everything the result depends on, and the calls made with the key of a call in flight wait
+ * for its result instead of calling again, sharing its decoded result or its failure. Once the call is completed its
+ * key is forgotten, so a later call is made again, leaving the reuse of completed results to the caches.
+ * <p>
+ * The number of the calls saved is counted in the cqm_single_flight_saved_calls_total counter, labelled with the
+ * name of the single flight, which is shared by all the single flights of that name, and by each single flight for
+ * its own calls.
+ *
+ * @param <K> type of the keys of the calls
+ * @param <V> type of the results of the calls
+ * @since 1.0.0
+ */
+
+public class SingleFlight<K, V> {
+
+    public static final String SAVED_CALLS = "cqm_single_flight_saved_calls_total";
+
+    private final ConcurrentMap<K, CompletableFuture<V>> callsInFlight = new ConcurrentHashMap<>();
+    private final Metrics.Counter savedCalls;
+    private final LongAdder ownSavedCalls = new LongAdder();
+
+    /**
+     * Creates a SingleFlight counting the calls it saves in the shared metrics registry
+     *
+     * @param name name of the calls, used as the label of the counter of the saved calls
+     */
+    public SingleFlight(String name) {
+        this.savedCalls = Metrics.getDefault().counter(SAVED_CALLS,
+                "Calls answered by an identical call which was already in flight", "call", name);
+    }
+
+    /**
+     * Makes the given call, unless an identical call is already in flight whose result is then shared
+     *
+     * @param key  key identifying the call
+     * @param call makes the call
+     * @return a future of the result of the call
+     */
+    public CompletableFuture<V> execute(K key, Supplier<CompletableFuture<V>> call) {
+        CompletableFuture<V> ownFuture = new CompletableFuture<>();
+        CompletableFuture<V> futureInFlight = callsInFlight.putIfAbsent(key, ownFuture);
+        if (futureInFlight != null) {
+            countSavedCall();
+            return copyOf(futureInFlight);
+        }
+        complete(key, ownFuture, start(call));
+        return copyOf(ownFuture);
+    }
+
+    /**
+     * Makes a single call for all the given keys which are not already in flight, and shares the results of the keys
+     * in flight with the calls which made them
+     *
+     * @param keys keys identifying the calls
+     * @param call makes the call for the keys which are not in flight, giving the results against their keys
+     * @return futures of the results against the keys, which give null for the keys not in the results of the call
+     */
+    public Map<K, CompletableFuture<V>> executeAll(Collection<K> keys, Function<List<K>, CompletableFuture<Map<K, V>>> call) {
+        Map<K, CompletableFuture<V>> futures = new LinkedHashMap<>();
+        Map<K, CompletableFuture<V>> ownFutures = new LinkedHashMap<>();
+        for (K key : new LinkedHashSet<>(keys)) {
+            CompletableFuture<V> ownFuture = new CompletableFuture<>();
+            CompletableFuture<V> futureInFlight = callsInFlight.putIfAbsent(key, ownFuture);
+            if (futureInFlight != null) {
+                countSavedCall();
+                futures.put(key, copyOf(futureInFlight));
+            } else {
+                ownFutures.put(key, ownFuture);
+                futures.put(key, copyOf(ownFuture));
+            }
+        }
+        if (!ownFutures.isEmpty()) {
+            CompletableFuture<Map<K, V>> futureResults = start(() -> call.apply(new ArrayList<>(ownFutures.keySet())));
+            ownFutures.forEach((key, ownFuture) -> complete(key, ownFuture,
+                    futureResults.thenApply(results -> results.get(key))));
+        }
+        return futures;
+    }
+
+    /**
+     * @return the number of the calls made through this single flight which were answered by an identical call which
+     * was already in flight
+     */
+    public long getSavedCalls() {
+        return ownSavedCalls.sum();
+    }
+
+    private void countSavedCall() {
+        savedCalls.increment();
+        ownSavedCalls.increment();
+    }
+
+    private static <T> CompletableFuture<T> start(Supplier<CompletableFuture<T>> call) {
+        try {
+            return call.get();
+        } catch (RuntimeException e) {
+            return Futures.failed(e);
+        }
+    }
+
+    /**
+     * Completes the future shared for a key as the call is completed, forgetting the key first so that the calls
+     * made from then on do not wait for a result which is already given
+     */
+    private void complete(K key, CompletableFuture<V> ownFuture, CompletableFuture<V> futureResult) {
+        futureResult.whenComplete((result, e) -> {
+            callsInFlight.remove(key, ownFuture);
+            if (e != null) {
+                ownFuture.completeExceptionally(e);
+            } else {
+                ownFuture.complete(result);
+            }
+        });
+    }
+
+    /**
+     * Gives each caller a future of its own, so that a caller completing or cancelling its future does not affect the
+     * others sharing the call
+     */
+    private static <T> CompletableFuture<T> copyOf(CompletableFuture<T> future) {
+        return future.thenApply(Function.identity());
+    }
+}
@@ -0,0 +1,591 @@
+/*
+ * Copyright (c) 2017, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ *
+ * WSO2 Inc. licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.wso2.code.quality.matrices;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonGenerator;
+import org.apache.log4j.Logger;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.function.Supplier;
+
+/**
+ * Traces the analyses as trees of spans, patch, commit, repository, file, blame and parent blame, pull requests and
+ * reviews, down to the API calls, and writes the ended spans to a local file in the OpenTelemetry protocol JSON
+ * format, one export request per line, so that the file can be loaded into any OpenTelemetry compatible viewer.
+ * <p>
+ * The span started last on a thread is the parent of the spans started next on the same thread, and a task handed
+ * over to another thread takes the current span with it when it is wrapped with {@link #wrap(Callable)}. The stages of
+ * an asynchronous analysis, which hop between threads, trace themselves with detached spans which never become the
+ * current span, and run the code starting their API calls with {@link #inSpan(Span, Supplier)}. A span is
+ * only recorded if it belongs to a sampled root span, and a whole trace is either sampled or not. When tracing is
+ * disabled every span is a shared no-op span, so the traced code does not allocate or synchronize anything.
+ *
+ * @since 1.0.0
+ */
+
+public final class Tracer implements Closeable {
+
+    // names of the attributes of the spans, following the OpenTelemetry semantic conventions for the HTTP calls
+    public static final String PATCH_ID_ATTRIBUTE = "cqm.patch.id";
+    public static final String PATCH_COUNT_ATTRIBUTE = "cqm.patch.count";
+    public static final String COMMIT_ATTRIBUTE = "cqm.commit.sha";
+    public static final String COMMIT_COUNT_ATTRIBUTE = "cqm.commit.count";
+    public static final String REPOSITORY_ATTRIBUTE = "cqm.repository";
+    public static final String REPOSITORY_COUNT_ATTRIBUTE = "cqm.repository.count";
+    public static final String FILE_PATH_ATTRIBUTE = "cqm.file.path";
+    public static final String FILE_COUNT_ATTRIBUTE = "cqm.file.count";
+    public static final String BLAME_COUNT_ATTRIBUTE = "cqm.blame.count";
+    public static final String PULL_REQUEST_COUNT_ATTRIBUTE = "cqm.pull_request.count";
+    public static final String HTTP_METHOD_ATTRIBUTE = "http.request.method";
+    public static final String HTTP_STATUS_CODE_ATTRIBUTE = "http.response.status_code";
+    public static final String HTTP_REQUEST_BODY_SIZE_ATTRIBUTE = "http.request.body.size";
+    public static final String HTTP_RESPONSE_BODY_SIZE_ATTRIBUTE = "http.response.body.size";
+    public static final String HTTP_RETRY_COUNT_ATTRIBUTE = "http.request.resend_count";
+    public static final String URL_ATTRIBUTE = "url.full";
+
+    private static final Logger logger = Logger.getLogger(Tracer.class);
+
+    private static final String FILE_PROPERTY = "cqm.trace.file";
+    private static final String SAMPLE_RATIO_PROPERTY = "cqm.trace.sampleRatio";
+    private static final double DEFAULT_SAMPLE_RATIO = 1.0;
+    private static final String SERVICE_NAME = "code-quality-matrices";
+    private static final String SCOPE_NAME = "com.wso2.code.quality.matrices";
+    // ended spans are written at the latest when this many of them are pending, even if their traces are still running
+    private static final int MAX_PENDING_SPANS = 1000;
+    private static final JsonFactory JSON_FACTORY = new JsonFactory().disable(JsonGenerator.Feature.AUTO_CLOSE_TARGET);
+
+    private static volatile Tracer defaultTracer;
+
+    private final Writer writer;
+    private final double sampleRatio;
+    private final ThreadLocal<Span> currentSpan = new ThreadLocal<>();
+    private final Set<Span> openSpans = ConcurrentHashMap.newKeySet();
+    private final List<Span> pendingSpans = new ArrayList<>();
+    // the wall clock time of the spans is measured from a single reading of the clock, so that they never overlap wrongly
+    private final long baseEpochNanos = System.currentTimeMillis() * 1000000L;
+    private final long baseNanos = System.nanoTime();
+    private boolean closed;
+
+    /**
+     * Returns the tracer shared across the application, created on the first use with the file given in the
+     * cqm.trace.file system property and the ratio of the traces recorded given in the cqm.trace.sampleRatio system
+     * property. Tracing is disabled if no file is given
+     *
+     * @return the tracer shared across the application
+     */
+    public static Tracer getDefault() {
+        Tracer tracer = defaultTracer;
+        if (tracer == null) {
+            synchronized (Tracer.class) {
+                tracer = defaultTracer;
+                if (tracer == null) {
+                    tracer = fromSystemProperties();
+                    defaultTracer = tracer;
+                }
+            }
+        }
+        return tracer;
+    }
+
+    private static Tracer fromSystemProperties() {
+        String file = System.getProperty(FILE_PROPERTY);
+        if (file == null) {
+            return new Tracer();
+        }
+        double sampleRatio = DEFAULT_SAMPLE_RATIO;
+        try {
+            sampleRatio = Double.parseDouble(System.getProperty(SAMPLE_RATIO_PROPERTY, String.valueOf(DEFAULT_SAMPLE_RATIO)));
+        } catch (NumberFormatException e) {
+            logger.warn("Invalid value is given for " + SAMPLE_RATIO_PROPERTY + ", all the traces are recorded", e);
+        }
+        try {
+            return new Tracer(Paths.get(file), sampleRatio);
+        } catch (IOException e) {
+            logger.warn("Tracing is disabled as the trace file " + file + " could not be opened", e);
+            return new Tracer();
+        }
+    }
+
+    /**
+     * Creates a disabled tracer
+     */
+    public Tracer() {
+        this.writer = null;
+        this.sampleRatio = 0;
+    }
+
+    /**
+     * Creates a tracer appending the spans to the given file
+     *
+     * @param file        file the spans are written to
+     * @param sampleRatio ratio of the root spans which are recorded together with all their descendants, from 0 to 1
+     * @throws IOException if the file could not be opened
+     */
+    public Tracer(Path file, double sampleRatio) throws IOException {
+        Path directory = file.toAbsolutePath().getParent();
+        if (directory != null) {
+            Files.createDirectories(directory);
+        }
+        this.writer = Files.newBufferedWriter(file, StandardCharsets.UTF_8, StandardOpenOption.CREATE, StandardOpenOption.APPEND);
+        this.sampleRatio = Math.max(0, Math.min(1, sampleRatio));
+    }
+
+    /**
+     * @return true if the spans of this tracer are written anywhere
+     */
+    public boolean isEnabled() {
+        return writer != null;
+    }
+
+    /**
+     * Starts a span of a new trace, which is recorded only if the trace is sampled, and makes it the current span of
+     * this thread
+     *
+     * @param name name of the span
+     * @return the started span, to be closed on this thread
+     */
+    public Span startRootSpan(String name) {
+        if (writer == null || sampleRatio == 0 || ThreadLocalRandom.current().nextDouble() >= sampleRatio) {
+            return Span.NOOP;
+        }
+        return start(name, Span.KIND_INTERNAL, randomId() + randomId(), null, true);
+    }
+
+    /**
+     * Starts a child span of the current span of this thread and makes it the current span
+     *
+     * @param name name of the span
+     * @return the started span, which is not recorded if there is no current span, to be closed on this thread
+     */
+    public Span startSpan(String name) {
+        return writer == null ? Span.NOOP : startSpan(name, currentSpan.get());
+    }
+
+    /**
+     * Starts a child span of the given span, which may have been started on another thread, and makes it the current
+     * span of this thread
+     *
+     * @param name   name of the span
+     * @param parent parent of the span, or null
+     * @return the started span, which is not recorded if the parent is not, to be closed on this thread
+     */
+    public Span startSpan(String name, Span parent) {
+        if (parent == null || parent.tracer != this) {
+            return Span.NOOP;
+        }
+        return start(name, Span.KIND_INTERNAL, parent.traceId, parent.spanId, true);
+    }
+
+    /**
+     * Starts a child span of the given span without making it the current span of any thread, for a stage of an
+     * asynchronous analysis which may end on another thread
+     *
+     * @param name   name of the span
+     * @param parent parent of the span, or null
+     * @return the started span, which is not recorded if the parent is not, to be closed on any thread
+     */
+    public Span startDetachedSpan(String name, Span parent) {
+        if (parent == null || parent.tracer != this) {
+            return Span.NOOP;
+        }
+        return start(name, Span.KIND_INTERNAL, parent.traceId, parent.spanId, false);
+    }
+
+    /**
+     * Starts a child span of the current span of this thread for a call made to a remote API. The span never becomes
+     * the current span, as nothing is traced within a call
+     *
+     * @param name name of the span
+     * @return the started span, which is not recorded if there is no current span, to be closed on any thread
+     */
+    public Span startClientSpan(String name) {
+        return writer == null ? Span.NOOP : startClientSpan(name, currentSpan.get());
+    }
+
+    /**
+     * Starts a child span of the given span for a call made to a remote API
+     *
+     * @param name   name of the span
+     * @param parent parent of the span, or null
+     * @return the started span, which is not recorded if the parent is not, to be closed on any thread
+     */
+    public Span startClientSpan(String name, Span parent) {
+        if (parent == null || parent.tracer != this) {
+            return Span.NOOP;
+        }
+        return start(name, Span.KIND_CLIENT, parent.traceId, parent.spanId, false);
+    }
+
+    /**
+     * Runs the given code with the given span as the current span of this thread, so that the asynchronous calls it
+     * starts are traced as children of the span
+     *
+     * @param span     span to be made current
+     * @param supplier code to be run
+     * @param <T>      type of the result of the code
+     * @return the result of the code
+     */
+    public <T> T inSpan(Span span, Supplier<T> supplier) {
+        if (span.tracer != this) {
+            return supplier.get();
+        }
+        Span previous = currentSpan.get();
+        currentSpan.set(span);
+        try {
+            return supplier.get();
+        } finally {
+            restore(previous);
+        }
+    }
+
+    /**
+     * @return the current span of this thread, or a span which is not recorded if there is none
+     */
+    public Span currentSpan() {
+        Span span = writer == null ? null : currentSpan.get();
+        return span == null ? Span.NOOP : span;
+    }
+
+    /**
+     * Wraps a task so that the spans started by it on another thread are children of the current span of this thread
+     *
+     * @param callable task to be run on another thread
+     * @param <T>      type of the result of the task
+     * @return the wrapped task
+     */
+    public <T> Callable<T> wrap(Callable<T> callable) {
+        Span parent = writer == null ? null : currentSpan.get();
+        if (parent == null) {
+            return callable;
+        }
+        return () -> {
+            Span previous = currentSpan.get();
+            currentSpan.set(parent);
+            try {
+                return callable.call();
+            } finally {
+                restore(previous);
+            }
+        };
+    }
+
+    /**
+     * Ends the spans which are still open with an error status, and writes all the ended spans to the file
+     */
+    @Override
+    public void close() {
+        if (writer == null) {
+            return;
+        }
+        for (Span span : openSpans) {
+            span.setError("the span was still open when the tracer was closed");
+            span.close();
+        }
+        synchronized (this) {
+            if (closed) {
+                return;
+            }
+            flush();
+            closed = true;
+            try {
+                writer.close();
+            } catch (IOException e) {
+                logger.warn("Trace file could not be closed", e);
+            }
+        }
+    }
+
+    private Span start(String name, int kind, String traceId, String parentSpanId, boolean current) {
+        Span span = new Span(this, name, kind, traceId, randomId(), parentSpanId, current ? currentSpan.get() : null, epochNanos());
+        if (current) {
+            currentSpan.set(span);
+        }
+        openSpans.add(span);
+        return span;
+    }
+
+    private void restore(Span previous) {
+        if (previous == null) {
+            currentSpan.remove();
+        } else {
+            currentSpan.set(previous);
+        }
+    }
+
+    private void end(Span span) {
+        if (currentSpan.get() == span) {
+            restore(span.previous);
+        }
+        openSpans.remove(span);
+        synchronized (this) {
+            if (closed) {
+                return;
+            }
+            pendingSpans.add(span);
+            if (span.parentSpanId == null || pendingSpans.size() >= MAX_PENDING_SPANS) {
+                flush();
+            }
+        }
+    }
+
+    /**
+     * Writes the pending spans as a single export request on a line of the file
+     */
+    private void flush() {
+        if (pendingSpans.isEmpty()) {
+            return;
+        }
+        try {
+            JsonGenerator generator = JSON_FACTORY.createGenerator(writer);
+            generator.writeStartObject();
+            generator.writeArrayFieldStart("resourceSpans");
+            generator.writeStartObject();
+            generator.writeObjectFieldStart("resource");
+            generator.writeArrayFieldStart("attributes");
+            writeAttribute(generator, "service.name", SERVICE_NAME);
+            generator.writeEndArray();
+            generator.writeEndObject();
+            generator.writeArrayFieldStart("scopeSpans");
+            generator.writeStartObject();
+            generator.writeObjectFieldStart("scope");
+            generator.writeStringField("name", SCOPE_NAME);
+            generator.writeEndObject();
+            generator.writeArrayFieldStart("spans");
+            for (Span span : pendingSpans) {
+                span.write(generator);
+            }
+            generator.writeEndArray();
+            generator.writeEndObject();
+            generator.writeEndArray();
+            generator.writeEndObject();
+            generator.writeEndArray();
+            generator.writeEndObject();
+            generator.close();
+            writer.write('\n');
+            writer.flush();
+        } catch (IOException e) {
+            logger.warn(pendingSpans.size() + " spans could not be written to the trace file", e);
+        } finally {
+            pendingSpans.clear();
+        }
+    }
+
+    private long epochNanos() {
+        return baseEpochNanos + (System.nanoTime() - baseNanos);
+    }
+
+    private static String randomId() {
+        return String.format("%016x", ThreadLocalRandom.current().nextLong());
+    }
+
+    private static void writeAttribute(JsonGenerator generator, String key, Object value) throws IOException {
+        generator.writeStartObject();
+        generator.writeStringField("key", key);
+        generator.writeObjectFieldStart("value");
+        if (value instanceof Long) {
+            // 64 bit integers are written as strings in the JSON encoding of the OpenTelemetry protocol
+            generator.writeStringField("intValue", value.toString());
+        } else {
+            generator.writeStringField("stringValue", String.valueOf(value));
+        }
+        generator.writeEndObject();
+        generator.writeEndObject();
+    }
+
+    /**
+     * A timed operation of a trace, carrying the attributes of the operation. A span which is not recorded ignores
+     * everything done to it
+     */
+    public static final class Span implements AutoCloseable {
+
+        private static final Span NOOP = new Span(null, null, 0, null, null, null, null, 0);
+        // kinds of the spans in the OpenTelemetry protocol
+        private static final int KIND_INTERNAL = 1;
+        private static final int KIND_CLIENT = 3;
+        private static final int STATUS_CODE_ERROR = 2;
+
+        private final Tracer tracer;
+        private final String name;
+        private final int kind;
+        private final String traceId;
+        private final String spanId;
+        private final String parentSpanId;
+        private final Span previous;
+        private final long startEpochNanos;
+        private final Map<String, Object> attributes = new LinkedHashMap<>();
+        private long endEpochNanos;
+        private String errorMessage;
+        private boolean ended;
+
+        private Span(Tracer tracer, String name, int kind, String traceId, String spanId, String parentSpanId, Span previous,
+                     long startEpochNanos) {
+            this.tracer = tracer;
+            this.name = name;
+            this.kind = kind;
+            this.traceId = traceId;
+            this.spanId = spanId;
+            this.parentSpanId = parentSpanId;
+            this.previous = previous;
+            this.startEpochNanos = startEpochNanos;
+        }
+
+        /**
+         * @return true if this span is recorded
+         */
+        public boolean isRecording() {
+            return tracer != null;
+        }
+
+        /**
+         * Sets an attribute of this span
+         *
+         * @param key   name of the attribute
+         * @param value value of the attribute
+         * @return this span
+         */
+        public Span setAttribute(String key, String value) {
+            if (tracer != null) {
+                synchronized (this) {
+                    attributes.put(key, value);
+                }
+            }
+            return this;
+        }
+
+        /**
+         * Sets an integer attribute of this span
+         *
+         * @param key   name of the attribute
+         * @param value value of the attribute
+         * @return this span
+         */
+        public Span setAttribute(String key, long value) {
+            if (tracer != null) {
+                synchronized (this) {
+                    attributes.put(key, value);
+                }
+            }
+            return this;
+        }
+
+        /**
+         * Sets the attributes of an API call on this span, marking it as failed if no response or an error response was
+         * received
+         *
+         * @param method        HTTP method of the call
+         * @param url           url which was called
+         * @param attempt       number of the attempt, starting from 1
+         * @param statusCode    status code of the response, or 0 if no response was received
+         * @param responseBytes number of bytes of the response body, or -1 if it is not known
+         * @return this span
+         */
+        public Span setHttpAttributes(String method, String url, int attempt, int statusCode, long responseBytes) {
+            if (tracer == null) {
+                return this;
+            }
+            setAttribute(HTTP_METHOD_ATTRIBUTE, method);
+            setAttribute(URL_ATTRIBUTE, url);
+            if (attempt > 1) {
+                setAttribute(HTTP_RETRY_COUNT_ATTRIBUTE, attempt - 1);
+            }
+            if (statusCode == 0) {
+                return setError("no response was received");
+            }
+            setAttribute(HTTP_STATUS_CODE_ATTRIBUTE, statusCode);
+            if (responseBytes >= 0) {
+                setAttribute(HTTP_RESPONSE_BODY_SIZE_ATTRIBUTE, responseBytes);
+            }
+            return statusCode >= 400 ? setError("Response code " + statusCode) : this;
+        }
+
+        /**
+         * Marks this span as failed
+         *
+         * @param message description of the failure
+         * @return this span
+         */
+        public Span setError(String message) {
+            if (tracer != null) {
+                synchronized (this) {
+                    errorMessage = message;
+                }
+            }
+            return this;
+        }
+
+        /**
+         * Ends this span, making the span which was current when it was started the current span of this thread again
+         */
+        @Override
+        public void close() {
+            if (tracer == null) {
+                return;
+            }
+            synchronized (this) {
+                if (ended) {
+                    return;
+                }
+                ended = true;
+                endEpochNanos = tracer.epochNanos();
+            }
+            tracer.end(this);
+        }
+
+        private synchronized void write(JsonGenerator generator) throws IOException {
+            generator.writeStartObject();
+            generator.writeStringField("traceId", traceId);
+            generator.writeStringField("spanId", spanId);
+            if (parentSpanId != null) {
+                generator.writeStringField("parentSpanId", parentSpanId);
+            }
+            generator.writeStringField("name", name);
+            generator.writeNumberField("kind", kind);
+            generator.writeStringField("startTimeUnixNano", String.valueOf(startEpochNanos));
+            generator.writeStringField("endTimeUnixNano", String.valueOf(endEpochNanos));
+            generator.writeArrayFieldStart("attributes");
+            for (Map.Entry<String, Object> attribute : attributes.entrySet()) {
+                writeAttribute(generator, attribute.getKey(), attribute.getValue());
+            }
+            generator.writeEndArray();
+            if (errorMessage != null) {
+                generator.writeObjectFieldStart("status");
+                generator.writeNumberField("code", STATUS_CODE_ERROR);
+                generator.writeStringField("message", errorMessage);
+                generator.writeEndObject();
+            }
+            generator.writeEndObject();
+        }
+    }
+}
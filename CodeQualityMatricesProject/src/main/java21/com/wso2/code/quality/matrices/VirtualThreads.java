@@ -0,0 +1,45 @@
+/*
+ * Copyright (c) 2017, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ *
+ * WSO2 Inc. licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.wso2.code.quality.matrices;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Creates the executors of the virtual execution mode. This class is only compiled by the jdk21 profile, and
+ * ExecutionMode loads it by its name so that the rest of the application still builds and runs on Java 8.
+ *
+ * @since 1.0.0
+ */
+
+final class VirtualThreads {
+
+    private VirtualThreads() {
+    }
+
+    /**
+     * Creates an executor starting a new virtual thread for each task
+     *
+     * @param threadNamePrefix prefix of the names of the threads, which are numbered from 1 onwards
+     * @return the created executor
+     */
+    static ExecutorService newThreadPerTaskExecutor(String threadNamePrefix) {
+        return Executors.newThreadPerTaskExecutor(Thread.ofVirtual().name(threadNamePrefix, 1).factory());
+    }
+}
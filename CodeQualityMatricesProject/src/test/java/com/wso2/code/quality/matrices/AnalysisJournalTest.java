@@ -0,0 +1,157 @@
+/*
+ * Copyright (c) 2017, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ *
+ * WSO2 Inc. licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.wso2.code.quality.matrices;
+
+import junit.framework.TestCase;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.stream.Collectors;
+
+/**
+ * Tests replaying the units of work recorded to an AnalysisJournal after it is opened again.
+ */
+public class AnalysisJournalTest extends TestCase {
+
+    private Path journalDirectory;
+    private Path journalFile;
+
+    @Override
+    protected void setUp() throws Exception {
+        journalDirectory = Files.createTempDirectory("journal");
+        journalFile = journalDirectory.resolve("patch.journal");
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        Files.deleteIfExists(journalFile);
+        Files.deleteIfExists(journalDirectory);
+    }
+
+    public void testUnitsAreReplayedAfterReopening() throws Exception {
+        Map<Integer, Set<String>> parentCommits = new HashMap<>();
+        parentCommits.put(0, new HashSet<>(Arrays.asList("p1", "p2")));
+        parentCommits.put(3, Collections.singleton("p3"));
+        try (AnalysisJournal analysisJournal = new AnalysisJournal(journalFile)) {
+            assertNull(analysisJournal.getRepositories("c1"));
+            analysisJournal.recordRepositories("c1", Arrays.asList("wso2/carbon-kernel", "wso2/carbon-apimgt"));
+            analysisJournal.recordParentCommits("wso2/carbon-kernel", "c1", "pom.xml", parentCommits);
+            analysisJournal.recordAuthorsAndCommits("wso2/carbon-kernel", "p1", "pom.xml", 10, 20,
+                    new AuthorsAndCommits(Collections.singleton("author"), Collections.singleton("a1")));
+            analysisJournal.recordPullRequests("a1", Collections.singletonList(
+                    new PullRequest("wso2/carbon-kernel", 7, "MERGED", Collections.<Review>emptyList())));
+            analysisJournal.recordReviews("wso2/carbon-kernel", 7, Arrays.asList(new Review("APPROVED", "reviewer"),
+                    new Review("COMMENTED", null)));
+            assertEquals(5, analysisJournal.size());
+        }
+
+        try (AnalysisJournal analysisJournal = new AnalysisJournal(journalFile)) {
+            assertEquals(5, analysisJournal.size());
+            assertEquals(Arrays.asList("wso2/carbon-kernel", "wso2/carbon-apimgt"), analysisJournal.getRepositories("c1"));
+            assertEquals(parentCommits, analysisJournal.getParentCommits("wso2/carbon-kernel", "c1", "pom.xml"));
+            AuthorsAndCommits authorsAndCommits = analysisJournal.getAuthorsAndCommits("wso2/carbon-kernel", "p1", "pom.xml", 10, 20);
+            assertEquals(Collections.singleton("author"), authorsAndCommits.getAuthorNames());
+            assertEquals(Collections.singleton("a1"), authorsAndCommits.getCommitHashes());
+            // the units are told apart by all the parts of their keys
+            assertNull(analysisJournal.getAuthorsAndCommits("wso2/carbon-kernel", "p1", "pom.xml", 10, 21));
+            List<PullRequest> pullRequests = analysisJournal.getPullRequests("a1");
+            assertEquals(1, pullRequests.size());
+            assertEquals("MERGED", pullRequests.get(0).getState());
+            List<Review> reviews = analysisJournal.getReviews("wso2/carbon-kernel", 7);
+            assertEquals(Arrays.asList("reviewer", null), reviews.stream().map(Review::getUserLogin).collect(Collectors.toList()));
+            assertNull(analysisJournal.getReviews("wso2/carbon-kernel", 8));
+        }
+    }
+
+    public void testHalfWrittenUnitIsSkipped() throws Exception {
+        try (AnalysisJournal analysisJournal = new AnalysisJournal(journalFile)) {
+            analysisJournal.recordRepositories("c1", Collections.singletonList("wso2/carbon-kernel"));
+        }
+        Files.write(journalFile, "{\"unit\":\"repositories\",\"key\":[\"c2\"],\"val".getBytes(StandardCharsets.UTF_8),
+                StandardOpenOption.APPEND);
+
+        try (AnalysisJournal analysisJournal = new AnalysisJournal(journalFile)) {
+            assertEquals(1, analysisJournal.size());
+            assertNull(analysisJournal.getRepositories("c2"));
+            analysisJournal.recordRepositories("c2", Collections.singletonList("wso2/carbon-apimgt"));
+        }
+        // the unit recorded after the half written one is not lost
+        try (AnalysisJournal analysisJournal = new AnalysisJournal(journalFile)) {
+            assertEquals(Collections.singletonList("wso2/carbon-apimgt"), analysisJournal.getRepositories("c2"));
+        }
+    }
+
+    public void testJournalIsUsedByASingleWriter() throws Exception {
+        try (AnalysisJournal analysisJournal = new AnalysisJournal(journalFile)) {
+            try {
+                new AnalysisJournal(journalFile);
+                fail("The journal should not be opened twice");
+            } catch (CodeQualityMatricesException e) {
+                assertTrue(e.getMessage().contains("journal"));
+            }
+        }
+    }
+
+    public void testCompletedJournalIsDeleted() throws Exception {
+        try (AnalysisJournal analysisJournal = new AnalysisJournal(journalFile)) {
+            analysisJournal.recordRepositories("c1", Collections.singletonList("wso2/carbon-kernel"));
+            analysisJournal.complete();
+
+            assertFalse(Files.exists(journalFile));
+            assertNull(analysisJournal.getRepositories("c1"));
+            // a unit finished after the analysis succeeded does not bring the journal back
+            analysisJournal.recordRepositories("c2", Collections.singletonList("wso2/carbon-kernel"));
+            assertFalse(Files.exists(journalFile));
+        }
+        // a later run of the same analysis starts from an empty journal
+        try (AnalysisJournal analysisJournal = new AnalysisJournal(journalFile)) {
+            assertEquals(0, analysisJournal.size());
+        }
+    }
+
+    public void testBatchesOfDifferentPatchesHaveDifferentJournals() {
+        List<String> patchIds = Arrays.asList("Aa", "BB");
+        List<String> otherPatchIds = Arrays.asList("BB", "Aa");
+        String name = AnalysisJournal.nameOfBatch(patchIds);
+
+        assertEquals(name, AnalysisJournal.nameOfBatch(Arrays.asList("Aa", "BB")));
+        assertTrue(name.matches("batch-[0-9a-f]{64}"));
+        // the hash codes of the two lists collide, so the journals must not be named after them
+        assertEquals(patchIds.hashCode(), otherPatchIds.hashCode());
+        assertFalse(name.equals(AnalysisJournal.nameOfBatch(otherPatchIds)));
+    }
+
+    public void testDisabledJournalDoesNotReplay() throws IOException {
+        try (AnalysisJournal analysisJournal = AnalysisJournal.disabled()) {
+            analysisJournal.recordRepositories("c1", Collections.singletonList("wso2/carbon-kernel"));
+            assertFalse(analysisJournal.isEnabled());
+            assertNull(analysisJournal.getRepositories("c1"));
+        }
+    }
+}
@@ -0,0 +1,119 @@
+/*
+ * Copyright (c) 2017, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ *
+ * WSO2 Inc. licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+
+package com.wso2.code.quality.matrices;
+
+import junit.framework.TestCase;
+import org.json.JSONObject;
+import org.json.JSONTokener;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.HttpURLConnection;
+import java.net.InetSocketAddress;
+import java.net.URI;
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Tests that the AnalysisServer shares the analysis of a patch between concurrent requests and serves it again from
+ * memory.
+ */
+public class AnalysisServerTest extends TestCase {
+
+    private final AtomicInteger analyses = new AtomicInteger();
+    private final CountDownLatch release = new CountDownLatch(1);
+    private AnalysisServer analysisServer;
+
+    @Override
+    protected void setUp() throws Exception {
+        System.setProperty("sun.net.httpserver.nodelay", "true");
+        PatchBatchAnalyser patchBatchAnalyser = new PatchBatchAnalyser(null, null, null, null, 1) {
+            @Override
+            public Map<String, PatchReport> analysePatches(Collection<String> patchIds) throws CodeQualityMatricesException {
+                analyses.incrementAndGet();
+                try {
+                    release.await(10, TimeUnit.SECONDS);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                String patchId = patchIds.iterator().next();
+                if (patchId.equals("missing")) {
+                    return Collections.singletonMap(patchId, PatchReport.failed(patchId, "no response was received from WSO2 PMT"));
+                }
+                return Collections.singletonMap(patchId, new PatchReport(patchId, Collections.singletonList("c1"),
+                        new AuthorsAndCommits(Collections.singleton("Alice"), Collections.singleton("a1")),
+                        Collections.singleton("Bob"), Collections.<String>emptySet()));
+            }
+        };
+        analysisServer = new AnalysisServer(new InetSocketAddress("localhost", 0), patchBatchAnalyser, 2, 60, 100);
+        analysisServer.start();
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        analysisServer.close();
+        System.clearProperty("sun.net.httpserver.nodelay");
+    }
+
+    public void testConcurrentRequestsShareOneAnalysis() throws Exception {
+        List<CompletableFuture<PatchReport>> reports = new ArrayList<>();
+        for (int i = 0; i < 5; i++) {
+            reports.add(analysisServer.getReport("WSO2-1"));
+        }
+        release.countDown();
+        for (CompletableFuture<PatchReport> report : reports) {
+            assertEquals(Collections.singleton("Bob"), report.get(10, TimeUnit.SECONDS).getApprovedReviewers());
+        }
+
+        JSONObject response = get("/patches/WSO2-1/reviewers", 200);
+        assertEquals("Bob", response.getJSONArray("approvedReviewers").getString(0));
+        assertEquals("Alice", response.getJSONArray("authors").getString(0));
+        assertEquals("the kept report is served without analysing the patch again", 1, analyses.get());
+    }
+
+    public void testFailedAnalysisIsNotKept() throws Exception {
+        release.countDown();
+        assertTrue(get("/patches/missing/reviewers", 502).getString("error").contains("PMT"));
+        get("/patches/missing/reviewers", 502);
+        assertEquals(2, analyses.get());
+        get("/patches/missing", 404);
+    }
+
+    private JSONObject get(String path, int expectedStatusCode) throws IOException {
+        URL url = URI.create("http://localhost:" + analysisServer.getAddress().getPort() + path).toURL();
+        HttpURLConnection connection = (HttpURLConnection) url.openConnection();
+        try {
+            assertEquals(expectedStatusCode, connection.getResponseCode());
+            try (InputStream inputStream = expectedStatusCode == 200 ? connection.getInputStream() : connection.getErrorStream()) {
+                return new JSONObject(new JSONTokener(inputStream));
+            }
+        } finally {
+            connection.disconnect();
+        }
+    }
+}
@@ -0,0 +1,235 @@
+/*
+ * Copyright (c) 2017, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ *
+ * WSO2 Inc. licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.wso2.code.quality.matrices;
+
+import com.sun.net.httpserver.HttpExchange;
+import junit.framework.TestCase;
+import org.json.JSONArray;
+import org.json.JSONObject;
+import org.json.JSONTokener;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Tests the BlameBatcher against a local fake github GraphQL server which fails the queries selecting too many blames.
+ */
+public class BlameBatcherTest extends TestCase {
+
+    private static final String COMMIT = "0123456789abcdef0123456789abcdef01234567";
+    private static final int MAX_ALIASES_PER_QUERY = 4;
+    private static final Pattern ALIAS_PATTERN = Pattern.compile("(b\\d+): repository\\(.*?blame\\(path: \\$(\\w+)\\)");
+
+    private FakeGitHubServer server;
+    private GraphQlApiCaller graphQlApiCaller;
+    private final List<Integer> aliasesPerQuery = new ArrayList<>();
+    private final CountDownLatch responsesHeld = new CountDownLatch(1);
+    private final AtomicInteger flakyQueries = new AtomicInteger();
+    private volatile boolean holdingResponses;
+
+    @Override
+    protected void setUp() throws Exception {
+        server = new FakeGitHubServer();
+        server.handle("/graphql", this::handle);
+        graphQlApiCaller = new GraphQlApiCaller(server.getHttpTransport(), null, server.getUrl() + "/graphql", new RetryPolicy(3, 1, 1));
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        server.close();
+    }
+
+    public void testBlamesAreSplitOutOfBatchedQueries() throws CodeQualityMatricesException {
+        BlameBatcher blameBatcher = new BlameBatcher(graphQlApiCaller, new BlameCache(1024 * 1024, null), 10, 50);
+        List<BlameKey> blameKeys = new ArrayList<>();
+        for (int i = 0; i < 10; i++) {
+            blameKeys.add(new BlameKey("wso2/carbon-kernel", COMMIT, "file" + i + ".java"));
+        }
+        blameKeys.add(new BlameKey("wso2/carbon-kernel", COMMIT, "broken.java"));
+        // the path is sent as a variable of the query, so its quotes and backslashes are not escaped into the query
+        blameKeys.add(new BlameKey("wso2/carbon-kernel", COMMIT, "docs/\"quoted\" \\ name.md"));
+
+        Map<BlameKey, FileBlame> blames = blameBatcher.getBlames(blameKeys, true, "token");
+
+        // the failed blame does not fail the other blames of its batch
+        assertEquals(11, blames.size());
+        assertEquals("author of docs/\"quoted\" \\ name.md",
+                blames.get(new BlameKey("wso2/carbon-kernel", COMMIT, "docs/\"quoted\" \\ name.md")).getAuthorName(0));
+        assertFalse(blames.containsKey(new BlameKey("wso2/carbon-kernel", COMMIT, "broken.java")));
+        FileBlame blame = blames.get(new BlameKey("wso2/carbon-kernel", COMMIT, "file3.java"));
+        assertEquals("author of file3.java", blame.getAuthorName(0));
+        assertEquals(COMMIT, blame.getParentCommitHash(0));
+        for (int aliases : aliasesPerQuery) {
+            assertTrue(aliases <= 10);
+        }
+        // the batch of ten is split as the server fails it, and the later batches are kept small
+        assertTrue(aliasesPerQuery.size() < blameKeys.size());
+
+        int queries = aliasesPerQuery.size();
+        assertEquals(10, blameBatcher.getBlames(blameKeys.subList(0, 10), false, "token").size());
+        assertEquals("blames with the parent commits also serve the queries without them", queries, aliasesPerQuery.size());
+    }
+
+    public void testBlamesAreTakenAsynchronously() throws CodeQualityMatricesException {
+        BlameBatcher blameBatcher = new BlameBatcher(graphQlApiCaller, new BlameCache(1024 * 1024, null), 10, 50);
+        List<BlameKey> blameKeys = new ArrayList<>();
+        for (int i = 0; i < 10; i++) {
+            blameKeys.add(new BlameKey("wso2/carbon-kernel", COMMIT, "file" + i + ".java"));
+        }
+        blameKeys.add(new BlameKey("wso2/carbon-kernel", COMMIT, "broken.java"));
+
+        Map<BlameKey, FileBlame> blames = Futures.join(blameBatcher.getBlamesAsync(blameKeys, true, "token"));
+
+        // the halves of the failed batch are sent again until the batches are accepted by the server
+        assertEquals(10, blames.size());
+        assertEquals("author of file7.java",
+                blames.get(new BlameKey("wso2/carbon-kernel", COMMIT, "file7.java")).getAuthorName(0));
+        assertEquals(1, Collections.frequency(aliasesPerQuery, 10));
+        assertEquals(10 + 1 + 5 + 5 + 2 + 3 + 2 + 3, aliasesPerQuery.stream().mapToInt(Integer::intValue).sum());
+    }
+
+    public void testSingleBlameFailedWith502IsRetried() throws CodeQualityMatricesException {
+        BlameBatcher blameBatcher = new BlameBatcher(graphQlApiCaller, new BlameCache(1024 * 1024, null), 10, 50);
+        List<BlameKey> blameKeys = new ArrayList<>();
+        for (int i = 0; i < 3; i++) {
+            blameKeys.add(new BlameKey("wso2/carbon-kernel", COMMIT, "file" + i + ".java"));
+        }
+        blameKeys.add(new BlameKey("wso2/carbon-kernel", COMMIT, "flaky.java"));
+
+        Map<BlameKey, FileBlame> blames = blameBatcher.getBlames(blameKeys, true, "token");
+
+        // the batch is split down to the flaky blame, which is then sent again until the server answers it
+        assertEquals(4, blames.size());
+        assertEquals("author of flaky.java", blames.get(new BlameKey("wso2/carbon-kernel", COMMIT, "flaky.java")).getAuthorName(0));
+    }
+
+    public void testBlameNotTakenAfterAllAttemptsFailsTheCall() {
+        BlameBatcher blameBatcher = new BlameBatcher(graphQlApiCaller, new BlameCache(1024 * 1024, null), 10, 50);
+        List<BlameKey> blameKeys = new ArrayList<>();
+        blameKeys.add(new BlameKey("wso2/carbon-kernel", COMMIT, "file0.java"));
+        blameKeys.add(new BlameKey("wso2/carbon-kernel", COMMIT, "unavailable.java"));
+
+        try {
+            blameBatcher.getBlames(blameKeys, true, "token");
+            fail("the blame which could not be taken should not be left out silently");
+        } catch (CodeQualityMatricesException e) {
+            assertTrue(e.getMessage().contains("unavailable.java"));
+        }
+        try {
+            Futures.join(blameBatcher.getBlamesAsync(blameKeys, false, "token"));
+            fail("the blame which could not be taken should not be left out silently");
+        } catch (CodeQualityMatricesException e) {
+            assertTrue(e.getMessage().contains("after 3 attempts"));
+        }
+    }
+
+    public void testBlamesInFlightAreShared() throws CodeQualityMatricesException {
+        BlameBatcher blameBatcher = new BlameBatcher(graphQlApiCaller, new BlameCache(0, null), 10, 50);
+        List<BlameKey> blameKeys = new ArrayList<>();
+        for (int i = 0; i < 6; i++) {
+            blameKeys.add(new BlameKey("wso2/carbon-kernel", COMMIT, "file" + i + ".java"));
+        }
+        long savedCalls = blameBatcher.getSavedCalls();
+
+        // the first query is held by the server until the second caller has asked for the blames
+        holdingResponses = true;
+        CompletableFuture<Map<BlameKey, FileBlame>> firstBlames = blameBatcher.getBlamesAsync(blameKeys.subList(0, 4), true, "token");
+        CompletableFuture<Map<BlameKey, FileBlame>> secondBlames = blameBatcher.getBlamesAsync(blameKeys.subList(2, 6), true, "token");
+        responsesHeld.countDown();
+
+        assertEquals(4, Futures.join(firstBlames).size());
+        assertEquals(4, Futures.join(secondBlames).size());
+        assertSame(Futures.join(firstBlames).get(blameKeys.get(3)), Futures.join(secondBlames).get(blameKeys.get(3)));
+        // the second query only selects the blames which were not in flight
+        assertEquals(4 + 2, aliasesPerQuery.stream().mapToInt(Integer::intValue).sum());
+        assertEquals(2, blameBatcher.getSavedCalls() - savedCalls);
+    }
+
+    public void testIdenticalQueriesInFlightAreShared() throws CodeQualityMatricesException {
+        long savedCalls = graphQlApiCaller.getSavedCalls();
+        ResponseDecoder<BlameBatchResponse> decoder = ResponseDecoders.blameBatchDecoder(true);
+        String query = "{b0: repository(owner:\"wso2\",name:\"carbon-kernel\"){object(expression:\"" + COMMIT
+                + "\"){ ... on Commit{blame(path:\"file0.java\"){ranges{startingLine} } } } }}";
+
+        holdingResponses = true;
+        CompletableFuture<BlameBatchResponse> firstResponse = graphQlApiCaller.callGraphQlApiAsync(
+                new JSONObject().put("query", query).put("variables", new JSONObject().put("a", 1).put("b", 2)), "token", decoder);
+        CompletableFuture<BlameBatchResponse> secondResponse = graphQlApiCaller.callGraphQlApiAsync(
+                new JSONObject().put("variables", new JSONObject().put("b", 2).put("a", 1)).put("query", query), "token", decoder);
+        responsesHeld.countDown();
+
+        assertSame(Futures.join(firstResponse), Futures.join(secondResponse));
+        assertEquals(1, aliasesPerQuery.size());
+        assertEquals(1, graphQlApiCaller.getSavedCalls() - savedCalls);
+    }
+
+    private void handle(HttpExchange exchange) throws IOException {
+        if (holdingResponses) {
+            try {
+                responsesHeld.await();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        JSONObject queryObject = new JSONObject(new JSONTokener(exchange.getRequestBody()));
+        JSONObject variables = queryObject.optJSONObject("variables");
+        Matcher matcher = ALIAS_PATTERN.matcher(queryObject.getString("query"));
+        JSONObject data = new JSONObject().put("rateLimit", new JSONObject().put("cost", 1).put("remaining", 4999)
+                .put("resetAt", "2030-01-01T00:00:00Z"));
+        JSONArray errors = new JSONArray();
+        int aliases = 0;
+        boolean failed = false;
+        while (matcher.find()) {
+            aliases++;
+            String alias = matcher.group(1);
+            String path = variables.getString(matcher.group(2));
+            // the flaky blame fails its first three queries, and the unavailable blame fails all of them
+            failed |= path.equals("unavailable.java") || path.equals("flaky.java") && flakyQueries.incrementAndGet() <= 3;
+            if (path.equals("broken.java")) {
+                data.put(alias, JSONObject.NULL);
+                errors.put(new JSONObject().put("path", new JSONArray().put(alias)).put("message", "Could not resolve file"));
+                continue;
+            }
+            JSONObject commit = new JSONObject().put("oid", COMMIT)
+                    .put("parents", new JSONObject().put("nodes", new JSONArray().put(new JSONObject().put("oid", COMMIT))))
+                    .put("author", new JSONObject().put("name", "author of " + path));
+            JSONObject range = new JSONObject().put("startingLine", 1).put("endingLine", 10).put("age", 1).put("commit", commit);
+            data.put(alias, new JSONObject().put("object", new JSONObject().put("blame",
+                    new JSONObject().put("ranges", new JSONArray().put(range)))));
+        }
+        aliasesPerQuery.add(aliases);
+        if (aliases > MAX_ALIASES_PER_QUERY || failed) {
+            FakeGitHubServer.send(exchange, 502, "{\"message\":\"Something went wrong while executing your query\"}");
+            return;
+        }
+        JSONObject response = new JSONObject().put("data", data);
+        if (errors.length() > 0) {
+            response.put("errors", errors);
+        }
+        FakeGitHubServer.send(exchange, 200, response.toString());
+    }
+}
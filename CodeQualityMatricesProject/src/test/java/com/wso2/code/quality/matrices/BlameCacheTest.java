@@ -0,0 +1,118 @@
+/*
+ * Copyright (c) 2017, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ *
+ * WSO2 Inc. licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.wso2.code.quality.matrices;
+
+import junit.framework.TestCase;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Comparator;
+import java.util.stream.Stream;
+
+/**
+ * Tests the BlameCache and the BlameSegmentStore behind it.
+ */
+public class BlameCacheTest extends TestCase {
+
+    private static final String COMMIT = "0123456789abcdef0123456789abcdef01234567";
+    private static final String PARENT = "89abcdef0123456789abcdef0123456789abcdef";
+
+    private Path storeDirectory;
+
+    @Override
+    protected void setUp() throws Exception {
+        storeDirectory = Files.createTempDirectory("blame-cache");
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        try (Stream<Path> paths = Files.walk(storeDirectory)) {
+            paths.sorted(Comparator.reverseOrder()).forEach(path -> path.toFile().delete());
+        }
+    }
+
+    public void testStoredBlamesAreReadBackAfterReopening() throws CodeQualityMatricesException, IOException {
+        BlameKey key = new BlameKey("wso2/carbon-kernel", COMMIT, "pom.xml");
+        // small segments so that the records are spread over several segments
+        try (BlameSegmentStore store = new BlameSegmentStore(storeDirectory, 512)) {
+            for (int i = 0; i < 20; i++) {
+                store.put(new BlameKey("wso2/carbon-kernel", COMMIT, "file" + i), sampleBlame(true));
+            }
+            store.put(key, sampleBlame(true));
+        }
+        try (BlameSegmentStore store = new BlameSegmentStore(storeDirectory, 512)) {
+            assertEquals(21, store.size());
+            FileBlame blame = store.get(key);
+            assertTrue(blame.hasParentCommits());
+            assertEquals(3, blame.getRangeCount());
+            assertEquals(11, blame.getStartingLine(1));
+            assertEquals(20, blame.getEndingLine(1));
+            assertEquals(PARENT, blame.getParentCommitHash(0));
+            assertNull(blame.getParentCommitHash(2));
+            assertEquals("Jane", blame.getAuthorName(1));
+            assertEquals(COMMIT, blame.getCommitHash(2));
+            assertNull(store.get(new BlameKey("wso2/carbon-kernel", COMMIT, "missing")));
+        }
+    }
+
+    public void testStoreIsLockedWhileOpen() throws CodeQualityMatricesException, IOException {
+        try (BlameSegmentStore ignored = new BlameSegmentStore(storeDirectory, 512)) {
+            try {
+                new BlameSegmentStore(storeDirectory, 512);
+                fail("The store should not be opened twice");
+            } catch (CodeQualityMatricesException e) {
+                // expected, as the directory is locked by the first store
+                assertTrue(e.getMessage().contains("used by another process"));
+            }
+        }
+    }
+
+    public void testCacheCountsHitsAndMisses() throws CodeQualityMatricesException, IOException {
+        BlameKey key = new BlameKey("wso2/carbon-kernel", COMMIT, "pom.xml");
+        BlameKey branchKey = new BlameKey("wso2/carbon-kernel", "master", "pom.xml");
+        try (BlameCache blameCache = new BlameCache(1024 * 1024, new BlameSegmentStore(storeDirectory))) {
+            assertNull(blameCache.get(key, true));
+            blameCache.put(key, sampleBlame(false));
+            blameCache.put(branchKey, sampleBlame(true));
+
+            assertNotNull(blameCache.get(key, false));
+            // the parent commits were not taken with the cached blame
+            assertNull(blameCache.get(key, true));
+            // the blame of a branch may change, so it is never cached
+            assertNull(blameCache.get(branchKey, false));
+            assertEquals(1, blameCache.getMemoryHits());
+            assertEquals(3, blameCache.getMisses());
+        }
+        try (BlameCache blameCache = new BlameCache(1024 * 1024, new BlameSegmentStore(storeDirectory))) {
+            assertNotNull(blameCache.get(key, false));
+            assertNotNull(blameCache.get(key, false));
+            assertEquals(1, blameCache.getDiskHits());
+            assertEquals(1, blameCache.getMemoryHits());
+        }
+    }
+
+    private FileBlame sampleBlame(boolean parentCommitsIncluded) {
+        return new FileBlame.Builder(parentCommitsIncluded)
+                .addRange(1, 10, 3, COMMIT, parentCommitsIncluded ? PARENT : null, "John")
+                .addRange(11, 20, 1, PARENT, null, "Jane")
+                .addRange(21, 25, 2, COMMIT, null, "John")
+                .build();
+    }
+}
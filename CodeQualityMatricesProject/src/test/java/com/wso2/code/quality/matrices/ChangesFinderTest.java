@@ -0,0 +1,152 @@
+/*
+ * Copyright (c) 2017, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ *
+ * WSO2 Inc. licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.wso2.code.quality.matrices;
+
+import com.sun.net.httpserver.HttpExchange;
+import junit.framework.TestCase;
+import org.json.JSONArray;
+import org.json.JSONObject;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.stream.Collectors;
+
+/**
+ * Tests reading the authors and commits of the fixed lines from a blame of the file at the first parent of the fix,
+ * and merging the results of many commits analysed at once against a local fake github server.
+ */
+public class ChangesFinderTest extends TestCase {
+
+    private static final int COMMIT_COUNT = 40;
+    private static final int FILES_PER_COMMIT = 5;
+
+    private FakeGitHubServer server;
+
+    @Override
+    protected void setUp() throws Exception {
+        server = new FakeGitHubServer();
+        server.handle("/", this::handle);
+        System.setProperty(ApiUrls.GITHUB_API_URL_PROPERTY, server.getUrl());
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        System.clearProperty(ApiUrls.GITHUB_API_URL_PROPERTY);
+        server.close();
+    }
+
+    public void testOldLinesAreReadFromBlameAtFirstParent() {
+        // the first hunk changes lines 2 to 4, the second only adds lines and the third removes lines 20 to 21
+        FileChange fileChange = FileChange.fromPatch("File.java", "@@ -2,3 +2,4 @@\n-a\n+b\n"
+                + "@@ -10,0 +12,2 @@\n+c\n+d\n"
+                + "@@ -20,2 +21,0 @@\n-e\n-f\n");
+        FileBlame blame = new FileBlame.Builder(false)
+                .addRange(1, 2, 3, "a1", null, "Alice")
+                .addRange(3, 9, 2, "b1", null, "Bob")
+                .addRange(10, 19, 1, "c1", null, "Carol")
+                .addRange(20, 30, 1, "d1", null, null)
+                .build();
+        Map<Integer, AuthorsAndCommits> authorsAndCommitsOfHunks;
+        try (ChangesFinder changesFinder = new ChangesFinder((blameKeys, parentCommitsRequired, gitHubToken) -> new HashMap<>(),
+                null, new BlameCache(0, null), 1, BlameMode.FIRST_PARENT)) {
+            authorsAndCommitsOfHunks = changesFinder.readBlameAtFirstParent(blame, fileChange);
+        }
+
+        assertEquals(new HashSet<>(Arrays.asList(0, 2)), authorsAndCommitsOfHunks.keySet());
+        assertEquals(new HashSet<>(Arrays.asList("Alice", "Bob")), authorsAndCommitsOfHunks.get(0).getAuthorNames());
+        assertEquals(new HashSet<>(Arrays.asList("a1", "b1")), authorsAndCommitsOfHunks.get(0).getCommitHashes());
+        // a range without a known author still gives the commit which introduced the lines
+        assertEquals(Collections.emptySet(), authorsAndCommitsOfHunks.get(2).getAuthorNames());
+        assertEquals(Collections.singleton("d1"), authorsAndCommitsOfHunks.get(2).getCommitHashes());
+    }
+
+    public void testResultsOfCommitsAnalysedConcurrentlyAreAllMerged() throws Exception {
+        // each changed file is blamed to its own author and commit, so that a result lost by a racing merge is noticed
+        BlameProvider blameProvider = (blameKeys, parentCommitsRequired, gitHubToken) -> blameKeys.stream()
+                .collect(Collectors.toMap(blameKey -> blameKey, blameKey -> new FileBlame.Builder(false)
+                        .addRange(1, 10, 1, "introduced-" + blameKey.getPath(), null, "author-" + blameKey.getPath())
+                        .build()));
+        List<String> commitHashes = new ArrayList<>();
+        for (int commitNo = 0; commitNo < COMMIT_COUNT; commitNo++) {
+            commitHashes.add("commit" + commitNo);
+        }
+
+        try (ChangesFinder changesFinder = new ChangesFinder(blameProvider, null, new BlameCache(0, null), 4,
+                BlameMode.FIRST_PARENT)) {
+            RestApiCaller restApiCaller = new RestApiCaller(server.getHttpTransport());
+            // several analyses share the pool of the ChangesFinder at once, as the analyses of an analysis server do
+            List<CompletableFuture<Map<String, AuthorsAndCommits>>> analyses = new ArrayList<>();
+            for (int i = 0; i < 4; i++) {
+                analyses.add(changesFinder.analyseCommitsAsync("token", commitHashes, restApiCaller));
+            }
+            for (CompletableFuture<Map<String, AuthorsAndCommits>> analysis : analyses) {
+                Map<String, AuthorsAndCommits> authorsAndCommitsOfCommits = analysis.get();
+                assertEquals(commitHashes, new ArrayList<>(authorsAndCommitsOfCommits.keySet()));
+                for (String commitHash : commitHashes) {
+                    assertEquals(filesOf(commitHash, "author-"), authorsAndCommitsOfCommits.get(commitHash).getAuthorNames());
+                    assertEquals(filesOf(commitHash, "introduced-"), authorsAndCommitsOfCommits.get(commitHash).getCommitHashes());
+                }
+            }
+
+            AuthorsAndCommits authorsAndCommitsOfAllCommits = AuthorsAndCommits.mergeAll(
+                    changesFinder.analyseCommits("token", commitHashes, restApiCaller).values());
+            assertEquals(COMMIT_COUNT * FILES_PER_COMMIT, authorsAndCommitsOfAllCommits.getAuthorNames().size());
+            assertEquals(COMMIT_COUNT * FILES_PER_COMMIT, authorsAndCommitsOfAllCommits.getCommitHashes().size());
+        }
+    }
+
+    public void testBlameAtFirstParentIsCached() {
+        assertTrue(new BlameKey("wso2/carbon-kernel", "0123456789abcdef0123456789abcdef01234567^", "File.java").isImmutable());
+        assertFalse(new BlameKey("wso2/carbon-kernel", "master^", "File.java").isImmutable());
+    }
+
+    private static Set<String> filesOf(String commitHash, String prefix) {
+        Set<String> values = new HashSet<>();
+        for (int fileNo = 0; fileNo < FILES_PER_COMMIT; fileNo++) {
+            values.add(prefix + commitHash + "/File" + fileNo + ".java");
+        }
+        return values;
+    }
+
+    private void handle(HttpExchange exchange) throws IOException {
+        String path = exchange.getRequestURI().getPath();
+        JSONObject response = new JSONObject();
+        if (path.startsWith("/search/commits")) {
+            response.put("items", new JSONArray().put(new JSONObject()
+                    .put("repository", new JSONObject().put("full_name", "wso2/carbon-kernel"))));
+        } else {
+            String commitHash = path.substring(path.lastIndexOf('/') + 1);
+            JSONArray files = new JSONArray();
+            for (int fileNo = 0; fileNo < FILES_PER_COMMIT; fileNo++) {
+                files.put(new JSONObject().put("filename", commitHash + "/File" + fileNo + ".java")
+                        .put("patch", "@@ -2,3 +2,4 @@\n-a\n+b\n"));
+            }
+            response.put("files", files);
+        }
+        FakeGitHubServer.send(exchange, 200, response.toString());
+    }
+}
@@ -0,0 +1,97 @@
+/*
+ * Copyright (c) 2017, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ *
+ * WSO2 Inc. licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+
+package com.wso2.code.quality.matrices;
+
+import junit.framework.TestCase;
+import org.eclipse.jgit.api.Git;
+import org.eclipse.jgit.revwalk.RevCommit;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.stream.Stream;
+
+/**
+ * Tests writing, updating and looking up the CommitIndex of throwaway local repositories.
+ */
+public class CommitIndexTest extends TestCase {
+
+    private Path mirrorDirectory;
+    private Path indexFile;
+
+    @Override
+    protected void setUp() throws Exception {
+        mirrorDirectory = Files.createTempDirectory("mirrors");
+        indexFile = Files.createTempDirectory("commit-index").resolve("commits.idx");
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        for (Path directory : Arrays.asList(mirrorDirectory, indexFile.getParent())) {
+            try (Stream<Path> paths = Files.walk(directory)) {
+                paths.sorted(Comparator.reverseOrder()).forEach(path -> path.toFile().delete());
+            }
+        }
+    }
+
+    public void testCommitsAreFoundAndIndexIsUpdatedIncrementally() throws Exception {
+        RevCommit sharedCommit;
+        RevCommit kernelCommit;
+        try (Git kernel = Git.init().setDirectory(mirrorDirectory.resolve("wso2/carbon-kernel").toFile()).call()) {
+            sharedCommit = commit(kernel, "one\n");
+            kernelCommit = commit(kernel, "two\n");
+            // the second repository is a fork holding the first commit as well
+            Git.cloneRepository().setURI(mirrorDirectory.resolve("wso2/carbon-kernel").toUri().toString())
+                    .setDirectory(mirrorDirectory.resolve("wso2/carbon-kernel-fork.git").toFile()).setBare(true)
+                    .setBranch("master").call().close();
+        }
+
+        assertTrue(new CommitIndexBuilder().build(mirrorDirectory, indexFile) >= 3);
+        RevCommit newCommit;
+        try (CommitIndex commitIndex = CommitIndex.open(indexFile)) {
+            assertEquals(Arrays.asList("wso2/carbon-kernel", "wso2/carbon-kernel-fork"),
+                    commitIndex.findRepositories(sharedCommit.name()));
+            assertEquals(Arrays.asList("wso2/carbon-kernel", "wso2/carbon-kernel-fork"),
+                    commitIndex.findRepositories(kernelCommit.name().toUpperCase()));
+            assertEquals(Collections.emptyList(), commitIndex.findRepositories("0123456789abcdef0123456789abcdef01234567"));
+            assertEquals(Collections.emptyList(), commitIndex.findRepositories(kernelCommit.name().substring(0, 7)));
+        }
+
+        try (Git kernel = Git.open(mirrorDirectory.resolve("wso2/carbon-kernel").toFile())) {
+            newCommit = commit(kernel, "three\n");
+        }
+        // only the commit made after the index was written is walked
+        assertEquals(1, new CommitIndexBuilder().build(mirrorDirectory, indexFile));
+        try (CommitIndex commitIndex = CommitIndex.open(indexFile)) {
+            assertEquals(5, commitIndex.getEntryCount());
+            assertEquals(Collections.singletonList("wso2/carbon-kernel"), commitIndex.findRepositories(newCommit.name()));
+            assertEquals(2, commitIndex.findRepositories(sharedCommit.name()).size());
+        }
+    }
+
+    private RevCommit commit(Git git, String content) throws Exception {
+        Files.write(git.getRepository().getWorkTree().toPath().resolve("File.java"), content.getBytes(StandardCharsets.UTF_8));
+        git.add().addFilepattern("File.java").call();
+        return git.commit().setMessage(content.trim()).setAuthor("Alice", "alice@example.com").call();
+    }
+}
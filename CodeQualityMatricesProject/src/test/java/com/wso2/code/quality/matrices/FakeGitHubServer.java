@@ -0,0 +1,141 @@
+/*
+ * Copyright (c) 2017, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ *
+ * WSO2 Inc. licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.wso2.code.quality.matrices;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * A local fake github server for the tests, which answers the calls to its paths with the given handlers. The server
+ * listens on a free port of localhost, and is stopped together with its threads and the transport calling it when it
+ * is closed.
+ */
+final class FakeGitHubServer implements Closeable {
+
+    // the small responses of the handlers are sent at once instead of waiting for more data to fill a packet
+    private static final String NO_DELAY_PROPERTY = "sun.net.httpserver.nodelay";
+
+    private final String previousNoDelay;
+    private final HttpServer server;
+    private final ExecutorService executor;
+    private HttpTransport httpTransport;
+
+    /**
+     * Starts a server which handles the calls one by one
+     *
+     * @throws IOException if the server could not be started
+     */
+    FakeGitHubServer() throws IOException {
+        this(0);
+    }
+
+    /**
+     * Starts a server
+     *
+     * @param threads number of the calls handled at once, or 0 for handling the calls one by one
+     * @throws IOException if the server could not be started
+     */
+    FakeGitHubServer(int threads) throws IOException {
+        previousNoDelay = System.setProperty(NO_DELAY_PROPERTY, "true");
+        try {
+            server = HttpServer.create(new InetSocketAddress("localhost", 0), 0);
+        } catch (IOException e) {
+            restoreNoDelay();
+            throw e;
+        }
+        executor = threads > 0 ? Executors.newFixedThreadPool(threads) : null;
+        server.setExecutor(executor);
+        server.start();
+    }
+
+    /**
+     * Answers the calls to the given path, and to the paths under it, with the given handler
+     *
+     * @param path    path of the calls
+     * @param handler handler of the calls
+     */
+    void handle(String path, HttpHandler handler) {
+        server.createContext(path, handler);
+    }
+
+    /**
+     * @return the url of the server, without a trailing slash
+     */
+    String getUrl() {
+        return "http://localhost:" + server.getAddress().getPort();
+    }
+
+    /**
+     * @return a transport for calling the server, which is closed together with the server
+     */
+    synchronized HttpTransport getHttpTransport() {
+        if (httpTransport == null) {
+            httpTransport = new HttpTransport(10, 10, 5000, 5000);
+        }
+        return httpTransport;
+    }
+
+    /**
+     * Sends a response with the given status code and body
+     *
+     * @param exchange   exchange of the call
+     * @param statusCode status code of the response
+     * @param body       body of the response
+     * @throws IOException if the response could not be sent
+     */
+    static void send(HttpExchange exchange, int statusCode, String body) throws IOException {
+        byte[] bytes = body.getBytes(StandardCharsets.UTF_8);
+        exchange.sendResponseHeaders(statusCode, bytes.length);
+        try (OutputStream outputStream = exchange.getResponseBody()) {
+            outputStream.write(bytes);
+        }
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        try {
+            if (httpTransport != null) {
+                httpTransport.close();
+            }
+        } finally {
+            server.stop(0);
+            if (executor != null) {
+                executor.shutdownNow();
+            }
+            restoreNoDelay();
+        }
+    }
+
+    private void restoreNoDelay() {
+        if (previousNoDelay == null) {
+            System.clearProperty(NO_DELAY_PROPERTY);
+        } else {
+            System.setProperty(NO_DELAY_PROPERTY, previousNoDelay);
+        }
+    }
+}
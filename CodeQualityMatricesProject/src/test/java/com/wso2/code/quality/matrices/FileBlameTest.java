@@ -0,0 +1,68 @@
+/*
+ * Copyright (c) 2017, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ *
+ * WSO2 Inc. licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.wso2.code.quality.matrices;
+
+import junit.framework.TestCase;
+
+import java.util.TreeSet;
+
+/**
+ * Tests the lookup of the blame ranges of a FileBlame against checking each line against every range.
+ */
+public class FileBlameTest extends TestCase {
+
+    public void testOverlappingRangesMatchPerLineLookup() {
+        // ranges are added out of order and leave lines 8 and 9 without a range
+        FileBlame blame = new FileBlame.Builder(false)
+                .addRange(10, 12, 1, "c", null, "Carol")
+                .addRange(1, 3, 2, "a", null, "Alice")
+                .addRange(4, 7, 3, "b", null, "Bob")
+                .addRange(13, 13, 1, "d", null, "Dave")
+                .build();
+
+        for (int line = 0; line <= 15; line++) {
+            assertEquals("line " + line, perLineIndexOf(blame, line), blame.findRangeIndexOfLine(line));
+        }
+        for (int startingLine = 0; startingLine <= 15; startingLine++) {
+            for (int endingLine = startingLine; endingLine <= 15; endingLine++) {
+                TreeSet<Integer> expected = new TreeSet<>();
+                for (int line = startingLine; line <= endingLine; line++) {
+                    if (perLineIndexOf(blame, line) >= 0) {
+                        expected.add(perLineIndexOf(blame, line));
+                    }
+                }
+                TreeSet<Integer> actual = new TreeSet<>();
+                for (int i = blame.findFirstRangeIndexOverlapping(startingLine); i <= blame.findLastRangeIndexOverlapping(endingLine); i++) {
+                    actual.add(i);
+                }
+                assertEquals(startingLine + "," + endingLine, expected, actual);
+            }
+        }
+        assertEquals("Bob", blame.getAuthorName(blame.findRangeIndexOfLine(5)));
+    }
+
+    private int perLineIndexOf(FileBlame blame, int line) {
+        for (int i = 0; i < blame.getRangeCount(); i++) {
+            if (blame.getStartingLine(i) <= line && blame.getEndingLine(i) >= line) {
+                return i;
+            }
+        }
+        return -1;
+    }
+}
@@ -0,0 +1,59 @@
+/*
+ * Copyright (c) 2017, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ *
+ * WSO2 Inc. licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+
+package com.wso2.code.quality.matrices;
+
+import junit.framework.TestCase;
+
+/**
+ * Tests reading the changed line ranges of a file from its patch.
+ */
+public class FileChangeTest extends TestCase {
+
+    public void testHunkHeadersAreReadFromPatch() {
+        String patch = "@@ -22,7 +22,8 @@ public class Foo {\n"
+                + "     int a;\n"
+                + "-    int b;\n"
+                + "+    int c;\n"
+                + "+@@ -1,2 +1,2 @@ added line which only looks like a header\n"
+                + "@@ -40 +41 @@\n"
+                + "-x\n"
+                + "+y\n"
+                + "@@ -50,0 +52,3 @@ lines only added\n"
+                + "@@ -60,2 +65,0 @@ lines only removed";
+        FileChange fileChange = FileChange.fromPatch("src/Foo.java", patch);
+
+        assertEquals("src/Foo.java", fileChange.getPath());
+        assertEquals(4, fileChange.getHunkCount());
+        assertEquals("src/Foo.java[22,28/22,29, 40,40/41,41, 50,49/52,54, 60,61/65,64]", fileChange.toString());
+        assertFalse(fileChange.isNewFileHunk(0));
+    }
+
+    public void testFilesWithoutPatchOrCreatedByCommit() {
+        assertTrue(FileChange.fromPatch("image.png", null).isEmpty());
+        assertTrue(FileChange.fromPatch("renamed.txt", "").isEmpty());
+        assertTrue(FileChange.fromPatch("broken.txt", "@@ -a,1 +1,1 @@\n@@ -1,1 +1,1\n").isEmpty());
+
+        FileChange createdFile = FileChange.fromPatch("New.java", "@@ -0,0 +1,12 @@\n+class New {}");
+        assertEquals(1, createdFile.getHunkCount());
+        assertTrue(createdFile.isNewFileHunk(0));
+        assertEquals(1, createdFile.getNewStartingLine(0));
+        assertEquals(12, createdFile.getNewEndingLine(0));
+    }
+}
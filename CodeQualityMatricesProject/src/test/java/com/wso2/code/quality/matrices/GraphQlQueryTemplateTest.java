@@ -0,0 +1,83 @@
+/*
+ * Copyright (c) 2017, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ *
+ * WSO2 Inc. licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.wso2.code.quality.matrices;
+
+import junit.framework.TestCase;
+import org.json.JSONObject;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Tests building batched GraphQL queries from a GraphQlQueryTemplate.
+ */
+public class GraphQlQueryTemplateTest extends TestCase {
+
+    private static final GraphQlQueryTemplate TEMPLATE = new GraphQlQueryTemplate("Files", "f",
+            "repository(owner: $owner, name: $name){ object(expression: $path){ id } }", "owner", "name", "path");
+
+    public void testValuesAreSentAsVariablesOfTheAliases() {
+        List<List<String>> itemValues = Arrays.asList(Arrays.asList("wso2", "carbon-kernel", "master:pom.xml"),
+                Arrays.asList("wso2", "product-is", "master:docs/\"quoted\" \\ name.md"));
+
+        JSONObject queryObject = TEMPLATE.newQueryObject(itemValues);
+
+        assertEquals("query Files($owner0: String!, $name0: String!, $path0: String!, $owner1: String!, $name1: String!,"
+                + " $path1: String!){" + RateLimitScheduler.GRAPHQL_RATE_LIMIT_SELECTION
+                + " f0: repository(owner: $owner0, name: $name0){ object(expression: $path0){ id } }"
+                + " f1: repository(owner: $owner1, name: $name1){ object(expression: $path1){ id } }}",
+                queryObject.getString("query"));
+        JSONObject variables = queryObject.getJSONObject("variables");
+        assertEquals(6, variables.length());
+        assertEquals("product-is", variables.getString("name1"));
+        // the value is escaped only by the JSON of the request body
+        assertEquals("master:docs/\"quoted\" \\ name.md", new JSONObject(queryObject.toString())
+                .getJSONObject("variables").getString("path1"));
+        // the query text of a batch size is built once and shared by the later batches of that size
+        assertSame(queryObject.getString("query"), TEMPLATE.newQueryObject(itemValues).getString("query"));
+        assertEquals("f1", TEMPLATE.aliasOf(1));
+    }
+
+    public void testVariablesMayHaveAnotherType() {
+        GraphQlQueryTemplate template = new GraphQlQueryTemplate("Reviews", "r",
+                "node(id: $id){ ... on PullRequest{ reviews(first: 100, after: $cursor){ totalCount } } }", "id: ID!", "cursor");
+
+        assertEquals("query Reviews($id0: ID!, $cursor0: String!){" + RateLimitScheduler.GRAPHQL_RATE_LIMIT_SELECTION
+                + " r0: node(id: $id0){ ... on PullRequest{ reviews(first: 100, after: $cursor0){ totalCount } } }}",
+                template.queryOf(1));
+        assertEquals("PR_1", template.newQueryObject(Collections.singletonList(Arrays.asList("PR_1", "c1")))
+                .getJSONObject("variables").getString("id0"));
+    }
+
+    public void testSelectionIsCheckedAgainstTheVariables() {
+        try {
+            new GraphQlQueryTemplate("Files", "f", "repository(owner: $owner, name: $repository){ id }", "owner", "name");
+            fail("A selection referring to an unknown variable should be rejected");
+        } catch (IllegalArgumentException e) {
+            assertTrue(e.getMessage().contains("$repository"));
+        }
+        try {
+            new GraphQlQueryTemplate("Files", "f", "repository(owner: $owner, name: \"x\"){ id }", "owner", "name");
+            fail("A variable which is not used by the selection should be rejected");
+        } catch (IllegalArgumentException e) {
+            assertTrue(e.getMessage().contains("name"));
+        }
+    }
+}
@@ -0,0 +1,106 @@
+/*
+ * Copyright (c) 2017, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ *
+ * WSO2 Inc. licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.wso2.code.quality.matrices;
+
+import com.sun.net.httpserver.HttpExchange;
+import junit.framework.TestCase;
+import org.apache.http.HttpResponse;
+import org.apache.http.client.methods.HttpGet;
+import org.apache.http.util.EntityUtils;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Tests the blocking execution modes of the HttpTransport against a local server counting the calls in flight.
+ */
+public class HttpTransportTest extends TestCase {
+
+    private static final String RESPONSE = "{\"ok\":true}";
+
+    private FakeGitHubServer server;
+    private String url;
+    private final AtomicInteger callsInFlight = new AtomicInteger();
+    private final AtomicInteger maxCallsInFlight = new AtomicInteger();
+
+    @Override
+    protected void setUp() throws Exception {
+        // the calls are handled at once, so that only the transport limits the calls in flight
+        server = new FakeGitHubServer(10);
+        server.handle("/", this::handle);
+        url = server.getUrl() + "/search/commits";
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        server.close();
+        System.clearProperty("cqm.executionMode");
+    }
+
+    public void testPlatformThreadsAreCappedPerUpstream() throws Exception {
+        assertCallsAreCappedPerUpstream(ExecutionMode.PLATFORM);
+    }
+
+    public void testVirtualThreadsAreCappedPerUpstreamWhenAvailable() throws Exception {
+        System.setProperty("cqm.executionMode", "virtual");
+        if (!ExecutionMode.isVirtualThreadsAvailable()) {
+            assertEquals(ExecutionMode.PLATFORM, ExecutionMode.fromSystemProperties());
+            return;
+        }
+        assertEquals(ExecutionMode.VIRTUAL, ExecutionMode.fromSystemProperties());
+        assertCallsAreCappedPerUpstream(ExecutionMode.VIRTUAL);
+    }
+
+    private void assertCallsAreCappedPerUpstream(ExecutionMode executionMode) throws Exception {
+        try (HttpTransport httpTransport = new HttpTransport(10, 10, 5000, 5000, executionMode, 2, 10)) {
+            List<CompletableFuture<HttpResponse>> futureResponses = new ArrayList<>();
+            for (int i = 0; i < 10; i++) {
+                futureResponses.add(httpTransport.executeAsync(new HttpGet(url)));
+            }
+            for (CompletableFuture<HttpResponse> futureResponse : futureResponses) {
+                HttpResponse response = futureResponse.get();
+                assertEquals(200, response.getStatusLine().getStatusCode());
+                assertEquals(RESPONSE, EntityUtils.toString(response.getEntity()));
+            }
+            assertEquals(2, maxCallsInFlight.get());
+
+            // the blocking calls share the permits of the upstream
+            maxCallsInFlight.set(0);
+            HttpResponse response = httpTransport.execute(new HttpGet(url));
+            assertEquals(RESPONSE, EntityUtils.toString(response.getEntity()));
+            assertEquals(1, maxCallsInFlight.get());
+        }
+    }
+
+    private void handle(HttpExchange exchange) throws IOException {
+        maxCallsInFlight.accumulateAndGet(callsInFlight.incrementAndGet(), Math::max);
+        try {
+            Thread.sleep(50);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } finally {
+            // counted out before responding, as the permit of the call is given back once the response is read
+            callsInFlight.decrementAndGet();
+        }
+        FakeGitHubServer.send(exchange, 200, RESPONSE);
+    }
+}
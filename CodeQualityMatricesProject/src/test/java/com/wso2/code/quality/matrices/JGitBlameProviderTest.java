@@ -0,0 +1,117 @@
+/*
+ * Copyright (c) 2017, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ *
+ * WSO2 Inc. licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+
+package com.wso2.code.quality.matrices;
+
+import junit.framework.TestCase;
+import org.eclipse.jgit.api.Git;
+import org.eclipse.jgit.lib.PersonIdent;
+import org.eclipse.jgit.revwalk.RevCommit;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TimeZone;
+import java.util.stream.Stream;
+
+/**
+ * Tests taking the blames from a throwaway local repository with the JGitBlameProvider.
+ */
+public class JGitBlameProviderTest extends TestCase {
+
+    private Path mirrorDirectory;
+    private final List<BlameKey> fallbackKeys = new ArrayList<>();
+
+    @Override
+    protected void setUp() throws Exception {
+        mirrorDirectory = Files.createTempDirectory("mirrors");
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        try (Stream<Path> paths = Files.walk(mirrorDirectory)) {
+            paths.sorted(Comparator.reverseOrder()).forEach(path -> path.toFile().delete());
+        }
+    }
+
+    public void testBlamesAreTakenFromLocalMirror() throws Exception {
+        RevCommit firstCommit;
+        RevCommit secondCommit;
+        try (Git git = Git.init().setDirectory(mirrorDirectory.resolve("wso2/carbon-kernel").toFile()).call()) {
+            firstCommit = commit(git, "Alice", 1000, "one\ntwo\nthree\nfour\nfive\n");
+            secondCommit = commit(git, "Bob", 2000, "one\nTWO\nTHREE\nfour\nfive\nsix\n");
+        }
+        BlameProvider fallbackBlameProvider = (blameKeys, parentCommitsRequired, gitHubToken) -> {
+            fallbackKeys.addAll(blameKeys);
+            return new HashMap<>();
+        };
+
+        try (JGitBlameProvider blameProvider = new JGitBlameProvider(mirrorDirectory, new BlameCache(1024 * 1024, null),
+                fallbackBlameProvider)) {
+            BlameKey key = new BlameKey("wso2/carbon-kernel", secondCommit.name(), "File.java");
+            BlameKey missingFileKey = new BlameKey("wso2/carbon-kernel", secondCommit.name(), "Missing.java");
+            BlameKey notMirroredKey = new BlameKey("wso2/product-is", secondCommit.name(), "File.java");
+            Map<BlameKey, FileBlame> blames = blameProvider.getBlames(Arrays.asList(key, missingFileKey, notMirroredKey), true, "token");
+
+            FileBlame blame = blames.get(key);
+            assertEquals(4, blame.getRangeCount());
+            assertEquals(2, blame.getStartingLine(1));
+            assertEquals(3, blame.getEndingLine(1));
+            assertEquals("Bob", blame.getAuthorName(blame.findRangeIndexOfLine(2)));
+            assertEquals("Alice", blame.getAuthorName(blame.findRangeIndexOfLine(5)));
+            assertEquals(secondCommit.name(), blame.getCommitHash(blame.findRangeIndexOfLine(6)));
+            assertEquals(firstCommit.name(), blame.getParentCommitHash(blame.findRangeIndexOfLine(2)));
+            assertNull(blame.getParentCommitHash(blame.findRangeIndexOfLine(1)));
+            assertTrue(blame.getAge(1) < blame.getAge(0));
+
+            assertFalse(blames.containsKey(missingFileKey));
+            assertEquals(Arrays.asList(notMirroredKey), fallbackKeys);
+
+            Collection<BlameKey> unknownCommit = Arrays.asList(new BlameKey("wso2/carbon-kernel", "0123456789abcdef0123456789abcdef01234567", "File.java"));
+            blameProvider.getBlames(unknownCommit, false, "token");
+            assertEquals("commits which are not in the mirror are taken from the fallback", 2, fallbackKeys.size());
+
+            // the file is blamed at the first parent of a commit as it was before the commit
+            BlameKey firstParentKey = new BlameKey("wso2/carbon-kernel", secondCommit.name() + "^", "File.java");
+            FileBlame blameAtFirstParent = blameProvider.getBlames(Arrays.asList(firstParentKey), false, "token").get(firstParentKey);
+            assertEquals(1, blameAtFirstParent.getRangeCount());
+            assertEquals(5, blameAtFirstParent.getEndingLine(0));
+            assertEquals("Alice", blameAtFirstParent.getAuthorName(0));
+            assertEquals(firstCommit.name(), blameAtFirstParent.getCommitHash(0));
+            blameProvider.getBlames(Arrays.asList(new BlameKey("wso2/carbon-kernel", "0123456789abcdef0123456789abcdef01234567^",
+                    "File.java")), false, "token");
+            assertEquals("parents of commits which are not in the mirror are taken from the fallback", 3, fallbackKeys.size());
+        }
+    }
+
+    private RevCommit commit(Git git, String author, long epochSeconds, String content) throws Exception {
+        Files.write(git.getRepository().getWorkTree().toPath().resolve("File.java"), content.getBytes(StandardCharsets.UTF_8));
+        git.add().addFilepattern("File.java").call();
+        PersonIdent personIdent = new PersonIdent(author, author.toLowerCase() + "@wso2.com", new Date(epochSeconds * 1000), TimeZone.getTimeZone("UTC"));
+        return git.commit().setMessage("change by " + author).setAuthor(personIdent).setCommitter(personIdent).call();
+    }
+}
@@ -0,0 +1,103 @@
+/*
+ * Copyright (c) 2017, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ *
+ * WSO2 Inc. licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.wso2.code.quality.matrices;
+
+import junit.framework.TestCase;
+
+import java.io.StringWriter;
+import java.lang.management.ManagementFactory;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Map;
+import javax.management.ObjectName;
+
+/**
+ * Tests the Metrics registry and its export in the Prometheus text format and through JMX.
+ */
+public class MetricsTest extends TestCase {
+
+    public void testHistogramBucketsAreCumulative() throws Exception {
+        Metrics metrics = new Metrics();
+        Metrics.Histogram histogram = metrics.histogram("test_duration_seconds", "Test durations", "stage", "blame");
+        histogram.observe(0.003);
+        histogram.observe(0.2);
+        histogram.observe(1000);
+
+        String text = prometheusTextOf(metrics);
+        assertTrue(text.contains("# TYPE test_duration_seconds histogram\n"));
+        assertTrue(text.contains("test_duration_seconds_bucket{stage=\"blame\",le=\"0.005\"} 1\n"));
+        assertTrue(text.contains("test_duration_seconds_bucket{stage=\"blame\",le=\"0.25\"} 2\n"));
+        assertTrue(text.contains("test_duration_seconds_bucket{stage=\"blame\",le=\"300\"} 2\n"));
+        assertTrue(text.contains("test_duration_seconds_bucket{stage=\"blame\",le=\"+Inf\"} 3\n"));
+        assertTrue(text.contains("test_duration_seconds_sum{stage=\"blame\"} 1000.203\n"));
+        assertTrue(text.contains("test_duration_seconds_count{stage=\"blame\"} 3\n"));
+    }
+
+    public void testApiCallsAreCountedByEndpointAndStatus() throws Exception {
+        Metrics metrics = new Metrics();
+        metrics.recordApiCall("commit", "200", System.nanoTime(), 100);
+        metrics.recordApiCall("commit", "200", System.nanoTime(), 50);
+        metrics.recordApiCall("commit", "403", System.nanoTime(), 0);
+
+        Map<String, Double> snapshot = metrics.snapshot();
+        assertEquals(2.0, snapshot.get(Metrics.API_CALLS + "{endpoint=\"commit\",status=\"200\"}"));
+        assertEquals(1.0, snapshot.get(Metrics.API_CALLS + "{endpoint=\"commit\",status=\"403\"}"));
+        assertEquals(150.0, snapshot.get(Metrics.API_RESPONSE_BYTES + "{endpoint=\"commit\"}"));
+        assertEquals(3.0, snapshot.get(Metrics.API_CALL_DURATION + "_count{endpoint=\"commit\"}"));
+    }
+
+    public void testCacheHitRatioFollowsTheLookups() {
+        Metrics metrics = new Metrics();
+        metrics.recordCacheRequest("blame", true);
+        metrics.recordCacheRequest("blame", true);
+        metrics.recordCacheRequest("blame", true);
+        metrics.recordCacheRequest("blame", false);
+
+        Map<String, Double> snapshot = metrics.snapshot();
+        assertEquals(3.0, snapshot.get(Metrics.CACHE_REQUESTS + "{cache=\"blame\",result=\"hit\"}"));
+        assertEquals(1.0, snapshot.get(Metrics.CACHE_REQUESTS + "{cache=\"blame\",result=\"miss\"}"));
+        assertEquals(0.75, snapshot.get(Metrics.CACHE_HIT_RATIO + "{cache=\"blame\"}"));
+    }
+
+    public void testMetricsAreExportedThroughJmxAndToAFile() throws Exception {
+        Metrics metrics = new Metrics();
+        metrics.gauge(Metrics.RATE_LIMIT_REMAINING, "Remaining budget", () -> 4999, "pool", "core", "token", "0");
+        Path directory = Files.createTempDirectory("metrics");
+        Path file = directory.resolve("cqm.prom");
+        String attribute = Metrics.RATE_LIMIT_REMAINING + "{pool=\"core\",token=\"0\"}";
+
+        try (MetricsExporter exporter = new MetricsExporter(metrics, true, file, 3600)) {
+            assertEquals(4999.0, ManagementFactory.getPlatformMBeanServer()
+                    .getAttribute(new ObjectName(MetricsExporter.OBJECT_NAME), attribute));
+            exporter.writeFile();
+            assertTrue(new String(Files.readAllBytes(file), StandardCharsets.UTF_8).contains(attribute + " 4999\n"));
+        } finally {
+            Files.deleteIfExists(file);
+            Files.delete(directory);
+        }
+        assertFalse(ManagementFactory.getPlatformMBeanServer().isRegistered(new ObjectName(MetricsExporter.OBJECT_NAME)));
+    }
+
+    private static String prometheusTextOf(Metrics metrics) throws Exception {
+        StringWriter writer = new StringWriter();
+        metrics.writePrometheusText(writer);
+        return writer.toString();
+    }
+}
@@ -0,0 +1,230 @@
+/*
+ * Copyright (c) 2017, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ *
+ * WSO2 Inc. licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+
+package com.wso2.code.quality.matrices;
+
+import com.sun.net.httpserver.HttpExchange;
+import junit.framework.TestCase;
+import org.apache.http.message.BasicHeader;
+import org.json.JSONArray;
+import org.json.JSONObject;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Collectors;
+
+/**
+ * Tests reading the pages of paginated responses of a local fake github REST API with the PaginatedFetcher.
+ */
+public class PaginatedFetcherTest extends TestCase {
+
+    private static final int REVIEWS_PER_PAGE = 2;
+
+    private FakeGitHubServer server;
+    private HttpTransport httpTransport;
+    private PaginatedFetcher paginatedFetcher;
+    private String baseUrl;
+    private final AtomicInteger pageCalls = new AtomicInteger();
+    private final AtomicInteger serverErrors = new AtomicInteger();
+    private final CountDownLatch slowResponse = new CountDownLatch(1);
+
+    @Override
+    protected void setUp() throws Exception {
+        server = new FakeGitHubServer();
+        server.handle("/repos", this::handle);
+        baseUrl = server.getUrl();
+        httpTransport = server.getHttpTransport();
+        paginatedFetcher = new PaginatedFetcher(new RestApiCaller(httpTransport), 2);
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        server.close();
+    }
+
+    public void testAllPagesAreReadOnlyWhenConsumed() {
+        List<Review> reviews = paginatedFetcher.stream(reviewsUrl(5), "token", false, true, ResponseDecoders::decodeReviews)
+                .collect(Collectors.toList());
+        assertEquals(5, reviews.size());
+        assertEquals("user4", reviews.get(4).getUserLogin());
+        assertEquals(3, pageCalls.get());
+
+        pageCalls.set(0);
+        // the first approval is on the first page, so the other pages are never requested
+        assertTrue(paginatedFetcher.stream(reviewsUrl(5), "token", false, true, ResponseDecoders::decodeReviews)
+                .anyMatch(review -> "APPROVED".equals(review.getState())));
+        assertEquals(1, pageCalls.get());
+    }
+
+    public void testListingsAreReadConcurrentlyInTheirOrder() throws CodeQualityMatricesException {
+        Map<String, String> firstPageUrls = new LinkedHashMap<>();
+        for (int reviewCount : new int[]{7, 0, 3, 1}) {
+            firstPageUrls.put("pr" + reviewCount, reviewsUrl(reviewCount));
+        }
+        Map<String, Long> reviewCounts = paginatedFetcher.fetchConcurrently(firstPageUrls, "token", false, true,
+                ResponseDecoders::decodeReviews, reviews -> reviews.count());
+        assertEquals(Arrays.asList("pr7", "pr0", "pr3", "pr1"), Arrays.asList(reviewCounts.keySet().toArray()));
+        assertEquals(Arrays.asList(7L, 0L, 3L, 1L), Arrays.asList(reviewCounts.values().toArray()));
+
+        firstPageUrls.put("unauthorized", baseUrl + "/repos/unauthorized");
+        try {
+            paginatedFetcher.fetchConcurrently(firstPageUrls, "token", false, true, ResponseDecoders::decodeReviews,
+                    reviews -> reviews.count());
+            fail("The failed call should be thrown");
+        } catch (CodeQualityMatricesException e) {
+            assertTrue(e.getMessage().contains("401"));
+        }
+    }
+
+    public void testListingsAreReadAsynchronouslyUpToTheLimit() throws CodeQualityMatricesException {
+        Map<String, String> firstPageUrls = new LinkedHashMap<>();
+        for (int reviewCount : new int[]{7, 0, 3}) {
+            firstPageUrls.put("pr" + reviewCount, reviewsUrl(reviewCount));
+        }
+        Map<String, List<Review>> reviews = Futures.join(paginatedFetcher.fetchAllAsync(firstPageUrls, "token", false, true,
+                ResponseDecoders::decodeReviews, review -> true, 3));
+        assertEquals(Arrays.asList("pr7", "pr0", "pr3"), Arrays.asList(reviews.keySet().toArray()));
+        assertEquals(Arrays.asList("user0", "user1", "user2"), reviews.get("pr7").stream()
+                .map(Review::getUserLogin).collect(Collectors.toList()));
+        assertEquals(0, reviews.get("pr0").size());
+        assertEquals(3, reviews.get("pr3").size());
+        // the limit is reached on the second page of the first listing, so its other pages are never requested
+        assertEquals(2 + 1 + 2, pageCalls.get());
+
+        firstPageUrls.put("unauthorized", baseUrl + "/repos/unauthorized");
+        try {
+            Futures.join(paginatedFetcher.fetchAllAsync(firstPageUrls, "token", false, true, ResponseDecoders::decodeReviews,
+                    review -> true, Integer.MAX_VALUE));
+            fail("The failed call should fail the future");
+        } catch (CodeQualityMatricesException e) {
+            assertTrue(e.getMessage().contains("401"));
+        }
+    }
+
+    public void testServerErrorsAreRetriedWithBackoff() throws CodeQualityMatricesException {
+        RestApiCaller restApiCaller = new RestApiCaller(httpTransport, null, null, new RetryPolicy(3, 1, 10));
+        serverErrors.set(2);
+        List<Review> reviews = restApiCaller.callApi(baseUrl + "/repos/unavailable", "token", false, true,
+                ResponseDecoders::decodeReviews);
+        assertEquals("user0", reviews.get(0).getUserLogin());
+        assertEquals(3, pageCalls.get());
+
+        pageCalls.set(0);
+        serverErrors.set(2);
+        reviews = Futures.join(restApiCaller.callApiAsync(baseUrl + "/repos/unavailable", "token", false, true,
+                ResponseDecoders::decodeReviews));
+        assertEquals("user0", reviews.get(0).getUserLogin());
+        assertEquals(3, pageCalls.get());
+
+        // the response of the last attempt is taken as it is once all the attempts failed
+        pageCalls.set(0);
+        serverErrors.set(3);
+        assertNull(restApiCaller.callApi(baseUrl + "/repos/unavailable", "token", false, true, ResponseDecoders::decodeReviews));
+        assertEquals(3, pageCalls.get());
+    }
+
+    public void testIdenticalBlockingCallsInFlightAreShared() throws Exception {
+        RestApiCaller restApiCaller = new RestApiCaller(httpTransport);
+        // the calls are only identical if they share the decoder
+        ResponseDecoder<List<Review>> responseDecoder = ResponseDecoders::decodeReviews;
+        ExecutorService executorService = Executors.newFixedThreadPool(2);
+        try {
+            Future<List<Review>> firstCall = executorService.submit(() -> restApiCaller.callApi(baseUrl
+                    + "/repos/slow?per_page=100&page=1", "token", false, true, responseDecoder));
+            while (pageCalls.get() == 0) {
+                Thread.sleep(1);
+            }
+            // the same call with its query parameters in another order waits for the call in flight
+            Future<List<Review>> secondCall = executorService.submit(() -> restApiCaller.callApi(baseUrl
+                    + "/repos/slow?page=1&per_page=100", "token", false, true, responseDecoder));
+            while (restApiCaller.getSavedCalls() == 0) {
+                Thread.sleep(1);
+            }
+            slowResponse.countDown();
+
+            assertEquals("user0", firstCall.get().get(0).getUserLogin());
+            assertEquals("user0", secondCall.get().get(0).getUserLogin());
+            assertEquals(1, pageCalls.get());
+            // the saved calls are counted for each caller
+            assertEquals(0, new RestApiCaller(httpTransport).getSavedCalls());
+        } finally {
+            executorService.shutdownNow();
+        }
+    }
+
+    public void testNextPageIsFoundInLinkHeader() {
+        assertEquals("https://api.github.com/repositories/1/pulls/2/reviews?page=3",
+                RestApiCaller.findNextPageUrl(new BasicHeader("Link",
+                        "<https://api.github.com/repositories/1/pulls/2/reviews?page=1>; rel=\"prev\", "
+                                + "<https://api.github.com/repositories/1/pulls/2/reviews?page=3>; rel=\"next\", "
+                                + "<https://api.github.com/repositories/1/pulls/2/reviews?page=4>; rel=\"last\"")));
+        assertNull(RestApiCaller.findNextPageUrl(new BasicHeader("Link",
+                "<https://api.github.com/repositories/1/pulls/2/reviews?page=1>; rel=\"first\"")));
+        assertNull(RestApiCaller.findNextPageUrl(null));
+    }
+
+    private String reviewsUrl(int reviewCount) {
+        return baseUrl + "/repos/wso2/carbon-kernel/pulls/" + reviewCount + "/reviews?page=1";
+    }
+
+    private void handle(HttpExchange exchange) throws IOException {
+        pageCalls.incrementAndGet();
+        String path = exchange.getRequestURI().getPath();
+        if (path.endsWith("unauthorized")) {
+            FakeGitHubServer.send(exchange, 401, "{\"message\":\"Bad credentials\"}");
+            return;
+        }
+        if (path.endsWith("slow")) {
+            try {
+                slowResponse.await();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            path = "unavailable";
+        }
+        if (path.endsWith("unavailable")) {
+            if (serverErrors.getAndDecrement() > 0) {
+                FakeGitHubServer.send(exchange, 503, "{\"message\":\"Service Unavailable\"}");
+            } else {
+                FakeGitHubServer.send(exchange, 200, new JSONArray().put(new JSONObject().put("state", "APPROVED")
+                        .put("user", new JSONObject().put("login", "user0"))).toString());
+            }
+            return;
+        }
+        int reviewCount = Integer.parseInt(path.split("/")[5]);
+        int page = Integer.parseInt(exchange.getRequestURI().getQuery().substring("page=".length()));
+        JSONArray reviews = new JSONArray();
+        for (int i = (page - 1) * REVIEWS_PER_PAGE; i < Math.min(reviewCount, page * REVIEWS_PER_PAGE); i++) {
+            reviews.put(new JSONObject().put("state", i % 2 == 0 ? "APPROVED" : "COMMENTED")
+                    .put("user", new JSONObject().put("login", "user" + i)));
+        }
+        if (page * REVIEWS_PER_PAGE < reviewCount) {
+            exchange.getResponseHeaders().add("Link", "<" + baseUrl + path + "?page=" + (page + 1) + ">; rel=\"next\"");
+        }
+        FakeGitHubServer.send(exchange, 200, reviews.toString());
+    }
+}
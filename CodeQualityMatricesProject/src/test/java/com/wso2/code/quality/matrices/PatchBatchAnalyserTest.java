@@ -0,0 +1,63 @@
+/*
+ * Copyright (c) 2017, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ *
+ * WSO2 Inc. licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+
+package com.wso2.code.quality.matrices;
+
+import junit.framework.TestCase;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.StringReader;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Tests reading a batch of patches and attributing the results of the commits back to the patches.
+ */
+public class PatchBatchAnalyserTest extends TestCase {
+
+    public void testPatchIdsAreReadOnce() throws IOException {
+        List<String> patchIds = PatchBatchAnalyser.readPatchIds(new BufferedReader(new StringReader(
+                "WSO2-CARBON-PATCH-4.4.0-0001\n\n# skipped\n  WSO2-CARBON-PATCH-4.4.0-0002 \nWSO2-CARBON-PATCH-4.4.0-0001\n")));
+
+        assertEquals(Arrays.asList("WSO2-CARBON-PATCH-4.4.0-0001", "WSO2-CARBON-PATCH-4.4.0-0002"), patchIds);
+    }
+
+    public void testSharedCommitIsAttributedToEveryPatch() {
+        Map<String, List<String>> commitsOfPatches = new LinkedHashMap<>();
+        commitsOfPatches.put("p1", Arrays.asList("c1", "c2"));
+        commitsOfPatches.put("p2", Arrays.asList("c2", "c3"));
+        Map<String, AuthorsAndCommits> authorsAndCommitsOfCommits = new HashMap<>();
+        authorsAndCommitsOfCommits.put("c1", new AuthorsAndCommits(Collections.singleton("Alice"), Collections.singleton("a1")));
+        authorsAndCommitsOfCommits.put("c2", new AuthorsAndCommits(Collections.singleton("Bob"), Collections.singleton("b1")));
+        authorsAndCommitsOfCommits.put("c3", AuthorsAndCommits.EMPTY);
+
+        Map<String, AuthorsAndCommits> authorsAndCommitsOfPatches =
+                PatchBatchAnalyser.attributeToPatches(commitsOfPatches, authorsAndCommitsOfCommits);
+
+        assertEquals(new HashSet<>(Arrays.asList("Alice", "Bob")), authorsAndCommitsOfPatches.get("p1").getAuthorNames());
+        assertEquals(Collections.singleton("Bob"), authorsAndCommitsOfPatches.get("p2").getAuthorNames());
+        assertEquals(Collections.singleton("b1"), authorsAndCommitsOfPatches.get("p2").getCommitHashes());
+    }
+}
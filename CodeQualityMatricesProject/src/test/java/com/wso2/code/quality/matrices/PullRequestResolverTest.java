@@ -0,0 +1,232 @@
+/*
+ * Copyright (c) 2017, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ *
+ * WSO2 Inc. licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+
+package com.wso2.code.quality.matrices;
+
+import com.sun.net.httpserver.HttpExchange;
+import junit.framework.TestCase;
+import org.json.JSONArray;
+import org.json.JSONObject;
+import org.json.JSONTokener;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Tests finding the reviewers of many commits with the PullRequestResolver against a local fake github GraphQL server
+ * which fails the queries searching too many commits.
+ */
+public class PullRequestResolverTest extends TestCase {
+
+    private static final int MAX_ALIASES_PER_QUERY = 3;
+    private static final Pattern ALIAS_PATTERN = Pattern.compile("(p\\d+): search\\(query: \\$(\\w+),");
+    private static final Pattern NODE_ALIAS_PATTERN = Pattern.compile("(r\\d+): node\\(id: \\$(\\w+)\\)");
+
+    private FakeGitHubServer server;
+    private GraphQlApiCaller graphQlApiCaller;
+    private final List<Integer> aliasesPerQuery = new ArrayList<>();
+    private final AtomicInteger flakyQueries = new AtomicInteger();
+
+    @Override
+    protected void setUp() throws Exception {
+        server = new FakeGitHubServer();
+        server.handle("/graphql", this::handle);
+        graphQlApiCaller = new GraphQlApiCaller(server.getHttpTransport(), null, server.getUrl() + "/graphql", new RetryPolicy(3, 1, 1));
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        server.close();
+    }
+
+    public void testReviewersOfAllCommitsAreFoundInBatchedQueries() throws CodeQualityMatricesException {
+        Set<String> commitHashes = new LinkedHashSet<>();
+        for (int i = 0; i < 6; i++) {
+            commitHashes.add("commit" + i);
+        }
+        commitHashes.add("broken");
+
+        Reviewer reviewer = new Reviewer();
+        reviewer.collectReviewers(commitHashes, "token", new PullRequestResolver(graphQlApiCaller, 6));
+
+        // reviews of the open pull request and of the pull request outside wso2 are not taken
+        assertEquals(new HashSet<>(Arrays.asList("approver0", "approver1", "approver2")), reviewer.getApprovedReviewers());
+        assertEquals(new HashSet<>(Arrays.asList("commenter0", "commenter1", "commenter2", "closedCommenter0",
+                "closedCommenter1", "closedCommenter2", "closedCommenter3", "closedCommenter4", "closedCommenter5")),
+                reviewer.getCommentedReviewers());
+        // the first query of seven commits is too large for the server, so it is split into smaller queries, while the
+        // batches are sent at once and may reach the server in any order
+        List<Integer> sortedAliasesPerQuery = new ArrayList<>(aliasesPerQuery);
+        Collections.sort(sortedAliasesPerQuery);
+        assertEquals(Arrays.asList(1, 3, 3, 6), sortedAliasesPerQuery);
+    }
+
+    public void testFurtherPagesOfPullRequestsAndReviewsAreQueried() throws CodeQualityMatricesException {
+        PullRequestResolver pullRequestResolver = new PullRequestResolver(graphQlApiCaller, 6);
+
+        Map<String, List<PullRequest>> pullRequestsOfCommits = pullRequestResolver.findPullRequests(
+                Collections.singletonList("paged"), "token");
+
+        List<PullRequest> pullRequests = pullRequestsOfCommits.get("paged");
+        assertEquals(2, pullRequests.size());
+        assertEquals(400, pullRequests.get(0).getNumber());
+        assertEquals(Arrays.asList("pagedApprover0", "pagedApprover1"), loginsOf(pullRequests.get(0)));
+        assertEquals(401, pullRequests.get(1).getNumber());
+        assertEquals(Collections.singletonList("pagedApprover2"), loginsOf(pullRequests.get(1)));
+        // the search, the next page of the reviews and the next page of the search
+        assertEquals(3, aliasesPerQuery.size());
+    }
+
+    public void testSingleCommitFailedWith502IsRetried() throws CodeQualityMatricesException {
+        PullRequestResolver pullRequestResolver = new PullRequestResolver(graphQlApiCaller, 6);
+
+        Map<String, List<PullRequest>> pullRequestsOfCommits = pullRequestResolver.findPullRequests(
+                Arrays.asList("commit0", "flaky"), "token");
+
+        // the batch is split down to the flaky commit, which is then searched again until the server answers it
+        assertEquals(2, pullRequestsOfCommits.size());
+        assertEquals(Collections.emptyList(), pullRequestsOfCommits.get("flaky"));
+        assertEquals(Arrays.asList(2, 1, 1, 1, 1), aliasesPerQuery);
+    }
+
+    public void testCommitNotSearchedAfterAllAttemptsFailsTheSearch() {
+        PullRequestResolver pullRequestResolver = new PullRequestResolver(graphQlApiCaller, 6);
+        List<String> commitHashes = Arrays.asList("commit0", "unavailable");
+
+        try {
+            pullRequestResolver.findPullRequests(commitHashes, "token");
+            fail("the commit which could not be searched should not be left out silently");
+        } catch (CodeQualityMatricesException e) {
+            assertTrue(e.getMessage().contains("unavailable"));
+        }
+        try {
+            Futures.join(pullRequestResolver.findPullRequestsAsync(commitHashes, "token"));
+            fail("the commit which could not be searched should not be left out silently");
+        } catch (CodeQualityMatricesException e) {
+            assertTrue(e.getMessage().contains("after 3 attempts"));
+        }
+    }
+
+    private static List<String> loginsOf(PullRequest pullRequest) {
+        List<String> logins = new ArrayList<>();
+        pullRequest.getReviews().forEach(review -> logins.add(review.getUserLogin()));
+        return logins;
+    }
+
+    private void handle(HttpExchange exchange) throws IOException {
+        JSONObject queryObject = new JSONObject(new JSONTokener(exchange.getRequestBody()));
+        JSONObject variables = queryObject.getJSONObject("variables");
+        Matcher matcher = ALIAS_PATTERN.matcher(queryObject.getString("query"));
+        JSONObject data = new JSONObject().put("rateLimit", new JSONObject().put("cost", 1).put("remaining", 4999)
+                .put("resetAt", "2030-01-01T00:00:00Z"));
+        JSONArray errors = new JSONArray();
+        int aliases = 0;
+        boolean failed = false;
+        Matcher nodeMatcher = NODE_ALIAS_PATTERN.matcher(queryObject.getString("query"));
+        while (nodeMatcher.find()) {
+            aliases++;
+            // the second page of the reviews of the paged pull request
+            assertEquals("PR400", variables.getString(nodeMatcher.group(2)));
+            assertEquals("reviews1", variables.getString(nodeMatcher.group(2).replace("id", "cursor")));
+            data.put(nodeMatcher.group(1), pullRequest("wso2/carbon-kernel", 400, "MERGED", new JSONArray()
+                    .put(review("APPROVED", "pagedApprover1"))));
+        }
+        while (matcher.find()) {
+            aliases++;
+            String alias = matcher.group(1);
+            String commitHash = variables.getString(matcher.group(2)).replace(" type:pr", "");
+            if (commitHash.equals("paged")) {
+                String cursorVariable = matcher.group(2).replace("query", "cursor");
+                if (!variables.has(cursorVariable)) {
+                    JSONObject pagedPullRequest = pullRequest("wso2/carbon-kernel", 400, "MERGED", new JSONArray()
+                            .put(review("APPROVED", "pagedApprover0")));
+                    pagedPullRequest.put("id", "PR400").getJSONObject("reviews").put("pageInfo", pageInfo("reviews1"));
+                    data.put(alias, new JSONObject().put("pageInfo", pageInfo("search1"))
+                            .put("nodes", new JSONArray().put(pagedPullRequest)));
+                } else {
+                    assertEquals("search1", variables.getString(cursorVariable));
+                    data.put(alias, new JSONObject().put("pageInfo", new JSONObject().put("hasNextPage", false))
+                            .put("nodes", new JSONArray().put(pullRequest("wso2/carbon-kernel", 401, "MERGED", new JSONArray()
+                                    .put(review("APPROVED", "pagedApprover2"))))));
+                }
+                continue;
+            }
+            // the flaky commit fails its first three queries, and the unavailable commit fails all of them
+            if (commitHash.equals("unavailable") || commitHash.equals("flaky")) {
+                failed |= commitHash.equals("unavailable") || flakyQueries.incrementAndGet() <= 3;
+                data.put(alias, new JSONObject().put("nodes", new JSONArray()));
+                continue;
+            }
+            if (commitHash.equals("broken")) {
+                data.put(alias, JSONObject.NULL);
+                errors.put(new JSONObject().put("path", new JSONArray().put(alias)).put("message", "Search failed"));
+                continue;
+            }
+            int commitNo = Integer.parseInt(commitHash.substring("commit".length()));
+            JSONArray nodes = new JSONArray()
+                    // several of the commits belong to the same pull request
+                    .put(pullRequest("wso2/carbon-kernel", 100 + commitNo % 3, "MERGED", new JSONArray()
+                            .put(review("APPROVED", "approver" + commitNo % 3))
+                            .put(review("COMMENTED", "commenter" + commitNo % 3))))
+                    .put(pullRequest("wso2/carbon-kernel", 150 + commitNo, "CLOSED", new JSONArray()
+                            .put(review("COMMENTED", "closedCommenter" + commitNo))))
+                    .put(pullRequest("wso2/carbon-kernel", 200 + commitNo, "OPEN", new JSONArray()
+                            .put(review("APPROVED", "openApprover"))))
+                    .put(pullRequest("someone/carbon-kernel", 300 + commitNo, "CLOSED", new JSONArray()
+                            .put(review("APPROVED", "forkApprover"))))
+                    // an issue mentioning the commit is received as an empty node
+                    .put(new JSONObject());
+            data.put(alias, new JSONObject().put("nodes", nodes));
+        }
+        aliasesPerQuery.add(aliases);
+        if (aliases > MAX_ALIASES_PER_QUERY || failed) {
+            FakeGitHubServer.send(exchange, 502, "{\"message\":\"Something went wrong while executing your query\"}");
+            return;
+        }
+        JSONObject response = new JSONObject().put("data", data);
+        if (errors.length() > 0) {
+            response.put("errors", errors);
+        }
+        FakeGitHubServer.send(exchange, 200, response.toString());
+    }
+
+    private JSONObject pullRequest(String repository, int number, String state, JSONArray reviews) {
+        return new JSONObject().put("number", number).put("state", state)
+                .put("repository", new JSONObject().put("nameWithOwner", repository))
+                .put("reviews", new JSONObject().put("nodes", reviews));
+    }
+
+    private JSONObject pageInfo(String endCursor) {
+        return new JSONObject().put("hasNextPage", true).put("endCursor", endCursor);
+    }
+
+    private JSONObject review(String state, String login) {
+        return new JSONObject().put("state", state).put("author", new JSONObject().put("login", login));
+    }
+}
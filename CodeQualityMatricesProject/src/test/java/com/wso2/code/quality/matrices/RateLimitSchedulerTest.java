@@ -0,0 +1,270 @@
+/*
+ * Copyright (c) 2017, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ *
+ * WSO2 Inc. licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.wso2.code.quality.matrices;
+
+import com.sun.net.httpserver.HttpExchange;
+import junit.framework.TestCase;
+import org.json.JSONObject;
+
+import java.io.IOException;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Tests the RateLimitScheduler against a local fake github server which rejects the calls exceeding the rate limit
+ * of a token within a one second window, or which rejects the first attempt of each call.
+ */
+public class RateLimitSchedulerTest extends TestCase {
+
+    private static final int SEARCH_LIMIT = 3;
+    private static final int GRAPHQL_LIMIT = 2;
+
+    private FakeGitHubServer server;
+    private String serverUrl;
+    private HttpTransport httpTransport;
+    private final Map<String, AtomicInteger> usedInWindow = new ConcurrentHashMap<>();
+    private final Map<String, AtomicInteger> callsPerToken = new ConcurrentHashMap<>();
+    private final AtomicInteger rejectedCalls = new AtomicInteger();
+    private final AtomicInteger attempts = new AtomicInteger();
+
+    @Override
+    protected void setUp() throws Exception {
+        server = new FakeGitHubServer(8);
+        server.handle("/search/commits", exchange -> handle(exchange, "search", SEARCH_LIMIT, false));
+        server.handle("/graphql", exchange -> handle(exchange, "graphql", GRAPHQL_LIMIT, true));
+        server.handle("/rejected-query", this::rejectFirstAttemptInTheBody);
+        server.handle("/secondary-limit", this::rejectFirstAttemptWithRetryAfter);
+        server.handle("/exhausted", this::rejectEveryAttempt);
+        serverUrl = server.getUrl();
+        httpTransport = server.getHttpTransport();
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        server.close();
+    }
+
+    public void testSearchCallsAreSpreadAcrossTokensAndQueuedUntilReset() throws Exception {
+        RateLimitScheduler rateLimitScheduler = new RateLimitScheduler(Arrays.asList("token-a", "token-b"), serverUrl);
+        RestApiCaller restApiCaller = new RestApiCaller(httpTransport, rateLimitScheduler);
+
+        // each call searches another commit, as the identical calls in flight together are made only once
+        AtomicInteger commitNo = new AtomicInteger();
+        List<Object> responses = callConcurrently(10, () -> restApiCaller.callApi(serverUrl + "/search/commits?q=hash%3A"
+                + commitNo.incrementAndGet(), "ignored-token", true, false));
+
+        for (Object response : responses) {
+            assertTrue(response instanceof JSONObject);
+        }
+        assertEquals("calls exceeding the budget must be queued instead of being rejected", 0, rejectedCalls.get());
+        assertTrue(callsPerToken.get("token-a").get() > 0);
+        assertTrue(callsPerToken.get("token-b").get() > 0);
+        assertFalse(callsPerToken.containsKey("ignored-token"));
+    }
+
+    public void testGraphQlBudgetIsLearntFromTheResponseBody() throws Exception {
+        RateLimitScheduler rateLimitScheduler = new RateLimitScheduler(Arrays.asList("token-a"), serverUrl);
+        GraphQlApiCaller graphQlApiCaller = new GraphQlApiCaller(httpTransport, rateLimitScheduler, serverUrl + "/graphql");
+        JSONObject queryObject = new JSONObject().put("query", "{" + RateLimitScheduler.GRAPHQL_RATE_LIMIT_SELECTION + "}");
+
+        List<Object> responses = callConcurrently(5, () -> graphQlApiCaller.callGraphQlApi(queryObject, "ignored-token"));
+
+        for (Object response : responses) {
+            assertTrue(response instanceof JSONObject);
+        }
+        assertEquals("calls exceeding the budget must be queued instead of being rejected", 0, rejectedCalls.get());
+        assertEquals(5, callsPerToken.get("token-a").get());
+    }
+
+    public void testGraphQlQueryRejectedInTheBodyIsScheduledAgain() throws Exception {
+        RateLimitScheduler rateLimitScheduler = new RateLimitScheduler(Arrays.asList("token-a"), serverUrl);
+        GraphQlApiCaller graphQlApiCaller = new GraphQlApiCaller(httpTransport, rateLimitScheduler, serverUrl + "/rejected-query");
+        JSONObject queryObject = new JSONObject().put("query", "{" + RateLimitScheduler.GRAPHQL_RATE_LIMIT_SELECTION + "}");
+
+        Object response = graphQlApiCaller.callGraphQlApi(queryObject, "ignored-token");
+
+        assertTrue(((JSONObject) response).has("data"));
+        assertEquals(2, attempts.get());
+
+        attempts.set(0);
+        BlameBatchResponse blameBatchResponse = graphQlApiCaller.callGraphQlApiAsync(queryObject, "ignored-token",
+                ResponseDecoders.blameBatchDecoder(false)).get(10, TimeUnit.SECONDS);
+
+        assertTrue(blameBatchResponse.isDataReceived());
+        assertFalse(blameBatchResponse.getRateLimit().isExceeded());
+        assertEquals(2, attempts.get());
+    }
+
+    public void testTokenIsNotUsedUntilRetryAfter() throws Exception {
+        RateLimitScheduler rateLimitScheduler = new RateLimitScheduler(Arrays.asList("token-a"), serverUrl);
+        GraphQlApiCaller graphQlApiCaller = new GraphQlApiCaller(httpTransport, rateLimitScheduler, serverUrl + "/secondary-limit");
+        JSONObject queryObject = new JSONObject().put("query", "{" + RateLimitScheduler.GRAPHQL_RATE_LIMIT_SELECTION + "}");
+        long start = System.nanoTime();
+
+        BlameBatchResponse response = graphQlApiCaller.callGraphQlApiAsync(queryObject, "ignored-token",
+                ResponseDecoders.blameBatchDecoder(false)).get(10, TimeUnit.SECONDS);
+
+        assertTrue(response.isDataReceived());
+        assertEquals(2, attempts.get());
+        assertTrue((System.nanoTime() - start) / 1000000 >= 1000);
+    }
+
+    public void testRejectionOfAnUnscheduledCallIsReported() {
+        GraphQlApiCaller graphQlApiCaller = new GraphQlApiCaller(httpTransport, null, serverUrl + "/secondary-limit");
+        JSONObject queryObject = new JSONObject().put("query", "{" + RateLimitScheduler.GRAPHQL_RATE_LIMIT_SELECTION + "}");
+        try {
+            graphQlApiCaller.callGraphQlApi(queryObject, "token-a");
+            fail("A call rejected due to the rate limit should not be taken as an empty response");
+        } catch (CodeQualityMatricesException e) {
+            assertTrue(e.getMessage().contains("429"));
+        }
+    }
+
+    public void testRestCallStillRejectedAfterAllAttemptsIsReported() throws Exception {
+        RateLimitScheduler rateLimitScheduler = new RateLimitScheduler(Arrays.asList("token-a"), serverUrl);
+        RestApiCaller restApiCaller = new RestApiCaller(httpTransport, rateLimitScheduler);
+        try {
+            restApiCaller.callApi(serverUrl + "/exhausted?page=1", "ignored-token", false, false);
+            fail("A call still rejected due to the rate limit should not be taken as invalid credentials");
+        } catch (CodeQualityMatricesException e) {
+            assertTrue(e.getMessage().contains("still exhausted after 5 attempts"));
+        }
+        assertEquals(5, attempts.get());
+
+        attempts.set(0);
+        try {
+            Futures.join(restApiCaller.callApiAsync(serverUrl + "/exhausted?page=2", "ignored-token", false, false,
+                    ResponseDecoders::decodeJson));
+            fail("A call still rejected due to the rate limit should not be taken as a missing page");
+        } catch (CodeQualityMatricesException e) {
+            assertTrue(e.getMessage().contains("still exhausted after 5 attempts"));
+        }
+        assertEquals(5, attempts.get());
+    }
+
+    public void testBudgetIsResetToTheLimitOnlyIfTheLimitIsKnown() throws Exception {
+        RateLimitScheduler rateLimitScheduler = new RateLimitScheduler(Arrays.asList("token-a"), serverUrl);
+        long resetAt = System.currentTimeMillis() / 1000 + 1;
+        rateLimitScheduler.releaseGraphQl(rateLimitScheduler.acquire(RateLimitScheduler.Pool.GRAPHQL), null,
+                new GraphQlRateLimit(-1, 1, 0, resetAt, false));
+        Thread.sleep(resetAt * 1000 + 600 - System.currentTimeMillis());
+
+        // the budget of the new window is not known, so a single call is made to learn it
+        String token = rateLimitScheduler.acquire(RateLimitScheduler.Pool.GRAPHQL);
+        CompletableFuture<String> queuedToken = rateLimitScheduler.acquireAsync(RateLimitScheduler.Pool.GRAPHQL);
+        assertFalse(queuedToken.isDone());
+        resetAt = System.currentTimeMillis() / 1000 + 1;
+        rateLimitScheduler.releaseGraphQl(token, null, new GraphQlRateLimit(2, 1, 1, resetAt, false));
+        assertEquals("token-a", queuedToken.get(5, TimeUnit.SECONDS));
+        rateLimitScheduler.releaseGraphQl("token-a", null, new GraphQlRateLimit(2, 1, 0, resetAt, false));
+        Thread.sleep(resetAt * 1000 + 600 - System.currentTimeMillis());
+
+        // the limit is known now, so the budget of the new window is available at once
+        assertTrue(rateLimitScheduler.acquireAsync(RateLimitScheduler.Pool.GRAPHQL).isDone());
+        assertTrue(rateLimitScheduler.acquireAsync(RateLimitScheduler.Pool.GRAPHQL).isDone());
+        assertFalse(rateLimitScheduler.acquireAsync(RateLimitScheduler.Pool.GRAPHQL).isDone());
+    }
+
+    private List<Object> callConcurrently(int calls, ApiCall apiCall) throws Exception {
+        ExecutorService executorService = Executors.newFixedThreadPool(4);
+        try {
+            List<Future<Object>> futures = new ArrayList<>();
+            for (int i = 0; i < calls; i++) {
+                futures.add(executorService.submit(apiCall::call));
+            }
+            List<Object> responses = new ArrayList<>();
+            for (Future<Object> future : futures) {
+                responses.add(future.get());
+            }
+            return responses;
+        } finally {
+            executorService.shutdownNow();
+        }
+    }
+
+    private synchronized void handle(HttpExchange exchange, String pool, int limit, boolean graphQl) throws IOException {
+        String token = exchange.getRequestHeaders().getFirst("Authorization").substring("Bearer ".length());
+        long window = System.currentTimeMillis() / 1000;
+        long reset = window + 1;
+        AtomicInteger used = usedInWindow.computeIfAbsent(pool + "/" + token + "/" + window, key -> new AtomicInteger());
+
+        if (used.get() >= limit) {
+            rejectedCalls.incrementAndGet();
+            exchange.getResponseHeaders().add("X-RateLimit-Remaining", "0");
+            exchange.getResponseHeaders().add("X-RateLimit-Reset", String.valueOf(reset));
+            FakeGitHubServer.send(exchange, 403, "{\"message\":\"API rate limit exceeded\"}");
+            return;
+        }
+        int remaining = limit - used.incrementAndGet();
+        callsPerToken.computeIfAbsent(token, key -> new AtomicInteger()).incrementAndGet();
+        if (graphQl) {
+            // the GraphQL budget is only reported in the response body
+            FakeGitHubServer.send(exchange, 200, "{\"data\":{\"rateLimit\":{\"cost\":1,\"remaining\":" + remaining + ",\"resetAt\":\""
+                    + Instant.ofEpochSecond(reset) + "\"}}}");
+        } else {
+            exchange.getResponseHeaders().add("X-RateLimit-Limit", String.valueOf(limit));
+            exchange.getResponseHeaders().add("X-RateLimit-Remaining", String.valueOf(remaining));
+            exchange.getResponseHeaders().add("X-RateLimit-Reset", String.valueOf(reset));
+            FakeGitHubServer.send(exchange, 200, "{\"items\":[]}");
+        }
+    }
+
+    private void rejectFirstAttemptInTheBody(HttpExchange exchange) throws IOException {
+        long reset = System.currentTimeMillis() / 1000 + 1;
+        if (attempts.incrementAndGet() == 1) {
+            exchange.getResponseHeaders().add("X-RateLimit-Remaining", "0");
+            exchange.getResponseHeaders().add("X-RateLimit-Reset", String.valueOf(reset));
+            FakeGitHubServer.send(exchange, 200, "{\"errors\":[{\"type\":\"RATE_LIMITED\",\"message\":\"API rate limit exceeded\"}]}");
+            return;
+        }
+        FakeGitHubServer.send(exchange, 200, "{\"data\":{\"rateLimit\":{\"cost\":1,\"remaining\":10,\"resetAt\":\""
+                + Instant.ofEpochSecond(reset) + "\"}}}");
+    }
+
+    private void rejectFirstAttemptWithRetryAfter(HttpExchange exchange) throws IOException {
+        if (attempts.incrementAndGet() == 1) {
+            exchange.getResponseHeaders().add("Retry-After", "1");
+            FakeGitHubServer.send(exchange, 429, "{\"message\":\"You have exceeded a secondary rate limit\"}");
+            return;
+        }
+        FakeGitHubServer.send(exchange, 200, "{\"data\":{}}");
+    }
+
+    private void rejectEveryAttempt(HttpExchange exchange) throws IOException {
+        attempts.incrementAndGet();
+        // the token may be used again at once, so the attempts of the call run out quickly
+        exchange.getResponseHeaders().add("Retry-After", "0");
+        int statusCode = exchange.getRequestURI().getQuery().equals("page=1") ? 403 : 429;
+        FakeGitHubServer.send(exchange, statusCode, "{\"message\":\"You have exceeded a secondary rate limit\"}");
+    }
+
+    private interface ApiCall {
+        Object call() throws CodeQualityMatricesException;
+    }
+}
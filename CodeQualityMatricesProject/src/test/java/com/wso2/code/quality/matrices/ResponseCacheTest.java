@@ -0,0 +1,152 @@
+/*
+ * Copyright (c) 2017, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ *
+ * WSO2 Inc. licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.wso2.code.quality.matrices;
+
+import com.sun.net.httpserver.HttpExchange;
+import junit.framework.TestCase;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Stream;
+
+/**
+ * Tests storing, revalidating and evicting the responses kept by the ResponseCache.
+ */
+public class ResponseCacheTest extends TestCase {
+
+    private static final String ETAG = "\"v1\"";
+    private static final String REVIEWS = "[{\"state\":\"APPROVED\",\"user\":{\"login\":\"reviewer\"}}]";
+
+    private Path cacheDirectory;
+    private FakeGitHubServer server;
+    private final AtomicInteger fullResponses = new AtomicInteger();
+    private final AtomicInteger notModifiedResponses = new AtomicInteger();
+
+    @Override
+    protected void setUp() throws Exception {
+        cacheDirectory = Files.createTempDirectory("response-cache");
+        server = new FakeGitHubServer();
+        server.handle("/repos", this::handle);
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        server.close();
+        try (Stream<Path> paths = Files.walk(cacheDirectory)) {
+            paths.sorted(Comparator.reverseOrder()).forEach(path -> path.toFile().delete());
+        }
+    }
+
+    public void testUnchangedResponseIsRevalidated() throws CodeQualityMatricesException, IOException {
+        String url = server.getUrl() + "/repos/wso2/carbon-kernel/pulls/1/reviews";
+        ResponseCache responseCache = new ResponseCache(cacheDirectory, 1024 * 1024);
+        RestApiCaller restApiCaller = new RestApiCaller(server.getHttpTransport(), null, responseCache);
+        for (int i = 0; i < 3; i++) {
+            List<Review> reviews = restApiCaller.callApi(url, "token", false, true, ResponseDecoders::decodeReviews);
+            assertEquals("reviewer", reviews.get(0).getUserLogin());
+        }
+
+        // the body is downloaded once and then served from the cache after each 304 Not Modified
+        assertEquals(1, fullResponses.get());
+        assertEquals(2, notModifiedResponses.get());
+    }
+
+    public void testSizeIsNotInflatedByReplacedEntries() throws Exception {
+        ResponseCache responseCache = new ResponseCache(cacheDirectory, 1024 * 1024);
+        for (int i = 0; i < 5; i++) {
+            responseCache.put("key", entry(100));
+        }
+        long entrySize = Files.size(cacheDirectory.resolve("key.entry"));
+
+        assertEquals(entrySize, responseCache.getApproximateSize());
+        assertEquals(entrySize, new ResponseCache(cacheDirectory, 1024 * 1024).getApproximateSize());
+    }
+
+    public void testLeastRecentlyUsedEntriesAreEvicted() throws Exception {
+        ResponseCache sizingCache = new ResponseCache(cacheDirectory, 1024 * 1024);
+        sizingCache.put("probe", entry(1000));
+        long entrySize = sizingCache.getApproximateSize();
+        Files.delete(cacheDirectory.resolve("probe.entry"));
+
+        // room for three entries, and eviction removes entries until the cache is below 90% of its size
+        ResponseCache responseCache = new ResponseCache(cacheDirectory, entrySize * 3);
+        long now = System.currentTimeMillis();
+        for (int i = 0; i < 3; i++) {
+            responseCache.put("key" + i, entry(1000));
+            Files.setLastModifiedTime(cacheDirectory.resolve("key" + i + ".entry"), FileTime.fromMillis(now - (10 - i) * 60000L));
+        }
+        // reading the oldest entry marks it as recently used
+        assertNotNull(responseCache.get("key0"));
+        responseCache.put("key3", entry(1000));
+
+        assertNotNull(responseCache.get("key0"));
+        assertNull(responseCache.get("key1"));
+        assertNull(responseCache.get("key2"));
+        assertNotNull(responseCache.get("key3"));
+        assertEquals(2 * entrySize, responseCache.getApproximateSize());
+    }
+
+    public void testCorruptEntryIsAMiss() throws Exception {
+        ResponseCache responseCache = new ResponseCache(cacheDirectory, 1024 * 1024);
+        Files.write(cacheDirectory.resolve("key.entry"), "not gzip".getBytes(StandardCharsets.UTF_8));
+        assertNull(responseCache.get("key"));
+
+        responseCache.put("key", entry(10));
+        assertEquals(10, responseCache.get("key").getBody().length);
+    }
+
+    public void testStaleTemporaryFilesAreDeletedWhenOpened() throws Exception {
+        Path staleFile = Files.write(cacheDirectory.resolve("key1.tmp"), new byte[100]);
+        Files.setLastModifiedTime(staleFile, FileTime.fromMillis(System.currentTimeMillis() - TimeUnit.DAYS.toMillis(1)));
+        // a recent temporary file may still be written by another JVM sharing the directory
+        Path recentFile = Files.write(cacheDirectory.resolve("key2.tmp"), new byte[100]);
+
+        new ResponseCache(cacheDirectory, 1024 * 1024);
+
+        assertFalse(Files.exists(staleFile));
+        assertTrue(Files.exists(recentFile));
+    }
+
+    private static ResponseCache.Entry entry(int bodyLength) {
+        byte[] body = new byte[bodyLength];
+        // a body which does not compress away, so that the entries take a known size
+        new Random(bodyLength).nextBytes(body);
+        return new ResponseCache.Entry(ETAG, null, body);
+    }
+
+    private void handle(HttpExchange exchange) throws IOException {
+        if (ETAG.equals(exchange.getRequestHeaders().getFirst("If-None-Match"))) {
+            notModifiedResponses.incrementAndGet();
+            exchange.sendResponseHeaders(304, -1);
+            exchange.close();
+            return;
+        }
+        fullResponses.incrementAndGet();
+        exchange.getResponseHeaders().add("ETag", ETAG);
+        FakeGitHubServer.send(exchange, 200, REVIEWS);
+    }
+}
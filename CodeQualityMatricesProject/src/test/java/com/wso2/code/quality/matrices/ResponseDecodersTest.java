@@ -0,0 +1,105 @@
+/*
+ * Copyright (c) 2017, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ *
+ * WSO2 Inc. licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+
+package com.wso2.code.quality.matrices;
+
+import junit.framework.TestCase;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+
+/**
+ * Tests the streaming decoders of the github and WSO2 PMT API responses.
+ */
+public class ResponseDecodersTest extends TestCase {
+
+    private static final String COMMIT = "0123456789abcdef0123456789abcdef01234567";
+    private static final String PARENT = "89abcdef0123456789abcdef0123456789abcdef";
+
+    public void testUnknownFieldsOfSearchItemsAreSkipped() throws IOException {
+        List<SearchItem> searchItems = ResponseDecoders.decodeSearchItems(stream("{\"total_count\":2,\"items\":["
+                + "{\"sha\":\"x\",\"commit\":{\"message\":\"fix\\nline\",\"tree\":{\"sha\":\"y\"}},"
+                + "\"repository\":{\"id\":1,\"owner\":{\"login\":\"wso2\"},\"full_name\":\"wso2/carbon-kernel\"}},"
+                + "{\"number\":12,\"state\":\"closed\",\"labels\":[{\"name\":\"bug\"}],"
+                + "\"repository_url\":\"https://api.github.com/repos/wso2/product-is\"}]}"));
+
+        assertEquals(2, searchItems.size());
+        assertEquals("wso2/carbon-kernel", searchItems.get(0).getRepositoryFullName());
+        assertEquals("wso2/product-is", searchItems.get(1).getRepositoryFullName());
+        assertEquals(12, searchItems.get(1).getNumber());
+        assertEquals("closed", searchItems.get(1).getState());
+    }
+
+    public void testReviewsAndPmtPropertiesAreDecoded() throws IOException {
+        List<Review> reviews = ResponseDecoders.decodeReviews(stream("[{\"id\":1,\"user\":{\"login\":\"jane\",\"id\":2},"
+                + "\"body\":\"looks\\ngood\",\"state\":\"APPROVED\"},{\"state\":\"COMMENTED\",\"user\":null}]"));
+        assertEquals(2, reviews.size());
+        assertEquals("APPROVED", reviews.get(0).getState());
+        assertEquals("jane", reviews.get(0).getUserLogin());
+        assertNull(reviews.get(1).getUserLogin());
+
+        List<PmtProperty> pmtProperties = ResponseDecoders.decodePmtProperties(stream("[{\"name\":\"patchName\",\"value\":\"WSO2-1\"},"
+                + "{\"name\":\"patchInformation_svnRevisionpublic\",\"value\":[\" " + COMMIT + "\",\"" + PARENT + " \"]}]"));
+        assertEquals(2, pmtProperties.size());
+        assertEquals("WSO2-1", pmtProperties.get(0).getValues().get(0));
+        assertEquals(2, new Pmt().getCommitHashesToList(pmtProperties).size());
+        assertEquals(COMMIT, new Pmt().getCommitHashesToList(pmtProperties).get(0));
+        assertEquals(PARENT, new Pmt().getCommitHashesToList(pmtProperties).get(1));
+    }
+
+    public void testBlamesAndErrorsOfBatchAreDecoded() throws IOException {
+        String range = "{\"startingLine\":1,\"endingLine\":4,\"age\":3,\"commit\":{\"oid\":\"" + COMMIT
+                + "\",\"parents\":{\"nodes\":[{\"oid\":\"" + PARENT + "\"}]},\"author\":{\"name\":\"Jane\"}}}";
+        BlameBatchResponse response = ResponseDecoders.blameBatchDecoder(true).decode(stream("{\"data\":{"
+                + "\"rateLimit\":{\"limit\":5000,\"cost\":2,\"remaining\":4990,\"resetAt\":\"2030-01-01T00:00:00Z\"},"
+                + "\"b0\":{\"object\":{\"blame\":{\"ranges\":[" + range + "]}}},\"b1\":null},"
+                + "\"errors\":[{\"path\":[\"b1\",\"object\"],\"message\":\"Could not resolve file\"}]}"));
+
+        assertTrue(response.isDataReceived());
+        assertEquals(2, response.getRateLimit().getCost());
+        assertEquals(4990, response.getRateLimit().getRemaining());
+        assertEquals(5000, response.getRateLimit().getLimit());
+        assertFalse(response.getRateLimit().isExceeded());
+        FileBlame blame = response.getBlame("b0");
+        assertEquals(1, blame.getRangeCount());
+        assertEquals(4, blame.getEndingLine(0));
+        assertEquals(COMMIT, blame.getCommitHash(0));
+        assertEquals(PARENT, blame.getParentCommitHash(0));
+        assertEquals("Jane", blame.getAuthorName(0));
+        assertNull(response.getBlame("b1"));
+        assertEquals("Could not resolve file", response.getError("b1"));
+    }
+
+    public void testQueryRejectedDueToTheRateLimitIsDecoded() throws IOException {
+        BlameBatchResponse response = ResponseDecoders.blameBatchDecoder(true).decode(stream("{\"errors\":[{"
+                + "\"type\":\"RATE_LIMITED\",\"message\":\"API rate limit exceeded\"}]}"));
+
+        assertFalse(response.isDataReceived());
+        assertTrue(response.getRateLimit().isExceeded());
+        assertEquals(-1, response.getRateLimit().getRemaining());
+        assertEquals("API rate limit exceeded", response.getError(""));
+    }
+
+    private InputStream stream(String body) {
+        return new ByteArrayInputStream(body.getBytes(StandardCharsets.UTF_8));
+    }
+}
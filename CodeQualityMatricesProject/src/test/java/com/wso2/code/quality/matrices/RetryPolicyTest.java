@@ -0,0 +1,133 @@
+/*
+ * Copyright (c) 2017, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ *
+ * WSO2 Inc. licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.wso2.code.quality.matrices;
+
+import com.sun.net.httpserver.HttpExchange;
+import junit.framework.TestCase;
+
+import java.io.IOException;
+import java.net.ConnectException;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Tests the retries of the RetryPolicy, and the retries of a server error by the RestApiCaller against a local fake
+ * github server which fails the first attempt of each call.
+ */
+public class RetryPolicyTest extends TestCase {
+
+    private static final String REVIEWS = "[{\"state\":\"APPROVED\",\"user\":{\"login\":\"reviewer\"}}]";
+
+    private FakeGitHubServer server;
+    private final AtomicInteger attempts = new AtomicInteger();
+
+    @Override
+    protected void setUp() throws Exception {
+        server = new FakeGitHubServer();
+        server.handle("/repos", this::handle);
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        server.close();
+    }
+
+    public void testOnlyServerErrorsAndFailuresWithoutResponseAreTransient() {
+        assertTrue(RetryPolicy.isTransient(500));
+        assertTrue(RetryPolicy.isTransient(502));
+        assertTrue(RetryPolicy.isTransient(503));
+        assertTrue(RetryPolicy.isTransient(504));
+        assertFalse(RetryPolicy.isTransient(200));
+        assertFalse(RetryPolicy.isTransient(404));
+        assertFalse(RetryPolicy.isTransient(501));
+
+        assertTrue(RetryPolicy.isTransient(new ConnectException("Connection refused")));
+        // the IOException is found behind the exceptions wrapping it
+        assertTrue(RetryPolicy.isTransient(new CompletionException(new CodeQualityMatricesException("Call failed",
+                new IOException("Read timed out")))));
+        assertFalse(RetryPolicy.isTransient(new CodeQualityMatricesException("Unexpected response")));
+        assertFalse(RetryPolicy.isTransient(new IllegalStateException()));
+    }
+
+    public void testAttemptsAreLimited() {
+        RetryPolicy retryPolicy = new RetryPolicy(3, 10, 100);
+        assertTrue(retryPolicy.shouldRetry(1));
+        assertTrue(retryPolicy.shouldRetry(2));
+        assertFalse(retryPolicy.shouldRetry(3));
+        // a single attempt is always made
+        assertFalse(new RetryPolicy(0, 10, 100).shouldRetry(1));
+    }
+
+    public void testBackoffIsDoubledWithinItsBounds() {
+        RetryPolicy retryPolicy = new RetryPolicy(10, 100, 1000);
+        for (int i = 0; i < 100; i++) {
+            assertBetween(50, 100, retryPolicy.backoffMillis(1));
+            assertBetween(100, 200, retryPolicy.backoffMillis(2));
+            assertBetween(200, 400, retryPolicy.backoffMillis(3));
+            // the backoff is capped at the maximum
+            assertBetween(500, 1000, retryPolicy.backoffMillis(5));
+        }
+    }
+
+    public void testBackoffDoesNotOverflow() {
+        RetryPolicy retryPolicy = new RetryPolicy(100, 1000, 60000);
+        assertBetween(30000, 60000, retryPolicy.backoffMillis(40));
+        assertBetween(30000, 60000, retryPolicy.backoffMillis(Integer.MAX_VALUE));
+
+        // a backoff whose doubling would wrap around to a small value
+        long initialBackoffMillis = (1L << 40) + 1;
+        RetryPolicy longRetryPolicy = new RetryPolicy(100, initialBackoffMillis, Long.MAX_VALUE);
+        assertBetween(Long.MAX_VALUE / 2, Long.MAX_VALUE, longRetryPolicy.backoffMillis(31));
+        assertBetween(initialBackoffMillis / 2, initialBackoffMillis, longRetryPolicy.backoffMillis(1));
+    }
+
+    public void testNextAttemptIsMadeAfterTheBackoff() {
+        RetryPolicy retryPolicy = new RetryPolicy(3, 50, 50);
+        long start = System.nanoTime();
+        CompletableFuture<String> result = retryPolicy.retryAfterBackoff(1, () -> CompletableFuture.completedFuture("retried"));
+
+        assertEquals("retried", result.join());
+        assertTrue((System.nanoTime() - start) / 1000000 >= 25);
+    }
+
+    public void testServerErrorIsRetriedByTheCaller() throws Exception {
+        String url = server.getUrl() + "/repos/wso2/carbon-kernel/pulls/1/reviews";
+        RestApiCaller restApiCaller = new RestApiCaller(server.getHttpTransport(), null, null, new RetryPolicy(3, 1, 1));
+
+        List<Review> reviews = restApiCaller.callApi(url, "token", false, true, ResponseDecoders::decodeReviews);
+        assertEquals("reviewer", reviews.get(0).getUserLogin());
+        assertEquals(2, attempts.getAndSet(0));
+
+        reviews = restApiCaller.callApiAsync(url, "token", false, true, ResponseDecoders::decodeReviews).join();
+        assertEquals("reviewer", reviews.get(0).getUserLogin());
+        assertEquals(2, attempts.get());
+    }
+
+    private static void assertBetween(long min, long max, long value) {
+        assertTrue(value + " is not between " + min + " and " + max, value >= min && value <= max);
+    }
+
+    private void handle(HttpExchange exchange) throws IOException {
+        // the first attempt of each call fails with a bad gateway and the second succeeds
+        boolean failed = attempts.incrementAndGet() % 2 == 1;
+        FakeGitHubServer.send(exchange, failed ? 502 : 200, failed ? "{\"message\":\"Server Error\"}" : REVIEWS);
+    }
+}
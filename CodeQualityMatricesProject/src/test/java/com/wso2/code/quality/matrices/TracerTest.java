@@ -0,0 +1,138 @@
+/*
+ * Copyright (c) 2017, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ *
+ * WSO2 Inc. licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.wso2.code.quality.matrices;
+
+import junit.framework.TestCase;
+import org.json.JSONArray;
+import org.json.JSONObject;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Tests the Tracer and the spans it writes in the OpenTelemetry protocol JSON format.
+ */
+public class TracerTest extends TestCase {
+
+    private Path traceFile;
+
+    @Override
+    protected void setUp() throws Exception {
+        traceFile = Files.createTempFile("trace", ".jsonl");
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        Files.deleteIfExists(traceFile);
+    }
+
+    public void testSpansAreWrittenAsATreeAcrossThreads() throws Exception {
+        Tracer tracer = new Tracer(traceFile, 1);
+        ExecutorService executorService = Executors.newSingleThreadExecutor();
+        try (Tracer.Span root = tracer.startRootSpan("patch").setAttribute(Tracer.PATCH_ID_ATTRIBUTE, "WSO2-PATCH-1")) {
+            try (Tracer.Span commit = tracer.startSpan("commit")) {
+                commit.setAttribute(Tracer.COMMIT_ATTRIBUTE, "abc");
+                tracer.startClientSpan("GET commit").setHttpAttributes("GET", "http://localhost/commit", 2, 404, 10).close();
+            }
+            // the span current on this thread is taken to the other thread by the wrapped task
+            executorService.submit(tracer.wrap(() -> {
+                tracer.startSpan("reviews").close();
+                return null;
+            })).get();
+            assertSame(root, tracer.currentSpan());
+        } finally {
+            executorService.shutdownNow();
+        }
+        assertFalse(tracer.currentSpan().isRecording());
+        tracer.close();
+
+        Map<String, JSONObject> spans = readSpans();
+        assertEquals(4, spans.size());
+        JSONObject root = spans.get("patch");
+        assertFalse(root.has("parentSpanId"));
+        assertEquals("WSO2-PATCH-1", attributesOf(root).get(Tracer.PATCH_ID_ATTRIBUTE).getString("stringValue"));
+        assertEquals(root.getString("spanId"), spans.get("commit").getString("parentSpanId"));
+        assertEquals(root.getString("spanId"), spans.get("reviews").getString("parentSpanId"));
+        assertEquals(spans.get("commit").getString("spanId"), spans.get("GET commit").getString("parentSpanId"));
+        for (JSONObject span : spans.values()) {
+            assertEquals(root.getString("traceId"), span.getString("traceId"));
+            assertTrue(Long.parseLong(span.getString("endTimeUnixNano")) >= Long.parseLong(span.getString("startTimeUnixNano")));
+        }
+
+        JSONObject call = spans.get("GET commit");
+        assertEquals(3, call.getInt("kind"));
+        assertEquals("404", attributesOf(call).get(Tracer.HTTP_STATUS_CODE_ATTRIBUTE).getString("intValue"));
+        assertEquals("1", attributesOf(call).get(Tracer.HTTP_RETRY_COUNT_ATTRIBUTE).getString("intValue"));
+        assertEquals(2, call.getJSONObject("status").getInt("code"));
+        assertFalse(spans.get("commit").has("status"));
+    }
+
+    public void testOpenSpansAreEndedWithAnErrorWhenClosed() throws Exception {
+        Tracer tracer = new Tracer(traceFile, 1);
+        tracer.startRootSpan("patch");
+        tracer.close();
+
+        JSONObject root = readSpans().get("patch");
+        assertEquals(2, root.getJSONObject("status").getInt("code"));
+    }
+
+    public void testUnsampledAndDisabledTracesAreNotRecorded() throws Exception {
+        Tracer tracer = new Tracer(traceFile, 0);
+        try (Tracer.Span root = tracer.startRootSpan("patch")) {
+            assertFalse(root.isRecording());
+            assertFalse(tracer.startSpan("commit").isRecording());
+        }
+        // spans without a recorded parent are not recorded either
+        assertFalse(tracer.startSpan("commit").isRecording());
+        assertFalse(tracer.startClientSpan("GET commit").isRecording());
+        tracer.close();
+        assertEquals(0, Files.size(traceFile));
+
+        Tracer disabledTracer = new Tracer();
+        assertFalse(disabledTracer.isEnabled());
+        assertFalse(disabledTracer.startRootSpan("patch").isRecording());
+    }
+
+    private Map<String, JSONObject> readSpans() throws Exception {
+        Map<String, JSONObject> spans = new HashMap<>();
+        for (String line : Files.readAllLines(traceFile, StandardCharsets.UTF_8)) {
+            JSONArray spansOfLine = new JSONObject(line).getJSONArray("resourceSpans").getJSONObject(0)
+                    .getJSONArray("scopeSpans").getJSONObject(0).getJSONArray("spans");
+            for (int i = 0; i < spansOfLine.length(); i++) {
+                spans.put(spansOfLine.getJSONObject(i).getString("name"), spansOfLine.getJSONObject(i));
+            }
+        }
+        return spans;
+    }
+
+    private static Map<String, JSONObject> attributesOf(JSONObject span) {
+        Map<String, JSONObject> attributes = new HashMap<>();
+        JSONArray attributeArray = span.getJSONArray("attributes");
+        for (int i = 0; i < attributeArray.length(); i++) {
+            JSONObject attribute = attributeArray.getJSONObject(i);
+            attributes.put(attribute.getString("key"), attribute.getJSONObject("value"));
+        }
+        return attributes;
+    }
+}